@@ -0,0 +1,93 @@
+package saltchannel.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import saltchannel.Tunnel;
+import saltchannel.util.CryptoTestData;
+import saltchannel.util.NullTimeChecker;
+import saltchannel.util.NullTimeKeeper;
+import saltchannel.v2.ApplicationChannel;
+import saltchannel.v2.EncryptedChannelV2;
+
+/**
+ * ApplicationChannel, "count" messages written with one write() call each
+ * (one encrypted AppPacket per message) versus all of them written
+ * with one call (one encrypted MultiAppPacket). The messages are read
+ * by the peer in both cases. One operation is one batch of "count" messages.
+ *
+ * @author Frans Lundberg
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApplicationChannelBench {
+
+    @Param({"JAVA", "NATIVE"})
+    public String lib;
+
+    @Param({"4", "16"})
+    public int count;
+
+    @Param({"16", "256"})
+    public int size;
+
+    private ApplicationChannel writer;
+    private ApplicationChannel reader;
+    private byte[][] messages;
+
+    @Setup
+    public void setup() {
+        BenchLib.select(lib);
+
+        byte[] key = CryptoTestData.random32a;
+        Tunnel tunnel = new Tunnel();
+        writer = new ApplicationChannel(
+                new EncryptedChannelV2(tunnel.channel1(), key, EncryptedChannelV2.Role.CLIENT),
+                NullTimeKeeper.INSTANCE, NullTimeChecker.INSTANCE);
+        reader = new ApplicationChannel(
+                new EncryptedChannelV2(tunnel.channel2(), key, EncryptedChannelV2.Role.SERVER),
+                NullTimeKeeper.INSTANCE, NullTimeChecker.INSTANCE);
+
+        messages = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            messages[i] = new byte[size];
+        }
+    }
+
+    @Benchmark
+    public void singleWrites(Blackhole bh) {
+        for (int i = 0; i < messages.length; i++) {
+            writer.write(false, messages[i]);
+        }
+
+        readAll(bh);
+    }
+
+    @Benchmark
+    public void multiWrite(Blackhole bh) {
+        writer.write(false, messages);
+        readAll(bh);
+    }
+
+    private void readAll(Blackhole bh) {
+        for (int i = 0; i < messages.length; i++) {
+            bh.consume(reader.read());
+        }
+    }
+}
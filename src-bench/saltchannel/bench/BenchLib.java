@@ -0,0 +1,36 @@
+package saltchannel.bench;
+
+import saltaa.SaltLib;
+import saltaa.SaltLibFactory;
+
+/**
+ * Selects the SaltLib used by the library code in a benchmark JVM.
+ * The library code takes its lib from SaltLibFactory.getLib() when its
+ * classes are initialized, so select() must be called in a @Setup method
+ * before the benchmarked classes are used. JMH forks a new JVM for each
+ * combination of parameters, so a "lib" parameter with the values
+ * "JAVA" and "NATIVE" runs a benchmark on each lib.
+ *
+ * @author Frans Lundberg
+ */
+class BenchLib {
+    private BenchLib() {}
+    
+    /**
+     * Selects the lib, "JAVA" or "NATIVE".
+     * 
+     * @throws IllegalStateException
+     *          If another lib is already in use in this JVM.
+     * @throws saltaa.NoSuchLibException
+     *          If the lib is not operational.
+     */
+    static void select(String lib) {
+        System.setProperty(SaltLibFactory.LIB_PROPERTY, lib);
+        
+        SaltLib wanted = SaltLibFactory.getLib(SaltLibFactory.LibType.valueOf(lib));
+        if (SaltLibFactory.getLib() != wanted) {
+            throw new IllegalStateException("another SaltLib is already used, "
+                    + "run with at least one fork");
+        }
+    }
+}
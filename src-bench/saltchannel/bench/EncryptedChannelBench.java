@@ -0,0 +1,89 @@
+package saltchannel.bench;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import saltchannel.Tunnel;
+import saltchannel.util.CryptoTestData;
+import saltchannel.v2.EncryptedChannelV2;
+
+/**
+ * EncryptedChannelV2 writes (encryption only) and writes followed by
+ * reads (encryption and decryption) across message sizes.
+ * The peers are connected with a Tunnel and run in the benchmark thread.
+ *
+ * @author Frans Lundberg
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncryptedChannelBench {
+
+    @Param({"JAVA", "NATIVE"})
+    public String lib;
+
+    @Param({"16", "256", "4096", "65536"})
+    public int size;
+
+    private EncryptedChannelV2 sinkWriter;
+    private EncryptedChannelV2 writer;
+    private EncryptedChannelV2 reader;
+    private byte[] message;
+    private ByteBuffer messageBuffer;
+    private ByteBuffer readBuffer;
+
+    @Setup
+    public void setup() {
+        BenchLib.select(lib);
+
+        byte[] key = CryptoTestData.random32a;
+        Tunnel tunnel = new Tunnel();
+        sinkWriter = new EncryptedChannelV2(new NullChannel(), key, EncryptedChannelV2.Role.CLIENT);
+        writer = new EncryptedChannelV2(tunnel.channel1(), key, EncryptedChannelV2.Role.CLIENT);
+        reader = new EncryptedChannelV2(tunnel.channel2(), key, EncryptedChannelV2.Role.SERVER);
+
+        message = new byte[size];
+        messageBuffer = ByteBuffer.wrap(message);
+        readBuffer = ByteBuffer.allocate(size);
+    }
+
+    @Benchmark
+    public void write() {
+        sinkWriter.write(false, message);
+    }
+
+    @Benchmark
+    public void writeBuffer() {
+        messageBuffer.clear();
+        sinkWriter.write(false, messageBuffer);
+    }
+
+    @Benchmark
+    public byte[] writeAndRead() {
+        writer.write(false, message);
+        return reader.read();
+    }
+
+    @Benchmark
+    public int writeAndReadBuffer() {
+        messageBuffer.clear();
+        writer.write(false, messageBuffer);
+        readBuffer.clear();
+        return reader.read(readBuffer);
+    }
+}
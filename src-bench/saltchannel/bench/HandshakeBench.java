@@ -0,0 +1,177 @@
+package saltchannel.bench;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import saltchannel.CryptoLib;
+import saltchannel.Tunnel;
+import saltchannel.util.CryptoTestData;
+import saltchannel.util.Rand;
+import saltchannel.v2.ClientTicketData;
+import saltchannel.v2.HandshakeResult;
+import saltchannel.v2.ResumeHandler;
+import saltchannel.v2.SaltClientSession;
+import saltchannel.v2.SaltServerSession;
+
+/**
+ * Complete handshakes between a SaltClientSession and a SaltServerSession,
+ * including the generation of the ephemeral key pairs.
+ * 
+ * full and resumed run both peers in the benchmark thread with the
+ * push-style API (start() and onMessage()), so they measure the CPU time
+ * of a handshake. fullOverTunnel runs the blocking handshake() of the 
+ * server in another thread over a Tunnel, so it includes the thread 
+ * handoffs of each message as well.
+ * Each resumed handshake uses the ticket received in the previous one.
+ *
+ * @author Frans Lundberg
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HandshakeBench {
+
+    @Param({"JAVA", "NATIVE"})
+    public String lib;
+
+    private Rand rand;
+    private ResumeHandler resumeHandler;
+    private ClientTicketData ticketData;
+    private ExecutorService serverExecutor;
+
+    @Setup
+    public void setup() {
+        BenchLib.select(lib);
+
+        rand = CryptoLib.createInsecureAndFast().getRand();
+        resumeHandler = new ResumeHandler(CryptoTestData.random32a, 10, 100*1000);
+        serverExecutor = Executors.newSingleThreadExecutor();
+
+        Tunnel tunnel = new Tunnel();
+        SaltClientSession client = client(tunnel);
+        client.setTicketRequested(true);
+        run(client, server(tunnel));
+        ticketData = client.getNewTicketData();
+    }
+
+    @TearDown
+    public void tearDown() {
+        serverExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public byte[] full() {
+        Tunnel tunnel = new Tunnel();
+        SaltClientSession client = client(tunnel);
+        run(client, server(tunnel));
+        return client.getSessionKey();
+    }
+
+    @Benchmark
+    public byte[] resumed() {
+        Tunnel tunnel = new Tunnel();
+        SaltClientSession client = client(tunnel);
+        client.setTicketData(ticketData);
+        client.setTicketRequested(true);
+        run(client, server(tunnel));
+
+        ticketData = client.getNewTicketData();
+        if (ticketData == null) {
+            throw new IllegalStateException("no new ticket");
+        }
+
+        return client.getSessionKey();
+    }
+
+    @Benchmark
+    public byte[] fullOverTunnel() throws Exception {
+        Tunnel tunnel = new Tunnel();
+        final SaltServerSession server = server(tunnel);
+        Future<Void> serverDone = serverExecutor.submit(new Callable<Void>() {
+            public Void call() {
+                server.handshake();
+                return null;
+            }
+        });
+
+        SaltClientSession client = client(tunnel);
+        client.handshake();
+        serverDone.get();
+
+        return client.getSessionKey();
+    }
+
+    private SaltClientSession client(Tunnel tunnel) {
+        SaltClientSession client = new SaltClientSession(CryptoTestData.aSig, tunnel.channel1());
+        client.setEncKeyPair(rand);
+        return client;
+    }
+
+    private SaltServerSession server(Tunnel tunnel) {
+        SaltServerSession server = new SaltServerSession(CryptoTestData.bSig, tunnel.channel2());
+        server.setEncKeyPair(rand);
+        server.setResumeHandler(resumeHandler);
+        return server;
+    }
+
+    /**
+     * Runs a handshake with the push-style API, passes the messages
+     * of each peer to the other one until both are done.
+     */
+    private static void run(SaltClientSession client, SaltServerSession server) {
+        ArrayDeque<byte[]> toServer = new ArrayDeque<byte[]>();
+        ArrayDeque<byte[]> toClient = new ArrayDeque<byte[]>();
+        boolean clientDone = add(client.start(), toServer);
+        boolean serverDone = false;
+
+        while (!toServer.isEmpty() || !toClient.isEmpty()) {
+            while (!toServer.isEmpty()) {
+                serverDone = add(server.onMessage(toServer.poll()), toClient);
+            }
+
+            while (!toClient.isEmpty()) {
+                clientDone = add(client.onMessage(toClient.poll()), toServer);
+            }
+        }
+
+        if (!clientDone || !serverDone) {
+            throw new IllegalStateException("handshake not done");
+        }
+    }
+
+    /**
+     * Adds the messages of the result to the queue, returns true if
+     * the handshake of the peer is done.
+     */
+    private static boolean add(HandshakeResult result, ArrayDeque<byte[]> queue) {
+        if (result.getState() == HandshakeResult.State.FAILED) {
+            throw result.getException();
+        }
+
+        for (byte[] m : result.getMessages()) {
+            queue.add(m);
+        }
+
+        return result.getState() == HandshakeResult.State.DONE;
+    }
+}
@@ -0,0 +1,25 @@
+package saltchannel.bench;
+
+import saltchannel.ByteChannel;
+import saltchannel.ComException;
+
+/**
+ * A ByteChannel that discards all messages written to it.
+ * 
+ * @author Frans Lundberg
+ */
+class NullChannel implements ByteChannel {
+    
+    @Override
+    public byte[] read() throws ComException {
+        throw new ComException("nothing to read");
+    }
+
+    @Override
+    public void write(byte[]... messages) throws ComException {
+    }
+
+    @Override
+    public void write(boolean isLast, byte[]... messages) throws ComException {
+    }
+}
@@ -0,0 +1,18 @@
+package saltchannel.bench;
+
+import java.io.OutputStream;
+
+/**
+ * Discards all bytes written.
+ * 
+ * @author Frans Lundberg
+ */
+public class NullOutputStream extends OutputStream {
+    @Override
+    public void write(int b) {
+    }
+    
+    @Override
+    public void write(byte[] b, int off, int len) {
+    }
+}
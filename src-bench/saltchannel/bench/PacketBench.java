@@ -0,0 +1,102 @@
+package saltchannel.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import saltchannel.util.CryptoTestData;
+import saltchannel.v2.packets.M1Message;
+import saltchannel.v2.packets.M2Message;
+import saltchannel.v2.packets.MultiAppPacket;
+
+/**
+ * Serialization and parsing of handshake messages and MultiAppPacket.
+ * No crypto is involved, so unlike the other benchmarks, these do not
+ * depend on the SaltLib used.
+ *
+ * @author Frans Lundberg
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketBench {
+
+    /** Number of application messages in the MultiAppPacket. */
+    @Param({"2", "16"})
+    public int count;
+
+    private M1Message m1;
+    private M2Message m2;
+    private MultiAppPacket multi;
+    private byte[] m1Bytes;
+    private byte[] m2Bytes;
+    private byte[] multiBytes;
+
+    @Setup
+    public void setup() {
+        m1 = new M1Message();
+        m1.time = 1;
+        m1.clientEncKey = CryptoTestData.aEnc.pub();
+        m1.serverSigKey = CryptoTestData.bSig.pub();
+        m1Bytes = m1.toBytes();
+
+        m2 = new M2Message();
+        m2.time = 1;
+        m2.serverEncKey = CryptoTestData.bEnc.pub();
+        m2Bytes = m2.toBytes();
+
+        multi = new MultiAppPacket();
+        multi.time = 1;
+        multi.appMessages = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            multi.appMessages[i] = new byte[64];
+        }
+        multiBytes = new byte[multi.getSize()];
+        multi.toBytes(multiBytes, 0);
+    }
+
+    @Benchmark
+    public byte[] m1ToBytes() {
+        return m1.toBytes();
+    }
+
+    @Benchmark
+    public M1Message m1FromBytes() {
+        return M1Message.fromBytes(m1Bytes, 0);
+    }
+
+    @Benchmark
+    public byte[] m2ToBytes() {
+        return m2.toBytes();
+    }
+
+    @Benchmark
+    public M2Message m2FromBytes() {
+        return M2Message.fromBytes(m2Bytes, 0);
+    }
+
+    @Benchmark
+    public byte[] multiToBytes() {
+        byte[] result = new byte[multi.getSize()];
+        multi.toBytes(result, 0);
+        return result;
+    }
+
+    @Benchmark
+    public MultiAppPacket multiFromBytes() {
+        return MultiAppPacket.fromBytes(multiBytes, 0, multiBytes.length);
+    }
+}
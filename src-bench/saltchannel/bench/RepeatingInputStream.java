@@ -0,0 +1,37 @@
+package saltchannel.bench;
+
+import java.io.InputStream;
+
+/**
+ * An endless input stream that repeats the given bytes. 
+ * Used to feed readers with pre-framed messages without I/O.
+ * 
+ * @author Frans Lundberg
+ */
+public class RepeatingInputStream extends InputStream {
+    private final byte[] data;
+    private int position = 0;
+    
+    public RepeatingInputStream(byte[] data) {
+        if (data.length == 0) {
+            throw new IllegalArgumentException("empty data");
+        }
+        
+        this.data = data;
+    }
+    
+    @Override
+    public int read() {
+        int result = data[position] & 0xff;
+        position = (position + 1) % data.length;
+        return result;
+    }
+    
+    @Override
+    public int read(byte[] b, int off, int len) {
+        int count = Math.min(len, data.length - position);
+        System.arraycopy(data, position, b, off, count);
+        position = (position + count) % data.length;
+        return count;
+    }
+}
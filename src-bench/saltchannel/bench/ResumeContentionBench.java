@@ -0,0 +1,65 @@
+package saltchannel.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import saltchannel.util.CryptoTestData;
+import saltchannel.v2.ResumeHandler;
+import saltchannel.v2.TicketSessionData;
+
+/**
+ * One ResumeHandler shared by several threads that issue and validate
+ * tickets, as the threads of a server do. The number of threads can be
+ * changed with the JMH option "-t"; compare the throughput with "-t 1"
+ * to see the cost of contention.
+ *
+ * @author Frans Lundberg
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class ResumeContentionBench {
+
+    @Param({"JAVA", "NATIVE"})
+    public String lib;
+
+    private ResumeHandler resumeHandler;
+    private byte[] clientSigKey;
+    private byte[] sessionKey;
+
+    @Setup
+    public void setup() {
+        BenchLib.select(lib);
+
+        resumeHandler = new ResumeHandler(CryptoTestData.random32a, 10, 100*1000);
+        clientSigKey = CryptoTestData.aSig.pub();
+        sessionKey = CryptoTestData.random32a;
+    }
+
+    @Benchmark
+    public byte[] issue() {
+        return resumeHandler.issueTicket(clientSigKey, sessionKey).ticket;
+    }
+
+    @Benchmark
+    public TicketSessionData issueAndValidate() {
+        byte[] ticket = resumeHandler.issueTicket(clientSigKey, sessionKey).ticket;
+        return resumeHandler.validateTicket(ticket);
+    }
+}
@@ -0,0 +1,94 @@
+package saltchannel.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import saltchannel.StreamChannel;
+import saltchannel.util.BufferPool;
+
+/**
+ * StreamChannel reads and writes without I/O: the byte[] API, which
+ * allocates each message read, versus the ByteBuffer and BufferPool
+ * APIs, which do not allocate per message.
+ * Run with "-prof gc" and compare gc.alloc.rate.norm (bytes per operation).
+ *
+ * @author Frans Lundberg
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamChannelBench {
+
+    @Param({"32", "1024", "16384"})
+    public int size;
+
+    private StreamChannel reader;
+    private StreamChannel writer;
+    private byte[] message;
+    private ByteBuffer messageBuffer;
+    private ByteBuffer readBuffer;
+    private BufferPool pool;
+
+    @Setup
+    public void setup() {
+        message = new byte[size];
+        messageBuffer = ByteBuffer.wrap(message);
+        readBuffer = ByteBuffer.allocate(size);
+        pool = new BufferPool(size, 4);
+
+        ByteArrayOutputStream framed = new ByteArrayOutputStream();
+        StreamChannel framer = new StreamChannel(null, framed);
+        for (int i = 0; i < 16; i++) {
+            framer.write(false, message);
+        }
+
+        reader = new StreamChannel(new RepeatingInputStream(framed.toByteArray()), null);
+        writer = new StreamChannel(null, new NullOutputStream());
+    }
+
+    @Benchmark
+    public byte[] readArray() {
+        return reader.read();
+    }
+
+    @Benchmark
+    public int readBuffer() {
+        readBuffer.clear();
+        return reader.read(readBuffer);
+    }
+
+    @Benchmark
+    public int readPooled() {
+        StreamChannel.PooledMessage m = reader.read(pool);
+        int result = m.getSize();
+        m.release();
+        return result;
+    }
+
+    @Benchmark
+    public void writeArray() {
+        writer.write(false, message);
+    }
+
+    @Benchmark
+    public void writeBuffer() {
+        messageBuffer.clear();
+        writer.write(false, messageBuffer);
+    }
+}
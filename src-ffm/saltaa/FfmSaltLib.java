@@ -0,0 +1,438 @@
+package saltaa;
+
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.invoke.MethodHandle;
+
+/**
+ * SaltLib implementation that calls the libsodium library of the system
+ * directly with the Foreign Function and Memory API (Java 22).
+ * No JNI glue library is needed, only libsodium itself.
+ *
+ * The downcalls are "critical" (Linker.Option.critical(true)): Java arrays
+ * are passed to libsodium without copying, and so are direct buffers
+ * with the MemorySegment methods of this class
+ * (MemorySegment.ofBuffer(buffer)). The lengths of the arguments are checked
+ * before the calls, IllegalArgumentException is thrown if an array is too short.
+ *
+ * The library is found with the system property LIBRARY_PROPERTY (a path or
+ * a library name), or else by the usual names of libsodium.
+ * Java 22+ warns about the use of native access unless the JVM is started
+ * with --enable-native-access=ALL-UNNAMED (or the module of this library).
+ *
+ * This source file is in src-ffm, it is compiled only with JDK 22 or later.
+ * SaltLibFactory loads the class by reflection, see LibType.FFM.
+ *
+ * @author Frans Lundberg
+ */
+public class FfmSaltLib implements SaltLib {
+
+    /**
+     * System property with the path or name of the libsodium library.
+     */
+    public static final String LIBRARY_PROPERTY = "saltaa.sodium";
+
+    /** Tried after System.mapLibraryName("sodium"), which is often a dev-package symlink. */
+    private static final String[] LIBRARY_NAMES = {"libsodium.so.26", "libsodium.so.23", "libsodium.so.18"};
+
+    private final MethodHandle signSeedKeypair;
+    private final MethodHandle sign;
+    private final MethodHandle signOpen;
+    private final MethodHandle signVerifyDetached;
+    private final MethodHandle scalarmultBase;
+    private final MethodHandle boxBeforenm;
+    private final MethodHandle boxAfternm;
+    private final MethodHandle boxOpenAfternm;
+    private final MethodHandle boxEasyAfternm;
+    private final MethodHandle boxOpenEasyAfternm;
+    private final MethodHandle hashSha512;
+
+    /**
+     * Loads libsodium and initializes it.
+     *
+     * @throws IllegalArgumentException If the library is not found.
+     * @throws UnsatisfiedLinkError If a function is missing in the library.
+     * @throws Error If sodium_init() fails.
+     */
+    public FfmSaltLib() {
+        Linker linker = Linker.nativeLinker();
+        SymbolLookup lookup = lookup(Arena.global());
+
+        FunctionDescriptor ppp = FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, ADDRESS);
+        FunctionDescriptor pplpp = FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, JAVA_LONG, ADDRESS, ADDRESS);
+        FunctionDescriptor ppplp = FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, ADDRESS, JAVA_LONG, ADDRESS);
+
+        MethodHandle init = downcall(linker, lookup, "sodium_init", FunctionDescriptor.of(JAVA_INT));
+        signSeedKeypair = downcall(linker, lookup, "crypto_sign_seed_keypair", ppp);
+        sign = downcall(linker, lookup, "crypto_sign", ppplp);
+        signOpen = downcall(linker, lookup, "crypto_sign_open", ppplp);
+        signVerifyDetached = downcall(linker, lookup, "crypto_sign_verify_detached",
+                FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, JAVA_LONG, ADDRESS));
+        scalarmultBase = downcall(linker, lookup, "crypto_scalarmult_curve25519_base",
+                FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS));
+        boxBeforenm = downcall(linker, lookup, "crypto_box_beforenm", ppp);
+        boxAfternm = downcall(linker, lookup, "crypto_box_afternm", pplpp);
+        boxOpenAfternm = downcall(linker, lookup, "crypto_box_open_afternm", pplpp);
+        boxEasyAfternm = downcall(linker, lookup, "crypto_box_easy_afternm", pplpp);
+        boxOpenEasyAfternm = downcall(linker, lookup, "crypto_box_open_easy_afternm", pplpp);
+        hashSha512 = downcall(linker, lookup, "crypto_hash_sha512",
+                FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, JAVA_LONG));
+
+        int result;
+        try {
+            result = (int) init.invokeExact();
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+
+        // 0: initialized, 1: already initialized.
+        if (result < 0) {
+            throw new Error("Lib init error, sodium_init() returned " + result);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "libsodium-ffm";
+    }
+
+    @Override
+    public void crypto_sign_keypair_not_random(byte[] pk, byte[] sk) {
+        check(pk, crypto_sign_PUBLICKEYBYTES, "pk");
+        check(sk, crypto_sign_SECRETKEYBYTES, "sk");
+        byte[] seed = sk.clone();
+
+        try {
+            int result = (int) signSeedKeypair.invokeExact(seg(pk), seg(sk), seg(seed));
+            checkResult(result, "crypto_sign_seed_keypair");
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    @Override
+    public void crypto_sign(byte[] sm, byte[] m, byte[] sk) {
+        check(sm, crypto_sign_BYTES + m.length, "sm");
+        check(sk, crypto_sign_SECRETKEYBYTES, "sk");
+
+        try {
+            int result = (int) sign.invokeExact(seg(sm), MemorySegment.NULL, seg(m), (long) m.length, seg(sk));
+            checkResult(result, "crypto_sign");
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /**
+     * libsodium does not expose signing with an expanded key, so
+     * the returned signer calls crypto_sign with a copy of sk.
+     */
+    @Override
+    public PreparedSigner crypto_sign_prepare(byte[] sk) {
+        SaltLibUtil.checkSignSecretKey(sk);
+        final byte[] skCopy = sk.clone();
+        final byte[] pk = new byte[crypto_sign_PUBLICKEYBYTES];
+        System.arraycopy(sk, 32, pk, 0, pk.length);
+
+        return new PreparedSigner() {
+            public void sign(byte[] sm, byte[] m) {
+                crypto_sign(sm, m, skCopy);
+            }
+
+            public byte[] getPublicKey() {
+                return pk.clone();
+            }
+        };
+    }
+
+    @Override
+    public void crypto_sign_open(byte[] m, byte[] sm, byte[] pk) {
+        if (sm.length < crypto_sign_BYTES) {
+            throw new BadSignatureException();
+        }
+
+        check(m, sm.length - crypto_sign_BYTES, "m");
+        check(pk, crypto_sign_PUBLICKEYBYTES, "pk");
+
+        int result;
+        try {
+            result = (int) signOpen.invokeExact(seg(m), MemorySegment.NULL, seg(sm), (long) sm.length, seg(pk));
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+
+        if (result != 0) {
+            throw new BadSignatureException();
+        }
+    }
+
+    /**
+     * libsodium decodes the public key internally; the cache is not used.
+     */
+    @Override
+    public void crypto_sign_open(byte[] m, byte[] sm, byte[] pk, SignKeyCache cache) {
+        crypto_sign_open(m, sm, pk);
+    }
+
+    /**
+     * libsodium has no batch verification; the signatures are verified
+     * one by one, in place (crypto_sign_verify_detached).
+     */
+    @Override
+    public void crypto_sign_verify_batch(boolean[] valid, byte[][] sm, byte[][] pk) {
+        SaltLibUtil.checkBatch(valid, sm, pk);
+
+        for (int i = 0; i < sm.length; i++) {
+            valid[i] = pk[i].length == crypto_sign_PUBLICKEYBYTES
+                    && sm[i].length >= crypto_sign_BYTES
+                    && verifyDetached(sm[i], pk[i]);
+        }
+    }
+
+    private boolean verifyDetached(byte[] sm, byte[] pk) {
+        MemorySegment s = seg(sm);
+        long mLength = sm.length - crypto_sign_BYTES;
+
+        try {
+            return (int) signVerifyDetached.invokeExact(s.asSlice(0, crypto_sign_BYTES),
+                    s.asSlice(crypto_sign_BYTES, mLength), mLength, seg(pk)) == 0;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    @Override
+    public void crypto_box_keypair_not_random(byte[] pk, byte[] sk) {
+        check(pk, crypto_box_PUBLICKEYBYTES, "pk");
+        check(sk, crypto_box_SECRETKEYBYTES, "sk");
+
+        try {
+            int result = (int) scalarmultBase.invokeExact(seg(pk), seg(sk));
+            checkResult(result, "crypto_scalarmult_curve25519_base");
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    @Override
+    public void crypto_box_beforenm(byte[] k, byte[] pk, byte[] sk) {
+        check(k, crypto_box_BEFORENMBYTES, "k");
+        check(pk, crypto_box_PUBLICKEYBYTES, "pk");
+        check(sk, crypto_box_SECRETKEYBYTES, "sk");
+
+        try {
+            int result = (int) boxBeforenm.invokeExact(seg(k), seg(pk), seg(sk));
+            checkResult(result, "crypto_box_beforenm");
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    @Override
+    public void crypto_box_afternm(byte[] c, byte[] m, byte[] n, byte[] k) {
+        if (m.length < crypto_box_ZEROBYTES) {
+            throw new IllegalArgumentException("m is too short");
+        }
+
+        check(c, m.length, "c");
+        checkNonceAndKey(n, k);
+
+        try {
+            int result = (int) boxAfternm.invokeExact(seg(c), seg(m), (long) m.length, seg(n), seg(k));
+            checkResult(result, "crypto_box_afternm");
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    @Override
+    public void crypto_box_open_afternm(byte[] m, byte[] c, byte[] n, byte[] k) {
+        if (c.length < crypto_box_ZEROBYTES) {
+            throw new IllegalArgumentException("c is too short, " + c.length);
+        }
+
+        check(m, c.length, "m");
+        checkNonceAndKey(n, k);
+
+        int result;
+        try {
+            result = (int) boxOpenAfternm.invokeExact(seg(m), seg(c), (long) c.length, seg(n), seg(k));
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+
+        if (result != 0) {
+            throw new BadEncryptedDataException();
+        }
+    }
+
+    /**
+     * The sub-arrays are passed to libsodium without copying.
+     */
+    @Override
+    public void crypto_box_afternm(byte[] c, int cOffset, byte[] m, int mOffset, int mLength,
+            byte[] n, byte[] k) {
+        SaltLibUtil.checkRange(m, mOffset, mLength, "m");
+        SaltLibUtil.checkRange(c, cOffset, crypto_box_OVERHEADBYTES + mLength, "c");
+
+        crypto_box_afternm(seg(c).asSlice(cOffset, crypto_box_OVERHEADBYTES + mLength),
+                seg(m).asSlice(mOffset, mLength), n, k);
+    }
+
+    /**
+     * The sub-arrays are passed to libsodium without copying.
+     */
+    @Override
+    public void crypto_box_open_afternm(byte[] m, int mOffset, byte[] c, int cOffset, int cLength,
+            byte[] n, byte[] k) {
+        if (cLength < crypto_box_OVERHEADBYTES) {
+            throw new IllegalArgumentException("c is too short, " + cLength);
+        }
+
+        SaltLibUtil.checkRange(c, cOffset, cLength, "c");
+        int mLength = cLength - crypto_box_OVERHEADBYTES;
+        SaltLibUtil.checkRange(m, mOffset, mLength, "m");
+
+        crypto_box_open_afternm(seg(m).asSlice(mOffset, mLength), seg(c).asSlice(cOffset, cLength), n, k);
+    }
+
+    /**
+     * As the offset/length variant of crypto_box_afternm, but on memory
+     * segments; for example, MemorySegment.ofBuffer(buffer) of a direct buffer,
+     * which is then encrypted without copying. The authenticator followed by
+     * the ciphertext of m is put into c; the size of c must be the size of m
+     * plus crypto_box_OVERHEADBYTES. In-place encryption is supported as for
+     * the byte array variant.
+     *
+     * @throws IllegalArgumentException If the size of c is wrong.
+     */
+    public void crypto_box_afternm(MemorySegment c, MemorySegment m, byte[] n, byte[] k) {
+        if (c.byteSize() != m.byteSize() + crypto_box_OVERHEADBYTES) {
+            throw new IllegalArgumentException("bad size of c, " + c.byteSize() + ", m: " + m.byteSize());
+        }
+
+        checkNonceAndKey(n, k);
+
+        try {
+            int result = (int) boxEasyAfternm.invokeExact(c, m, m.byteSize(), seg(n), seg(k));
+            checkResult(result, "crypto_box_easy_afternm");
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /**
+     * As the offset/length variant of crypto_box_open_afternm, but on memory
+     * segments, see crypto_box_afternm(MemorySegment, MemorySegment, byte[], byte[]).
+     * The size of m must be the size of c minus crypto_box_OVERHEADBYTES.
+     * If the ciphertext fails verification, m is not modified.
+     *
+     * @throws BadEncryptedDataException
+     * @throws IllegalArgumentException If the size of m is wrong.
+     */
+    public void crypto_box_open_afternm(MemorySegment m, MemorySegment c, byte[] n, byte[] k) {
+        if (c.byteSize() != m.byteSize() + crypto_box_OVERHEADBYTES) {
+            throw new IllegalArgumentException("bad size of m, " + m.byteSize() + ", c: " + c.byteSize());
+        }
+
+        checkNonceAndKey(n, k);
+
+        int result;
+        try {
+            result = (int) boxOpenEasyAfternm.invokeExact(m, c, c.byteSize(), seg(n), seg(k));
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+
+        if (result != 0) {
+            throw new BadEncryptedDataException();
+        }
+    }
+
+    @Override
+    public void crypto_hash(byte[] h, byte[] m) {
+        crypto_hash(h, seg(m));
+    }
+
+    /**
+     * As crypto_hash(byte[], byte[]), but hashes the bytes of a memory segment.
+     */
+    public void crypto_hash(byte[] h, MemorySegment m) {
+        check(h, crypto_hash_BYTES, "h");
+
+        try {
+            int result = (int) hashSha512.invokeExact(seg(h), m, m.byteSize());
+            checkResult(result, "crypto_hash_sha512");
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    private static SymbolLookup lookup(Arena arena) {
+        String library = System.getProperty(LIBRARY_PROPERTY);
+        if (library != null) {
+            return SymbolLookup.libraryLookup(library, arena);
+        }
+
+        try {
+            return SymbolLookup.libraryLookup(System.mapLibraryName("sodium"), arena);
+        } catch (IllegalArgumentException e) {
+            for (String name : LIBRARY_NAMES) {
+                try {
+                    return SymbolLookup.libraryLookup(name, arena);
+                } catch (IllegalArgumentException e2) {
+                    // Try next name.
+                }
+            }
+
+            throw e;
+        }
+    }
+
+    private static MethodHandle downcall(Linker linker, SymbolLookup lookup, String name,
+            FunctionDescriptor descriptor) {
+        MemorySegment address = lookup.find(name).orElseThrow(() -> new UnsatisfiedLinkError(name));
+        return linker.downcallHandle(address, descriptor, Linker.Option.critical(true));
+    }
+
+    private static MemorySegment seg(byte[] array) {
+        return MemorySegment.ofArray(array);
+    }
+
+    /**
+     * @throws IllegalArgumentException If the array is null or shorter than minLength.
+     */
+    private static void check(byte[] array, int minLength, String name) {
+        if (array == null || array.length < minLength) {
+            throw new IllegalArgumentException(name + " is too short");
+        }
+    }
+
+    private static void checkNonceAndKey(byte[] n, byte[] k) {
+        check(n, crypto_box_NONCEBYTES, "n");
+        check(k, crypto_box_BEFORENMBYTES, "k");
+    }
+
+    private static void checkResult(int result, String function) {
+        if (result != 0) {
+            throw new IllegalArgumentException(function + " returned " + result);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable t) {
+        if (t instanceof RuntimeException e) {
+            throw e;
+        } else if (t instanceof Error e) {
+            throw e;
+        }
+
+        return new IllegalStateException(t);
+    }
+}
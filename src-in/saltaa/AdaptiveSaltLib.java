@@ -0,0 +1,412 @@
+package saltaa;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import saltaa.nperf.NTest;
+import saltaa.nperf.NTestRunner;
+import saltaa.nperf.SaltTestData;
+
+/**
+ * A SaltLib that routes each primitive, and each size class of the
+ * primitives whose cost depends on the message size, to the fastest of
+ * a set of backends. The routing is decided when the object is created,
+ * by short micro-benchmarks of each backend (NTest, as run by NTestRunner);
+ * see report() for the result.
+ *
+ * For example, the JNI call overhead of NativeSaltLib can make it slower
+ * than JavaSaltLib for small crypto_box_afternm messages, while it is much
+ * faster for crypto_sign. The backends compute the same results for 
+ * signing, hashing and crypto_box.
+ *
+ * Signature verification is not routed. The backends do not accept the same
+ * signatures: TweetNaCl's crypto_sign_open accepts a non-canonical S and 
+ * small-order public keys that libsodium rejects. So that a signature is 
+ * accepted or rejected the same way by crypto_sign_open (with or without
+ * a SignKeyCache) and crypto_sign_verify_batch, all of them use the first 
+ * backend of the list (Primitive.isVerification()).
+ *
+ * The calibration takes about 2 * (number of routes) * (number of backends)
+ * * millisPerTest milliseconds. With a single backend, no calibration is done.
+ * The object is immutable and thread-safe if the backends are.
+ *
+ * @author Frans Lundberg
+ */
+public class AdaptiveSaltLib implements SaltLib {
+
+    /**
+     * Default value of millisPerTest, used by SaltLibFactory.
+     */
+    public static final int DEFAULT_MILLIS_PER_TEST = 10;
+
+    /**
+     * Upper bounds (inclusive) of the message sizes of the size classes
+     * except the last one, which has no bound.
+     */
+    public static final int[] SIZE_CLASS_BOUNDS = {128, 2048};
+
+    /**
+     * Message sizes used to calibrate the size classes.
+     */
+    private static final int[] CALIBRATION_SIZES = {64, 1024, 16384};
+
+    /** Shared key for the crypto_box_afternm tests; the value does not matter. */
+    private static final byte[] BOX_KEY = new byte[crypto_box_BEFORENMBYTES];
+
+    public enum Primitive {
+        SIGN_KEYPAIR(false, false),
+
+        /** crypto_sign and the signers from crypto_sign_prepare. */
+        SIGN(false, false),
+
+        SIGN_OPEN(false, true),
+
+        /** crypto_sign_open with a SignKeyCache. */
+        SIGN_OPEN_CACHED(false, true),
+
+        SIGN_VERIFY_BATCH(false, true),
+        BOX_KEYPAIR(false, false),
+        BOX_BEFORENM(false, false),
+        BOX_AFTERNM(true, false),
+        BOX_OPEN_AFTERNM(true, false),
+        HASH(true, false);
+
+        final boolean sized;
+        final boolean verification;
+
+        private Primitive(boolean sized, boolean verification) {
+            this.sized = sized;
+            this.verification = verification;
+        }
+
+        /**
+         * Returns true for the signature verification primitives; they
+         * always use the first backend, they are not calibrated.
+         */
+        public boolean isVerification() {
+            return verification;
+        }
+
+        /**
+         * Returns the number of routes of the primitive; the number of
+         * size classes for sized primitives, otherwise 1.
+         */
+        public int routeCount() {
+            return sized ? SIZE_CLASS_BOUNDS.length + 1 : 1;
+        }
+    }
+
+    private final List<SaltLib> libs;
+    private final SaltLib[][] routes;
+
+    /** Best time (seconds) of [primitive][sizeClass][lib], null without calibration. */
+    private final double[][][] times;
+
+    /**
+     * Creates the lib and calibrates the routing.
+     *
+     * @param libs  The backends, at least one. The first one is used
+     *          for signature verification.
+     * @param millisPerTest  Time to run each benchmark, twice per route and backend.
+     */
+    public AdaptiveSaltLib(List<SaltLib> libs, int millisPerTest) {
+        if (libs.isEmpty()) {
+            throw new IllegalArgumentException("no libs");
+        }
+
+        this.libs = new ArrayList<SaltLib>(libs);
+
+        Primitive[] primitives = Primitive.values();
+        this.routes = new SaltLib[primitives.length][];
+        this.times = libs.size() > 1 ? new double[primitives.length][][] : null;
+
+        for (Primitive p : primitives) {
+            int count = p.routeCount();
+            routes[p.ordinal()] = new SaltLib[count];
+            if (times != null) {
+                times[p.ordinal()] = new double[count][];
+            }
+
+            for (int sizeClass = 0; sizeClass < count; sizeClass++) {
+                if (times == null || p.verification) {
+                    routes[p.ordinal()][sizeClass] = this.libs.get(0);
+                } else {
+                    calibrate(p, sizeClass, millisPerTest);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the size class of a message size; an index into the
+     * routes of sized primitives.
+     */
+    public static int sizeClass(int size) {
+        for (int i = 0; i < SIZE_CLASS_BOUNDS.length; i++) {
+            if (size <= SIZE_CLASS_BOUNDS[i]) {
+                return i;
+            }
+        }
+
+        return SIZE_CLASS_BOUNDS.length;
+    }
+
+    /**
+     * Returns the backend used for the primitive and message size
+     * (ignored for primitives that are not sized).
+     */
+    public SaltLib getRoute(Primitive p, int size) {
+        return routes[p.ordinal()][p.sized ? sizeClass(size) : 0];
+    }
+
+    public List<SaltLib> getLibs() {
+        return new ArrayList<SaltLib>(libs);
+    }
+
+    /**
+     * Returns a table of the routes with the backend chosen for each of them
+     * and the measured times (microseconds per call, best run).
+     */
+    public String report() {
+        StringBuilder b = new StringBuilder();
+        b.append("AdaptiveSaltLib routing, microseconds per call:\n");
+
+        for (Primitive p : Primitive.values()) {
+            for (int sizeClass = 0; sizeClass < p.routeCount(); sizeClass++) {
+                b.append(String.format("%-26s", routeName(p, sizeClass)));
+
+                if (times != null && !p.verification) {
+                    double[] t = times[p.ordinal()][sizeClass];
+                    for (int i = 0; i < t.length; i++) {
+                        b.append(String.format("  %s %.2f", libs.get(i).getName(), t[i] * 1e6));
+                    }
+                }
+
+                b.append("  -> ").append(routes[p.ordinal()][sizeClass].getName()).append("\n");
+            }
+        }
+
+        return b.toString();
+    }
+
+    public String toString() {
+        return report();
+    }
+
+    /**
+     * Prints the routing of the lib of SaltLibFactory.getLib(LibType.ADAPTIVE).
+     */
+    public static void main(String[] args) {
+        SaltLib lib = SaltLibFactory.getLib(SaltLibFactory.LibType.ADAPTIVE);
+        System.out.println(((AdaptiveSaltLib) lib).report());
+    }
+
+    @Override
+    public String getName() {
+        StringBuilder b = new StringBuilder("adaptive(");
+        for (int i = 0; i < libs.size(); i++) {
+            if (i > 0) {
+                b.append(", ");
+            }
+            b.append(libs.get(i).getName());
+        }
+
+        return b.append(")").toString();
+    }
+
+    @Override
+    public void crypto_sign_keypair_not_random(byte[] pk, byte[] sk) {
+        route(Primitive.SIGN_KEYPAIR).crypto_sign_keypair_not_random(pk, sk);
+    }
+
+    @Override
+    public void crypto_sign(byte[] sm, byte[] m, byte[] sk) {
+        route(Primitive.SIGN).crypto_sign(sm, m, sk);
+    }
+
+    @Override
+    public PreparedSigner crypto_sign_prepare(byte[] sk) {
+        return route(Primitive.SIGN).crypto_sign_prepare(sk);
+    }
+
+    @Override
+    public void crypto_sign_open(byte[] m, byte[] sm, byte[] pk) {
+        route(Primitive.SIGN_OPEN).crypto_sign_open(m, sm, pk);
+    }
+
+    @Override
+    public void crypto_sign_open(byte[] m, byte[] sm, byte[] pk, SignKeyCache cache) {
+        route(Primitive.SIGN_OPEN_CACHED).crypto_sign_open(m, sm, pk, cache);
+    }
+
+    @Override
+    public void crypto_sign_verify_batch(boolean[] valid, byte[][] sm, byte[][] pk) {
+        route(Primitive.SIGN_VERIFY_BATCH).crypto_sign_verify_batch(valid, sm, pk);
+    }
+
+    @Override
+    public void crypto_box_keypair_not_random(byte[] pk, byte[] sk) {
+        route(Primitive.BOX_KEYPAIR).crypto_box_keypair_not_random(pk, sk);
+    }
+
+    @Override
+    public void crypto_box_beforenm(byte[] k, byte[] pk, byte[] sk) {
+        route(Primitive.BOX_BEFORENM).crypto_box_beforenm(k, pk, sk);
+    }
+
+    @Override
+    public void crypto_box_afternm(byte[] c, byte[] m, byte[] n, byte[] k) {
+        route(Primitive.BOX_AFTERNM, m.length - crypto_box_ZEROBYTES).crypto_box_afternm(c, m, n, k);
+    }
+
+    @Override
+    public void crypto_box_open_afternm(byte[] m, byte[] c, byte[] n, byte[] k) {
+        route(Primitive.BOX_OPEN_AFTERNM, c.length - crypto_box_ZEROBYTES).crypto_box_open_afternm(m, c, n, k);
+    }
+
+    @Override
+    public void crypto_box_afternm(byte[] c, int cOffset, byte[] m, int mOffset, int mLength,
+            byte[] n, byte[] k) {
+        route(Primitive.BOX_AFTERNM, mLength).crypto_box_afternm(c, cOffset, m, mOffset, mLength, n, k);
+    }
+
+    @Override
+    public void crypto_box_open_afternm(byte[] m, int mOffset, byte[] c, int cOffset, int cLength,
+            byte[] n, byte[] k) {
+        route(Primitive.BOX_OPEN_AFTERNM, cLength - crypto_box_OVERHEADBYTES)
+                .crypto_box_open_afternm(m, mOffset, c, cOffset, cLength, n, k);
+    }
+
+    @Override
+    public void crypto_hash(byte[] h, byte[] m) {
+        route(Primitive.HASH, m.length).crypto_hash(h, m);
+    }
+
+    private SaltLib route(Primitive p) {
+        return routes[p.ordinal()][0];
+    }
+
+    private SaltLib route(Primitive p, int size) {
+        return routes[p.ordinal()][sizeClass(size)];
+    }
+
+    private static String routeName(Primitive p, int sizeClass) {
+        if (!p.sized) {
+            return p.name();
+        } else if (sizeClass < SIZE_CLASS_BOUNDS.length) {
+            return p.name() + " <=" + SIZE_CLASS_BOUNDS[sizeClass];
+        } else {
+            return p.name() + " >" + SIZE_CLASS_BOUNDS[SIZE_CLASS_BOUNDS.length - 1];
+        }
+    }
+
+    /**
+     * Measures the route with each backend and routes it to the fastest one.
+     * Each test is run twice; the first run warms up the code.
+     */
+    private void calibrate(Primitive p, int sizeClass, int millisPerTest) {
+        double[] t = new double[libs.size()];
+        int best = 0;
+
+        for (int i = 0; i < t.length; i++) {
+            NTest test = createTest(libs.get(i), p, CALIBRATION_SIZES[sizeClass]);
+            NTestRunner.runTest(test, millisPerTest);
+            NTestRunner.runTest(test, millisPerTest);
+            t[i] = test.time;
+
+            if (t[i] < t[best]) {
+                best = i;
+            }
+        }
+
+        times[p.ordinal()][sizeClass] = t;
+        routes[p.ordinal()][sizeClass] = libs.get(best);
+    }
+
+    /**
+     * Creates a test of the primitive with the lib; size is the message size
+     * for sized primitives. The verification primitives have no test.
+     */
+    private static NTest createTest(final SaltLib lib, Primitive p, final int size) {
+        switch (p) {
+        case SIGN_KEYPAIR:
+            return new NTest() {
+                byte[] sk = SaltTestData.aSigSec.clone();
+                byte[] pk = new byte[crypto_sign_PUBLICKEYBYTES];
+
+                public void run() {
+                    lib.crypto_sign_keypair_not_random(pk, sk);
+                }
+            };
+
+        case SIGN:
+            return new NTest() {
+                byte[] m = new byte[32];
+                byte[] sm = new byte[crypto_sign_BYTES + m.length];
+                PreparedSigner signer = lib.crypto_sign_prepare(SaltTestData.aSigSec);
+
+                public void run() {
+                    signer.sign(sm, m);
+                }
+            };
+
+        case BOX_KEYPAIR:
+            return new NTest() {
+                byte[] sk = SaltTestData.aEncSec.clone();
+                byte[] pk = new byte[crypto_box_PUBLICKEYBYTES];
+
+                public void run() {
+                    lib.crypto_box_keypair_not_random(pk, sk);
+                }
+            };
+
+        case BOX_BEFORENM:
+            return new NTest() {
+                byte[] k = new byte[crypto_box_BEFORENMBYTES];
+
+                public void run() {
+                    lib.crypto_box_beforenm(k, SaltTestData.bEncPub, SaltTestData.aEncSec);
+                }
+            };
+
+        case BOX_AFTERNM:
+            return new NTest() {
+                byte[] m = new byte[size];
+                byte[] c = new byte[crypto_box_OVERHEADBYTES + size];
+                byte[] n = new byte[crypto_box_NONCEBYTES];
+
+                public void run() {
+                    lib.crypto_box_afternm(c, 0, m, 0, size, n, BOX_KEY);
+                }
+            };
+
+        case BOX_OPEN_AFTERNM:
+            return new NTest() {
+                byte[] m = new byte[size];
+                byte[] c = new byte[crypto_box_OVERHEADBYTES + size];
+                byte[] n = new byte[crypto_box_NONCEBYTES];
+
+                public void init() {
+                    lib.crypto_box_afternm(c, 0, m, 0, size, n, BOX_KEY);
+                }
+
+                public void run() {
+                    lib.crypto_box_open_afternm(m, 0, c, 0, c.length, n, BOX_KEY);
+                }
+            };
+
+        case HASH:
+            return new NTest() {
+                byte[] m = new byte[size];
+                byte[] h = new byte[crypto_hash_BYTES];
+
+                public void run() {
+                    lib.crypto_hash(h, m);
+                }
+            };
+
+        default:
+            throw new Error("unexpected primitive, " + p);
+        }
+    }
+}
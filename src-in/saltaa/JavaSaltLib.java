@@ -23,6 +23,28 @@ public class JavaSaltLib implements SaltLib {
         TweetNaclFast.crypto_sign(sm, dummy, m, 0, m.length, sk);
     }
 
+    @Override
+    public PreparedSigner crypto_sign_prepare(byte[] sk) {
+        SaltLibUtil.checkSignSecretKey(sk);
+        final byte[] d = new byte[64];
+        final byte[] pk = new byte[crypto_sign_PUBLICKEYBYTES];
+        TweetNaclFast.crypto_sign_expand(d, sk);
+        System.arraycopy(sk, 32, pk, 0, pk.length);
+        
+        return new PreparedSigner() {
+            public void sign(byte[] sm, byte[] m) {
+                if (sm.length != m.length + crypto_sign_BYTES) {
+                    throw new IllegalArgumentException("bad sm length");
+                }
+                TweetNaclFast.crypto_sign_expanded(sm, m, 0, m.length, d, pk, 0);
+            }
+            
+            public byte[] getPublicKey() {
+                return pk.clone();
+            }
+        };
+    }
+
     @Override
     public void crypto_sign_open(byte[] m, byte[] sm, byte[] pk) {
         long dummy = 0;
@@ -38,6 +60,39 @@ public class JavaSaltLib implements SaltLib {
         System.arraycopy(m, SaltLib.crypto_sign_BYTES, m, 0, sm.length-SaltLib.crypto_sign_BYTES);
     }
 
+    @Override
+    public void crypto_sign_open(byte[] m, byte[] sm, byte[] pk, SignKeyCache cache) {
+        if (m.length < sm.length) {
+            throw new IllegalArgumentException("m is too short");
+        }
+        
+        if (pk.length != crypto_sign_PUBLICKEYBYTES) {
+            throw new IllegalArgumentException("bad pk length, " + pk.length);
+        }
+        
+        long[][] negA = (long[][]) cache.get(pk);
+        if (negA == null) {
+            negA = TweetNaclFast.crypto_sign_decode_pk(pk);
+            if (negA == null) {
+                throw new BadSignatureException();
+            }
+            cache.put(pk, negA);
+        }
+
+        int res = TweetNaclFast.crypto_sign_open_decoded(m, sm, 0, sm.length, pk, negA);
+        if (res != 0) {
+            throw new BadSignatureException();
+        }
+        
+        System.arraycopy(m, SaltLib.crypto_sign_BYTES, m, 0, sm.length-SaltLib.crypto_sign_BYTES);
+    }
+
+    @Override
+    public void crypto_sign_verify_batch(boolean[] valid, byte[][] sm, byte[][] pk) {
+        SaltLibUtil.checkBatch(valid, sm, pk);
+        TweetNaclFast.crypto_sign_verify_batch(valid, sm, pk);
+    }
+
     @Override
     public void crypto_box_keypair_not_random(byte[] pk, byte[] sk) {
         TweetNaclFast.crypto_box_keypair_not_random(pk, sk);
@@ -74,6 +129,34 @@ public class JavaSaltLib implements SaltLib {
         }
     }
 
+    @Override
+    public void crypto_box_afternm(byte[] c, int cOffset, byte[] m, int mOffset, int mLength, 
+            byte[] n, byte[] k) {
+        SaltLibUtil.checkRange(m, mOffset, mLength, "m");
+        SaltLibUtil.checkRange(c, cOffset, SaltLib.crypto_box_OVERHEADBYTES + mLength, "c");
+        
+        int result = TweetNaclFast.crypto_box_afternm(c, cOffset, m, mOffset, mLength, n, k);
+        if (result != 0) {
+            throw new IllegalArgumentException("TweetNaclFast.crypto_box_afternm returned " + result);
+        }
+    }
+
+    @Override
+    public void crypto_box_open_afternm(byte[] m, int mOffset, byte[] c, int cOffset, int cLength, 
+            byte[] n, byte[] k) {
+        if (cLength < SaltLib.crypto_box_OVERHEADBYTES) {
+            throw new IllegalArgumentException("c is too short, " + cLength);
+        }
+        
+        SaltLibUtil.checkRange(c, cOffset, cLength, "c");
+        SaltLibUtil.checkRange(m, mOffset, cLength - SaltLib.crypto_box_OVERHEADBYTES, "m");
+        
+        int result = TweetNaclFast.crypto_box_open_afternm(m, mOffset, c, cOffset, cLength, n, k);
+        if (result != 0) {
+            throw new BadEncryptedDataException();
+        }
+    }
+
     @Override
     public void crypto_hash(byte[] h, byte[] m) {
         TweetNaclFast.crypto_hash(h, m);
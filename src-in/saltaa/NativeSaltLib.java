@@ -41,6 +41,28 @@ public class NativeSaltLib implements SaltLib {
 		SodiumJNI.crypto_sign(sm, dummy, m, m.length, sk);
     }
 
+    /**
+     * libsodium-jni does not expose signing with an expanded key, so
+     * the returned signer calls crypto_sign with a copy of sk.
+     */
+    @Override
+    public PreparedSigner crypto_sign_prepare(byte[] sk) {
+        SaltLibUtil.checkSignSecretKey(sk);
+        final byte[] skCopy = sk.clone();
+        final byte[] pk = new byte[crypto_sign_PUBLICKEYBYTES];
+        System.arraycopy(sk, 32, pk, 0, pk.length);
+        
+        return new PreparedSigner() {
+            public void sign(byte[] sm, byte[] m) {
+                crypto_sign(sm, m, skCopy);
+            }
+            
+            public byte[] getPublicKey() {
+                return pk.clone();
+            }
+        };
+    }
+
     @Override
     public void crypto_sign_open(byte[] m, byte[] sm, byte[] pk) {
         int[] dummy = new int[1];             
@@ -50,6 +72,30 @@ public class NativeSaltLib implements SaltLib {
         }
     }
 
+    /**
+     * libsodium decodes the public key internally; the cache is not used.
+     */
+    @Override
+    public void crypto_sign_open(byte[] m, byte[] sm, byte[] pk, SignKeyCache cache) {
+        crypto_sign_open(m, sm, pk);
+    }
+
+    /**
+     * libsodium has no batch verification; the signatures are verified 
+     * one by one.
+     */
+    @Override
+    public void crypto_sign_verify_batch(boolean[] valid, byte[][] sm, byte[][] pk) {
+        SaltLibUtil.checkBatch(valid, sm, pk);
+        int[] dummy = new int[1];
+        
+        for (int i = 0; i < sm.length; i++) {
+            byte[] m = new byte[sm[i].length];
+            valid[i] = pk[i].length == crypto_sign_PUBLICKEYBYTES
+                    && SodiumJNI.crypto_sign_open(m, dummy, sm[i], sm[i].length, pk[i]) == 0;
+        }
+    }
+
     @Override
     public void crypto_box_keypair_not_random(byte[] pk, byte[] sk) {
     	SodiumJNI.crypto_scalarmult_base(pk, sk);
@@ -86,6 +132,57 @@ public class NativeSaltLib implements SaltLib {
         }
     }
 
+    /**
+     * The JNI layer copies whole arrays, so sub-arrays are copied to 
+     * exactly sized temporary arrays unless the offsets are 0 and the 
+     * lengths match the arrays.
+     */
+    @Override
+    public void crypto_box_afternm(byte[] c, int cOffset, byte[] m, int mOffset, int mLength, 
+            byte[] n, byte[] k) {
+        SaltLibUtil.checkRange(m, mOffset, mLength, "m");
+        SaltLibUtil.checkRange(c, cOffset, SaltLib.crypto_box_OVERHEADBYTES + mLength, "c");
+        
+        int cLength = SaltLib.crypto_box_OVERHEADBYTES + mLength;
+        boolean wholeC = cOffset == 0 && c.length == cLength && c != m;
+        byte[] m2 = SaltLibUtil.subArray(m, mOffset, mLength);
+        byte[] c2 = wholeC ? c : new byte[cLength];
+        
+        int result = SodiumJNI.crypto_box_easy_afternm(c2, m2, mLength, n, k);
+        if (result != 0) {
+            throw new IllegalArgumentException("SodiumJNI.crypto_box_easy_afternm " + result);
+        }
+        
+        if (!wholeC) {
+            System.arraycopy(c2, 0, c, cOffset, cLength);
+        }
+    }
+
+    @Override
+    public void crypto_box_open_afternm(byte[] m, int mOffset, byte[] c, int cOffset, int cLength, 
+            byte[] n, byte[] k) {
+        if (cLength < SaltLib.crypto_box_OVERHEADBYTES) {
+            throw new IllegalArgumentException("c is too short, " + cLength);
+        }
+        
+        SaltLibUtil.checkRange(c, cOffset, cLength, "c");
+        int mLength = cLength - SaltLib.crypto_box_OVERHEADBYTES;
+        SaltLibUtil.checkRange(m, mOffset, mLength, "m");
+        
+        boolean wholeM = mOffset == 0 && m.length == mLength && c != m;
+        byte[] c2 = SaltLibUtil.subArray(c, cOffset, cLength);
+        byte[] m2 = wholeM ? m : new byte[mLength];
+        
+        int result = SodiumJNI.crypto_box_open_easy_afternm(m2, c2, cLength, n, k);
+        if (result != 0) {
+            throw new BadEncryptedDataException();
+        }
+        
+        if (!wholeM) {
+            System.arraycopy(m2, 0, m, mOffset, mLength);
+        }
+    }
+
     @Override
     public void crypto_hash(byte[] h, byte[] m) {
         SodiumJNI.crypto_hash_sha512(h, m, m.length);
@@ -0,0 +1,29 @@
+package saltaa;
+
+/**
+ * Signs messages with one fixed signing key. The key setup that depends on 
+ * the secret key only (the hashing of the seed into the expanded key)
+ * is done once, when the signer is created by SaltLib.crypto_sign_prepare(),
+ * instead of once per signature. Intended for long-lived keys, such as
+ * the signing key of a server.
+ * Implementations are immutable and thread-safe.
+ * 
+ * @author Frans Lundberg
+ */
+public interface PreparedSigner {
+    
+    /**
+     * Signs m and puts the signed message into sm; same result as
+     * SaltLib.crypto_sign() with the secret key of this signer. 
+     * The length of sm is m.length + crypto_sign_BYTES.
+     *
+     * @throws IllegalArgumentException
+     */
+    public void sign(byte[] sm, byte[] m);
+    
+    /**
+     * Returns the public key of the signer (length crypto_sign_PUBLICKEYBYTES).
+     * The caller gets a copy; modifying it does not affect the signer.
+     */
+    public byte[] getPublicKey();
+}
@@ -53,6 +53,16 @@ public interface SaltLib {
      */
     public void crypto_sign(byte[] sm, byte[] m, byte[] sk);
     
+    /**
+     * Returns a signer for the secret key sk (length crypto_sign_SECRETKEYBYTES, 
+     * the seed followed by the public key). The per-key setup is done once;
+     * use the signer instead of crypto_sign() when many messages are signed 
+     * with the same key. The signer does not keep a reference to sk.
+     *
+     * @throws IllegalArgumentException
+     */
+    public PreparedSigner crypto_sign_prepare(byte[] sk);
+    
     /**
      * The crypto_sign_open function verifies the signature in sm[0], ..., sm[smlen-1] 
      * using the signer's public key pk[0], pk[1], ..., pk[crypto_sign_PUBLICKEYBYTES-1]. 
@@ -67,6 +77,39 @@ public interface SaltLib {
      */
     public void crypto_sign_open(byte[] m, byte[] sm, byte[] pk);
     
+    /**
+     * As crypto_sign_open(m, sm, pk), but takes the decoded public key from 
+     * the cache if it is there, and adds it to the cache otherwise.
+     * Implementations that cannot make use of the cache ignore it.
+     * 
+     * @throws BadSignatureException
+     * @throws IllegalArgumentException
+     */
+    public void crypto_sign_open(byte[] m, byte[] sm, byte[] pk, SignKeyCache cache);
+    
+    /**
+     * Verifies a batch of signed messages. sm[i] is a signed message
+     * (signature followed by message, as for crypto_sign_open) and pk[i] is 
+     * the signer's public key. valid[i] is set to true if sm[i] has a valid 
+     * signature, otherwise false. An invalid signature does not affect the 
+     * result of the other ones.
+     * If crypto_sign_open of the same implementation accepts sm[i], valid[i] 
+     * is true. If it rejects sm[i], valid[i] is false (except with negligible 
+     * probability), with one exception: implementations that check the whole 
+     * batch at once may accept a batch in which the small-order components 
+     * of several signatures, or of their public keys, cancel out. Such 
+     * signatures can only be made by the owners of the keys. If at most one 
+     * signature in the batch has a small-order component, valid[i] is the 
+     * result of crypto_sign_open.
+     * The Java implementation checks the cofactorless equation of 
+     * crypto_sign_open for the whole batch, with a random odd factor for each 
+     * signature, and verifies the signatures one by one if it does not hold.
+     * 
+     * @throws IllegalArgumentException
+     *          If the arrays do not have the same length.
+     */
+    public void crypto_sign_verify_batch(boolean[] valid, byte[][] sm, byte[][] pk);
+    
     
     // ======== crypto_box ========
     
@@ -138,6 +181,42 @@ public interface SaltLib {
      */
     public void crypto_box_open_afternm(byte[] m, byte[] c, byte[] n, byte[] k);
 
+    
+    /**
+     * Offset/length variant of crypto_box_afternm without the zero-padding
+     * convention of the NaCl API. The function encrypts and authenticates 
+     * the message m[mOffset], ..., m[mOffset+mLength-1] and puts the 
+     * authenticator followed by the ciphertext into 
+     * c[cOffset], ..., c[cOffset+crypto_box_OVERHEADBYTES+mLength-1].
+     * The output is the same as bytes crypto_box_BOXZEROBYTES and onwards of
+     * the output of the padded crypto_box_afternm.
+     * 
+     * In-place encryption is supported: c and m may be the same array if 
+     * cOffset + crypto_box_OVERHEADBYTES == mOffset. That is, the caller 
+     * leaves crypto_box_OVERHEADBYTES bytes of room before the message.
+     * 
+     * @throws IllegalArgumentException If an offset or length is out of range.
+     */
+    public void crypto_box_afternm(byte[] c, int cOffset, byte[] m, int mOffset, int mLength, 
+            byte[] n, byte[] k);
+    
+    /**
+     * Offset/length variant of crypto_box_open_afternm, the inverse of the 
+     * offset/length variant of crypto_box_afternm. The function verifies and decrypts
+     * c[cOffset], ..., c[cOffset+cLength-1] (the authenticator followed by 
+     * the ciphertext) and puts the plaintext into 
+     * m[mOffset], ..., m[mOffset+cLength-crypto_box_OVERHEADBYTES-1].
+     * If the ciphertext fails verification, this function throws BadEncryptedData
+     * and m is not modified.
+     * 
+     * In-place decryption is supported: c and m may be the same array if 
+     * mOffset is equal to cOffset or cOffset + crypto_box_OVERHEADBYTES.
+     * 
+     * @throws BadEncryptedDataException
+     * @throws IllegalArgumentException If an offset or length is out of range.
+     */
+    public void crypto_box_open_afternm(byte[] m, int mOffset, byte[] c, int cOffset, int cLength, 
+            byte[] n, byte[] k);
 
     // ======== crypto_hash ========
     
@@ -13,10 +13,40 @@ public class SaltLibFactory {
     private static LibHolder javaLib = new LibHolder();
     private static LibHolder nativeLib = new LibHolder();
     private static LibHolder bestLib = new LibHolder();
+    private static LibHolder adaptiveLib = new LibHolder();
+    private static LibHolder ffmLib = new LibHolder();
     private static final Object LIB_SYNC = new Object();
+    
+    /**
+     * System property that selects the lib returned by getLib() and
+     * getLib(LibType.BEST); one of "JAVA", "NATIVE", "FFM", "ADAPTIVE" and "BEST"
+     * (case is ignored).
+     * The default, "BEST", is the native lib if it is operational, otherwise
+     * the Java lib. The FFM lib is only used when selected with "FFM" 
+     * (or as part of "ADAPTIVE"). 
+     * The property is read once, when the lib is first requested.
+     * With "NATIVE" or "FFM", NoSuchLibException is thrown if that lib is
+     * not operational. With "ADAPTIVE", the operational libs are combined
+     * by an AdaptiveSaltLib.
+     */
+    public static final String LIB_PROPERTY = "saltaa.lib";
+    
+    /**
+     * System property with the millisPerTest value of the AdaptiveSaltLib 
+     * created by the factory, default AdaptiveSaltLib.DEFAULT_MILLIS_PER_TEST.
+     */
+    public static final String CALIBRATION_MILLIS_PROPERTY = "saltaa.calibrationMillis";
 
+    /**
+     * ADAPTIVE is an AdaptiveSaltLib that routes each operation to the 
+     * fastest operational lib; signatures are verified with the lib BEST
+     * would use. It is calibrated when first requested, which
+     * takes some hundred milliseconds.
+     * FFM is FfmSaltLib, libsodium of the system called with the Foreign Function
+     * and Memory API. It requires Java 22 and a build that includes src-ffm.
+     */
     public enum LibType { 
-        JAVA, NATIVE, BEST
+        JAVA, NATIVE, BEST, ADAPTIVE, FFM
     }
     
     public static SaltLib getLib() {
@@ -39,6 +69,10 @@ public class SaltLibFactory {
             if (nativeLib.status == LibStatus.OK) {
                 list.add(nativeLib.lib);
             }
+            
+            if (ffmLib.status == LibStatus.OK) {
+                list.add(ffmLib.lib);
+            }
         }
         
         return list;
@@ -62,6 +96,15 @@ public class SaltLibFactory {
                     throw new NoSuchLibException();
                 }
                 return nativeLib.lib;
+            case ADAPTIVE:
+                initAdaptive();
+                return adaptiveLib.lib;
+            case FFM:
+                initFfm();
+                if (ffmLib.status == LibStatus.ERROR) {
+                    throw new NoSuchLibException();
+                }
+                return ffmLib.lib;
             default:
                 return getLib(LibType.BEST);
             }
@@ -86,6 +129,21 @@ public class SaltLibFactory {
         }
     }
     
+    /**
+     * FfmSaltLib is loaded by reflection, it is compiled only with JDK 22+.
+     */
+    private static void initFfm() {
+        if (ffmLib.status == LibStatus.NOT_INITED) {
+            try {
+                Class<?> c = Class.forName("saltaa.FfmSaltLib");
+                ffmLib.lib = (SaltLib) c.getConstructor().newInstance();
+                ffmLib.status = LibStatus.OK;
+            } catch (Throwable t) {
+                ffmLib.status = LibStatus.ERROR;
+            }
+        }
+    }
+    
     private static void initBest() {
         if (bestLib.status != LibStatus.NOT_INITED) {
             return;
@@ -99,7 +157,25 @@ public class SaltLibFactory {
             initNative();
         }
         
-        if (nativeLib.status == LibStatus.OK) {
+        String selected = System.getProperty(LIB_PROPERTY, LibType.BEST.name());
+        
+        if (selected.equalsIgnoreCase(LibType.JAVA.name())) {
+            bestLib.lib = javaLib.lib;
+        } else if (selected.equalsIgnoreCase(LibType.NATIVE.name())) {
+            if (nativeLib.status != LibStatus.OK) {
+                throw new NoSuchLibException();
+            }
+            bestLib.lib = nativeLib.lib;
+        } else if (selected.equalsIgnoreCase(LibType.FFM.name())) {
+            initFfm();
+            if (ffmLib.status != LibStatus.OK) {
+                throw new NoSuchLibException();
+            }
+            bestLib.lib = ffmLib.lib;
+        } else if (selected.equalsIgnoreCase(LibType.ADAPTIVE.name())) {
+            initAdaptive();
+            bestLib.lib = adaptiveLib.lib;
+        } else if (nativeLib.status == LibStatus.OK) {
             bestLib.lib = nativeLib.lib;
         } else {
             bestLib.lib = javaLib.lib;
@@ -108,9 +184,34 @@ public class SaltLibFactory {
         bestLib.status = LibStatus.OK;
     }
     
+    private static void initAdaptive() {
+        if (adaptiveLib.status != LibStatus.NOT_INITED) {
+            return;
+        }
+        
+        initJava();
+        initNative();
+        initFfm();
+        
+        // The first lib, the one BEST uses, is used for signature verification.
+        ArrayList<SaltLib> libs = new ArrayList<SaltLib>();
+        if (nativeLib.status == LibStatus.OK) {
+            libs.add(nativeLib.lib);
+        }
+        libs.add(javaLib.lib);
+        if (ffmLib.status == LibStatus.OK) {
+            libs.add(ffmLib.lib);
+        }
+        
+        adaptiveLib.lib = new AdaptiveSaltLib(libs, 
+                Integer.getInteger(CALIBRATION_MILLIS_PROPERTY, AdaptiveSaltLib.DEFAULT_MILLIS_PER_TEST));
+        adaptiveLib.status = LibStatus.OK;
+    }
+    
     private static void initAll() {
         initJava();
         initNative();
+        initFfm();
         initBest();
     }
     
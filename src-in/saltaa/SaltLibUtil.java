@@ -0,0 +1,62 @@
+package saltaa;
+
+/**
+ * Argument checks and small helpers shared by SaltLib implementations.
+ * 
+ * @author Frans Lundberg
+ */
+class SaltLibUtil {
+    
+    private SaltLibUtil() {}
+    
+    /**
+     * Checks that array[offset], ..., array[offset+length-1] is within the array.
+     * 
+     * @throws IllegalArgumentException If not.
+     */
+    static void checkRange(byte[] array, int offset, int length, String name) {
+        if (array == null) {
+            throw new IllegalArgumentException(name + " is null");
+        }
+        
+        if (offset < 0 || length < 0 || offset > array.length - length) {
+            throw new IllegalArgumentException("bad range for " + name + ", offset " + offset 
+                    + ", length " + length + ", array length " + array.length);
+        }
+    }
+    
+    /**
+     * Returns the given sub-array. The array itself is returned if the 
+     * sub-array is the whole array.
+     */
+    static byte[] subArray(byte[] array, int offset, int length) {
+        if (offset == 0 && length == array.length) {
+            return array;
+        }
+        
+        byte[] result = new byte[length];
+        System.arraycopy(array, offset, result, 0, length);
+        return result;
+    }
+    
+    /**
+     * Checks the arguments of crypto_sign_verify_batch.
+     * 
+     * @throws IllegalArgumentException If the arrays differ in length.
+     */
+    static void checkBatch(boolean[] valid, byte[][] sm, byte[][] pk) {
+        if (valid.length != sm.length || pk.length != sm.length) {
+            throw new IllegalArgumentException("array lengths differ, valid: " + valid.length 
+                    + ", sm: " + sm.length + ", pk: " + pk.length);
+        }
+    }
+    
+    /**
+     * @throws IllegalArgumentException If sk is not a signing secret key.
+     */
+    static void checkSignSecretKey(byte[] sk) {
+        if (sk == null || sk.length != SaltLib.crypto_sign_SECRETKEYBYTES) {
+            throw new IllegalArgumentException("bad signing secret key");
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package saltaa;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of decoded signing public keys (Ed25519 points),
+ * for SaltLib.crypto_sign_open(m, sm, pk, cache).
+ * Decoding a public key includes a field exponentiation; with the cache,
+ * that is done once per key instead of once per signature.
+ * Useful for a server with a fixed set of clients that reconnect often.
+ * One cache is typically shared by all sessions; the cache is thread-safe.
+ *
+ * Only the Java implementation (JavaSaltLib) uses the cache;
+ * other implementations ignore it.
+ *
+ * @author Frans Lundberg
+ */
+public class SignKeyCache {
+    private final int maxSize;
+    private final LinkedHashMap<Key, Object> map;
+    private long hitCount = 0;
+    private long missCount = 0;
+
+    /**
+     * @param maxSize
+     *          Max number of keys in the cache. When full, the least recently
+     *          used key is evicted.
+     */
+    public SignKeyCache(final int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("bad maxSize, " + maxSize);
+        }
+
+        this.maxSize = maxSize;
+        this.map = new LinkedHashMap<Key, Object>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized void clear() {
+        map.clear();
+    }
+
+    /**
+     * Returns the decoded key or null, counts a hit or a miss.
+     * The returned object must not be modified.
+     */
+    synchronized Object get(byte[] pk) {
+        Object decoded = map.get(new Key(pk));
+        if (decoded == null) {
+            missCount++;
+        } else {
+            hitCount++;
+        }
+        return decoded;
+    }
+
+    synchronized void put(byte[] pk, Object decoded) {
+        map.put(new Key(pk.clone()), decoded);
+    }
+
+    private static class Key {
+        private final byte[] pk;
+        private final int hash;
+
+        Key(byte[] pk) {
+            this.pk = pk;
+            this.hash = Arrays.hashCode(pk);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(pk, ((Key) o).pk);
+        }
+    }
+}
@@ -155,12 +155,21 @@ public class NTestRunner {
     }
     
     private void runTest(NTest test) {
+        runTest(test, 1000);
+    }
+    
+    /**
+     * Runs the test (init() and then run() repeatedly) for at least
+     * runForMillis milliseconds. Sets test.time to the time of the best 
+     * run and test.runCount. Also used by saltaa.AdaptiveSaltLib to calibrate.
+     */
+    public static void runTest(NTest test, long runForMillis) {
         long t0;
         long t1;
         long t2;
         long min;
         long diff;
-        final long RUN_FOR = 1000;     // run for at least this many millis
+        final long RUN_FOR = runForMillis;     // run for at least this many millis
         
         test.init();
         test.runCount = 0;
@@ -0,0 +1,32 @@
+package saltchannel.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Salt Channel handshake, from its start to its outcome.
+ *
+ * @author Frans Lundberg
+ */
+@Name("SaltHandshake")
+@Label("Salt Handshake")
+@Category("Salt Channel")
+@Description("Salt Channel handshake, server or client side")
+class HandshakeEvent extends jdk.jfr.Event {
+    @Label("Server")
+    @Description("True for the server side, false for the client side")
+    boolean server;
+
+    @Label("Outcome")
+    @Description("FULL, RESUMED, A1A2, NO_SUCH_SERVER, BAD_PEER or FAILED")
+    String outcome;
+
+    @Label("Resumed")
+    boolean resumed;
+
+    @Label("Peer Key Prefix")
+    @Description("Hex of the first bytes of the peer's signing key, if known")
+    String peerKeyPrefix;
+}
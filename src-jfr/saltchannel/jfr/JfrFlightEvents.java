@@ -0,0 +1,72 @@
+package saltchannel.jfr;
+
+import saltchannel.util.Hex;
+import saltchannel.v2.FlightEvents;
+
+/**
+ * FlightEvents implemented with JFR events. Loaded by reflection by 
+ * FlightEvents; not to be used directly.
+ *
+ * @author Frans Lundberg
+ */
+public class JfrFlightEvents extends FlightEvents {
+    private static final int PEER_KEY_PREFIX_SIZE = 8;
+
+    @Override
+    protected Object beginHandshake() {
+        return begin(new HandshakeEvent());
+    }
+
+    @Override
+    protected void endHandshake(Object event, boolean server, String outcome, 
+            boolean resumed, byte[] peerSigKey) {
+        HandshakeEvent e = (HandshakeEvent) event;
+        e.server = server;
+        e.outcome = outcome;
+        e.resumed = resumed;
+        if (peerSigKey != null) {
+            e.peerKeyPrefix = Hex.create(peerSigKey, 0, Math.min(PEER_KEY_PREFIX_SIZE, peerSigKey.length));
+        }
+        e.commit();
+    }
+
+    @Override
+    protected Object beginRecord(boolean write) {
+        return begin(write ? new RecordWriteEvent() : new RecordReadEvent());
+    }
+
+    @Override
+    protected void endRecord(Object event, int size, int packetType, int recordCount) {
+        RecordEvent e = (RecordEvent) event;
+        e.size = size;
+        e.packetType = packetType;
+        e.recordCount = recordCount;
+        e.sampleInterval = getRecordSampleInterval();
+        e.commit();
+    }
+
+    @Override
+    protected Object beginTicket(boolean issue) {
+        return begin(issue ? new TicketIssueEvent() : new TicketValidateEvent());
+    }
+
+    @Override
+    protected void endTicket(Object event, long ticketId, boolean valid) {
+        TicketEvent e = (TicketEvent) event;
+        e.ticketId = ticketId;
+        e.valid = valid;
+        e.commit();
+    }
+
+    /**
+     * Returns the started event, or null if the event type is not enabled.
+     */
+    private static Object begin(jdk.jfr.Event e) {
+        if (!e.isEnabled()) {
+            return null;
+        }
+
+        e.begin();
+        return e;
+    }
+}
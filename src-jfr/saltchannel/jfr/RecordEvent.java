@@ -0,0 +1,30 @@
+package saltchannel.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+
+/**
+ * Common fields of the record events.
+ *
+ * @author Frans Lundberg
+ */
+@Category("Salt Channel")
+abstract class RecordEvent extends jdk.jfr.Event {
+    @Label("Size")
+    @Description("Total size of the encrypted records")
+    @DataAmount
+    int size;
+
+    @Label("Packet Type")
+    @Description("Type of the (first) packet inside the encryption")
+    int packetType;
+
+    @Label("Records")
+    int recordCount;
+
+    @Label("Sample Interval")
+    @Description("One read or write call in this many has an event")
+    int sampleInterval;
+}
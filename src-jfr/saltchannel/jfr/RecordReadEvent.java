@@ -0,0 +1,16 @@
+package saltchannel.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A sampled read of an encrypted record by EncryptedChannelV2.
+ *
+ * @author Frans Lundberg
+ */
+@Name("SaltRecordRead")
+@Label("Salt Record Read")
+@Description("Decryption of a record, excluding the wait for it; sampled")
+class RecordReadEvent extends RecordEvent {
+}
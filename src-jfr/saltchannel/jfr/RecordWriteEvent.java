@@ -0,0 +1,16 @@
+package saltchannel.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A sampled write of encrypted records by EncryptedChannelV2.
+ *
+ * @author Frans Lundberg
+ */
+@Name("SaltRecordWrite")
+@Label("Salt Record Write")
+@Description("Encryption and write of records; sampled")
+class RecordWriteEvent extends RecordEvent {
+}
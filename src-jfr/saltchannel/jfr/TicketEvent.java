@@ -0,0 +1,18 @@
+package saltchannel.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+
+/**
+ * Common fields of the ticket events.
+ *
+ * @author Frans Lundberg
+ */
+@Category("Salt Channel")
+abstract class TicketEvent extends jdk.jfr.Event {
+    @Label("Ticket Id")
+    long ticketId;
+
+    @Label("Valid")
+    boolean valid;
+}
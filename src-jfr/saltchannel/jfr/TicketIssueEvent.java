@@ -0,0 +1,14 @@
+package saltchannel.jfr;
+
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A resume ticket issued by ResumeHandler.
+ *
+ * @author Frans Lundberg
+ */
+@Name("SaltTicketIssue")
+@Label("Salt Ticket Issue")
+class TicketIssueEvent extends TicketEvent {
+}
@@ -0,0 +1,16 @@
+package saltchannel.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Validation of a resume ticket by ResumeHandler.
+ *
+ * @author Frans Lundberg
+ */
+@Name("SaltTicketValidate")
+@Label("Salt Ticket Validate")
+@Description("Validation of a resume ticket; ticket id -1 if the ticket was rejected")
+class TicketValidateEvent extends TicketEvent {
+}
@@ -0,0 +1,73 @@
+package saltchannel;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NioSocketChannelTest {
+    private ServerSocketChannel server;
+    private java.nio.channels.SocketChannel s1;
+    private java.nio.channels.SocketChannel s2;
+    private NioSocketChannel c1;
+    private NioSocketChannel c2;
+    
+    @Before
+    public void setUp() throws IOException {
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress("127.0.0.1", 0));
+        s1 = java.nio.channels.SocketChannel.open(server.getLocalAddress());
+        s2 = server.accept();
+        c1 = new NioSocketChannel(s1);
+        c2 = new NioSocketChannel(s2);
+    }
+    
+    @After
+    public void tearDown() throws IOException {
+        s1.close();
+        s2.close();
+        server.close();
+    }
+    
+    @Test
+    public void testByteArrays() {
+        c1.write(false, new byte[]{1, 2}, new byte[]{3});
+        Assert.assertArrayEquals(new byte[]{1, 2}, c2.read());
+        Assert.assertArrayEquals(new byte[]{3}, c2.read());
+    }
+    
+    @Test
+    public void testDirectBuffers() {
+        ByteBuffer m1 = ByteBuffer.allocateDirect(3);
+        m1.put(new byte[]{1, 2, 3}).flip();
+        c1.write(false, m1);
+        Assert.assertEquals(0, m1.remaining());
+        
+        ByteBuffer dst = ByteBuffer.allocateDirect(10);
+        Assert.assertEquals(3, c2.read(dst));
+        Assert.assertEquals(3, dst.position());
+        Assert.assertEquals(2, dst.get(1));
+    }
+    
+    @Test
+    public void testMessageNotConsumedOnOverflow() {
+        c1.write(false, new byte[]{1, 2, 3, 4}, new byte[]{5});
+        
+        try {
+            c2.read(ByteBuffer.allocate(2));
+            Assert.fail("expected BufferOverflowException");
+        } catch (BufferOverflowException e) {
+            // expected
+        }
+        
+        ByteBuffer dst = ByteBuffer.allocate(4);
+        Assert.assertEquals(4, c2.read(dst));
+        Assert.assertArrayEquals(new byte[]{1, 2, 3, 4}, dst.array());
+        Assert.assertArrayEquals(new byte[]{5}, c2.read());
+    }
+}
@@ -1,5 +1,13 @@
 package saltchannel;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.math.BigInteger;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import org.junit.Assert;
 import org.junit.Test;
 import saltchannel.util.Hex;
@@ -45,4 +53,468 @@ public class SaltLibTest {
         
         Assert.assertArrayEquals(expected, out);
     }
+    
+    @Test
+    public void testHashOfEmptyStringFfmMode() {
+        // Only run when the FFM lib is available (Java 22+ and libsodium installed).
+        
+        SaltLib salt;
+        
+        try {
+            salt = SaltLibFactory.getLib(SaltLibFactory.LibType.FFM);
+        } catch (NoSuchLibException e) {
+            return;
+        }
+        
+        byte[] out = new byte[64];
+        salt.crypto_hash(out, new byte[0]);
+        
+        byte[] expected = Hex.toBytes("cf83e1357eefb8bdf1542850d66d8007d620e4050b5715dc83f4a921d36ce9ce47d0d13c5d85f2b0ff8318d2877eec2f63b931bd47417a81a538327af927da3e");
+        Assert.assertArrayEquals(expected, out);
+    }
+    
+    @Test
+    public void testFfmSegmentsSameAsArrays() throws Exception {
+        // The MemorySegment overloads of FfmSaltLib on direct buffers. 
+        // The tests are compiled for Java 7, so they are called by reflection.
+        
+        SaltLib salt;
+        
+        try {
+            salt = SaltLibFactory.getLib(SaltLibFactory.LibType.FFM);
+        } catch (NoSuchLibException e) {
+            return;
+        }
+        
+        SaltLib java = SaltLibFactory.getLib(SaltLibFactory.LibType.JAVA);
+        Class<?> segmentClass = Class.forName("java.lang.foreign.MemorySegment");
+        Method ofBuffer = segmentClass.getMethod("ofBuffer", Buffer.class);
+        Method box = salt.getClass().getMethod("crypto_box_afternm", 
+                segmentClass, segmentClass, byte[].class, byte[].class);
+        Method boxOpen = salt.getClass().getMethod("crypto_box_open_afternm", 
+                segmentClass, segmentClass, byte[].class, byte[].class);
+        Method hash = salt.getClass().getMethod("crypto_hash", byte[].class, segmentClass);
+        
+        for (int size : new int[] {0, 1, 100, 1000}) {
+            byte[] clear = bytes(size);
+            byte[] expected = new byte[SaltLib.crypto_box_OVERHEADBYTES + size];
+            java.crypto_box_afternm(expected, 0, clear, 0, size, NONCE, KEY);
+            
+            ByteBuffer m = ByteBuffer.allocateDirect(size);
+            m.put(clear).flip();
+            ByteBuffer c = ByteBuffer.allocateDirect(expected.length);
+            box.invoke(salt, ofBuffer.invoke(null, c), ofBuffer.invoke(null, m), NONCE, KEY);
+            Assert.assertArrayEquals(expected, contents(c));
+            
+            ByteBuffer m2 = ByteBuffer.allocateDirect(size);
+            boxOpen.invoke(salt, ofBuffer.invoke(null, m2), ofBuffer.invoke(null, c), NONCE, KEY);
+            Assert.assertArrayEquals(clear, contents(m2));
+            
+            byte[] h = new byte[SaltLib.crypto_hash_BYTES];
+            byte[] expectedHash = new byte[SaltLib.crypto_hash_BYTES];
+            hash.invoke(salt, h, ofBuffer.invoke(null, m));
+            java.crypto_hash(expectedHash, clear);
+            Assert.assertArrayEquals(expectedHash, h);
+        }
+        
+        ByteBuffer c = ByteBuffer.allocateDirect(SaltLib.crypto_box_OVERHEADBYTES + 40);
+        box.invoke(salt, ofBuffer.invoke(null, c), ofBuffer.invoke(null, ByteBuffer.allocateDirect(40)), 
+                NONCE, KEY);
+        c.put(20, (byte) (c.get(20) ^ 1));
+        ByteBuffer m = ByteBuffer.allocateDirect(40);
+        m.put(0, (byte) 7);
+        try {
+            boxOpen.invoke(salt, ofBuffer.invoke(null, m), ofBuffer.invoke(null, c), NONCE, KEY);
+            Assert.fail("expected BadEncryptedDataException");
+        } catch (InvocationTargetException e) {
+            Assert.assertTrue(e.getCause() instanceof BadEncryptedDataException);
+        }
+        Assert.assertEquals(7, m.get(0));
+    }
+    
+    @Test
+    public void testBoxWithOffsetsSameAsPadded() {
+        for (SaltLib salt : SaltLibFactory.getAllOperationalLibs()) {
+            for (int size : new int[] {0, 1, 31, 32, 33, 64, 100, 1000}) {
+                byte[] clear = bytes(size);
+                byte[] m = new byte[SaltLib.crypto_box_ZEROBYTES + size];
+                byte[] c = new byte[m.length];
+                System.arraycopy(clear, 0, m, SaltLib.crypto_box_ZEROBYTES, size);
+                salt.crypto_box_afternm(c, m, NONCE, KEY);
+                byte[] expected = Arrays.copyOfRange(c, SaltLib.crypto_box_BOXZEROBYTES, c.length);
+                
+                byte[] c2 = new byte[3 + SaltLib.crypto_box_OVERHEADBYTES + size];
+                salt.crypto_box_afternm(c2, 3, clear, 0, size, NONCE, KEY);
+                Assert.assertArrayEquals(salt.getName(), expected, Arrays.copyOfRange(c2, 3, c2.length));
+                
+                byte[] m2 = new byte[size + 5];
+                salt.crypto_box_open_afternm(m2, 5, c2, 3, c2.length - 3, NONCE, KEY);
+                Assert.assertArrayEquals(salt.getName(), clear, Arrays.copyOfRange(m2, 5, m2.length));
+            }
+        }
+    }
+    
+    @Test
+    public void testBoxInPlace() {
+        for (SaltLib salt : SaltLibFactory.getAllOperationalLibs()) {
+            int size = 200;
+            int offset = 2;
+            byte[] clear = bytes(size);
+            byte[] buffer = new byte[offset + SaltLib.crypto_box_OVERHEADBYTES + size];
+            System.arraycopy(clear, 0, buffer, offset + SaltLib.crypto_box_OVERHEADBYTES, size);
+            
+            salt.crypto_box_afternm(buffer, offset, buffer, offset + SaltLib.crypto_box_OVERHEADBYTES, 
+                    size, NONCE, KEY);
+            salt.crypto_box_open_afternm(buffer, offset, buffer, offset, buffer.length - offset, NONCE, KEY);
+            
+            Assert.assertArrayEquals(salt.getName(), clear, Arrays.copyOfRange(buffer, offset, offset + size));
+        }
+    }
+    
+    @Test
+    public void testBoxWithOffsetsDetectsTampering() {
+        for (SaltLib salt : SaltLibFactory.getAllOperationalLibs()) {
+            byte[] clear = bytes(40);
+            byte[] c = new byte[SaltLib.crypto_box_OVERHEADBYTES + clear.length];
+            salt.crypto_box_afternm(c, 0, clear, 0, clear.length, NONCE, KEY);
+            c[20] ^= 1;
+            
+            byte[] m = new byte[clear.length];
+            try {
+                salt.crypto_box_open_afternm(m, 0, c, 0, c.length, NONCE, KEY);
+                Assert.fail("expected BadEncryptedDataException, " + salt.getName());
+            } catch (BadEncryptedDataException e) {
+                // expected
+            }
+        }
+    }
+    
+    @Test
+    public void testPreparedSignerSameAsSign() {
+        for (SaltLib salt : SaltLibFactory.getAllOperationalLibs()) {
+            byte[] sk = new byte[SaltLib.crypto_sign_SECRETKEYBYTES];
+            sk[0] = 5;
+            byte[] pk = new byte[SaltLib.crypto_sign_PUBLICKEYBYTES];
+            salt.crypto_sign_keypair_not_random(pk, sk);
+            PreparedSigner signer = salt.crypto_sign_prepare(sk);
+            Assert.assertArrayEquals(salt.getName(), pk, signer.getPublicKey());
+            signer.getPublicKey()[0] ^= 1;
+            Assert.assertArrayEquals(salt.getName(), pk, signer.getPublicKey());
+            
+            for (int size : new int[] {0, 1, 64, 200}) {
+                byte[] m = bytes(size);
+                byte[] expected = new byte[SaltLib.crypto_sign_BYTES + size];
+                salt.crypto_sign(expected, m, sk);
+                
+                byte[] sm = new byte[SaltLib.crypto_sign_BYTES + size];
+                signer.sign(sm, m);
+                Assert.assertArrayEquals(salt.getName(), expected, sm);
+            }
+        }
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testPreparedSignerBadKey() {
+        SaltLibFactory.getLib(SaltLibFactory.LibType.JAVA).crypto_sign_prepare(new byte[32]);
+    }
+    
+    @Test
+    public void testSignOpenWithCache() {
+        for (SaltLib salt : SaltLibFactory.getAllOperationalLibs()) {
+            SignKeyCache cache = new SignKeyCache(10);
+            byte[][] pk = new byte[3][];
+            byte[][] sm = new byte[3][];
+            signed(salt, sm, pk);
+            
+            for (int round = 0; round < 3; round++) {
+                for (int i = 0; i < sm.length; i++) {
+                    byte[] m = new byte[sm[i].length];
+                    salt.crypto_sign_open(m, sm[i], pk[i], cache);
+                    Assert.assertArrayEquals(salt.getName(), bytes(10 + i * 5), 
+                            Arrays.copyOf(m, sm[i].length - SaltLib.crypto_sign_BYTES));
+                }
+            }
+            
+            byte[] bad = sm[1].clone();
+            bad[66] ^= 1;
+            try {
+                salt.crypto_sign_open(new byte[bad.length], bad, pk[1], cache);
+                Assert.fail("expected BadSignatureException, " + salt.getName());
+            } catch (BadSignatureException e) {
+                // expected
+            }
+            
+            if (salt instanceof JavaSaltLib) {
+                Assert.assertEquals(3, cache.getMissCount());
+                Assert.assertEquals(7, cache.getHitCount());
+                Assert.assertEquals(3, cache.size());
+            }
+        }
+    }
+    
+    @Test
+    public void testSignKeyCacheEvictsLeastRecentlyUsed() {
+        SaltLib salt = SaltLibFactory.getLib(SaltLibFactory.LibType.JAVA);
+        SignKeyCache cache = new SignKeyCache(2);
+        byte[][] pk = new byte[3][];
+        byte[][] sm = new byte[3][];
+        signed(salt, sm, pk);
+        
+        open(salt, sm[0], pk[0], cache);    // miss
+        open(salt, sm[1], pk[1], cache);    // miss
+        open(salt, sm[0], pk[0], cache);    // hit, 1 is now least recently used
+        open(salt, sm[2], pk[2], cache);    // miss, evicts 1
+        open(salt, sm[0], pk[0], cache);    // hit
+        open(salt, sm[1], pk[1], cache);    // miss
+        
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(2, cache.getHitCount());
+        Assert.assertEquals(4, cache.getMissCount());
+    }
+    
+    @Test
+    public void testVerifyBatchAllValid() {
+        for (SaltLib salt : SaltLibFactory.getAllOperationalLibs()) {
+            byte[][] pk = new byte[20][];
+            byte[][] sm = new byte[20][];
+            signed(salt, sm, pk);
+            
+            boolean[] valid = new boolean[sm.length];
+            salt.crypto_sign_verify_batch(valid, sm, pk);
+            
+            for (int i = 0; i < valid.length; i++) {
+                Assert.assertTrue(salt.getName() + ", " + i, valid[i]);
+            }
+        }
+    }
+    
+    @Test
+    public void testVerifyBatchOneTampered() {
+        for (SaltLib salt : SaltLibFactory.getAllOperationalLibs()) {
+            for (int bad : new int[] {0, 7, 19}) {
+                byte[][] pk = new byte[20][];
+                byte[][] sm = new byte[20][];
+                signed(salt, sm, pk);
+                sm[bad][70] ^= 1;
+                
+                boolean[] valid = new boolean[sm.length];
+                salt.crypto_sign_verify_batch(valid, sm, pk);
+                
+                for (int i = 0; i < valid.length; i++) {
+                    Assert.assertEquals(salt.getName() + ", " + i, i != bad, valid[i]);
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void testVerifyBatchMalformed() {
+        for (SaltLib salt : SaltLibFactory.getAllOperationalLibs()) {
+            byte[][] pk = new byte[4][];
+            byte[][] sm = new byte[4][];
+            signed(salt, sm, pk);
+            sm[1] = new byte[10];
+            pk[2] = new byte[31];
+            
+            boolean[] valid = new boolean[sm.length];
+            salt.crypto_sign_verify_batch(valid, sm, pk);
+            
+            Assert.assertTrue(salt.getName(), valid[0]);
+            Assert.assertFalse(salt.getName(), valid[1]);
+            Assert.assertFalse(salt.getName(), valid[2]);
+            Assert.assertTrue(salt.getName(), valid[3]);
+        }
+    }
+    
+    @Test
+    public void testVerifyBatchSingle() {
+        for (SaltLib salt : SaltLibFactory.getAllOperationalLibs()) {
+            byte[][] pk = new byte[1][];
+            byte[][] sm = new byte[1][];
+            signed(salt, sm, pk);
+            boolean[] valid = new boolean[1];
+            
+            salt.crypto_sign_verify_batch(valid, sm, pk);
+            Assert.assertTrue(salt.getName(), valid[0]);
+            
+            sm[0][3] ^= 1;
+            salt.crypto_sign_verify_batch(valid, sm, pk);
+            Assert.assertFalse(salt.getName(), valid[0]);
+        }
+    }
+    
+    @Test
+    public void testVerifyBatchSmallOrderComponent() {
+        // The public key A' = A + (0, -1) has a component of order 2, so 
+        // sB - R - hA' is not zero for odd h. crypto_sign_open rejects the 
+        // signature, a cofactored batch equation would accept it.
+        
+        SaltLib java = SaltLibFactory.getLib(SaltLibFactory.LibType.JAVA);
+        byte[][] pk = new byte[8][];
+        byte[][] sm = new byte[8][];
+        signed(java, sm, pk);
+        
+        int bad = 3;
+        byte[] sk = new byte[SaltLib.crypto_sign_SECRETKEYBYTES];
+        sk[0] = 99;
+        java.crypto_sign_keypair_not_random(pk[bad], sk);
+        pk[bad] = plusOrder2Point(pk[bad]);
+        System.arraycopy(pk[bad], 0, sk, 32, 32);
+        
+        for (int size = 10; size == 10 || verifies(java, sm[bad], pk[bad]); size++) {
+            byte[] m = bytes(size);
+            sm[bad] = new byte[SaltLib.crypto_sign_BYTES + m.length];
+            java.crypto_sign(sm[bad], m, sk);
+        }
+        
+        for (SaltLib salt : SaltLibFactory.getAllOperationalLibs()) {
+            boolean[] valid = new boolean[sm.length];
+            salt.crypto_sign_verify_batch(valid, sm, pk);
+            
+            for (int i = 0; i < valid.length; i++) {
+                Assert.assertEquals(salt.getName() + ", " + i, verifies(salt, sm[i], pk[i]), valid[i]);
+            }
+            Assert.assertFalse(salt.getName(), valid[bad]);
+            
+            boolean[] single = new boolean[1];
+            salt.crypto_sign_verify_batch(single, new byte[][] {sm[bad]}, new byte[][] {pk[bad]});
+            Assert.assertFalse(salt.getName(), single[0]);
+        }
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testVerifyBatchLengthMismatch() {
+        SaltLib salt = SaltLibFactory.getLib(SaltLibFactory.LibType.JAVA);
+        salt.crypto_sign_verify_batch(new boolean[2], new byte[2][], new byte[3][]);
+    }
+    
+    @Test
+    public void testAdaptiveLibSameAsJava() {
+        SaltLib java = SaltLibFactory.getLib(SaltLibFactory.LibType.JAVA);
+        List<SaltLib> libs = new ArrayList<SaltLib>(SaltLibFactory.getAllOperationalLibs());
+        libs.add(new JavaSaltLib());
+        AdaptiveSaltLib salt = new AdaptiveSaltLib(libs, 1);
+        
+        for (int size : new int[] {0, 1, 128, 129, 2048, 2049, 5000}) {
+            byte[] clear = bytes(size);
+            byte[] expected = new byte[SaltLib.crypto_box_OVERHEADBYTES + size];
+            java.crypto_box_afternm(expected, 0, clear, 0, size, NONCE, KEY);
+            byte[] c = new byte[expected.length];
+            salt.crypto_box_afternm(c, 0, clear, 0, size, NONCE, KEY);
+            Assert.assertArrayEquals(expected, c);
+            
+            byte[] m = new byte[size];
+            salt.crypto_box_open_afternm(m, 0, c, 0, c.length, NONCE, KEY);
+            Assert.assertArrayEquals(clear, m);
+            
+            byte[] h1 = new byte[SaltLib.crypto_hash_BYTES];
+            byte[] h2 = new byte[SaltLib.crypto_hash_BYTES];
+            java.crypto_hash(h1, clear);
+            salt.crypto_hash(h2, clear);
+            Assert.assertArrayEquals(h1, h2);
+        }
+        
+        byte[][] pk = new byte[3][];
+        byte[][] sm = new byte[3][];
+        signed(salt, sm, pk);
+        boolean[] valid = new boolean[sm.length];
+        salt.crypto_sign_verify_batch(valid, sm, pk);
+        Assert.assertArrayEquals(new boolean[] {true, true, true}, valid);
+        open(salt, sm[0], pk[0], new SignKeyCache(2));
+        
+        String report = salt.report();
+        for (AdaptiveSaltLib.Primitive p : AdaptiveSaltLib.Primitive.values()) {
+            Assert.assertTrue(report, report.contains(p.name()));
+            Assert.assertTrue(libs.contains(salt.getRoute(p, 100)));
+            if (p.isVerification()) {
+                Assert.assertSame(libs.get(0), salt.getRoute(p, 100));
+            }
+        }
+    }
+    
+    @Test
+    public void testAdaptiveLibSizeClass() {
+        Assert.assertEquals(0, AdaptiveSaltLib.sizeClass(0));
+        Assert.assertEquals(0, AdaptiveSaltLib.sizeClass(128));
+        Assert.assertEquals(1, AdaptiveSaltLib.sizeClass(129));
+        Assert.assertEquals(1, AdaptiveSaltLib.sizeClass(2048));
+        Assert.assertEquals(2, AdaptiveSaltLib.sizeClass(2049));
+        
+        SaltLib java = SaltLibFactory.getLib(SaltLibFactory.LibType.JAVA);
+        AdaptiveSaltLib single = new AdaptiveSaltLib(Arrays.asList(java), 1000);
+        Assert.assertSame(java, single.getRoute(AdaptiveSaltLib.Primitive.BOX_AFTERNM, 10));
+    }
+    
+    private static final byte[] KEY = Hex.toBytes("1b27556473e985d462cd51197a9a46c76009549eac6474f206c4ee0844f68389");
+    private static final byte[] NONCE = Hex.toBytes("69696ee955b62b73cd62bda875fc73d68219e0036b7a0b37");
+    
+    private static byte[] bytes(int size) {
+        byte[] result = new byte[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = (byte) (i * 7 + 1);
+        }
+        return result;
+    }
+    
+    private static byte[] contents(ByteBuffer buffer) {
+        byte[] result = new byte[buffer.capacity()];
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.clear();
+        duplicate.get(result);
+        return result;
+    }
+    
+    private static void open(SaltLib salt, byte[] sm, byte[] pk, SignKeyCache cache) {
+        salt.crypto_sign_open(new byte[sm.length], sm, pk, cache);
+    }
+    
+    /**
+     * Fills sm and pk with messages signed by different keys.
+     */
+    private static void signed(SaltLib salt, byte[][] sm, byte[][] pk) {
+        for (int i = 0; i < sm.length; i++) {
+            byte[] sk = new byte[SaltLib.crypto_sign_SECRETKEYBYTES];
+            sk[0] = (byte) i;
+            sk[1] = 33;
+            pk[i] = new byte[SaltLib.crypto_sign_PUBLICKEYBYTES];
+            salt.crypto_sign_keypair_not_random(pk[i], sk);
+            
+            byte[] m = bytes(10 + i * 5);
+            sm[i] = new byte[SaltLib.crypto_sign_BYTES + m.length];
+            salt.crypto_sign(sm[i], m, sk);
+        }
+    }
+    
+    /**
+     * Returns true if crypto_sign_open of salt accepts sm, false if it
+     * throws BadSignatureException.
+     */
+    private static boolean verifies(SaltLib salt, byte[] sm, byte[] pk) {
+        try {
+            salt.crypto_sign_open(new byte[sm.length], sm, pk);
+            return true;
+        } catch (BadSignatureException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * Returns the encoding of A + (0, -1) = (-x, -y), given the encoding of A.
+     */
+    private static byte[] plusOrder2Point(byte[] a) {
+        BigInteger p = BigInteger.ONE.shiftLeft(255).subtract(BigInteger.valueOf(19));
+        byte[] bigEndian = new byte[32];
+        for (int i = 0; i < 32; i++) {
+            bigEndian[i] = a[31 - i];
+        }
+        bigEndian[0] &= 0x7f;
+        
+        byte[] y = p.subtract(new BigInteger(1, bigEndian)).toByteArray();
+        byte[] result = new byte[32];
+        for (int i = 0; i < 32 && i < y.length; i++) {
+            result[i] = y[y.length - 1 - i];
+        }
+        result[31] |= (~a[31]) & 0x80;    // x is not zero, -x has the other sign
+        return result;
+    }
 }
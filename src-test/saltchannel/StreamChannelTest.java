@@ -0,0 +1,100 @@
+package saltchannel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import saltchannel.util.BufferPool;
+
+public class StreamChannelTest {
+
+    @Test
+    public void testWriteAndRead() {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        StreamChannel writer = new StreamChannel(null, bout);
+        writer.write(false, new byte[]{1}, new byte[]{2, 2});
+        writer.write(false, new byte[100 * 1000]);
+
+        StreamChannel reader = readerOf(bout);
+        Assert.assertArrayEquals(new byte[]{1}, reader.read());
+        Assert.assertArrayEquals(new byte[]{2, 2}, reader.read());
+        Assert.assertEquals(100 * 1000, reader.read().length);
+    }
+
+    @Test
+    public void testFraming() {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        new StreamChannel(null, bout).write(false, new byte[]{7, 8, 9});
+
+        Assert.assertArrayEquals(new byte[]{3, 0, 0, 0, 7, 8, 9}, bout.toByteArray());
+    }
+
+    @Test
+    public void testByteBuffers() {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        StreamChannel writer = new StreamChannel(null, bout);
+        ByteBuffer direct = ByteBuffer.allocateDirect(3);
+        direct.put(new byte[]{4, 5, 6}).flip();
+        writer.write(false, ByteBuffer.wrap(new byte[]{1, 2, 3}), direct);
+        writer.write(false, ByteBuffer.wrap(new byte[70 * 1000]));
+
+        StreamChannel reader = readerOf(bout);
+        ByteBuffer dst = ByteBuffer.allocate(10);
+        Assert.assertEquals(3, reader.read(dst));
+        Assert.assertEquals(3, dst.position());
+
+        ByteBuffer directDst = ByteBuffer.allocateDirect(10);
+        Assert.assertEquals(3, reader.read(directDst));
+        directDst.flip();
+        Assert.assertEquals(6, directDst.get(2));
+
+        try {
+            reader.read(ByteBuffer.allocate(10));
+            Assert.fail("expected BufferOverflowException");
+        } catch (BufferOverflowException e) {
+            // Message is not consumed.
+        }
+
+        Assert.assertEquals(70 * 1000, reader.read(ByteBuffer.allocate(70 * 1000)));
+    }
+
+    @Test
+    public void testPooledRead() {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        StreamChannel writer = new StreamChannel(null, bout);
+        for (int i = 0; i < 10; i++) {
+            writer.write(false, new byte[]{(byte) i, 1, 2});
+        }
+        writer.write(false, new byte[200]);
+
+        StreamChannel reader = readerOf(bout);
+        BufferPool pool = new BufferPool(100, 4);
+
+        for (int i = 0; i < 10; i++) {
+            StreamChannel.PooledMessage m = reader.read(pool);
+            Assert.assertEquals(3, m.getSize());
+            Assert.assertEquals(i, m.getBuffer()[0]);
+            m.release();
+        }
+
+        StreamChannel.PooledMessage large = reader.read(pool);
+        Assert.assertEquals(200, large.getSize());
+        large.release();
+
+        Assert.assertEquals(1, pool.getAllocationCount());
+    }
+
+    @Test(expected=BadPeer.class)
+    public void testTooLarge() {
+        byte[] header = new byte[]{(byte) 0xff, (byte) 0xff, (byte) 0xff, 0x0f};
+        new StreamChannel(new ByteArrayInputStream(header), null).read();
+    }
+
+    private static StreamChannel readerOf(ByteArrayOutputStream bout) {
+        return new StreamChannel(new ByteArrayInputStream(bout.toByteArray()), null);
+    }
+}
@@ -0,0 +1,45 @@
+package saltchannel.dev;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import saltchannel.util.CryptoTestData;
+import saltchannel.util.VirtualThreads;
+
+public class BlockingTcpServerTest {
+    
+    @Test
+    public void testConcurrentEchoSessions() throws Exception {
+        // A small version of the load test, see EchoLoad.main().
+        
+        int sessionCount = 200;
+        EchoLoad test = new EchoLoad(sessionCount);
+        Assert.assertEquals(0, test.run());
+        Assert.assertEquals(sessionCount, test.getMaxSessionCount());
+    }
+    
+    @Test
+    public void testVirtualThreadsUsedIfSupported() throws Exception {
+        BlockingTcpServer server = createEchoServer();
+        server.start(0);
+        Assert.assertEquals(VirtualThreads.isSupported(), server.isUsingVirtualThreads());
+        server.stop();
+    }
+    
+    @Test
+    public void testPlatformThreadPool() throws Exception {
+        BlockingTcpServer server = createEchoServer();
+        server.setUseVirtualThreads(false);
+        server.start(0);
+        Assert.assertFalse(server.isUsingVirtualThreads());
+        server.stop();
+    }
+    
+    private BlockingTcpServer createEchoServer() {
+        return new BlockingTcpServer(CryptoTestData.bSig, new ServerSessionFactory() {
+            public ByteChannelServerSession createSession() {
+                return new EchoServerSession();
+            }
+        });
+    }
+}
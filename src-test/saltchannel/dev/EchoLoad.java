@@ -0,0 +1,173 @@
+package saltchannel.dev;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import saltchannel.ByteChannel;
+import saltchannel.CryptoLib;
+import saltchannel.SocketChannel;
+import saltchannel.util.CryptoTestData;
+import saltchannel.util.Rand;
+import saltchannel.util.VirtualThreads;
+import saltchannel.v2.SaltClientSession;
+
+/**
+ * Load test of BlockingTcpServer: N echo sessions that are all open
+ * at the same time. Each client completes the handshake and one echo,
+ * then waits until all N sessions are established, then does one more
+ * echo and closes the session.
+ * Clients and server run in this process, so about 2*N file descriptors
+ * are needed (ulimit -n). To get past the ephemeral port range, clients
+ * bind to several loopback addresses (127.0.0.2, 127.0.0.3, ...).
+ * Run with JDK 21+ to get virtual threads. The largest run so far was
+ * 9500 sessions (limited by a 20k file descriptor limit), all concurrent,
+ * with no failures.
+ *
+ * Usage: EchoLoad [sessionCount], default sessionCount is 50000.
+ * The class is in the test tree, run it with out/classes-test on the
+ * class path.
+ *
+ * @author Frans Lundberg
+ */
+public class EchoLoad {
+    private static final int SESSIONS_PER_ADDRESS = 20000;
+
+    private final int sessionCount;
+    private final Rand rand = CryptoLib.createInsecureAndFastRand();
+    private final CountDownLatch established;
+    private final CountDownLatch done;
+    private final AtomicInteger failures = new AtomicInteger();
+    private volatile Exception firstFailure;
+    private BlockingTcpServer server;
+
+    public EchoLoad(int sessionCount) {
+        this.sessionCount = sessionCount;
+        this.established = new CountDownLatch(sessionCount);
+        this.done = new CountDownLatch(sessionCount);
+    }
+
+    /**
+     * Runs the test, returns the number of failed sessions.
+     */
+    public int run() throws IOException, InterruptedException {
+        ServerSessionFactory factory = new ServerSessionFactory() {
+            public ByteChannelServerSession createSession() {
+                return new EchoServerSession();
+            }
+        };
+
+        server = new BlockingTcpServer(CryptoTestData.bSig, factory);
+        server.setRand(rand);
+        server.setBacklog(Math.max(BlockingTcpServer.DEFAULT_BACKLOG, sessionCount));
+        server.start(0);
+
+        ExecutorService clients = VirtualThreads.newThreadPerTaskExecutor();
+        if (clients == null) {
+            clients = Executors.newCachedThreadPool();
+        }
+
+        long t0 = System.nanoTime();
+
+        for (int i = 0; i < sessionCount; i++) {
+            final int index = i;
+            clients.execute(new Runnable() {
+                public void run() {
+                    runClient(index);
+                }
+            });
+        }
+
+        // Failed clients count down both latches.
+        established.await();
+        long t1 = System.nanoTime();
+        int maxSessions = server.getMaxSessionCount();
+
+        done.await();
+        long t2 = System.nanoTime();
+
+        clients.shutdown();
+        clients.awaitTermination(10, TimeUnit.SECONDS);
+        server.stop();
+
+        System.out.println("Virtual threads:        " + server.isUsingVirtualThreads());
+        System.out.println("Sessions:               " + sessionCount);
+        System.out.println("Max concurrent:         " + maxSessions);
+        System.out.println("Failed:                 " + failures.get()
+                + (firstFailure == null ? "" : ", first: " + firstFailure));
+        System.out.println("Time to establish all:  " + (t1 - t0) / 1000000 + " ms");
+        System.out.println("Total time:             " + (t2 - t0) / 1000000 + " ms");
+
+        return failures.get();
+    }
+
+    public int getMaxSessionCount() {
+        return server.getMaxSessionCount();
+    }
+
+    private void runClient(int index) {
+        boolean isEstablished = false;
+        Socket socket = new Socket();
+
+        try {
+            InetAddress local = InetAddress.getByAddress(
+                    new byte[]{127, 0, 0, (byte) (2 + index / SESSIONS_PER_ADDRESS)});
+            socket.bind(new InetSocketAddress(local, 0));
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()));
+            socket.setTcpNoDelay(true);
+
+            SaltClientSession session = new SaltClientSession(CryptoTestData.aSig, new SocketChannel(socket));
+            session.setEncKeyPair(rand);
+            session.setBufferM4(true);
+            session.handshake();
+
+            ByteChannel app = session.getChannel();
+            echo(app, index);
+
+            isEstablished = true;
+            established.countDown();
+            established.await();
+
+            echo(app, index);
+            app.write(false, new byte[]{2});    // CLOSE
+            app.read();
+        } catch (Exception e) {
+            failures.incrementAndGet();
+            if (firstFailure == null) {
+                firstFailure = e;
+            }
+        } finally {
+            if (!isEstablished) {
+                established.countDown();
+            }
+            done.countDown();
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Ignore.
+            }
+        }
+    }
+
+    private void echo(ByteChannel app, int index) {
+        byte[] request = new byte[]{1, (byte) index, (byte) (index >>> 8), (byte) (index >>> 16)};
+        app.write(false, request);
+        byte[] response = app.read();
+        if (!Arrays.equals(request, response)) {
+            throw new IllegalStateException("bad echo response");
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int sessionCount = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        int failed = new EchoLoad(sessionCount).run();
+        System.exit(failed == 0 ? 0 : 1);
+    }
+}
@@ -40,4 +40,24 @@ public class BitFieldTest {
             Assert.assertEquals(false, f.get(i));
         }
     }
+    
+    @Test
+    public void testHighBitsOfWord() {
+        BitField f = new BitField(128);
+        f.set(40, true);
+        f.set(63, true);
+        
+        for (int i = 0; i < 128; i++) {
+            Assert.assertEquals("bit " + i, i == 40 || i == 63, f.get(i));
+        }
+    }
+    
+    @Test
+    public void testClearIfSet() {
+        BitField f = new BitField(70);
+        f.set(65, true);
+        Assert.assertEquals(true, f.clearIfSet(65));
+        Assert.assertEquals(false, f.get(65));
+        Assert.assertEquals(false, f.clearIfSet(65));
+    }
 }
@@ -0,0 +1,50 @@
+package saltchannel.util;
+
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import saltchannel.testutil.ToWaitFor;
+
+public class CryptoPoolTest {
+    
+    @Test
+    public void testQueueDepthAndRejection() {
+        final ToWaitFor release = new ToWaitFor();
+        final ToWaitFor running = new ToWaitFor();
+        
+        CryptoPool pool = new CryptoPool(1, 2);
+        
+        try {
+            pool.execute(new Runnable() {
+                public void run() {
+                    running.reportHappened();
+                    release.waitForIt(10000);
+                }
+            });
+            
+            Assert.assertTrue(running.waitForIt(2000));
+            Assert.assertEquals(0, pool.getQueueDepth());
+            
+            Runnable empty = new Runnable() {
+                public void run() {}
+            };
+            
+            pool.execute(empty);
+            pool.execute(empty);
+            Assert.assertEquals(2, pool.getQueueDepth());
+            Assert.assertEquals(1, pool.getActiveCount());
+            
+            try {
+                pool.execute(empty);
+                Assert.fail("expected RejectedExecutionException");
+            } catch (RejectedExecutionException e) {
+                // Expected, queue is full.
+            }
+        } finally {
+            release.reportHappened();
+            pool.shutdown();
+        }
+    }
+}
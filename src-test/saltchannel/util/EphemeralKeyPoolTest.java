@@ -0,0 +1,104 @@
+package saltchannel.util;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import saltchannel.CryptoLib;
+import saltchannel.Tunnel;
+import saltchannel.v2.SaltClientSession;
+import saltchannel.v2.SaltServerSession;
+
+public class EphemeralKeyPoolTest {
+
+    @Test
+    public void testFillsUp() throws InterruptedException {
+        EphemeralKeyPool pool = new EphemeralKeyPool(CryptoLib.createInsecureAndFastRand(), 8);
+        waitForSize(pool, 8);
+        Assert.assertEquals(8, pool.getCapacity());
+        pool.shutdown();
+    }
+
+    @Test
+    public void testKeyPairsAreValidAndUnique() throws InterruptedException {
+        EphemeralKeyPool pool = new EphemeralKeyPool(CryptoLib.createInsecureAndFastRand(), 4);
+        Set<String> pubs = new HashSet<String>();
+
+        for (int i = 0; i < 20; i++) {
+            KeyPair keyPair = pool.take();
+            KeyPair expected = CryptoLib.createEncKeysFromSec(keyPair.sec());
+            Assert.assertArrayEquals(expected.pub(), keyPair.pub());
+            Assert.assertTrue(pubs.add(Hex.create(keyPair.pub())));
+        }
+
+        Assert.assertEquals(20, pool.getTakeCount());
+        pool.shutdown();
+    }
+
+    @Test
+    public void testEmptyPoolGeneratesInline() throws InterruptedException {
+        EphemeralKeyPool pool = new EphemeralKeyPool(CryptoLib.createInsecureAndFastRand(), 3);
+        waitForSize(pool, 3);
+        pool.shutdown();
+        Thread.sleep(20);
+
+        for (int i = 0; i < 5; i++) {
+            Assert.assertNotNull(pool.take());
+        }
+
+        Assert.assertEquals(5, pool.getTakeCount());
+        Assert.assertEquals(2, pool.getMissCount());
+        Assert.assertEquals(0, pool.getLowWaterMark());
+        Assert.assertEquals(0, pool.getSize());
+    }
+
+    @Test
+    public void testLowWaterMark() throws InterruptedException {
+        EphemeralKeyPool pool = new EphemeralKeyPool(CryptoLib.createInsecureAndFastRand(), 10);
+        waitForSize(pool, 10);
+        pool.take();
+        pool.take();
+        Assert.assertTrue(pool.getLowWaterMark() <= 9);
+
+        waitForSize(pool, 10);
+        pool.resetLowWaterMark();
+        Assert.assertEquals(10, pool.getLowWaterMark());
+        pool.shutdown();
+    }
+
+    @Test
+    public void testHandshake() {
+        EphemeralKeyPool pool = new EphemeralKeyPool(CryptoLib.createInsecureAndFastRand(), 4);
+        Tunnel tunnel = new Tunnel();
+        final SaltClientSession client = new SaltClientSession(CryptoTestData.aSig, tunnel.channel1());
+        client.setEncKeyPair(pool);
+
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                client.handshake();
+                client.getChannel().write(true, new byte[]{1});
+            }
+        });
+        thread.start();
+
+        SaltServerSession server = new SaltServerSession(CryptoTestData.bSig, tunnel.channel2());
+        server.setEncKeyPair(pool);
+        server.handshake();
+
+        Assert.assertArrayEquals(new byte[]{1}, server.getChannel().read());
+        Assert.assertEquals(2, pool.getTakeCount());
+        pool.shutdown();
+    }
+
+    private static void waitForSize(EphemeralKeyPool pool, int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (pool.getSize() < size) {
+            if (System.currentTimeMillis() > deadline) {
+                Assert.fail("pool not filled, size " + pool.getSize());
+            }
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package saltchannel.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+    
+    @Test
+    public void testBuckets() {
+        long[] values = {0, 1, 31, 32, 33, 63, 64, 65, 1000, 123456789, Long.MAX_VALUE};
+        for (long v : values) {
+            int index = LatencyHistogram.index(v);
+            long highest = LatencyHistogram.highestValue(index);
+            Assert.assertTrue("value " + v, highest >= v);
+            Assert.assertTrue("value " + v, highest - v <= v / 32);
+            if (index > 0) {
+                Assert.assertTrue(LatencyHistogram.highestValue(index - 1) < v);
+            }
+        }
+    }
+    
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            h.record(i * 1000L);
+        }
+        
+        Assert.assertEquals(1000, h.getCount());
+        Assert.assertEquals(1000000, h.getMax());
+        Assert.assertEquals(500500.0, h.getMean(), 0.01);
+        assertNear(500000, h.getValueAtPercentile(50));
+        assertNear(990000, h.getValueAtPercentile(99));
+        Assert.assertEquals(1000000, h.getValueAtPercentile(100));
+        
+        h.reset();
+        Assert.assertEquals(0, h.getCount());
+        Assert.assertEquals(0, h.getValueAtPercentile(50));
+    }
+    
+    private static void assertNear(long expected, long actual) {
+        Assert.assertTrue("actual: " + actual, Math.abs(actual - expected) <= expected / 32);
+    }
+}
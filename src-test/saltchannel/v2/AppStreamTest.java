@@ -0,0 +1,157 @@
+package saltchannel.v2;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import saltchannel.ByteChannel;
+import saltchannel.Tunnel;
+import saltchannel.util.CryptoTestData;
+
+public class AppStreamTest {
+
+    @Test
+    public void testLargeStream() throws IOException {
+        // 5 MB in 8 kB chunks, followed by a normal application message.
+
+        final byte[] data = randomBytes(5 * 1000 * 1000);
+        ApplicationChannel channel = startSession(new Writer() {
+            public void write(ByteChannel channel) throws IOException {
+                OutputStream out = new AppOutputStream(channel, 8 * 1024, false);
+                for (int offset = 0; offset < data.length; offset += 10000) {
+                    out.write(data, offset, Math.min(10000, data.length - offset));
+                }
+                out.close();
+                channel.write(true, new byte[]{1, 2, 3});
+            }
+        });
+
+        InputStream in = new AppInputStream(channel, 8 * 1024);
+        byte[] received = readAll(in, data.length);
+
+        Assert.assertArrayEquals(data, received);
+        Assert.assertEquals(-1, in.read());
+        Assert.assertArrayEquals(new byte[]{1, 2, 3}, channel.read());
+    }
+
+    @Test
+    public void testSingleBytesAndFlush() throws IOException {
+        ApplicationChannel channel = startSession(new Writer() {
+            public void write(ByteChannel channel) throws IOException {
+                OutputStream out = new AppOutputStream(channel, 3, true);
+                for (int i = 0; i < 10; i++) {
+                    out.write(i);
+                    if (i == 4) {
+                        out.flush();
+                    }
+                }
+                out.close();
+            }
+        });
+
+        InputStream in = new AppInputStream(channel, 3);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(i, in.read());
+        }
+
+        Assert.assertEquals(-1, in.read());
+        Assert.assertTrue(channel.lastFlag());
+    }
+
+    @Test
+    public void testEmptyStream() throws IOException {
+        ApplicationChannel channel = startSession(new Writer() {
+            public void write(ByteChannel channel) throws IOException {
+                new AppOutputStream(channel).close();
+            }
+        });
+
+        InputStream in = new AppInputStream(channel);
+        Assert.assertEquals(-1, in.read(new byte[10], 0, 10));
+    }
+
+    @Test
+    public void testCloseSkipsRest() throws IOException {
+        ApplicationChannel channel = startSession(new Writer() {
+            public void write(ByteChannel channel) throws IOException {
+                OutputStream out = new AppOutputStream(channel, 100, false);
+                out.write(new byte[1000]);
+                out.close();
+                channel.write(true, new byte[]{7});
+            }
+        });
+
+        InputStream in = new AppInputStream(channel, 100);
+        in.read();
+        in.close();
+        Assert.assertArrayEquals(new byte[]{7}, channel.read());
+    }
+
+    @Test(expected=IOException.class)
+    public void testChunkTooLarge() throws IOException {
+        ApplicationChannel channel = startSession(new Writer() {
+            public void write(ByteChannel channel) throws IOException {
+                OutputStream out = new AppOutputStream(channel, 1000, false);
+                out.write(new byte[1000]);
+                out.close();
+            }
+        });
+
+        new AppInputStream(channel, 100).read();
+    }
+
+    private interface Writer {
+        void write(ByteChannel channel) throws IOException;
+    }
+
+    /**
+     * Does a handshake, the client writes with the writer in a separate
+     * thread. Returns the server's application channel.
+     */
+    private static ApplicationChannel startSession(final Writer writer) {
+        Tunnel tunnel = new Tunnel();
+        final SaltClientSession client = new SaltClientSession(CryptoTestData.aSig, tunnel.channel1());
+        client.setEncKeyPair(CryptoTestData.aEnc);
+
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                client.handshake();
+                try {
+                    writer.write(client.getChannel());
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        thread.start();
+
+        SaltServerSession server = new SaltServerSession(CryptoTestData.bSig, tunnel.channel2());
+        server.setEncKeyPair(CryptoTestData.bEnc);
+        server.handshake();
+        return server.getChannel();
+    }
+
+    private static byte[] readAll(InputStream in, int size) throws IOException {
+        byte[] result = new byte[size];
+        int offset = 0;
+        while (offset < size) {
+            int count = in.read(result, offset, Math.min(7000, size - offset));
+            if (count == -1) {
+                return Arrays.copyOf(result, offset);
+            }
+            offset += count;
+        }
+        return result;
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] result = new byte[size];
+        new Random(1).nextBytes(result);
+        return result;
+    }
+}
@@ -0,0 +1,153 @@
+package saltchannel.v2;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Test;
+import saltchannel.Tunnel;
+import saltchannel.util.CryptoTestData;
+import saltchannel.util.TimeChecker;
+import saltchannel.util.TimeKeeper;
+
+/**
+ * Tests the ByteBufferChannel methods of EncryptedChannelV2 
+ * and ApplicationChannel.
+ */
+public class ByteBufferChannelTest {
+
+    @Test
+    public void testEncryptedChannel() {
+        Tunnel tunnel = new Tunnel();
+        EncryptedChannelV2 e1 = new EncryptedChannelV2(tunnel.channel1(), key1(), 
+                EncryptedChannelV2.Role.CLIENT);
+        EncryptedChannelV2 e2 = new EncryptedChannelV2(tunnel.channel2(), key1(), 
+                EncryptedChannelV2.Role.SERVER);
+        
+        ByteBuffer direct = ByteBuffer.allocateDirect(2);
+        direct.put(new byte[]{3, 4}).flip();
+        e1.write(false, ByteBuffer.wrap(new byte[]{1, 2}), direct);
+        e1.write(true, new byte[]{5});
+        
+        Assert.assertArrayEquals(new byte[]{1, 2}, e2.read());
+        
+        ByteBuffer dst = ByteBuffer.allocateDirect(10);
+        Assert.assertEquals(2, e2.read(dst));
+        dst.flip();
+        Assert.assertEquals(3, dst.get(0));
+        Assert.assertEquals(4, dst.get(1));
+        
+        ByteBuffer dst2 = ByteBuffer.allocate(10);
+        Assert.assertEquals(1, e2.read(dst2));
+        Assert.assertEquals(5, dst2.get(0));
+        Assert.assertTrue(e2.lastFlag());
+    }
+    
+    @Test
+    public void testEncryptedChannelOverflow() {
+        Tunnel tunnel = new Tunnel();
+        EncryptedChannelV2 e1 = new EncryptedChannelV2(tunnel.channel1(), key1(), 
+                EncryptedChannelV2.Role.CLIENT);
+        EncryptedChannelV2 e2 = new EncryptedChannelV2(tunnel.channel2(), key1(), 
+                EncryptedChannelV2.Role.SERVER);
+        
+        e1.write(false, new byte[3000], new byte[]{7});
+        
+        try {
+            e2.read(ByteBuffer.allocate(100));
+            Assert.fail("expected BufferOverflowException");
+        } catch (BufferOverflowException e) {
+            // expected
+        }
+        
+        Assert.assertEquals(3000, e2.read(ByteBuffer.allocate(3000)));
+        Assert.assertArrayEquals(new byte[]{7}, e2.read());
+    }
+    
+    @Test
+    public void testApplicationChannel() {
+        Tunnel tunnel = new Tunnel();
+        ApplicationChannel c1 = new ApplicationChannel(tunnel.channel1(), TimeKeeper.NULL, TimeChecker.NULL);
+        ApplicationChannel c2 = new ApplicationChannel(tunnel.channel2(), TimeKeeper.NULL, TimeChecker.NULL);
+        
+        c1.write(false, ByteBuffer.wrap(new byte[]{1}));
+        c1.write(false, ByteBuffer.wrap(new byte[]{2}), ByteBuffer.wrap(new byte[]{3, 3}));
+        c1.write(true, new byte[]{4});
+        
+        ByteBuffer dst = ByteBuffer.allocate(10);
+        Assert.assertEquals(1, c2.read(dst));
+        Assert.assertEquals(1, c2.read(dst));
+        Assert.assertEquals(2, c2.read(dst));
+        Assert.assertEquals(1, c2.read(dst));
+        Assert.assertArrayEquals(new byte[]{1, 2, 3, 3, 4}, Arrays.copyOf(dst.array(), 5));
+    }
+    
+    @Test
+    public void testApplicationChannelOverflow() {
+        Tunnel tunnel = new Tunnel();
+        ApplicationChannel c1 = new ApplicationChannel(tunnel.channel1(), TimeKeeper.NULL, TimeChecker.NULL);
+        ApplicationChannel c2 = new ApplicationChannel(tunnel.channel2(), TimeKeeper.NULL, TimeChecker.NULL);
+        
+        c1.write(false, new byte[]{1, 2, 3});
+        
+        try {
+            c2.read(ByteBuffer.allocate(2));
+            Assert.fail("expected BufferOverflowException");
+        } catch (BufferOverflowException e) {
+            // expected
+        }
+        
+        Assert.assertArrayEquals(new byte[]{1, 2, 3}, c2.read());
+    }
+    
+    @Test
+    public void testSession() {
+        final SessionTestEnv env = new SessionTestEnv();
+        env.start();
+        
+        ByteBuffer request = ByteBuffer.allocateDirect(5000);
+        request.put(0, (byte) 1);
+        request.put(4999, (byte) 99);
+        env.client.getChannel().write(false, request);
+        
+        ByteBuffer response = ByteBuffer.allocateDirect(5000);
+        Assert.assertEquals(5000, env.client.getChannel().read(response));
+        Assert.assertEquals(99, response.get(4999));
+    }
+    
+    /**
+     * Client and server sessions over a Tunnel, the server echoes 
+     * one message using the ByteBufferChannel interface.
+     */
+    private static class SessionTestEnv {
+        Tunnel tunnel = new Tunnel();
+        SaltClientSession client;
+        SaltServerSession server;
+        
+        void start() {
+            client = new SaltClientSession(CryptoTestData.aSig, tunnel.channel1());
+            client.setEncKeyPair(CryptoTestData.aEnc);
+            server = new SaltServerSession(CryptoTestData.bSig, tunnel.channel2());
+            server.setEncKeyPair(CryptoTestData.bEnc);
+            
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    server.handshake();
+                    ByteBuffer buffer = ByteBuffer.allocate(10000);
+                    server.getChannel().read(buffer);
+                    buffer.flip();
+                    server.getChannel().write(true, buffer);
+                }
+            });
+            thread.start();
+            
+            client.handshake();
+        }
+    }
+    
+    private static byte[] key1() {
+        byte[] key = new byte[32];
+        key[0] = 1;
+        return key;
+    }
+}
@@ -0,0 +1,114 @@
+package saltchannel.v2;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import javax.management.ObjectName;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import saltchannel.BadPeer;
+import saltchannel.TimeException;
+import saltchannel.Tunnel;
+import saltchannel.util.CryptoTestData;
+import saltchannel.util.NullTimeChecker;
+import saltchannel.util.NullTimeKeeper;
+import saltchannel.util.TimeChecker;
+import saltchannel.v2.ChannelCounters.Counter;
+
+public class ChannelCountersTest {
+    
+    @Test
+    public void testAppMessages() {
+        ChannelCounters aggregate = new ChannelCounters();
+        Tunnel tunnel = new Tunnel();
+        ApplicationChannel writer = appChannel(tunnel, true, new ChannelCounters(aggregate), NullTimeChecker.INSTANCE);
+        ApplicationChannel reader = appChannel(tunnel, false, new ChannelCounters(aggregate), NullTimeChecker.INSTANCE);
+        
+        writer.write(false, new byte[10]);
+        writer.write(false, new byte[1], new byte[2], new byte[3]);
+        writer.write(false, ByteBuffer.wrap(new byte[20]));
+        
+        reader.read();
+        for (int i = 0; i < 3; i++) {
+            reader.read();
+        }
+        reader.read(ByteBuffer.allocate(100));
+        
+        ChannelCounters.Snapshot out = writer.getCounters().snapshot();
+        Assert.assertEquals(5, out.get(Counter.MESSAGES_OUT));
+        Assert.assertEquals(36, out.get(Counter.BYTES_OUT));
+        Assert.assertEquals(1, out.get(Counter.MULTI_APP_PACKETS_OUT));
+        Assert.assertEquals(3, out.get(Counter.RECORDS_OUT));
+        Assert.assertEquals(0, out.get(Counter.MESSAGES_IN));
+        
+        ChannelCounters in = reader.getCounters();
+        Assert.assertEquals(5, in.getMessagesIn());
+        Assert.assertEquals(36, in.getBytesIn());
+        Assert.assertEquals(3, in.getRecordsIn());
+        Assert.assertEquals(out.get(Counter.RECORD_BYTES_OUT), in.getRecordBytesIn());
+        Assert.assertEquals(1, in.getMultiAppPacketsIn());
+        Assert.assertEquals(3.0, in.getMessagesPerMultiAppPacketIn(), 0.001);
+        
+        Assert.assertEquals(5, aggregate.getMessagesIn());
+        Assert.assertEquals(5, aggregate.getMessagesOut());
+    }
+    
+    @Test
+    public void testFailures() {
+        Tunnel tunnel = new Tunnel();
+        ApplicationChannel writer = appChannel(tunnel, true, new ChannelCounters(), NullTimeChecker.INSTANCE);
+        ApplicationChannel reader = appChannel(tunnel, false, new ChannelCounters(), new TimeChecker() {
+            public void reportFirstTime(int time) {}
+            public void checkTime(int time) {
+                throw new TimeException("bad time");
+            }
+        });
+        
+        writer.write(false, new byte[1]);
+        try {
+            reader.read();
+            Assert.fail("expected TimeException");
+        } catch (TimeException e) {
+            // Expected.
+        }
+        Assert.assertEquals(1, reader.getCounters().getTimeCheckFailures());
+        
+        EncryptedChannelV2 badReader = new EncryptedChannelV2(tunnel.channel2(), 
+                CryptoTestData.random32a.clone(), EncryptedChannelV2.Role.CLIENT);
+        writer.write(false, new byte[1]);
+        try {
+            badReader.read();
+            Assert.fail("expected BadPeer");
+        } catch (BadPeer e) {
+            // Expected, wrong nonce.
+        }
+        Assert.assertEquals(1, badReader.getCounters().getDecryptFailures());
+    }
+    
+    @Test
+    public void testJmx() throws Exception {
+        ChannelCounters counters = new ChannelCounters();
+        counters.add(Counter.BYTES_IN, 123);
+        
+        ObjectName name = ChannelCountersJmx.register(counters, "test");
+        try {
+            Object value = ManagementFactory.getPlatformMBeanServer().getAttribute(name, "BytesIn");
+            Assert.assertEquals(123L, value);
+        } finally {
+            ChannelCountersJmx.unregister("test");
+        }
+        
+        Assert.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+    
+    private static ApplicationChannel appChannel(Tunnel tunnel, boolean client, 
+            ChannelCounters counters, TimeChecker timeChecker) {
+        EncryptedChannelV2 encrypted = client ? 
+                new EncryptedChannelV2(tunnel.channel1(), CryptoTestData.random32a, EncryptedChannelV2.Role.CLIENT) : 
+                new EncryptedChannelV2(tunnel.channel2(), CryptoTestData.random32a, EncryptedChannelV2.Role.SERVER);
+        encrypted.setCounters(counters);
+        return new ApplicationChannel(encrypted, NullTimeKeeper.INSTANCE, timeChecker);
+    }
+}
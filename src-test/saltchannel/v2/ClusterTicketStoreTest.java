@@ -0,0 +1,98 @@
+package saltchannel.v2;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import saltchannel.util.CryptoTestData;
+import saltchannel.v2.packets.BadTicket;
+
+public class ClusterTicketStoreTest {
+
+    @Test
+    public void testTicketIdHasNodeId() {
+        ClusterTicketStore store = new ClusterTicketStore(5, 100, new LocalReplayStore(100));
+        long ticketId = store.issue();
+        Assert.assertEquals(5, ClusterTicketStore.nodeId(ticketId));
+        Assert.assertEquals(100, ClusterTicketStore.sequence(ticketId));
+        Assert.assertEquals(101, ClusterTicketStore.sequence(store.issue()));
+        Assert.assertEquals(102, store.getNextSequence());
+    }
+    
+    @Test
+    public void testRestartFromHighWaterMark() {
+        LocalReplayStore shared = new LocalReplayStore(1000);
+        ClusterTicketStore node1 = new ClusterTicketStore(1, 1, shared);
+        long used = node1.issue();
+        long unused = node1.issue();
+        long highWaterMark = node1.getNextSequence() + 100;
+        Assert.assertTrue(node1.clearIfValid(used));
+        
+        ClusterTicketStore restarted = new ClusterTicketStore(1, highWaterMark, shared);
+        long ticketId = restarted.issue();
+        Assert.assertEquals(highWaterMark, ClusterTicketStore.sequence(ticketId));
+        
+        Assert.assertTrue(restarted.clearIfValid(unused));
+        Assert.assertFalse(restarted.clearIfValid(used));
+        Assert.assertTrue(restarted.clearIfValid(ticketId));
+        Assert.assertFalse(restarted.clearIfValid(ticketId));
+    }
+    
+    @Test
+    public void testMaxNodeId() {
+        ClusterTicketStore store = new ClusterTicketStore(ClusterTicketStore.MAX_NODE_ID, 1, 
+                new LocalReplayStore(100));
+        long ticketId = store.issue();
+        Assert.assertTrue(ticketId > 0);
+        Assert.assertEquals(ClusterTicketStore.MAX_NODE_ID, ClusterTicketStore.nodeId(ticketId));
+        Assert.assertTrue(store.clearIfValid(ticketId));
+    }
+    
+    @Test
+    public void testValidateOnOtherNode() {
+        LocalReplayStore shared = new LocalReplayStore(1000);
+        ResumeHandler node1 = new ResumeHandler(new TicketKeyRing(1, CryptoTestData.random32a), 
+                new ClusterTicketStore(1, 1000, shared));
+        ResumeHandler node2 = new ResumeHandler(new TicketKeyRing(1, CryptoTestData.random32a), 
+                new ClusterTicketStore(2, 1000, shared));
+        
+        byte[] ticket1 = node1.issueTicket(new byte[32], new byte[32]).ticket;
+        byte[] ticket2 = node2.issueTicket(new byte[32], new byte[32]).ticket;
+        
+        TicketSessionData data = node2.validateTicket(ticket1);
+        Assert.assertEquals(1, ClusterTicketStore.nodeId(data.ticketId));
+        Assert.assertEquals(2, ClusterTicketStore.nodeId(node1.validateTicket(ticket2).ticketId));
+        
+        try {
+            node1.validateTicket(ticket1);
+            Assert.fail("replay on other node accepted");
+        } catch (BadTicket e) {
+            // expected
+        }
+    }
+    
+    @Test
+    public void testUnknownNode() {
+        LocalReplayStore shared = new LocalReplayStore(1000);
+        Assert.assertFalse(shared.remove(ClusterTicketStore.ticketId(7, 1)));
+        Assert.assertFalse(shared.remove(-1));
+    }
+    
+    @Test
+    public void testWindowPerNode() {
+        LocalReplayStore shared = new LocalReplayStore(64);
+        ClusterTicketStore node1 = new ClusterTicketStore(1, 1, shared);
+        ClusterTicketStore node2 = new ClusterTicketStore(2, 1, shared);
+        
+        long old = node1.issue();
+        for (int i = 0; i < 64; i++) {
+            node2.issue();    // Does not push node1's ticket out of range.
+        }
+        Assert.assertTrue(node2.clearIfValid(old));
+        
+        long old2 = node1.issue();
+        for (int i = 0; i < 64; i++) {
+            node1.issue();
+        }
+        Assert.assertFalse(node1.clearIfValid(old2));
+    }
+}
@@ -0,0 +1,166 @@
+package saltchannel.v2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import saltchannel.ByteChannel;
+import saltchannel.ComException;
+import saltchannel.Tunnel;
+import saltchannel.util.CryptoTestData;
+
+public class CoalescingChannelTest {
+
+    @Test
+    public void testMaxCount() {
+        RecordingChannel recorder = new RecordingChannel();
+        CoalescingChannel channel = new CoalescingChannel(recorder, null, 1000, 1000, 4);
+
+        for (int i = 0; i < 10; i++) {
+            channel.write(false, new byte[]{(byte) i});
+        }
+
+        Assert.assertEquals(2, recorder.writes.size());
+        Assert.assertEquals(4, recorder.writes.get(0).length);
+        Assert.assertEquals(4, recorder.writes.get(1).length);
+
+        channel.flush();
+        Assert.assertEquals(3, recorder.writes.size());
+        Assert.assertEquals(2, recorder.writes.get(2).length);
+        Assert.assertEquals(9, recorder.writes.get(2)[1][0]);
+        Assert.assertEquals(10, channel.getMessageCount());
+        Assert.assertEquals(3, channel.getWriteCount());
+    }
+
+    @Test
+    public void testMaxBytes() {
+        RecordingChannel recorder = new RecordingChannel();
+        CoalescingChannel channel = new CoalescingChannel(recorder, null, 1000, 100, 100);
+
+        channel.write(false, new byte[60]);
+        Assert.assertEquals(0, recorder.writes.size());
+        channel.write(false, new byte[60]);
+        Assert.assertEquals(1, recorder.writes.size());
+        Assert.assertEquals(2, recorder.writes.get(0).length);
+    }
+
+    @Test
+    public void testLastFlushesImmediately() {
+        RecordingChannel recorder = new RecordingChannel();
+        CoalescingChannel channel = new CoalescingChannel(recorder, null, 1000, 1000, 100);
+
+        channel.write(false, new byte[]{1});
+        channel.write(true, new byte[]{2});
+
+        Assert.assertEquals(1, recorder.writes.size());
+        Assert.assertEquals(2, recorder.writes.get(0).length);
+        Assert.assertTrue(recorder.lastFlags.get(0));
+    }
+
+    @Test
+    public void testCallerMayReuseArray() {
+        RecordingChannel recorder = new RecordingChannel();
+        CoalescingChannel channel = new CoalescingChannel(recorder, null, 1000, 1000, 100);
+
+        byte[] buffer = new byte[]{1, 2};
+        channel.write(false, buffer);
+        buffer[0] = 3;
+        channel.write(false, buffer);
+        channel.flush();
+
+        Assert.assertEquals(1, recorder.writes.size());
+        Assert.assertArrayEquals(new byte[]{1, 2}, recorder.writes.get(0)[0]);
+        Assert.assertArrayEquals(new byte[]{3, 2}, recorder.writes.get(0)[1]);
+    }
+
+    @Test
+    public void testLargeMessageWrittenSeparately() {
+        RecordingChannel recorder = new RecordingChannel();
+        CoalescingChannel channel = new CoalescingChannel(recorder, null, 1000, 1000 * 1000, 100);
+
+        channel.write(false, new byte[]{1});
+        channel.write(false, new byte[70 * 1000]);
+
+        Assert.assertEquals(2, recorder.writes.size());
+        Assert.assertEquals(1, recorder.writes.get(0).length);
+        Assert.assertEquals(1, recorder.writes.get(1).length);
+        Assert.assertEquals(70 * 1000, recorder.writes.get(1)[0].length);
+    }
+
+    @Test
+    public void testMaxDelay() throws InterruptedException {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        RecordingChannel recorder = new RecordingChannel();
+        CoalescingChannel channel = new CoalescingChannel(recorder, scheduler, 2000, 1000, 100);
+
+        channel.write(false, new byte[]{1});
+        channel.write(false, new byte[]{2});
+        channel.write(false, new byte[]{3});
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (channel.getWriteCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+
+        scheduler.shutdown();
+        Assert.assertEquals(1, channel.getWriteCount());
+        Assert.assertEquals(3, channel.getMessageCount());
+    }
+
+    @Test
+    public void testSession() {
+        // Small messages sent one at a time arrive in order,
+        // coalesced in MultiAppPackets.
+
+        Tunnel tunnel = new Tunnel();
+        final SaltClientSession client = new SaltClientSession(CryptoTestData.aSig, tunnel.channel1());
+        client.setEncKeyPair(CryptoTestData.aEnc);
+        final int count = 100;
+
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                client.handshake();
+                CoalescingChannel channel = new CoalescingChannel(client.getChannel(), null, 1000, 1000, 10);
+                for (int i = 0; i < count; i++) {
+                    channel.write(false, new byte[]{(byte) i});
+                }
+                channel.flush();
+            }
+        });
+        thread.start();
+
+        SaltServerSession server = new SaltServerSession(CryptoTestData.bSig, tunnel.channel2());
+        server.setEncKeyPair(CryptoTestData.bEnc);
+        server.handshake();
+        ApplicationChannel appChannel = server.getChannel();
+
+        for (int i = 0; i < count; i++) {
+            Assert.assertArrayEquals(new byte[]{(byte) i}, appChannel.read());
+            if (i % 10 == 0) {
+                Assert.assertEquals(9, appChannel.availableFromMultiAppPacket());
+            }
+        }
+    }
+
+    private static class RecordingChannel implements ByteChannel {
+        List<byte[][]> writes = new ArrayList<byte[][]>();
+        List<Boolean> lastFlags = new ArrayList<Boolean>();
+
+        public byte[] read() throws ComException {
+            throw new UnsupportedOperationException();
+        }
+
+        public void write(byte[]... messages) throws ComException {
+            write(false, messages);
+        }
+
+        public void write(boolean isLast, byte[]... messages) {
+            writes.add(messages);
+            lastFlags.add(isLast);
+        }
+    }
+}
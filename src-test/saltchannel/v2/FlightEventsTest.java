@@ -0,0 +1,148 @@
+package saltchannel.v2;
+
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import saltchannel.Tunnel;
+import saltchannel.util.CryptoTestData;
+
+/**
+ * Tests the JFR events. The tests are compiled for Java 7, so the JFR
+ * API is used by reflection. The tests are skipped if the events
+ * are not available.
+ */
+public class FlightEventsTest {
+    private static final String[] EVENT_NAMES = {"SaltHandshake", "SaltRecordRead",
+            "SaltRecordWrite", "SaltTicketIssue", "SaltTicketValidate"};
+
+    @Test
+    public void testEvents() throws Exception {
+        Assume.assumeTrue(FlightEvents.isAvailable());
+
+        Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+        Object recording = recordingClass.getConstructor().newInstance();
+        for (String name : EVENT_NAMES) {
+            recordingClass.getMethod("enable", String.class).invoke(recording, name);
+        }
+
+        recordingClass.getMethod("start").invoke(recording);
+
+        ResumeHandler resumeHandler = new ResumeHandler(CryptoTestData.random32a, 10, 100*1000);
+        int messageCount = 4 * FlightEvents.getRecordSampleInterval();
+        ClientTicketData ticketData = handshakeAndWrite(resumeHandler, null, messageCount);
+        handshakeAndWrite(resumeHandler, ticketData, 0);
+
+        recordingClass.getMethod("stop").invoke(recording);
+        Path file = Files.createTempFile("salt-channel-test", ".jfr");
+        try {
+            recordingClass.getMethod("dump", Path.class).invoke(recording, file);
+            recordingClass.getMethod("close").invoke(recording);
+
+            List<Object> handshakes = events(file, "SaltHandshake");
+            Assert.assertEquals(4, handshakes.size());
+            List<String> outcomes = new ArrayList<String>();
+            for (Object e : handshakes) {
+                outcomes.add((String) value(e, "outcome"));
+            }
+            Assert.assertEquals(2, countOf(outcomes, "FULL"));
+            Assert.assertEquals(2, countOf(outcomes, "RESUMED"));
+
+            List<Object> reads = events(file, "SaltRecordRead");
+            Assert.assertTrue(reads.size() >= 4);
+            Object read = reads.get(reads.size() - 1);
+            Assert.assertEquals(FlightEvents.getRecordSampleInterval(), value(read, "sampleInterval"));
+            Assert.assertTrue((Integer) value(read, "size") > 0);
+
+            Assert.assertTrue(events(file, "SaltRecordWrite").size() >= 4);
+            Assert.assertEquals(2, events(file, "SaltTicketIssue").size());
+
+            List<Object> validations = events(file, "SaltTicketValidate");
+            Assert.assertEquals(1, validations.size());
+            Assert.assertEquals(Boolean.TRUE, value(validations.get(0), "valid"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static ClientTicketData handshakeAndWrite(ResumeHandler resumeHandler,
+            ClientTicketData ticketData, int messageCount) throws InterruptedException {
+        Tunnel tunnel = new Tunnel();
+
+        SaltClientSession client = new SaltClientSession(CryptoTestData.aSig, tunnel.channel1());
+        client.setEncKeyPair(CryptoTestData.aEnc);
+        client.setTicketRequested(true);
+        client.setTicketData(ticketData);
+
+        final SaltServerSession server = new SaltServerSession(CryptoTestData.bSig, tunnel.channel2());
+        server.setEncKeyPair(CryptoTestData.bEnc);
+        server.setResumeHandler(resumeHandler);
+
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                server.handshake();
+            }
+        });
+        thread.start();
+        client.handshake();
+        thread.join();
+
+        for (int i = 0; i < messageCount; i++) {
+            client.getChannel().write(false, new byte[]{1, 2, 3, 4});
+            server.getChannel().read();
+        }
+
+        return client.getNewTicketData();
+    }
+
+    private static List<Object> events(Path file, String name) throws Exception {
+        Method readAllEvents = Class.forName("jdk.jfr.consumer.RecordingFile")
+                .getMethod("readAllEvents", Path.class);
+        List<Object> result = new ArrayList<Object>();
+
+        for (Object e : (List<?>) readAllEvents.invoke(null, file)) {
+            Object type = invoke(e, "getEventType");
+            if (name.equals(invoke(type, "getName"))) {
+                result.add(e);
+            }
+        }
+
+        return result;
+    }
+
+    private static Object value(Object event, String field) throws Exception {
+        return publicMethod(event.getClass(), "getValue", String.class).invoke(event, field);
+    }
+
+    private static Object invoke(Object o, String methodName) throws Exception {
+        return publicMethod(o.getClass(), methodName).invoke(o);
+    }
+
+    /**
+     * Returns the method as declared by a public superclass; the runtime
+     * classes of the JFR objects are not necessarily public.
+     */
+    private static Method publicMethod(Class<?> c, String name, Class<?>... types) throws Exception {
+        while (!java.lang.reflect.Modifier.isPublic(c.getModifiers())) {
+            c = c.getSuperclass();
+        }
+
+        return c.getMethod(name, types);
+    }
+
+    private static int countOf(List<String> list, String value) {
+        int count = 0;
+        for (String s : list) {
+            if (value.equals(s)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,158 @@
+package saltchannel.v2;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import saltchannel.Tunnel;
+import saltchannel.util.CryptoTestData;
+import saltchannel.v2.HandshakeListener.Outcome;
+import saltchannel.v2.HandshakeListener.Phase;
+
+public class HandshakeListenerTest {
+    
+    @Test
+    public void testFullHandshake() throws InterruptedException {
+        Recorder clientRecorder = new Recorder();
+        Recorder serverRecorder = new Recorder();
+        Tunnel tunnel = new Tunnel();
+        
+        SaltClientSession client = client(tunnel, clientRecorder);
+        client.setTicketRequested(true);
+        final SaltServerSession server = server(tunnel, serverRecorder);
+        server.setResumeHandler(new ResumeHandler(CryptoTestData.random32a, 10, 100*1000));
+        
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                server.handshake();
+            }
+        });
+        thread.start();
+        client.handshake();
+        thread.join();
+        
+        Assert.assertEquals(EnumSet.of(Phase.WRITE_M1, Phase.READ_M2, Phase.KEY_AGREEMENT, 
+                Phase.READ_M3, Phase.VALIDATE_SIGNATURE1, Phase.SIGNATURE2, Phase.WRITE_M4, 
+                Phase.READ_TT), clientRecorder.phases());
+        Assert.assertEquals(Outcome.FULL, clientRecorder.outcome);
+        
+        Assert.assertEquals(EnumSet.of(Phase.READ_M1, Phase.PROCESS_M1, Phase.WRITE_M2, 
+                Phase.KEY_AGREEMENT, Phase.SIGNATURE1, Phase.WRITE_M3, Phase.READ_M4, 
+                Phase.VALIDATE_SIGNATURE2, Phase.ISSUE_TICKET), serverRecorder.phases());
+        Assert.assertEquals(Outcome.FULL, serverRecorder.outcome);
+        Assert.assertEquals(1, serverRecorder.endCount);
+        
+        long phaseSum = 0;
+        for (long nanos : serverRecorder.nanos) {
+            Assert.assertTrue(nanos >= 0);
+            phaseSum += nanos;
+        }
+        Assert.assertTrue(serverRecorder.totalNanos >= phaseSum);
+    }
+    
+    @Test
+    public void testResumedPushStyle() {
+        ResumeHandler resumeHandler = new ResumeHandler(CryptoTestData.random32a, 10, 100*1000);
+        HandshakeStats stats = new HandshakeStats();
+        
+        ClientTicketData ticketData = null;
+        for (int i = 0; i < 3; i++) {
+            Recorder clientRecorder = new Recorder();
+            SaltClientSession client = client(new Tunnel(), clientRecorder);
+            client.setTicketRequested(true);
+            client.setTicketData(ticketData);
+            SaltServerSession server = server(new Tunnel(), stats);
+            server.setResumeHandler(resumeHandler);
+            
+            HandshakeResult r1 = server.onMessage(client.start().getMessages()[0]);
+            if (i == 0) {
+                HandshakeResult r2 = client.onMessage(r1.getMessages()[0]);
+                Assert.assertEquals(HandshakeResult.State.NEED_MORE, r2.getState());
+                HandshakeResult r3 = client.onMessage(r1.getMessages()[1]);
+                HandshakeResult r4 = server.onMessage(r3.getMessages()[0]);
+                Assert.assertEquals(HandshakeResult.State.DONE, client.onMessage(r4.getMessages()[0]).getState());
+                Assert.assertEquals(Outcome.FULL, clientRecorder.outcome);
+            } else {
+                Assert.assertEquals(HandshakeResult.State.DONE, client.onMessage(r1.getMessages()[0]).getState());
+                Assert.assertEquals(Outcome.RESUMED, clientRecorder.outcome);
+                Assert.assertEquals(EnumSet.of(Phase.WRITE_M1, Phase.READ_TT), clientRecorder.phases());
+            }
+            
+            ticketData = client.getNewTicketData();
+        }
+        
+        Assert.assertEquals(1, stats.getOutcome(Outcome.FULL).getCount());
+        Assert.assertEquals(2, stats.getOutcome(Outcome.RESUMED).getCount());
+        Assert.assertEquals(3, stats.getPhase(Phase.PROCESS_M1).getCount());
+        Assert.assertEquals(3, stats.getPhase(Phase.ISSUE_TICKET).getCount());
+        Assert.assertEquals(1, stats.getPhase(Phase.SIGNATURE1).getCount());
+        Assert.assertTrue(stats.toString().contains("RESUMED: count=2"));
+    }
+    
+    @Test
+    public void testNoSuchServer() {
+        Recorder clientRecorder = new Recorder();
+        Recorder serverRecorder = new Recorder();
+        
+        SaltClientSession client = client(new Tunnel(), clientRecorder);
+        client.setWantedServer(CryptoTestData.cSig.pub());
+        SaltServerSession server = server(new Tunnel(), serverRecorder);
+        
+        HandshakeResult r1 = server.onMessage(client.start().getMessages()[0]);
+        Assert.assertEquals(HandshakeResult.State.FAILED, r1.getState());
+        Assert.assertEquals(Outcome.NO_SUCH_SERVER, serverRecorder.outcome);
+        
+        client.onMessage(r1.getMessages()[0]);
+        Assert.assertEquals(Outcome.NO_SUCH_SERVER, clientRecorder.outcome);
+    }
+    
+    @Test
+    public void testBadPeer() {
+        Recorder serverRecorder = new Recorder();
+        SaltServerSession server = server(new Tunnel(), serverRecorder);
+        
+        HandshakeResult r1 = server.onMessage(new byte[]{1, 2, 3, 4, 5, 6});
+        Assert.assertEquals(HandshakeResult.State.FAILED, r1.getState());
+        Assert.assertEquals(Outcome.BAD_PEER, serverRecorder.outcome);
+    }
+    
+    private static SaltClientSession client(Tunnel tunnel, HandshakeListener listener) {
+        SaltClientSession client = new SaltClientSession(CryptoTestData.aSig, tunnel.channel1());
+        client.setEncKeyPair(CryptoTestData.aEnc);
+        client.setHandshakeListener(listener);
+        return client;
+    }
+    
+    private static SaltServerSession server(Tunnel tunnel, HandshakeListener listener) {
+        SaltServerSession server = new SaltServerSession(CryptoTestData.bSig, tunnel.channel2());
+        server.setEncKeyPair(CryptoTestData.bEnc);
+        server.setHandshakeListener(listener);
+        return server;
+    }
+    
+    private static class Recorder implements HandshakeListener {
+        final List<Phase> phaseList = new ArrayList<Phase>();
+        final List<Long> nanos = new ArrayList<Long>();
+        Outcome outcome;
+        long totalNanos;
+        int endCount;
+        
+        public synchronized void phaseDone(Phase phase, long nanos) {
+            phaseList.add(phase);
+            this.nanos.add(nanos);
+        }
+        
+        public synchronized void handshakeEnded(Outcome outcome, long nanos) {
+            this.outcome = outcome;
+            this.totalNanos = nanos;
+            endCount++;
+        }
+        
+        synchronized EnumSet<Phase> phases() {
+            return phaseList.isEmpty() ? EnumSet.noneOf(Phase.class) : EnumSet.copyOf(phaseList);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package saltchannel.v2;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import saltchannel.util.CryptoTestData;
+import saltchannel.v2.packets.BadTicket;
+
+public class MappedTicketBitsTest {
+    private File file;
+    
+    @Before
+    public void before() throws IOException {
+        file = File.createTempFile("ticketbits", ".bin");
+        file.delete();
+    }
+    
+    @After
+    public void after() {
+        file.delete();
+    }
+
+    @Test
+    public void testIssueAndClear() throws IOException {
+        MappedTicketBits t = MappedTicketBits.open(file, 12, 100);
+        Assert.assertEquals(12, t.issue());
+        Assert.assertEquals(13, t.issue());
+        Assert.assertEquals(true, t.isValid(12));
+        Assert.assertEquals(false, t.isValid(14));
+        
+        Assert.assertEquals(true, t.clearIfValid(12));
+        Assert.assertEquals(false, t.clearIfValid(12));
+        Assert.assertEquals(false, t.clearIfValid(14));
+        t.close();
+    }
+    
+    @Test
+    public void testReopen() throws IOException {
+        MappedTicketBits t = MappedTicketBits.open(file, 12, 1000);
+        long a = t.issue();
+        long b = t.issue();
+        t.clearIfValid(a);
+        t.setKeyEpoch(7);
+        t.close();
+        
+        MappedTicketBits t2 = MappedTicketBits.open(file, 99999, 1000);
+        Assert.assertEquals(false, t2.isValid(a));
+        Assert.assertEquals(true, t2.isValid(b));
+        Assert.assertEquals(7, t2.getKeyEpoch());
+        
+        long c = t2.issue();
+        Assert.assertTrue("indexes must not be reused", c > b);
+        Assert.assertEquals(true, t2.clearIfValid(b));
+        t2.close();
+    }
+    
+    @Test
+    public void testReopenWithoutClose() throws IOException {
+        // As after a crash of the process; the reserved block is skipped.
+        
+        MappedTicketBits t = MappedTicketBits.open(file, 1, 5000);
+        long last = 0;
+        for (int i = 0; i < 1000; i++) {
+            last = t.issue();
+        }
+        
+        MappedTicketBits t2 = MappedTicketBits.open(file, 1, 5000);
+        Assert.assertTrue(t2.issue() > last + 1);
+        Assert.assertEquals(true, t2.isValid(last));
+        t.close();
+        t2.close();
+    }
+    
+    @Test(expected=IOException.class)
+    public void testBitSizeMismatch() throws IOException {
+        MappedTicketBits.open(file, 1, 100).close();
+        MappedTicketBits.open(file, 1, 1000);
+    }
+    
+    @Test(expected=IOException.class)
+    public void testBadFile() throws IOException {
+        RandomAccessFile f = new RandomAccessFile(file, "rw");
+        f.setLength(32 + 8 * 2);
+        f.close();
+        MappedTicketBits.open(file, 1, 100);
+    }
+    
+    @Test
+    public void testResumeHandlerRestart() throws IOException {
+        byte[] key = CryptoTestData.random32a;
+        byte[] clientSigKey = new byte[32];
+        byte[] sessionKey = new byte[32];
+        
+        MappedTicketBits bits = MappedTicketBits.open(file, 1000, 800);
+        ResumeHandler h1 = new ResumeHandler(key, bits);
+        byte[] ticket1 = h1.issueTicket(clientSigKey, sessionKey).ticket;
+        byte[] ticket2 = h1.issueTicket(clientSigKey, sessionKey).ticket;
+        h1.validateTicket(ticket1);
+        bits.close();
+        
+        ResumeHandler h2 = new ResumeHandler(key, MappedTicketBits.open(file, 1000, 800));
+        Assert.assertEquals(1001, h2.validateTicket(ticket2).ticketId);
+        
+        try {
+            h2.validateTicket(ticket1);
+            Assert.fail("replay accepted");
+        } catch (BadTicket e) {
+            // expected
+        }
+    }
+}
@@ -5,6 +5,7 @@ import org.junit.Test;
 import saltchannel.ByteChannel;
 import saltchannel.Tunnel;
 import saltchannel.util.CryptoTestData;
+import saltchannel.v2.packets.M1Message;
 
 /**
  * Testing full client-server sessions with resume tickets.
@@ -87,6 +88,164 @@ public class ResumeTest {
         Assert.assertArrayEquals(new byte[]{1, 2, 3}, app2);
     }
 
+    @Test
+    public void testEarlyData() {
+        // Application message sent together with M1, server echoes it.
+        
+        ResumeHandler resumeHandler = new ResumeHandler(CryptoTestData.random32a, 10, 100*1000);
+        ClientTicketData ticketData = startSession1(resumeHandler);
+        
+        SaltClientSession client = earlyDataSession(resumeHandler, ticketData, true, new byte[]{1, 2, 3});
+        
+        Assert.assertTrue(client.isEarlyDataAccepted());
+        Assert.assertArrayEquals(new byte[]{1, 2, 3}, client.getChannel().read());
+        Assert.assertTrue(client.getNewTicketData() != null);
+    }
+    
+    @Test
+    public void testEarlyDataMultipleMessages() {
+        ResumeHandler resumeHandler = new ResumeHandler(CryptoTestData.random32a, 10, 100*1000);
+        ClientTicketData ticketData = startSession1(resumeHandler);
+        
+        SaltClientSession client = earlyDataSession(resumeHandler, ticketData, true, 
+                new byte[]{1}, new byte[]{2, 2}, new byte[]{3, 3, 3});
+        
+        Assert.assertTrue(client.isEarlyDataAccepted());
+        Assert.assertArrayEquals(new byte[]{1}, client.getChannel().read());
+        Assert.assertArrayEquals(new byte[]{2, 2}, client.getChannel().read());
+        Assert.assertArrayEquals(new byte[]{3, 3, 3}, client.getChannel().read());
+    }
+    
+    @Test
+    public void testEarlyDataNotAccepted() {
+        // Server does not accept early data, full handshake is made and
+        // the client sends the message again.
+        
+        ResumeHandler resumeHandler = new ResumeHandler(CryptoTestData.random32a, 10, 100*1000);
+        ClientTicketData ticketData = startSession1(resumeHandler);
+        
+        SaltClientSession client = earlyDataSession(resumeHandler, ticketData, false, new byte[]{1, 2, 3});
+        
+        Assert.assertFalse(client.isEarlyDataAccepted());
+        client.getChannel().write(false, new byte[]{4, 5});
+        Assert.assertArrayEquals(new byte[]{4, 5}, client.getChannel().read());
+    }
+    
+    @Test
+    public void testEarlyDataReplayed() {
+        // The same ticket is used twice, the second time the early data 
+        // must not be accepted.
+        
+        ResumeHandler resumeHandler = new ResumeHandler(CryptoTestData.random32a, 10, 100*1000);
+        ClientTicketData ticketData = startSession1(resumeHandler);
+        
+        SaltClientSession client1 = earlyDataSession(resumeHandler, ticketData, true, new byte[]{1});
+        Assert.assertTrue(client1.isEarlyDataAccepted());
+        Assert.assertArrayEquals(new byte[]{1}, client1.getChannel().read());
+        
+        SaltClientSession client2 = earlyDataSession(resumeHandler, ticketData, true, new byte[]{1});
+        Assert.assertFalse(client2.isEarlyDataAccepted());
+        client2.getChannel().write(false, new byte[]{2});
+        Assert.assertArrayEquals(new byte[]{2}, client2.getChannel().read());
+    }
+    
+    @Test
+    public void testEarlyDataNotSentTwice() {
+        // The M1 with early data of the first client is lost. The second client
+        // with the same ticket data must not encrypt with the same key and nonce.
+        
+        ResumeHandler resumeHandler = new ResumeHandler(CryptoTestData.random32a, 10, 100*1000);
+        ClientTicketData ticketData = startSession1(resumeHandler);
+        
+        SaltClientSession client1 = new SaltClientSession(CryptoTestData.aSig, new Tunnel().channel1());
+        client1.setEncKeyPair(CryptoTestData.aEnc);
+        client1.setTicketData(ticketData);
+        client1.setEarlyData(new byte[]{1});
+        Assert.assertEquals(2, client1.start().getMessages().length);
+        Assert.assertTrue(ticketData.earlyDataSent);
+        
+        SaltClientSession client2 = new SaltClientSession(CryptoTestData.aSig, new Tunnel().channel1());
+        client2.setEncKeyPair(CryptoTestData.aEnc);
+        client2.setTicketData(ticketData);
+        client2.setEarlyData(new byte[]{1});
+        byte[][] messages = client2.start().getMessages();
+        Assert.assertEquals(1, messages.length);
+        Assert.assertFalse(M1Message.fromBytes(messages[0], 0).ticketIncluded());
+        
+        SaltClientSession client3 = earlyDataSession(resumeHandler, ticketData, true, new byte[]{1});
+        Assert.assertFalse(client3.isEarlyDataAccepted());
+        client3.getChannel().write(false, new byte[]{2});
+        Assert.assertArrayEquals(new byte[]{2}, client3.getChannel().read());
+    }
+    
+    @Test
+    public void testEarlyDataPushStyle() {
+        ResumeHandler resumeHandler = new ResumeHandler(CryptoTestData.random32a, 10, 100*1000);
+        ClientTicketData ticketData = startSession1(resumeHandler);
+        
+        SaltClientSession client = new SaltClientSession(CryptoTestData.aSig, new Tunnel().channel1());
+        client.setEncKeyPair(CryptoTestData.aEnc);
+        client.setTicketRequested(true);
+        client.setTicketData(ticketData);
+        client.setEarlyData(new byte[]{7, 7});
+        
+        SaltServerSession server = new SaltServerSession(CryptoTestData.bSig, new Tunnel().channel2());
+        server.setEncKeyPair(CryptoTestData.bEnc);
+        server.setResumeHandler(resumeHandler);
+        server.setEarlyDataAccepted(true);
+        
+        byte[][] m1AndEarlyData = client.start().getMessages();
+        Assert.assertEquals(2, m1AndEarlyData.length);
+        
+        HandshakeResult r1 = server.onMessage(m1AndEarlyData[0]);
+        Assert.assertEquals(HandshakeResult.State.NEED_MORE, r1.getState());
+        HandshakeResult r2 = server.onMessage(m1AndEarlyData[1]);
+        Assert.assertEquals(HandshakeResult.State.DONE, r2.getState());
+        Assert.assertArrayEquals(new byte[]{7, 7}, server.getChannel().read());
+        
+        HandshakeResult r3 = client.onMessage(r1.getMessages()[0]);
+        Assert.assertEquals(HandshakeResult.State.DONE, r3.getState());
+        Assert.assertTrue(client.isEarlyDataAccepted());
+    }
+    
+    /**
+     * Runs a resumed session with early data. The server echoes 
+     * the first application message it reads.
+     */
+    private SaltClientSession earlyDataSession(ResumeHandler resumeHandler, ClientTicketData ticketData, 
+            boolean accepted, byte[]... earlyData) {
+        Tunnel tunnel = new Tunnel();
+        SaltClientSession client = new SaltClientSession(CryptoTestData.aSig, tunnel.channel1());
+        client.setEncKeyPair(CryptoTestData.aEnc);
+        client.setTicketRequested(true);
+        client.setTicketData(ticketData);
+        client.setEarlyData(earlyData);
+        
+        final SaltServerSession server = new SaltServerSession(CryptoTestData.bSig, tunnel.channel2());
+        server.setEncKeyPair(CryptoTestData.bEnc);
+        server.setResumeHandler(resumeHandler);
+        server.setEarlyDataAccepted(accepted);
+        
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                server.handshake();
+                ApplicationChannel channel = server.getChannel();
+                byte[] app1 = channel.read();
+                if (channel.availableFromMultiAppPacket() == 0) {
+                    channel.write(true, app1);
+                } else {
+                    byte[] app2 = channel.read();
+                    byte[] app3 = channel.read();
+                    channel.write(true, app1, app2, app3);
+                }
+            }
+        });
+        thread.start();
+        
+        client.handshake();
+        return client;
+    }
+
     private ClientTicketData startSession1(ResumeHandler resumeHandler) {
         Tunnel tunnel = new Tunnel();
         
@@ -1,7 +1,9 @@
 package saltchannel.v2;
 
+import org.junit.Assert;
 import org.junit.Test;
 
+import saltchannel.BadPeer;
 import saltchannel.Tunnel;
 import saltchannel.util.CryptoTestData;
 
@@ -16,4 +18,104 @@ public class SaltClientSessionTest {
         SaltClientSession s = new SaltClientSession(CryptoTestData.aSig, tunnel.channel1());
         s.handshake();
     }
+    
+    @Test
+    public void testPushStyleHandshake() {
+        // Both peers are driven with the push-style API on one thread.
+        
+        Tunnel tunnel = new Tunnel();
+        SaltClientSession client = createClient(tunnel);
+        SaltServerSession server = createServer(tunnel);
+        
+        HandshakeResult c1 = client.start();
+        Assert.assertEquals(HandshakeResult.State.NEED_MORE, c1.getState());
+        Assert.assertEquals(1, c1.getMessages().length);
+        
+        HandshakeResult s1 = server.onMessage(c1.getMessages()[0]);
+        Assert.assertEquals(2, s1.getMessages().length);
+        
+        HandshakeResult c2 = client.onMessage(s1.getMessages()[0]);
+        Assert.assertEquals(HandshakeResult.State.NEED_MORE, c2.getState());
+        Assert.assertEquals(0, c2.getMessages().length);
+        
+        HandshakeResult c3 = client.onMessage(s1.getMessages()[1]);
+        Assert.assertEquals(HandshakeResult.State.DONE, c3.getState());
+        Assert.assertEquals(1, c3.getMessages().length);
+        
+        HandshakeResult s2 = server.onMessage(c3.getMessages()[0]);
+        Assert.assertEquals(HandshakeResult.State.DONE, s2.getState());
+        Assert.assertArrayEquals(CryptoTestData.bSig.pub(), client.getServerSigKey());
+        
+        client.getChannel().write(false, new byte[]{1, 2, 3});
+        Assert.assertArrayEquals(new byte[]{1, 2, 3}, server.getChannel().read());
+    }
+    
+    @Test
+    public void testPushStyleResume() {
+        ResumeHandler resumeHandler = new ResumeHandler(CryptoTestData.random32a, 10, 100*1000);
+        
+        Tunnel tunnel = new Tunnel();
+        SaltClientSession client = createClient(tunnel);
+        client.setTicketRequested(true);
+        SaltServerSession server = createServer(tunnel);
+        server.setResumeHandler(resumeHandler);
+        
+        byte[] m1 = client.start().getMessages()[0];
+        byte[][] m2m3 = server.onMessage(m1).getMessages();
+        client.onMessage(m2m3[0]);
+        HandshakeResult c3 = client.onMessage(m2m3[1]);
+        Assert.assertEquals(HandshakeResult.State.NEED_MORE, c3.getState());
+        
+        HandshakeResult s2 = server.onMessage(c3.getMessages()[0]);
+        Assert.assertEquals(HandshakeResult.State.DONE, s2.getState());
+        Assert.assertEquals(1, s2.getMessages().length);
+        
+        HandshakeResult c4 = client.onMessage(s2.getMessages()[0]);
+        Assert.assertEquals(HandshakeResult.State.DONE, c4.getState());
+        Assert.assertNotNull(client.getNewTicketData());
+        
+        // Second session, resumed.
+        
+        Tunnel tunnel2 = new Tunnel();
+        SaltClientSession client2 = createClient(tunnel2);
+        client2.setTicketRequested(true);
+        client2.setTicketData(client.getNewTicketData());
+        SaltServerSession server2 = createServer(tunnel2);
+        server2.setResumeHandler(resumeHandler);
+        
+        HandshakeResult s = server2.onMessage(client2.start().getMessages()[0]);
+        Assert.assertEquals(HandshakeResult.State.DONE, s.getState());
+        HandshakeResult c = client2.onMessage(s.getMessages()[0]);
+        Assert.assertEquals(HandshakeResult.State.DONE, c.getState());
+        
+        server2.getChannel().write(false, new byte[]{4});
+        Assert.assertArrayEquals(new byte[]{4}, client2.getChannel().read());
+    }
+    
+    @Test
+    public void testPushStyleBadM3() {
+        Tunnel tunnel = new Tunnel();
+        SaltClientSession client = createClient(tunnel);
+        SaltServerSession server = createServer(tunnel);
+        
+        byte[][] m2m3 = server.onMessage(client.start().getMessages()[0]).getMessages();
+        client.onMessage(m2m3[0]);
+        m2m3[1][m2m3[1].length - 1] ^= 1;
+        
+        HandshakeResult r = client.onMessage(m2m3[1]);
+        Assert.assertEquals(HandshakeResult.State.FAILED, r.getState());
+        Assert.assertTrue(r.getException() instanceof BadPeer);
+    }
+    
+    private SaltClientSession createClient(Tunnel tunnel) {
+        SaltClientSession client = new SaltClientSession(CryptoTestData.aSig, tunnel.channel1());
+        client.setEncKeyPair(CryptoTestData.aEnc);
+        return client;
+    }
+    
+    private SaltServerSession createServer(Tunnel tunnel) {
+        SaltServerSession server = new SaltServerSession(CryptoTestData.bSig, tunnel.channel2());
+        server.setEncKeyPair(CryptoTestData.bEnc);
+        return server;
+    }
 }
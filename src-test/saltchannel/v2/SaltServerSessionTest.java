@@ -1,8 +1,11 @@
 package saltchannel.v2;
 
+import org.junit.Assert;
 import org.junit.Test;
 
+import saltchannel.ByteChannel;
 import saltchannel.Tunnel;
+import saltchannel.a1a2.A1Packet;
 import saltchannel.util.CryptoTestData;
 
 /**
@@ -16,4 +19,67 @@ public class SaltServerSessionTest {
         SaltServerSession s = new SaltServerSession(CryptoTestData.bSig, tunnel.channel2());
         s.handshake();
     }
+    
+    @Test
+    public void testPushStyleHandshake() {
+        // The server is driven with onMessage(), the client uses 
+        // the blocking handshake.
+        
+        Tunnel tunnel = new Tunnel();
+        final SaltClientSession client = new SaltClientSession(CryptoTestData.aSig, tunnel.channel1());
+        client.setEncKeyPair(CryptoTestData.aEnc);
+        
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                client.handshake();
+                client.getChannel().write(true, new byte[]{1, 2});
+            }
+        });
+        thread.start();
+        
+        ByteChannel clear = tunnel.channel2();
+        SaltServerSession server = new SaltServerSession(CryptoTestData.bSig, clear);
+        server.setEncKeyPair(CryptoTestData.bEnc);
+        
+        HandshakeResult r1 = server.onMessage(clear.read());
+        Assert.assertEquals(HandshakeResult.State.NEED_MORE, r1.getState());
+        Assert.assertEquals(2, r1.getMessages().length);
+        clear.write(false, r1.getMessages());
+        
+        HandshakeResult r2 = server.onMessage(clear.read());
+        Assert.assertEquals(HandshakeResult.State.DONE, r2.getState());
+        Assert.assertEquals(0, r2.getMessages().length);
+        Assert.assertArrayEquals(CryptoTestData.aSig.pub(), server.getClientSigKey());
+        
+        Assert.assertArrayEquals(new byte[]{1, 2}, server.getChannel().read());
+        Assert.assertTrue(server.getChannel().lastFlag());
+    }
+    
+    @Test
+    public void testPushStyleNoSuchServer() {
+        Tunnel tunnel = new Tunnel();
+        SaltServerSession server = new SaltServerSession(CryptoTestData.bSig, tunnel.channel2());
+        server.setEncKeyPair(CryptoTestData.bEnc);
+        
+        A1Packet a1 = new A1Packet();
+        a1.addressType = A1Packet.ADDRESS_TYPE_PUBKEY;
+        a1.address = CryptoTestData.aSig.pub();
+        byte[] a1Bytes = new byte[a1.getSize()];
+        a1.toBytes(a1Bytes, 0);
+        
+        HandshakeResult r = server.onMessage(a1Bytes);
+        Assert.assertEquals(HandshakeResult.State.A2_DONE, r.getState());
+        Assert.assertEquals(1, r.getMessages().length);
+        Assert.assertTrue(r.isLast());
+    }
+    
+    @Test(expected=IllegalStateException.class)
+    public void testPushStyleAfterEnd() {
+        SaltServerSession server = new SaltServerSession(CryptoTestData.bSig, new Tunnel().channel2());
+        server.setEncKeyPair(CryptoTestData.bEnc);
+        HandshakeResult r = server.onMessage(new byte[]{1, 2, 3});
+        Assert.assertEquals(HandshakeResult.State.FAILED, r.getState());
+        Assert.assertNotNull(r.getException());
+        server.onMessage(new byte[]{1, 2, 3});
+    }
 }
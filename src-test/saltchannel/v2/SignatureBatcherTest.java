@@ -0,0 +1,106 @@
+package saltchannel.v2;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import saltaa.BadSignatureException;
+import saltaa.SaltLib;
+import saltaa.SaltLibFactory;
+import saltchannel.Tunnel;
+import saltchannel.util.CryptoTestData;
+
+public class SignatureBatcherTest {
+
+    @Test
+    public void testConcurrentCallersOneBad() throws InterruptedException {
+        final SaltLib salt = SaltLibFactory.getLib(SaltLibFactory.LibType.JAVA);
+        final SignatureBatcher batcher = new SignatureBatcher(salt, 16, 20000);
+        final int count = 10;
+        final int bad = 4;
+        final CountDownLatch done = new CountDownLatch(count);
+        final AtomicInteger failures = new AtomicInteger();
+        final AtomicInteger wrongResults = new AtomicInteger();
+
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            new Thread(new Runnable() {
+                public void run() {
+                    byte[] sm = sign(salt, index);
+                    if (index == bad) {
+                        sm[sm.length - 1] ^= 1;
+                    }
+
+                    try {
+                        batcher.verify(sm, CryptoTestData.aSig.pub());
+                        if (index == bad) {
+                            wrongResults.incrementAndGet();
+                        }
+                    } catch (BadSignatureException e) {
+                        failures.incrementAndGet();
+                        if (index != bad) {
+                            wrongResults.incrementAndGet();
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        done.await();
+        batcher.shutdown();
+
+        Assert.assertEquals(1, failures.get());
+        Assert.assertEquals(0, wrongResults.get());
+        Assert.assertEquals(count, batcher.getSignatureCount());
+        Assert.assertTrue(batcher.getBatchCount() < count);
+    }
+
+    @Test(expected=BadSignatureException.class)
+    public void testAfterShutdown() {
+        SaltLib salt = SaltLibFactory.getLib(SaltLibFactory.LibType.JAVA);
+        SignatureBatcher batcher = new SignatureBatcher(salt, 16, 1000);
+        batcher.shutdown();
+
+        byte[] sm = sign(salt, 1);
+        batcher.verify(sm, CryptoTestData.aSig.pub());
+
+        sm[0] ^= 1;
+        batcher.verify(sm, CryptoTestData.aSig.pub());
+    }
+
+    @Test
+    public void testHandshake() {
+        Tunnel tunnel = new Tunnel();
+        final SaltClientSession client = new SaltClientSession(CryptoTestData.aSig, tunnel.channel1());
+        client.setEncKeyPair(CryptoTestData.aEnc);
+
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                client.handshake();
+                client.getChannel().write(true, new byte[]{1});
+            }
+        });
+        thread.start();
+
+        SignatureBatcher batcher = new SignatureBatcher();
+        SaltServerSession server = new SaltServerSession(CryptoTestData.bSig, tunnel.channel2());
+        server.setEncKeyPair(CryptoTestData.bEnc);
+        server.setSignatureBatcher(batcher);
+        server.handshake();
+
+        Assert.assertArrayEquals(new byte[]{1}, server.getChannel().read());
+        Assert.assertEquals(1, batcher.getSignatureCount());
+        batcher.shutdown();
+    }
+
+    private static byte[] sign(SaltLib salt, int index) {
+        byte[] m = new byte[]{1, 2, 3, (byte) index};
+        byte[] sm = new byte[SaltLib.crypto_sign_BYTES + m.length];
+        salt.crypto_sign(sm, m, CryptoTestData.aSig.sec());
+        return sm;
+    }
+}
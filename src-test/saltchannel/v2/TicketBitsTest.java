@@ -1,5 +1,9 @@
 package saltchannel.v2;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -29,4 +33,77 @@ public class TicketBitsTest {
         Assert.assertEquals(true, t.isValid(12));
         Assert.assertEquals(false, t.isValid(13));
     }
+    
+    @Test
+    public void testClearIfValid() {
+        TicketBits t = new TicketBits(12, 100);
+        long ticketIndex = t.issue();
+        Assert.assertEquals(true, t.clearIfValid(ticketIndex));
+        Assert.assertEquals(false, t.clearIfValid(ticketIndex));
+        Assert.assertEquals(false, t.clearIfValid(ticketIndex + 1));
+    }
+    
+    @Test
+    public void testOutOfRangeAfterWrap() {
+        TicketBits t = new TicketBits(1, 64);
+        long old = t.issue();
+        for (int i = 0; i < 64; i++) {
+            t.issue();
+        }
+        
+        Assert.assertEquals(false, t.isValid(old));
+        Assert.assertEquals(false, t.clearIfValid(old));
+        Assert.assertEquals(true, t.clearIfValid(old + 64));
+    }
+    
+    @Test
+    public void testConcurrentIssueAndClear() throws InterruptedException {
+        // Each ticket is validated twice, by two threads. 
+        // Exactly one validation of each ticket must succeed.
+        
+        final TicketBits t = new TicketBits(1000, 100000);
+        final int threadCount = 8;
+        final int perThread = 5000;
+        final long[][] issued = new long[threadCount][perThread];
+        final AtomicInteger accepted = new AtomicInteger();
+        
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < threadCount; i++) {
+            final int threadIndex = i;
+            threads.add(new Thread(new Runnable() {
+                public void run() {
+                    for (int j = 0; j < perThread; j++) {
+                        issued[threadIndex][j] = t.issue();
+                    }
+                }
+            }));
+        }
+        runAll(threads);
+        
+        threads.clear();
+        for (int i = 0; i < 2 * threadCount; i++) {
+            final int threadIndex = i % threadCount;
+            threads.add(new Thread(new Runnable() {
+                public void run() {
+                    for (int j = 0; j < perThread; j++) {
+                        if (t.clearIfValid(issued[threadIndex][j])) {
+                            accepted.incrementAndGet();
+                        }
+                    }
+                }
+            }));
+        }
+        runAll(threads);
+        
+        Assert.assertEquals(threadCount * perThread, accepted.get());
+    }
+    
+    private static void runAll(List<Thread> threads) throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
 }
@@ -0,0 +1,99 @@
+package saltchannel.v2;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import saltchannel.util.CryptoTestData;
+import saltchannel.v2.packets.BadTicket;
+
+public class TicketKeyRingTest {
+    private static final byte[] KEY1 = CryptoTestData.random32a;
+    private static final byte[] KEY2 = key(2);
+    private static final byte[] KEY3 = key(3);
+
+    @Test
+    public void testOldTicketValidAfterRotation() {
+        TicketKeyRing ring = new TicketKeyRing(1, KEY1);
+        ResumeHandler h = new ResumeHandler(ring, new TicketBits(1000, 800));
+        byte[] oldTicket = issue(h);
+        
+        ring.rotate(2, KEY2, 60000);
+        byte[] newTicket = issue(h);
+        
+        Assert.assertEquals(2, ring.getIssueEpoch());
+        Assert.assertEquals(Arrays.asList(1, 2), ring.getActiveEpochs());
+        Assert.assertEquals(1000, h.validateTicket(oldTicket).ticketId);
+        Assert.assertEquals(1001, h.validateTicket(newTicket).ticketId);
+    }
+    
+    @Test(expected=BadTicket.class)
+    public void testRetiredKey() {
+        TicketKeyRing ring = new TicketKeyRing(1, KEY1);
+        ResumeHandler h = new ResumeHandler(ring, new TicketBits(1000, 800));
+        byte[] oldTicket = issue(h);
+        
+        ring.rotate(2, KEY2, 60000);
+        ring.retire(1);
+        
+        Assert.assertEquals(Arrays.asList(2), ring.getActiveEpochs());
+        h.validateTicket(oldTicket);
+    }
+    
+    @Test
+    public void testScheduledRetirement() throws InterruptedException {
+        TicketKeyRing ring = new TicketKeyRing(1, KEY1);
+        ResumeHandler h = new ResumeHandler(ring, new TicketBits(1000, 800));
+        byte[] oldTicket = issue(h);
+        
+        ring.rotate(2, KEY2, 50);
+        Thread.sleep(100);
+        ring.rotate(3, KEY3, 60000);
+        
+        Assert.assertEquals(Arrays.asList(2, 3), ring.getActiveEpochs());
+        
+        try {
+            h.validateTicket(oldTicket);
+            Assert.fail("expected BadTicket");
+        } catch (BadTicket e) {
+            // expected
+        }
+        
+        ring.rotate(1, KEY1, 60000);    // Epoch ids can be reused once retired.
+        Assert.assertEquals(1, ring.getIssueEpoch());
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void testActiveEpochCannotBeReused() {
+        TicketKeyRing ring = new TicketKeyRing(1, KEY1);
+        ring.rotate(2, KEY2, 60000);
+        ring.rotate(1, KEY3, 60000);
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void testCannotRetireIssuingKey() {
+        new TicketKeyRing(1, KEY1).retire(1);
+    }
+    
+    @Test
+    public void testSingleKeyHandlerUsesDefaultEpoch() {
+        ResumeHandler h = new ResumeHandler(KEY1, 1000, 800);
+        byte[] ticket = issue(h);
+        
+        TicketKeyRing ring = new TicketKeyRing(ResumeHandler.DEFAULT_KEY_EPOCH, KEY1);
+        ResumeHandler h2 = new ResumeHandler(ring, new TicketBits(1000, 800));
+        issue(h2);
+        Assert.assertEquals(1000, h2.validateTicket(ticket).ticketId);
+    }
+    
+    private static byte[] issue(ResumeHandler h) {
+        return h.issueTicket(new byte[32], new byte[32]).ticket;
+    }
+    
+    private static byte[] key(int value) {
+        byte[] key = new byte[32];
+        Arrays.fill(key, (byte) value);
+        return key;
+    }
+}
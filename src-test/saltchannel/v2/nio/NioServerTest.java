@@ -0,0 +1,377 @@
+package saltchannel.v2.nio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import saltchannel.ByteChannel;
+import saltchannel.ComException;
+import saltchannel.SocketChannel;
+import saltchannel.a1a2.A1Client;
+import saltchannel.a1a2.A2Packet;
+import saltchannel.testutil.ToWaitFor;
+import saltchannel.util.CryptoPool;
+import saltchannel.util.CryptoTestData;
+import saltchannel.v2.ClientTicketData;
+import saltchannel.v2.ResumeHandler;
+import saltchannel.v2.SaltClientSession;
+
+public class NioServerTest {
+    private NioServer server;
+    private List<Socket> sockets = new ArrayList<Socket>();
+
+    @After
+    public void tearDown() throws Exception {
+        for (Socket s : sockets) {
+            s.close();
+        }
+
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testEcho() throws Exception {
+        startServer(new EchoHandler(), null);
+
+        SaltClientSession client = newClient();
+        client.handshake();
+
+        ByteChannel app = client.getChannel();
+        app.write(false, new byte[]{1, 2, 3});
+        Assert.assertArrayEquals(new byte[]{1, 2, 3}, app.read());
+
+        app.write(false, new byte[]{4}, new byte[]{5, 6});    // MultiAppPacket
+        Assert.assertArrayEquals(new byte[]{4}, app.read());
+        Assert.assertArrayEquals(new byte[]{5, 6}, app.read());
+    }
+
+    @Test
+    public void testManyConnections() throws Exception {
+        startServer(new EchoHandler(), null);
+        int count = 200;
+
+        List<SaltClientSession> clients = new ArrayList<SaltClientSession>();
+        for (int i = 0; i < count; i++) {
+            clients.add(newClient());
+        }
+
+        Assert.assertTrue(waitForConnectionCount(count));
+
+        for (int i = 0; i < count; i++) {
+            SaltClientSession client = clients.get(i);
+            client.handshake();
+            client.getChannel().write(false, new byte[]{(byte) i});
+        }
+
+        for (int i = 0; i < count; i++) {
+            byte[] echo = clients.get(i).getChannel().read();
+            Assert.assertArrayEquals(new byte[]{(byte) i}, echo);
+        }
+    }
+
+    @Test
+    public void testLargeMessage() throws Exception {
+        startServer(new EchoHandler(), null);
+
+        SaltClientSession client = newClient();
+        client.handshake();
+
+        byte[] large = new byte[300*1000];
+        for (int i = 0; i < large.length; i++) {
+            large[i] = (byte) i;
+        }
+
+        client.getChannel().write(false, large);
+        Assert.assertArrayEquals(large, client.getChannel().read());
+    }
+
+    @Test
+    public void testManyMessagesInOneWrite() throws Exception {
+        // 100 messages too large for a MultiAppPacket: 100 records, 
+        // queued as 200 buffers, more than one write batch.
+        
+        final int count = 100;
+        startServer(new NioServer.Handler() {
+            public void sessionStarted(NioSession session) {
+            }
+            
+            public void messageReceived(NioSession session, byte[] message) {
+                byte[][] messages = new byte[count][];
+                for (int i = 0; i < count; i++) {
+                    messages[i] = new byte[70*1000];
+                    messages[i][0] = (byte) i;
+                }
+                session.write(false, messages);
+            }
+            
+            public void sessionClosed(NioSession session, Exception cause) {
+            }
+        }, null);
+        
+        SaltClientSession client = newClient();
+        client.handshake();
+        client.getChannel().write(false, new byte[]{1});
+        
+        for (int i = 0; i < count; i++) {
+            byte[] m = client.getChannel().read();
+            Assert.assertEquals(70*1000, m.length);
+            Assert.assertEquals((byte) i, m[0]);
+        }
+    }
+
+    @Test
+    public void testLastFlagClosesSession() throws Exception {
+        final ToWaitFor closed = new ToWaitFor();
+        final AtomicReference<Exception> cause = new AtomicReference<Exception>(new Exception("not set"));
+
+        startServer(new EchoHandler() {
+            public void sessionClosed(NioSession session, Exception e) {
+                cause.set(e);
+                closed.reportHappened();
+            }
+        }, null);
+
+        SaltClientSession client = newClient();
+        client.handshake();
+        client.getChannel().write(true, new byte[]{1});
+
+        Assert.assertTrue(closed.waitForIt(2000));
+        Assert.assertNull(cause.get());
+    }
+
+    @Test
+    public void testA1A2() throws Exception {
+        startServer(new EchoHandler(), null);
+
+        A1Client client = new A1Client(new SocketChannel(connect()));
+        A2Packet a2 = client.go();
+
+        Assert.assertEquals("SCv2------", a2.prots[0].p1());
+    }
+
+    @Test
+    public void testResume() throws Exception {
+        ResumeHandler resumeHandler = new ResumeHandler(CryptoTestData.random32a, 10, 100*1000);
+        startServer(new EchoHandler(), resumeHandler);
+
+        SaltClientSession client1 = newClient();
+        client1.setTicketRequested(true);
+        client1.handshake();
+        client1.getChannel().write(false, new byte[]{1});
+        client1.getChannel().read();
+        ClientTicketData ticketData = client1.getNewTicketData();
+        Assert.assertNotNull(ticketData);
+
+        SaltClientSession client2 = newClient();
+        client2.setTicketRequested(true);
+        client2.setTicketData(ticketData);
+        client2.handshake();
+        client2.getChannel().write(false, new byte[]{2});
+        Assert.assertArrayEquals(new byte[]{2}, client2.getChannel().read());
+    }
+
+    @Test
+    public void testResumeLargeEarlyData() throws Exception {
+        // The early data record is larger than a handshake message.
+        resumeWithLargeEarlyData(null);
+    }
+
+    @Test
+    public void testResumeLargeEarlyDataCryptoPool() throws Exception {
+        CryptoPool pool = new CryptoPool(2, 100);
+        try {
+            resumeWithLargeEarlyData(pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void resumeWithLargeEarlyData(CryptoPool pool) throws Exception {
+        server = new NioServer(CryptoTestData.bSig, new EchoHandler());
+        server.setResumeHandler(new ResumeHandler(CryptoTestData.random32a, 10, 100*1000));
+        server.setEarlyDataAccepted(true);
+        server.setCryptoExecutor(pool);
+        server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+        SaltClientSession client1 = newClient();
+        client1.setTicketRequested(true);
+        client1.handshake();
+        client1.getChannel().write(false, new byte[]{1});
+        client1.getChannel().read();
+        ClientTicketData ticketData = client1.getNewTicketData();
+
+        byte[] earlyData = new byte[2000];
+        earlyData[earlyData.length - 1] = 1;
+
+        SaltClientSession client2 = newClient();
+        client2.setTicketRequested(true);
+        client2.setTicketData(ticketData);
+        client2.setEarlyData(earlyData);
+        client2.handshake();
+        Assert.assertTrue(client2.isEarlyDataAccepted());
+        Assert.assertArrayEquals(earlyData, client2.getChannel().read());
+    }
+
+    @Test
+    public void testBadSizeClosesConnection() throws Exception {
+        startServer(new EchoHandler(), null);
+
+        Socket socket = connect();
+        OutputStream out = socket.getOutputStream();
+        int size = NioServer.MAX_HANDSHAKE_MESSAGE_SIZE + 1;
+        out.write(new byte[]{(byte) size, (byte) (size >>> 8), 0, 0});
+        out.flush();
+
+        InputStream in = socket.getInputStream();
+        socket.setSoTimeout(2000);
+        Assert.assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void testHandshakeTimeout() throws Exception {
+        server = new NioServer(CryptoTestData.bSig, new EchoHandler());
+        server.setHandshakeTimeout(1000);
+        server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+        SaltClientSession client = newClient();
+        client.handshake();
+
+        Socket idle = connect();
+        idle.setSoTimeout(5000);
+        Assert.assertEquals(-1, idle.getInputStream().read());
+        Assert.assertTrue(waitForConnectionCount(1));
+
+        // The completed session is not closed.
+        ByteChannel app = client.getChannel();
+        app.write(false, new byte[]{1});
+        Assert.assertArrayEquals(new byte[]{1}, app.read());
+    }
+
+    private void startServer(NioServer.Handler handler, ResumeHandler resumeHandler) throws IOException {
+        server = new NioServer(CryptoTestData.bSig, handler);
+        server.setEventLoopCount(2);
+        if (resumeHandler != null) {
+            server.setResumeHandler(resumeHandler);
+        }
+        server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+        sockets.add(socket);
+        return socket;
+    }
+
+    private SaltClientSession newClient() throws IOException {
+        SaltClientSession client = new SaltClientSession(CryptoTestData.aSig, new SocketChannel(connect()));
+        client.setEncKeyPair(CryptoTestData.aEnc);
+        return client;
+    }
+
+    private boolean waitForConnectionCount(int count) throws InterruptedException {
+        for (int i = 0; i < 200; i++) {
+            if (server.getConnectionCount() == count) {
+                return true;
+            }
+            Thread.sleep(10);
+        }
+        return false;
+    }
+
+    private static class EchoHandler implements NioServer.Handler {
+        public void sessionStarted(NioSession session) {
+        }
+
+        public void messageReceived(NioSession session, byte[] message) {
+            session.write(false, message);
+        }
+
+        public void sessionClosed(NioSession session, Exception cause) {
+        }
+    }
+
+    @Test
+    public void testCryptoPool() throws Exception {
+        CryptoPool pool = new CryptoPool(2, 100);
+        server = new NioServer(CryptoTestData.bSig, new EchoHandler());
+        server.setEventLoopCount(1);
+        server.setCryptoExecutor(pool);
+        server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        
+        try {
+            for (int i = 0; i < 20; i++) {
+                SaltClientSession client = newClient();
+                client.setBufferM4(i % 2 == 0);    // M4 and app data in one write
+                client.handshake();
+                client.getChannel().write(false, new byte[]{(byte) i});
+                Assert.assertArrayEquals(new byte[]{(byte) i}, client.getChannel().read());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    @Test
+    public void testCryptoPoolLargeMessageAfterM4() throws Exception {
+        // The large message arrives while M4 is processed; it is read
+        // when the client has been authenticated.
+        CryptoPool pool = new CryptoPool(2, 100);
+        server = new NioServer(CryptoTestData.bSig, new EchoHandler());
+        server.setCryptoExecutor(pool);
+        server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        
+        try {
+            SaltClientSession client = newClient();
+            client.setBufferM4(true);
+            client.handshake();
+            
+            byte[] large = new byte[100*1000];
+            large[large.length - 1] = 1;
+            client.getChannel().write(false, large);
+            Assert.assertArrayEquals(large, client.getChannel().read());
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    @Test
+    public void testCryptoPoolFull() throws Exception {
+        final ToWaitFor release = new ToWaitFor();
+        Runnable blocker = new Runnable() {
+            public void run() {
+                release.waitForIt(10000);
+            }
+        };
+        
+        CryptoPool pool = new CryptoPool(1, 1);
+        pool.execute(blocker);
+        pool.execute(blocker);
+        
+        server = new NioServer(CryptoTestData.bSig, new EchoHandler());
+        server.setCryptoExecutor(pool);
+        server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        
+        try {
+            SaltClientSession client = newClient();
+            client.handshake();
+            Assert.fail("expected ComException");
+        } catch (ComException e) {
+            // Expected, the connection is closed by the server.
+        } finally {
+            release.reportHappened();
+            pool.shutdown();
+        }
+    }
+}
@@ -16,6 +16,7 @@ import saltchannel.dev.ServerSessionFactory;
 import saltchannel.util.CryptoTestData;
 import saltchannel.util.KeyPair;
 import saltchannel.util.Pair;
+import saltchannel.v2.HandshakeResult;
 import saltchannel.v2.SaltServerSession;
 import saltchannel.v2.packets.PacketHeader;
 
@@ -53,7 +54,7 @@ public class WsTestServer {
 	    
             @Override
             public void onClose(WebSocket socket, int code, String reason, boolean remote) {
-                synchronized (this) {
+                synchronized (WsTestServer.this) {
                     sockets.remove(socket);
                 }
             }
@@ -70,15 +71,24 @@ public class WsTestServer {
                 if (bytes.length < PacketHeader.SIZE) {
                     // Could be logged if this were production code.
                     socket.close();
+                    return;
                 }
                 
                 PacketHeader header = new PacketHeader(bytes, 0);
+                WebSocketInfo info;
                 
-                synchronized (this) {
-                    WebSocketInfo info = sockets.get(socket);
-                    if (info != null) {
-                        info.messageQ.add(new Pair<byte[], Boolean>(bytes, header.lastFlag()));
-                    }
+                synchronized (WsTestServer.this) {
+                    info = sockets.get(socket);
+                }
+                
+                if (info == null) {
+                    return;
+                }
+                
+                if (info.handshakeDone) {
+                    info.messageQ.add(new Pair<byte[], Boolean>(bytes, header.lastFlag()));
+                } else {
+                    handshakeMessage(socket, info, bytes);
                 }
             }
 
@@ -88,79 +98,106 @@ public class WsTestServer {
             }
 
             @Override
-            public void onOpen(final WebSocket socket, ClientHandshake handshake) {                
-                Thread thread = new Thread(new Runnable() {
-                    public void run() {
-                        handleSocket(socket);
-                    }
-                });
+            public void onOpen(final WebSocket socket, ClientHandshake handshake) {
+                WebSocketInfo info = new WebSocketInfo();
+                info.clearChannel = createClearChannel(socket, info);
+                info.session = new SaltServerSession(sigKeyPair, info.clearChannel);
+                info.session.setEncKeyPair(CryptoTestData.aEnc);
                 
-                thread.start();
+                synchronized (WsTestServer.this) {
+                    sockets.put(socket, info);
+                }
             }
         };
         
         server.start();
     }
     
-    private void handleSocket(final WebSocket socket) {
-        final WebSocketInfo socketInfo = new WebSocketInfo();
+    /**
+     * Drives the handshake with the push-style API of SaltServerSession. 
+     * No thread is used while waiting for handshake messages from the client.
+     * Called by the WebSocket server thread.
+     */
+    private void handshakeMessage(final WebSocket socket, final WebSocketInfo info, byte[] bytes) {
+        HandshakeResult result = info.session.onMessage(bytes);
+        byte[][] messages = result.getMessages();
         
+        if (messages.length > 0) {
+            info.clearChannel.write(result.isLast(), messages);
+        }
+        
+        switch (result.getState()) {
+        case NEED_MORE:
+            break;
+        case DONE:
+            info.handshakeDone = true;
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    runSession(socket, info);
+                }
+            });
+            thread.start();
+            break;
+        case A2_DONE:
+            break;
+        case FAILED:
+            socket.close();
+            break;
+        }
+    }
+    
+    private void runSession(WebSocket socket, WebSocketInfo info) {
         try {
+            ByteChannelServerSession s = this.sessionFactory.createSession();
+            s.runSession(info.session.getChannel());
+        } finally {
             synchronized (this) {
-                sockets.put(socket, socketInfo);
+                sockets.remove(socket);
             }
-            
-            ByteChannel clearChannel = new ByteChannel() {
-                public byte[] read() throws ComException {
-                    Pair<byte[], Boolean> pair;
-                    try {
-                        pair = socketInfo.messageQ.take();
-                    } catch (InterruptedException e) {
-                        throw new ComException(e.getMessage());
-                    }
-                    
-                    byte[] bytes = pair.getValue0();
-                    boolean isLast = pair.getValue1();
-                    
-                    if (isLast) {
-                        socket.close();
-                    }
-                    
-                    return bytes;
+        }
+    }
+    
+    private ByteChannel createClearChannel(final WebSocket socket, final WebSocketInfo socketInfo) {
+        return new ByteChannel() {
+            public byte[] read() throws ComException {
+                Pair<byte[], Boolean> pair;
+                try {
+                    pair = socketInfo.messageQ.take();
+                } catch (InterruptedException e) {
+                    throw new ComException(e.getMessage());
                 }
+                
+                byte[] bytes = pair.getValue0();
+                boolean isLast = pair.getValue1();
+                
+                if (isLast) {
+                    socket.close();
+                }
+                
+                return bytes;
+            }
 
-                public void write(byte[]... messages) throws ComException {
-                    write(false, messages);
+            public void write(byte[]... messages) throws ComException {
+                write(false, messages);
+            }
+            
+            public void write(boolean isLast, byte[]... messages) throws ComException {
+                for (int i = 0; i < messages.length; i++) {
+                    socket.send(messages[i]);
                 }
                 
-                public void write(boolean isLast, byte[]... messages) throws ComException {
-                    for (int i = 0; i < messages.length; i++) {
-                        socket.send(messages[i]);
-                    }
-                    
-                    if (isLast) { // close socket if last message has been sent
-                        socket.close();
-                    }
+                if (isLast) { // close socket if last message has been sent
+                    socket.close();
                 }
-            };
-            
-            SaltServerSession session = new SaltServerSession(sigKeyPair, clearChannel);
-            session.setEncKeyPair(CryptoTestData.aEnc);
-            session.setBufferM2(true);
-            session.handshake();
-            
-            ByteChannelServerSession s = this.sessionFactory.createSession();
-            s.runSession(session.getChannel());
-            
-        } finally {
-            synchronized (this) {
-                sockets.remove(socket);
             }
-        }        
+        };
     }
 
     private static class WebSocketInfo {
-        BlockingQueue<Pair<byte[], Boolean>> messageQ;
+        final BlockingQueue<Pair<byte[], Boolean>> messageQ;
+        ByteChannel clearChannel;
+        SaltServerSession session;
+        volatile boolean handshakeDone = false;
         
         WebSocketInfo() {
             this.messageQ = new LinkedBlockingQueue<Pair<byte[], Boolean>>();
@@ -0,0 +1,59 @@
+package saltchannel;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Adapts a ByteChannel to the ByteBufferChannel interface; 
+ * decorator pattern. Messages are copied to and from byte arrays, 
+ * so this is for channels that have no native ByteBuffer support 
+ * (Tunnel, for example).
+ * 
+ * @author Frans Lundberg
+ */
+public class ByteBufferAdapter implements ByteBufferChannel {
+    private final ByteChannel channel;
+    private byte[] pending;
+    
+    public ByteBufferAdapter(ByteChannel channel) {
+        this.channel = channel;
+    }
+    
+    /**
+     * Returns channel as a ByteBufferChannel; the channel itself if it
+     * implements the interface, otherwise an adapter.
+     */
+    public static ByteBufferChannel of(ByteChannel channel) {
+        if (channel instanceof ByteBufferChannel) {
+            return (ByteBufferChannel) channel;
+        }
+        
+        return new ByteBufferAdapter(channel);
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws ComException {
+        byte[] message = pending != null ? pending : channel.read();
+        
+        if (message.length > dst.remaining()) {
+            pending = message;
+            throw new BufferOverflowException();
+        }
+        
+        pending = null;
+        dst.put(message);
+        return message.length;
+    }
+
+    @Override
+    public void write(boolean isLast, ByteBuffer... messages) throws ComException {
+        byte[][] arrays = new byte[messages.length][];
+        
+        for (int i = 0; i < messages.length; i++) {
+            arrays[i] = new byte[messages[i].remaining()];
+            messages[i].get(arrays[i]);
+        }
+        
+        channel.write(isLast, arrays);
+    }
+}
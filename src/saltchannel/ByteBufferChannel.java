@@ -0,0 +1,49 @@
+package saltchannel;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * A two-way, reliable communication channel, like ByteChannel, but 
+ * messages are read into and written from caller-supplied ByteBuffers
+ * (heap or direct). This avoids allocating a new byte array per message
+ * and allows implementations to avoid copies between layers.
+ * 
+ * The same concurrency rules as for ByteChannel apply: one thread may 
+ * read while another one writes.
+ * 
+ * @author Frans Lundberg
+ */
+public interface ByteBufferChannel {
+    
+    /**
+     * Reads one message into dst starting at its position; blocks until a
+     * message is available. After the call, the position of dst is 
+     * advanced by the size of the message; the limit is not changed.
+     * 
+     * @return The size of the message.
+     * @throws BufferOverflowException
+     *          If the message does not fit in dst.remaining() bytes. 
+     *          The message is not consumed; the caller can call read() 
+     *          again with a larger buffer.
+     * @throws ComException
+     *          If there is an IO error or data format error in 
+     *          the underlying layer.
+     */
+    public int read(ByteBuffer dst) throws ComException, BufferOverflowException;
+    
+    /**
+     * Writes messages to the channel. Each message consists of the remaining
+     * bytes of a buffer (from position to limit). After the call, the 
+     * position of each buffer equals its limit. Implementations do not 
+     * keep references to the buffers after the call has returned, so the 
+     * caller may reuse them.
+     * 
+     * @param isLast
+     *     Must be set to true if messages[messages.length-1] is the
+     *     last application message of the session. Otherwise, it must be false.
+     * @throws ComException
+     *     If there in an error in the underlying layer communication layer.
+     */
+    public void write(boolean isLast, ByteBuffer... messages) throws ComException;
+}
@@ -1,7 +1,6 @@
 package saltchannel;
 
 import java.security.SecureRandom;
-import java.util.Arrays;
 import java.util.Random;
 import saltchannel.util.Hex;
 import saltchannel.util.KeyPair;
@@ -156,6 +155,14 @@ public class CryptoLib {
         return new KeyPair(sec, pub);
     }
     
+    /**
+     * Creates a signer for a long-lived signing key pair; the expanded
+     * signing key is computed once instead of once per signature.
+     */
+    public static PreparedSigner createSigner(KeyPair sigKeyPair) {
+        return salt.crypto_sign_prepare(sigKeyPair.sec());
+    }
+    
     /**
      * Signs a message using TweetNaCl signing.
      */ 
@@ -261,12 +268,14 @@ public class CryptoLib {
         }
     };
   
+    /**
+     * Encrypts clear text, returns the authenticator followed by the ciphertext; 
+     * crypto_box_OVERHEADBYTES bytes longer than the clear text.
+     */
     public static byte[] encrypt(byte[] key, byte[] nonce, byte[] clear) {
-        byte[] m = new byte[SaltLib.crypto_box_INTERNALOVERHEADBYTES + clear.length];
-        byte[] c = new byte[m.length];
-        System.arraycopy(clear, 0, m, SaltLib.crypto_box_INTERNALOVERHEADBYTES, clear.length);
-        salt.crypto_box_afternm(c, m, nonce, key);
-        return Arrays.copyOfRange(c, SaltLib.crypto_box_OVERHEADBYTES, c.length);
+        byte[] c = new byte[SaltLib.crypto_box_OVERHEADBYTES + clear.length];
+        salt.crypto_box_afternm(c, 0, clear, 0, clear.length, nonce, key);
+        return c;
     }
     
     /**
@@ -277,23 +286,20 @@ public class CryptoLib {
             throw new Error("encrypted == null");
         }
         
-        byte[] clear;
-        byte[] c = new byte[SaltLib.crypto_box_OVERHEADBYTES + encrypted.length];
-        byte[] m = new byte[c.length];
-        System.arraycopy(encrypted, 0, c, SaltLib.crypto_box_OVERHEADBYTES, encrypted.length);
-        if (c.length < 32) {
+        if (encrypted.length < SaltLib.crypto_box_OVERHEADBYTES) {
             throw new ComException("ciphertext too small");
         }
         
+        byte[] clear = new byte[encrypted.length - SaltLib.crypto_box_OVERHEADBYTES];
+        
         try {            
-            salt.crypto_box_open_afternm(m, c, nonce, key);
+            salt.crypto_box_open_afternm(clear, 0, encrypted, 0, encrypted.length, nonce, key);
         }
         catch (BadEncryptedDataException e)
         {
           throw new ComException("invalid encryption");
         }
         
-        clear = Arrays.copyOfRange(m, SaltLib.crypto_box_INTERNALOVERHEADBYTES, m.length);
         return clear;
     }
 }
@@ -0,0 +1,177 @@
+package saltchannel;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * A ByteChannel and ByteBufferChannel implementation based on a 
+ * java.nio.channels.SocketChannel in blocking mode. 
+ * Uses the same framing as StreamChannel: each message is prefixed 
+ * with its size (4 bytes, little-endian).
+ * Messages read with read(ByteBuffer) are read directly from the socket 
+ * into the caller's buffer and messages written are written with one
+ * gathering write (size headers and messages), so direct buffers are never
+ * copied to the Java heap. Used below EncryptedChannelV2, the encrypted 
+ * records are written to the socket from the buffer they were encrypted 
+ * into, without copies.
+ * The socket channel is never closed by this class.
+ * 
+ * @author Frans Lundberg
+ */
+public class NioSocketChannel implements ByteChannel, ByteBufferChannel {
+    /** Max message size, same as for StreamChannel. */
+    public static final int MAX_MESSAGE_SIZE = 10*1000000;
+    
+    private final java.nio.channels.SocketChannel channel;
+    private final ByteBuffer readHeader;
+    private ByteBuffer[] writeHeaders;
+    private ByteBuffer[] writeBuffers;
+    private int pendingSize = -1;
+    
+    /**
+     * @throws IllegalArgumentException 
+     *          If the socket channel is not in blocking mode.
+     */
+    public NioSocketChannel(java.nio.channels.SocketChannel channel) {
+        if (!channel.isBlocking()) {
+            throw new IllegalArgumentException("channel must be in blocking mode");
+        }
+        
+        this.channel = channel;
+        this.readHeader = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        this.writeHeaders = new ByteBuffer[0];
+        this.writeBuffers = new ByteBuffer[0];
+    }
+    
+    public java.nio.channels.SocketChannel getSocketChannel() {
+        return channel;
+    }
+
+    @Override
+    public byte[] read() throws ComException {
+        int size = takeMessageSize();
+        byte[] data = new byte[size];
+        readFully(ByteBuffer.wrap(data));
+        return data;
+    }
+    
+    @Override
+    public int read(ByteBuffer dst) throws ComException {
+        int size = takeMessageSize();
+        
+        if (size > dst.remaining()) {
+            pendingSize = size;
+            throw new BufferOverflowException();
+        }
+        
+        int oldLimit = dst.limit();
+        dst.limit(dst.position() + size);
+        try {
+            readFully(dst);
+        } finally {
+            dst.limit(oldLimit);
+        }
+        
+        return size;
+    }
+
+    @Override
+    public void write(byte[]... messages) throws ComException {
+        write(false, messages);
+    }
+
+    @Override
+    public void write(boolean isLast, byte[]... messages) throws ComException {
+        ByteBuffer[] buffers = new ByteBuffer[messages.length];
+        for (int i = 0; i < messages.length; i++) {
+            buffers[i] = ByteBuffer.wrap(messages[i]);
+        }
+        
+        write(isLast, buffers);
+    }
+
+    @Override
+    public void write(boolean isLast, ByteBuffer... messages) throws ComException {
+        ensureWriteHeaders(messages.length);
+        ByteBuffer[] all = this.writeBuffers;
+        int count = 2 * messages.length;
+        long total = 0;
+        
+        for (int i = 0; i < messages.length; i++) {
+            ByteBuffer header = writeHeaders[i];
+            header.clear();
+            header.putInt(0, messages[i].remaining());
+            all[2*i] = header;
+            all[2*i + 1] = messages[i];
+            total += 4 + messages[i].remaining();
+        }
+        
+        try {
+            long written = 0;
+            while (written < total) {
+                written += channel.write(all, 0, count);
+            }
+        } catch (IOException e) {
+            throw new ComException(e.getMessage());
+        } finally {
+            Arrays.fill(all, 0, count, null);    // No references to the caller's buffers are kept.
+        }
+    }
+    
+    /**
+     * Returns the size of the next message; the pending size if a previous 
+     * read(ByteBuffer) call did not consume the message.
+     */
+    private int takeMessageSize() {
+        if (pendingSize >= 0) {
+            int size = pendingSize;
+            pendingSize = -1;
+            return size;
+        }
+        
+        readHeader.clear();
+        readFully(readHeader);
+        int size = readHeader.getInt(0);
+        
+        if (size <= 0) {
+            throw new BadPeer("non-positive packet size, " + size);
+        }
+        
+        if (size > MAX_MESSAGE_SIZE) {
+            throw new BadPeer("package too huge, not supported, " + size);
+        }
+        
+        return size;
+    }
+    
+    private void readFully(ByteBuffer dst) {
+        try {
+            while (dst.hasRemaining()) {
+                int count = channel.read(dst);
+                if (count == -1) {
+                    throw new ComException("EOF reached");
+                }
+            }
+        } catch (IOException e) {
+            throw new ComException(e.getMessage());
+        }
+    }
+    
+    private void ensureWriteHeaders(int count) {
+        if (writeHeaders.length >= count) {
+            return;
+        }
+        
+        ByteBuffer[] headers = new ByteBuffer[count];
+        System.arraycopy(writeHeaders, 0, headers, 0, writeHeaders.length);
+        for (int i = writeHeaders.length; i < count; i++) {
+            headers[i] = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        
+        this.writeHeaders = headers;
+        this.writeBuffers = new ByteBuffer[2 * count];
+    }
+}
@@ -3,13 +3,16 @@ package saltchannel;
 import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.net.Socket;
+import java.nio.ByteBuffer;
 
 /**
  * A ByteChannel implementation based on a Socket.
+ * Suitable for virtual threads; on JDK 21+, blocking socket I/O and
+ * BufferedInputStream do not pin the carrier thread.
  * 
  * @author Frans Lundberg
  */
-public class SocketChannel implements ByteChannel {
+public class SocketChannel implements ByteChannel, ByteBufferChannel {
     private final Socket socket;
     private final StreamChannel channel;
 
@@ -42,4 +45,12 @@ public class SocketChannel implements ByteChannel {
     public void write(boolean isLast, byte[]... messages) throws ComException {
         channel.write(isLast, messages);
     }
+    
+    public int read(ByteBuffer dst) throws ComException {
+        return channel.read(dst);
+    }
+    
+    public void write(boolean isLast, ByteBuffer... messages) throws ComException {
+        channel.write(isLast, messages);
+    }
 }
@@ -1,22 +1,48 @@
 package saltchannel;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import saltchannel.util.BufferPool;
 import saltchannel.util.Bytes;
 import saltchannel.util.Io;
 
 /**
  * A ByteChannel implementation based on a pair of streams.
- * 
+ * No monitors are held during blocking reads and writes; the class is
+ * suitable for virtual threads (the streams themselves must not pin).
+ *
+ * Reads and writes use reusable buffers for the size headers.
+ * Messages written are copied to a reusable buffer and written to the
+ * stream with one call if they are small (see MAX_COPY_SIZE); larger
+ * messages are written to the stream directly from the caller's arrays.
+ * read(ByteBuffer) reads a message directly into the caller's buffer and
+ * read(BufferPool) reads into a pooled array, so neither allocates memory
+ * per message.
+ *
  * @author Frans Lundberg
  */
-public class StreamChannel implements ByteChannel {
+public class StreamChannel implements ByteChannel, ByteBufferChannel {
+    /** Max message size. */
+    public static final int MAX_MESSAGE_SIZE = 10*1000000;
+    
+    /**
+     * Max total size of the messages of one write that are copied to
+     * the write buffer.
+     */
+    public static final int MAX_COPY_SIZE = 64*1024;
+    
     private final InputStream in;
     private final OutputStream out;
     private final Listener listener;
-
+    private final byte[] readHeader = new byte[4];
+    private final byte[] writeHeader = new byte[4];
+    private byte[] writeBuffer;
+    private byte[] readCopyBuffer;
+    private int pendingSize = -1;
+    
     public StreamChannel(InputStream in, OutputStream out) {
         this.in = in;
         this.out = out;
@@ -31,7 +57,57 @@ public class StreamChannel implements ByteChannel {
             throw new ComException(e.getMessage());
         }
     }
-
+    
+    /**
+     * Reads one message into dst, see ByteBufferChannel.
+     */
+    @Override
+    public int read(ByteBuffer dst) throws ComException {
+        try {
+            int size = takeMessageSize();
+            
+            if (size > dst.remaining()) {
+                pendingSize = size;
+                throw new BufferOverflowException();
+            }
+            
+            if (dst.hasArray()) {
+                Io.readFully(in, dst.array(), dst.arrayOffset() + dst.position(), size);
+                dst.position(dst.position() + size);
+            } else {
+                readToDirect(dst, size);
+            }
+            
+            return size;
+        } catch (IOException e) {
+            throw new ComException(e.getMessage());
+        }
+    }
+    
+    /**
+     * Reads one message into an array taken from the pool.
+     * The caller must call release() on the result when done with it.
+     * A message larger than the pool's buffer size is read into a new
+     * array that is not pooled.
+     */
+    public PooledMessage read(BufferPool pool) throws ComException {
+        try {
+            int size = takeMessageSize();
+            byte[] buffer = size <= pool.getBufferSize() ? pool.take() : new byte[size];
+            
+            try {
+                Io.readFully(in, buffer, 0, size);
+            } catch (IOException | RuntimeException e) {
+                pool.release(buffer);
+                throw e;
+            }
+            
+            return new PooledMessage(buffer, size, pool);
+        } catch (IOException e) {
+            throw new ComException(e.getMessage());
+        }
+    }
+    
     @Override
     public void write(byte[]... messages) throws ComException {
         write(false, messages);
@@ -46,50 +122,184 @@ public class StreamChannel implements ByteChannel {
         }
     }
     
+    /**
+     * Writes the remaining bytes of each buffer as one message.
+     */
+    @Override
+    public void write(boolean isLast, ByteBuffer... messages) throws ComException {
+        int total = 0;
+        for (int i = 0; i < messages.length; i++) {
+            total += 4 + messages[i].remaining();
+        }
+        
+        try {
+            if (total <= MAX_COPY_SIZE) {
+                byte[] buffer = writeBuffer(total);
+                int offset = 0;
+                for (int i = 0; i < messages.length; i++) {
+                    int size = messages[i].remaining();
+                    Bytes.intToBytesLE(size, buffer, offset);
+                    messages[i].get(buffer, offset + 4, size);
+                    offset += 4 + size;
+                }
+                
+                out.write(buffer, 0, total);
+            } else {
+                for (int i = 0; i < messages.length; i++) {
+                    ByteBuffer m = messages[i];
+                    writeSizeHeader(m.remaining());
+                    
+                    if (m.hasArray()) {
+                        out.write(m.array(), m.arrayOffset() + m.position(), m.remaining());
+                        m.position(m.limit());
+                    } else {
+                        writeFromDirect(m);
+                    }
+                }
+            }
+            
+            out.flush();
+        } catch (IOException e) {
+            throw new ComException(e.getMessage());
+        }
+    }
+    
     private byte[] innerRead() throws IOException {
-        byte[] bytes = new byte[4];
-        Io.readFully(in, bytes, 0, 4);
+        int length = takeMessageSize();
+        byte[] data = new byte[length];
+        Io.readFully(in, data, 0, data.length);
+        
+        listener.messageRead(data);
         
-        int length = Bytes.bytesToIntLE(bytes, 0);
+        return data;
+    }
+    
+    /**
+     * Returns the size of the next message; the pending size if a previous
+     * read(ByteBuffer) call did not consume the message.
+     */
+    private int takeMessageSize() throws IOException {
+        if (pendingSize >= 0) {
+            int size = pendingSize;
+            pendingSize = -1;
+            return size;
+        }
+        
+        Io.readFully(in, readHeader, 0, 4);
+        
+        int length = Bytes.bytesToIntLE(readHeader, 0);
         
         if (length <= 0) {
             throw new BadPeer("non-positive packet size, " + length);
         }
         
-        if (length > 10*1000000) {
+        if (length > MAX_MESSAGE_SIZE) {
             throw new BadPeer("package too huge, not supported, " + length);
         }
         
-        byte[] data = new byte[length];
-        Io.readFully(in, data, 0, data.length);
-        
-        listener.messageRead(data);
-        
-        return data;
+        return length;
     }
     
-
     private void innerWrite(boolean isLast, byte[]... messages) throws IOException {
-        ByteArrayOutputStream bout = new ByteArrayOutputStream();
-        byte[] bytes;
-        byte[] sizeBytes = new byte[4];
-        
+        int total = 0;
         for (int i = 0; i < messages.length; i++) {
-            bytes = messages[i];
-            Bytes.intToBytesLE(bytes.length, sizeBytes, 0);
-            bout.write(sizeBytes);
-            bout.write(bytes);
+            total += 4 + messages[i].length;
+        }
+        
+        if (total <= MAX_COPY_SIZE) {
+            byte[] buffer = writeBuffer(total);
+            int offset = 0;
+            for (int i = 0; i < messages.length; i++) {
+                byte[] bytes = messages[i];
+                Bytes.intToBytesLE(bytes.length, buffer, offset);
+                System.arraycopy(bytes, 0, buffer, offset + 4, bytes.length);
+                offset += 4 + bytes.length;
+            }
+            
+            out.write(buffer, 0, total);
+        } else {
+            for (int i = 0; i < messages.length; i++) {
+                writeSizeHeader(messages[i].length);
+                out.write(messages[i]);
+            }
         }
-        bout.flush();
-        bout.close();
         
-        byte[] allBytes = bout.toByteArray();
-        out.write(allBytes);
         out.flush();
         
         listener.messagesWritten(messages);
     }
     
+    private void writeSizeHeader(int size) throws IOException {
+        Bytes.intToBytesLE(size, writeHeader, 0);
+        out.write(writeHeader);
+    }
+    
+    private byte[] writeBuffer(int size) {
+        if (writeBuffer == null || writeBuffer.length < size) {
+            writeBuffer = new byte[Math.max(size, 1024)];
+        }
+        
+        return writeBuffer;
+    }
+    
+    /**
+     * Reads via a reusable heap buffer, streams only read into arrays.
+     */
+    private void readToDirect(ByteBuffer dst, int size) throws IOException {
+        if (readCopyBuffer == null) {
+            readCopyBuffer = new byte[8*1024];
+        }
+        
+        byte[] buffer = readCopyBuffer;
+        while (size > 0) {
+            int count = Math.min(size, buffer.length);
+            Io.readFully(in, buffer, 0, count);
+            dst.put(buffer, 0, count);
+            size -= count;
+        }
+    }
+    
+    private void writeFromDirect(ByteBuffer m) throws IOException {
+        byte[] buffer = writeBuffer(8*1024);
+        while (m.hasRemaining()) {
+            int count = Math.min(m.remaining(), buffer.length);
+            m.get(buffer, 0, count);
+            out.write(buffer, 0, count);
+        }
+    }
+    
+    /**
+     * A message read with read(BufferPool). The message is the first
+     * getSize() bytes of getBuffer().
+     */
+    public static class PooledMessage {
+        private final byte[] buffer;
+        private final int size;
+        private final BufferPool pool;
+        
+        PooledMessage(byte[] buffer, int size, BufferPool pool) {
+            this.buffer = buffer;
+            this.size = size;
+            this.pool = pool;
+        }
+        
+        public byte[] getBuffer() {
+            return buffer;
+        }
+        
+        public int getSize() {
+            return size;
+        }
+        
+        /**
+         * Returns the buffer to the pool. The buffer must not be used
+         * after this call.
+         */
+        public void release() {
+            pool.release(buffer);
+        }
+    }
+    
     public static interface Listener {
         public static final Listener NULL_LISTENER = new Listener() {
             public void messagesWritten(byte[][] messages) {}
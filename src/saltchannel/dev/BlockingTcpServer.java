@@ -0,0 +1,324 @@
+package saltchannel.dev;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import saltaa.PreparedSigner;
+import saltaa.SignKeyCache;
+import saltchannel.ComException;
+import saltchannel.CryptoLib;
+import saltchannel.SocketChannel;
+import saltchannel.util.EphemeralKeyPool;
+import saltchannel.util.KeyPair;
+import saltchannel.util.Rand;
+import saltchannel.util.Util;
+import saltchannel.util.VirtualThreads;
+import saltchannel.v2.ChannelCounters;
+import saltchannel.v2.HandshakeListener;
+import saltchannel.v2.NoSuchServer;
+import saltchannel.v2.ResumeHandler;
+import saltchannel.v2.SaltServerSession;
+import saltchannel.v2.SignatureBatcher;
+
+/**
+ * TCP server running Salt Channel and a user-specified protocol on top of
+ * that, with the blocking ByteChannel model of TcpTestServer.
+ * Each session runs on a virtual thread when the JDK supports it (JDK 21+);
+ * then, the number of concurrent sessions is limited by memory and file
+ * descriptors rather than by the number of platform threads.
+ * Otherwise, a bounded pool of platform threads is used; when all threads
+ * are busy, new connections are closed directly.
+ *
+ * Unlike TcpTestServer, a new ephemeral key pair is created for each session.
+ * SocketChannel and StreamChannel do not hold any monitors during blocking I/O,
+ * so a virtual thread blocked on I/O does not pin its carrier thread.
+ *
+ * @author Frans Lundberg
+ */
+public class BlockingTcpServer {
+    public static final int DEFAULT_POOL_SIZE = 256;
+    public static final int DEFAULT_BACKLOG = 4096;
+
+    private final PreparedSigner signer;
+    private final ServerSessionFactory sessionFactory;
+    private final AtomicInteger sessionCount = new AtomicInteger();
+    private final AtomicInteger maxSessionCount = new AtomicInteger();
+    private boolean useVirtualThreads = true;
+    private int poolSize = DEFAULT_POOL_SIZE;
+    private int backlog = DEFAULT_BACKLOG;
+    private Rand rand;
+    private EphemeralKeyPool keyPool;
+    private ResumeHandler resumeHandler;
+    private SignatureBatcher signatureBatcher;
+    private SignKeyCache signKeyCache;
+    private boolean earlyDataAccepted = false;
+    private HandshakeListener handshakeListener;
+    private ChannelCounters aggregateCounters;
+    private ExecutorService executor;
+    private boolean virtual;
+    private volatile ServerSocket ss;
+    private volatile boolean shutdown = false;
+    private Thread acceptThread;
+
+    public BlockingTcpServer(KeyPair sigKeyPair, ServerSessionFactory sessionFactory) {
+        this.signer = CryptoLib.createSigner(sigKeyPair);
+        this.sessionFactory = sessionFactory;
+    }
+
+    /**
+     * If true (the default), virtual threads are used if supported by the JDK.
+     */
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+    }
+
+    /**
+     * Sets the number of platform threads to use when virtual threads
+     * are not used. This is also the max number of concurrent sessions
+     * in that case.
+     */
+    public void setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    /**
+     * Sets the backlog of the server socket. A large backlog is needed
+     * to handle many simultaneous connection attempts.
+     */
+    public void setBacklog(int backlog) {
+        this.backlog = backlog;
+    }
+
+    /**
+     * Sets the source of randomness for the ephemeral key pairs.
+     * Default: CryptoLib.createSecureRand().
+     */
+    public void setRand(Rand rand) {
+        this.rand = rand;
+    }
+
+    /**
+     * Sets a pool to take the ephemeral key pairs from. Overrides setRand().
+     * Default: null, a key pair is generated for each session when 
+     * the session starts.
+     */
+    public void setEphemeralKeyPool(EphemeralKeyPool keyPool) {
+        this.keyPool = keyPool;
+    }
+
+    public void setResumeHandler(ResumeHandler resumeHandler) {
+        this.resumeHandler = resumeHandler;
+    }
+
+    /**
+     * Sets a cache of decoded client signing keys shared by all sessions,
+     * see SaltServerSession.setSignKeyCache().
+     */
+    public void setSignKeyCache(SignKeyCache signKeyCache) {
+        this.signKeyCache = signKeyCache;
+    }
+
+    /**
+     * Sets a batcher that validates the clients' signatures in batches,
+     * see SaltServerSession.setSignatureBatcher().
+     */
+    public void setSignatureBatcher(SignatureBatcher signatureBatcher) {
+        this.signatureBatcher = signatureBatcher;
+    }
+
+    /**
+     * Set to true to accept early data from clients that resume a session,
+     * see SaltServerSession.setEarlyDataAccepted(). Default: false.
+     */
+    public void setEarlyDataAccepted(boolean earlyDataAccepted) {
+        this.earlyDataAccepted = earlyDataAccepted;
+    }
+
+    /**
+     * Sets a listener that receives the handshake timings of all sessions,
+     * see SaltServerSession.setHandshakeListener(). It must be thread-safe,
+     * HandshakeStats is. Default: null.
+     */
+    public void setHandshakeListener(HandshakeListener handshakeListener) {
+        this.handshakeListener = handshakeListener;
+    }
+
+    /**
+     * Sets counters that the channels of all sessions count into, 
+     * in addition to their own counters; see ChannelCounters.
+     * Default: null.
+     */
+    public void setAggregateCounters(ChannelCounters aggregateCounters) {
+        this.aggregateCounters = aggregateCounters;
+    }
+
+    /**
+     * Starts the server, port 0 can be used to get an ephemeral port,
+     * see getPort().
+     */
+    public void start(int port) throws IOException {
+        if (rand == null) {
+            rand = CryptoLib.createSecureRand();
+        }
+
+        executor = useVirtualThreads ? VirtualThreads.newThreadPerTaskExecutor() : null;
+        virtual = executor != null;
+
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                    new SynchronousQueue<Runnable>());
+            ((ThreadPoolExecutor) executor).allowCoreThreadTimeOut(true);
+        }
+
+        ss = new ServerSocket(port, backlog);
+
+        acceptThread = new Thread(new Runnable() {
+            public void run() {
+                acceptLoop();
+            }
+        });
+        acceptThread.setName("BlockingTcpServer-accept");
+        acceptThread.start();
+    }
+
+    public int getPort() {
+        return ss.getLocalPort();
+    }
+
+    /**
+     * Returns true if sessions run on virtual threads. Available after start().
+     */
+    public boolean isUsingVirtualThreads() {
+        return virtual;
+    }
+
+    /**
+     * Returns the number of currently running sessions.
+     */
+    public int getSessionCount() {
+        return sessionCount.get();
+    }
+
+    /**
+     * Returns the max number of concurrent sessions since start.
+     */
+    public int getMaxSessionCount() {
+        return maxSessionCount.get();
+    }
+
+    /**
+     * Stops accepting connections. Running sessions are not interrupted.
+     */
+    public void stop() {
+        shutdown = true;
+
+        ServerSocket mySs = this.ss;
+        if (mySs != null) {
+            Util.close(mySs);
+        }
+
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private void acceptLoop() {
+        try {
+            while (!shutdown) {
+                final Socket socket;
+
+                try {
+                    socket = ss.accept();
+                } catch (IOException e) {
+                    // Expected when other thread calls ss.close().
+                    break;
+                }
+
+                try {
+                    executor.execute(new Runnable() {
+                        public void run() {
+                            handleSocket(socket);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    Util.close(socket);    // All threads busy.
+                }
+            }
+        } finally {
+            Util.close(ss);
+        }
+    }
+
+    private void handleSocket(Socket socket) {
+        int count = sessionCount.incrementAndGet();
+        updateMax(count);
+
+        try {
+            runSession(socket);
+        } catch (ComException e) {
+            // Client went away or did not follow protocol.
+        } catch (NoSuchServer e) {
+            // Client wanted another server.
+        } finally {
+            sessionCount.decrementAndGet();
+            Util.close(socket);
+        }
+    }
+
+    private void runSession(Socket socket) throws ComException {
+        SocketChannel clearChannel;
+
+        try {
+            socket.setTcpNoDelay(true);
+            clearChannel = new SocketChannel(socket);
+        } catch (IOException e) {
+            throw new ComException(e.getMessage());
+        }
+
+        SaltServerSession session = new SaltServerSession(signer, clearChannel);
+        if (keyPool != null) {
+            session.setEncKeyPair(keyPool);
+        } else {
+            session.setEncKeyPair(rand);
+        }
+        session.setBufferM2(true);
+        if (resumeHandler != null) {
+            session.setResumeHandler(resumeHandler);
+        }
+        if (signatureBatcher != null) {
+            session.setSignatureBatcher(signatureBatcher);
+        }
+        if (signKeyCache != null) {
+            session.setSignKeyCache(signKeyCache);
+        }
+        session.setEarlyDataAccepted(earlyDataAccepted);
+        session.setHandshakeListener(handshakeListener);
+        if (aggregateCounters != null) {
+            session.setCounters(new ChannelCounters(aggregateCounters));
+        }
+
+        session.handshake();
+        if (session.isDone()) {
+            return;
+        }
+
+        ByteChannelServerSession s = sessionFactory.createSession();
+        s.runSession(session.getChannel());
+    }
+
+    private void updateMax(int count) {
+        while (true) {
+            int max = maxSessionCount.get();
+            if (count <= max || maxSessionCount.compareAndSet(max, count)) {
+                return;
+            }
+        }
+    }
+}
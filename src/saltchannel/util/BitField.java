@@ -1,12 +1,16 @@
 package saltchannel.util;
 
+import java.util.concurrent.atomic.AtomicLongArray;
+
 /**
  * Simple bit field implementation, fixed size.
+ * Thread-safe and lock-free; bits are updated with compare-and-set
+ * on the 64-bit words that hold them.
  * 
  * @author Frans Lundberg
  */
 public class BitField {
-    private long[] field;
+    private final AtomicLongArray field;
     private final int size;
     
     public BitField(int size) {
@@ -16,7 +20,7 @@ public class BitField {
             longCount += 1;
         }
         
-        field = new long[longCount];
+        field = new AtomicLongArray(longCount);
     }
 
     public int getSize() {
@@ -25,7 +29,7 @@ public class BitField {
     
     public boolean get(int index) {
         checkIndex(index);
-        return (field[longIndex(index)] & mask(index)) != 0;
+        return (field.get(longIndex(index)) & mask(index)) != 0;
     }
     
     public void set(int index, boolean value) {
@@ -33,10 +37,34 @@ public class BitField {
         int longIndex = longIndex(index);
         long mask = mask(index);
         
-        if (value == true) {
-            field[longIndex] = field[longIndex] | mask;
-        } else {
-            field[longIndex] = field[longIndex] & ~mask;
+        while (true) {
+            long old = field.get(longIndex);
+            long updated = value ? old | mask : old & ~mask;
+            if (old == updated || field.compareAndSet(longIndex, old, updated)) {
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Atomically clears a bit. Returns true if the bit was set, that is,
+     * if this call cleared it. Of concurrent calls for the same set bit, 
+     * exactly one returns true.
+     */
+    public boolean clearIfSet(int index) {
+        checkIndex(index);
+        int longIndex = longIndex(index);
+        long mask = mask(index);
+        
+        while (true) {
+            long old = field.get(longIndex);
+            if ((old & mask) == 0) {
+                return false;
+            }
+            
+            if (field.compareAndSet(longIndex, old, old & ~mask)) {
+                return true;
+            }
         }
     }
     
@@ -52,6 +80,6 @@ public class BitField {
     
     private final long mask(int index) {
         int bitIndex = index - longIndex(index) * 64;
-        return 1 << bitIndex;
+        return 1L << bitIndex;
     }
 }
@@ -0,0 +1,72 @@
+package saltchannel.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of byte arrays of one size. take() returns a pooled
+ * array, or a new one if the pool is empty; release() returns an array
+ * to the pool. Arrays of another size are not pooled.
+ * The class is thread-safe.
+ *
+ * @author Frans Lundberg
+ */
+public class BufferPool {
+    private final int bufferSize;
+    private final ArrayBlockingQueue<byte[]> free;
+    private final AtomicLong allocationCount = new AtomicLong();
+
+    /**
+     * @param bufferSize
+     *          Size of each array.
+     * @param maxPooled
+     *          Max number of free arrays kept by the pool.
+     */
+    public BufferPool(int bufferSize, int maxPooled) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("bad bufferSize, " + bufferSize);
+        }
+
+        if (maxPooled < 1) {
+            throw new IllegalArgumentException("bad maxPooled, " + maxPooled);
+        }
+
+        this.bufferSize = bufferSize;
+        this.free = new ArrayBlockingQueue<byte[]>(maxPooled);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Returns an array of getBufferSize() bytes. The content is undefined.
+     */
+    public byte[] take() {
+        byte[] buffer = free.poll();
+        if (buffer == null) {
+            allocationCount.incrementAndGet();
+            buffer = new byte[bufferSize];
+        }
+
+        return buffer;
+    }
+
+    /**
+     * Returns an array to the pool. The caller must not use the array
+     * after this call. Arrays of the wrong size are ignored, so are arrays
+     * released when the pool is full.
+     */
+    public void release(byte[] buffer) {
+        if (buffer.length == bufferSize) {
+            free.offer(buffer);
+        }
+    }
+
+    /**
+     * Returns the number of arrays allocated by take().
+     */
+    public long getAllocationCount() {
+        return allocationCount.get();
+    }
+}
@@ -0,0 +1,97 @@
+package saltchannel.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded, fixed-size thread pool for CPU-bound handshake crypto
+ * (key agreement, signing, signature verification).
+ * Running the crypto here keeps it away from I/O threads; during
+ * a connection storm, the I/O threads can continue to accept connections
+ * and read messages while the crypto work waits in the queue.
+ * When the queue is full, execute() throws RejectedExecutionException;
+ * the caller is expected to drop the connection.
+ *
+ * @author Frans Lundberg
+ */
+public class CryptoPool implements Executor {
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Creates a pool.
+     *
+     * @param threadCount
+     *          Number of threads, typically the number of cores.
+     * @param queueCapacity
+     *          Max number of tasks waiting for a thread.
+     */
+    public CryptoPool(int threadCount, int queueCapacity) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("bad threadCount, " + threadCount);
+        }
+
+        this.executor = new ThreadPoolExecutor(threadCount, threadCount,
+                0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity),
+                new CryptoThreadFactory());
+    }
+
+    /**
+     * Creates a pool with one thread per available processor.
+     */
+    public static CryptoPool create(int queueCapacity) {
+        return new CryptoPool(Runtime.getRuntime().availableProcessors(), queueCapacity);
+    }
+
+    /**
+     * @throws RejectedExecutionException
+     *          If the queue is full or the pool has been shut down.
+     */
+    @Override
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    /**
+     * Returns the number of tasks waiting for a thread.
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Returns the approximate number of threads executing tasks.
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public int getThreadCount() {
+        return executor.getCorePoolSize();
+    }
+
+    /**
+     * Stops the threads once the queued tasks have been executed.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private static class CryptoThreadFactory implements ThreadFactory {
+        private static final AtomicInteger poolCount = new AtomicInteger();
+        private final int poolId = poolCount.incrementAndGet();
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r);
+            thread.setName("CryptoPool-" + poolId + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
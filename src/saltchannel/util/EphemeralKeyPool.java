@@ -0,0 +1,152 @@
+package saltchannel.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import saltchannel.CryptoLib;
+
+/**
+ * A pool of fresh ephemeral encryption key pairs (X25519).
+ * A background thread keeps the pool filled, so a handshake can
+ * take a key pair without doing the scalar multiplication of the
+ * key generation on its critical path.
+ * Each key pair is handed out once only.
+ * take() never blocks; when the pool is empty, a key pair is generated
+ * by the calling thread.
+ *
+ * @author Frans Lundberg
+ */
+public class EphemeralKeyPool {
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private final Rand rand;
+    private final int capacity;
+    private final ArrayBlockingQueue<KeyPair> queue;
+    private final Thread thread;
+    private final AtomicInteger lowWaterMark;
+    private final AtomicLong takeCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private volatile boolean shutdown = false;
+
+    /**
+     * Creates a pool with a secure source of randomness and
+     * DEFAULT_CAPACITY.
+     */
+    public EphemeralKeyPool() {
+        this(CryptoLib.createSecureRand(), DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a pool and starts its background thread.
+     *
+     * @param rand
+     *          Source of randomness for the secret keys, must be thread-safe.
+     * @param capacity
+     *          Max number of key pairs kept ready.
+     */
+    public EphemeralKeyPool(Rand rand, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("bad capacity, " + capacity);
+        }
+
+        this.rand = rand;
+        this.capacity = capacity;
+        this.queue = new ArrayBlockingQueue<KeyPair>(capacity);
+        this.lowWaterMark = new AtomicInteger(capacity);
+        this.thread = new Thread(new Runnable() {
+            public void run() {
+                runIt();
+            }
+        });
+        thread.setName("EphemeralKeyPool");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Returns an unused key pair. Does not block on the background thread;
+     * if the pool is empty, the key pair is generated directly.
+     */
+    public KeyPair take() {
+        takeCount.incrementAndGet();
+        KeyPair keyPair = queue.poll();
+        updateLowWaterMark(queue.size());
+
+        if (keyPair == null) {
+            missCount.incrementAndGet();
+            keyPair = CryptoLib.createEncKeys(rand);
+        }
+
+        return keyPair;
+    }
+
+    /**
+     * Returns the number of key pairs ready to be taken.
+     */
+    public int getSize() {
+        return queue.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the smallest pool size seen after a take() since the pool
+     * was created or since the last call to resetLowWaterMark().
+     * A low-water mark of zero means the background thread
+     * did not keep up with the handshake rate.
+     */
+    public int getLowWaterMark() {
+        return lowWaterMark.get();
+    }
+
+    public void resetLowWaterMark() {
+        lowWaterMark.set(queue.size());
+    }
+
+    /**
+     * Returns the number of calls to take().
+     */
+    public long getTakeCount() {
+        return takeCount.get();
+    }
+
+    /**
+     * Returns the number of calls to take() that found the pool empty
+     * and generated the key pair directly.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Stops the background thread. The key pairs in the pool can still
+     * be taken, after that, take() generates key pairs directly.
+     */
+    public void shutdown() {
+        shutdown = true;
+        thread.interrupt();
+    }
+
+    private void runIt() {
+        try {
+            while (!shutdown) {
+                queue.put(CryptoLib.createEncKeys(rand));
+            }
+        } catch (InterruptedException e) {
+            // Shutdown.
+        }
+    }
+
+    private void updateLowWaterMark(int size) {
+        while (true) {
+            int low = lowWaterMark.get();
+            if (size >= low || lowWaterMark.compareAndSet(low, size)) {
+                return;
+            }
+        }
+    }
+}
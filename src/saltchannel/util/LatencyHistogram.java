@@ -0,0 +1,136 @@
+package saltchannel.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non-negative long values, typically durations in
+ * nanoseconds, in the style of HdrHistogram: values below 32 are counted
+ * exactly, larger values in buckets with a relative width of 1/32,
+ * so percentiles are reported with an error of at most about 3%.
+ * The memory use is fixed (about 15 kB), recording does not allocate.
+ * The class is thread-safe; record() is lock-free.
+ *
+ * @author Frans Lundberg
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKET_COUNT = SUB_COUNT * (64 - SUB_BITS);
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a value. Negative values are recorded as 0.
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+
+        counts.incrementAndGet(index(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+
+        long m = max.get();
+        while (value > m && !max.compareAndSet(m, value)) {
+            m = max.get();
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the mean of the recorded values, 0 if there are none.
+     */
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * Returns the value at the percentile (0 to 100); that is, the
+     * highest value of the bucket where the percentile is reached.
+     * Returns 0 if no values have been recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+
+        double p = Math.min(Math.max(percentile, 0.0), 100.0);
+        long wanted = Math.max(1, (long) Math.ceil(p / 100.0 * n));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= wanted) {
+                return Math.min(highestValue(i), getMax());
+            }
+        }
+
+        return getMax();
+    }
+
+    /**
+     * Clears all recorded values. Values recorded concurrently with
+     * this call may be partly cleared.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Returns a one-line summary with the values divided by 'unit',
+     * for example 1000 for nanoseconds recorded and microseconds shown.
+     */
+    public String toString(long unit) {
+        return "count=" + getCount()
+                + ", mean=" + Math.round(getMean() / unit)
+                + ", p50=" + getValueAtPercentile(50) / unit
+                + ", p90=" + getValueAtPercentile(90) / unit
+                + ", p99=" + getValueAtPercentile(99) / unit
+                + ", max=" + getMax() / unit;
+    }
+
+    public String toString() {
+        return toString(1);
+    }
+
+    static int index(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        int sub = (int) (value >>> shift) & (SUB_COUNT - 1);
+        return SUB_COUNT * (shift + 1) + sub;
+    }
+
+    static long highestValue(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+
+        int shift = index / SUB_COUNT - 1;
+        long sub = index % SUB_COUNT;
+        long lowest = (SUB_COUNT + sub) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,50 @@
+package saltchannel.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Access to virtual threads (JDK 21+) without requiring a JDK that has them;
+ * this code is compiled for Java 7, so reflection is used.
+ *
+ * @author Frans Lundberg
+ */
+public class VirtualThreads {
+    private static final Method NEW_EXECUTOR = findNewExecutor();
+
+    private VirtualThreads() {}
+
+    /**
+     * Returns true if the running JDK supports virtual threads.
+     */
+    public static boolean isSupported() {
+        return NEW_EXECUTOR != null;
+    }
+
+    /**
+     * Returns a new executor that starts a new virtual thread for each task;
+     * as Executors.newVirtualThreadPerTaskExecutor() of JDK 21.
+     * Returns null if the JDK does not support virtual threads.
+     */
+    public static ExecutorService newThreadPerTaskExecutor() {
+        if (NEW_EXECUTOR == null) {
+            return null;
+        }
+
+        try {
+            return (ExecutorService) NEW_EXECUTOR.invoke(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static Method findNewExecutor() {
+        try {
+            Method m = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            ((ExecutorService) m.invoke(null)).shutdown();    // Fails on JDKs with preview-only support.
+            return m;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
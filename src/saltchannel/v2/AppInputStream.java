@@ -0,0 +1,143 @@
+package saltchannel.v2;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import saltchannel.ByteBufferAdapter;
+import saltchannel.ByteBufferChannel;
+import saltchannel.ByteChannel;
+import saltchannel.ComException;
+
+/**
+ * Reads a stream written by AppOutputStream. The chunks are read
+ * one at a time into one reusable buffer, so memory use is constant
+ * regardless of the stream length. Returns end of stream (-1) after the
+ * last chunk.
+ *
+ * <p>Errors of the underlying channel (ComException, BadPeer) are
+ * thrown as IOException.</p>
+ *
+ * <p>While the stream is open, the application must not read other
+ * messages from the channel. When end of stream has been reached, the
+ * channel can be used as before.</p>
+ *
+ * @author Frans Lundberg
+ */
+public class AppInputStream extends InputStream {
+    private final ByteBufferChannel channel;
+    private final ByteBuffer chunk;
+    private boolean end = false;
+
+    /**
+     * Creates a stream that accepts chunks of up to
+     * AppOutputStream.DEFAULT_CHUNK_SIZE bytes.
+     */
+    public AppInputStream(ByteChannel channel) {
+        this(channel, AppOutputStream.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param maxChunkSize
+     *          Max number of stream bytes per chunk, must be at least
+     *          the chunk size of the writer.
+     */
+    public AppInputStream(ByteChannel channel, int maxChunkSize) {
+        if (maxChunkSize < 1) {
+            throw new IllegalArgumentException("bad maxChunkSize, " + maxChunkSize);
+        }
+
+        this.channel = ByteBufferAdapter.of(channel);
+        this.chunk = ByteBuffer.allocate(1 + maxChunkSize);
+        chunk.limit(0);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+
+        return chunk.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        if (len == 0) {
+            return 0;
+        }
+
+        if (!fill()) {
+            return -1;
+        }
+
+        int count = Math.min(len, chunk.remaining());
+        chunk.get(b, off, count);
+        return count;
+    }
+
+    /**
+     * Returns the number of bytes left of the current chunk.
+     */
+    @Override
+    public int available() {
+        return chunk.remaining();
+    }
+
+    /**
+     * Reads the rest of the stream (discards it), so the channel can
+     * be used for other messages.
+     */
+    @Override
+    public void close() throws IOException {
+        while (fill()) {
+            chunk.position(chunk.limit());
+        }
+    }
+
+    /**
+     * Reads chunks until there is stream data in the buffer.
+     * Returns false at end of stream.
+     */
+    private boolean fill() throws IOException {
+        while (!chunk.hasRemaining()) {
+            if (end) {
+                return false;
+            }
+
+            readChunk();
+        }
+
+        return true;
+    }
+
+    private void readChunk() throws IOException {
+        chunk.clear();
+
+        try {
+            channel.read(chunk);
+        } catch (BufferOverflowException e) {
+            throw new IOException("chunk larger than maxChunkSize, " + (chunk.capacity() - 1));
+        } catch (ComException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+
+        chunk.flip();
+
+        if (!chunk.hasRemaining()) {
+            throw new IOException("empty chunk");
+        }
+
+        byte flag = chunk.get();
+        if (flag == AppOutputStream.FLAG_END) {
+            end = true;
+        } else if (flag != AppOutputStream.FLAG_MORE) {
+            throw new IOException("bad chunk flag, " + flag);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package saltchannel.v2;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import saltchannel.ByteBufferAdapter;
+import saltchannel.ByteBufferChannel;
+import saltchannel.ByteChannel;
+import saltchannel.ComException;
+
+/**
+ * Writes a stream of bytes of any length (a firmware image, for example)
+ * over an application channel as a sequence of bounded application
+ * messages, chunks. Each chunk is encrypted separately, so memory use
+ * is constant (one chunk buffer) regardless of the stream length.
+ * The receiver reads the stream with AppInputStream.
+ *
+ * <p>Chunk format: one flag byte followed by up to chunkSize bytes of
+ * stream data. The flag is FLAG_MORE, or FLAG_END for the last chunk
+ * of the stream; the last chunk is written by close().</p>
+ *
+ * <p>While the stream is open, the application must not write other
+ * messages to the channel. After close(), the channel can be used
+ * as before, for example to send another stream.</p>
+ *
+ * @author Frans Lundberg
+ */
+public class AppOutputStream extends OutputStream {
+    public static final byte FLAG_MORE = 0;
+    public static final byte FLAG_END = 1;
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    private final ByteBufferChannel channel;
+    private final ByteBuffer chunk;
+    private final boolean lastOnClose;
+    private boolean closed = false;
+
+    /**
+     * Creates a stream with chunks of DEFAULT_CHUNK_SIZE bytes.
+     */
+    public AppOutputStream(ByteChannel channel) {
+        this(channel, DEFAULT_CHUNK_SIZE, false);
+    }
+
+    /**
+     * @param chunkSize
+     *          Max number of stream bytes per chunk.
+     * @param lastOnClose
+     *          If true, the last chunk is written as the last message
+     *          of the session (isLast is set).
+     */
+    public AppOutputStream(ByteChannel channel, int chunkSize, boolean lastOnClose) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("bad chunkSize, " + chunkSize);
+        }
+
+        this.channel = ByteBufferAdapter.of(channel);
+        this.chunk = ByteBuffer.allocate(1 + chunkSize);
+        this.lastOnClose = lastOnClose;
+        chunk.put(FLAG_MORE);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        checkNotClosed();
+
+        if (!chunk.hasRemaining()) {
+            writeChunk(FLAG_MORE, false);
+        }
+
+        chunk.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        checkNotClosed();
+
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        while (len > 0) {
+            if (!chunk.hasRemaining()) {
+                writeChunk(FLAG_MORE, false);
+            }
+
+            int count = Math.min(len, chunk.remaining());
+            chunk.put(b, off, count);
+            off += count;
+            len -= count;
+        }
+    }
+
+    /**
+     * Writes buffered stream data as a chunk, if there is any.
+     */
+    @Override
+    public void flush() throws IOException {
+        checkNotClosed();
+
+        if (chunk.position() > 1) {
+            writeChunk(FLAG_MORE, false);
+        }
+    }
+
+    /**
+     * Writes the buffered stream data as the last chunk of the stream.
+     * Does not close the channel.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        writeChunk(FLAG_END, lastOnClose);
+    }
+
+    private void writeChunk(byte flag, boolean isLast) throws IOException {
+        chunk.put(0, flag);
+        chunk.flip();
+
+        try {
+            channel.write(isLast, chunk);
+        } catch (ComException e) {
+            throw new IOException(e.getMessage(), e);
+        } finally {
+            chunk.clear();
+            chunk.put(FLAG_MORE);
+        }
+    }
+
+    private void checkNotClosed() throws IOException {
+        if (closed) {
+            throw new IOException("stream closed");
+        }
+    }
+}
@@ -1,9 +1,16 @@
 package saltchannel.v2;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.concurrent.LinkedBlockingQueue;
 import saltchannel.BadPeer;
+import saltchannel.ByteBufferAdapter;
+import saltchannel.ByteBufferChannel;
 import saltchannel.ByteChannel;
 import saltchannel.ComException;
+import saltchannel.TimeException;
+import saltchannel.util.Serializer;
 import saltchannel.util.TimeChecker;
 import saltchannel.util.TimeKeeper;
 import saltchannel.v2.packets.AppPacket;
@@ -21,9 +28,17 @@ import saltchannel.v2.packets.PacketHeader;
  * Also, this class decides how to encode application messages 
  * using either AppPacket or MultiAppPacket.
  * 
+ * The ByteBufferChannel methods read into and write from caller-supplied
+ * buffers using reusable internal buffers. The underlying channel is used 
+ * through its ByteBufferChannel interface if it implements it 
+ * (EncryptedChannelV2 does).
+ * 
+ * Application messages and bytes in each direction, MultiAppPackets and
+ * time check failures are counted, see getCounters().
+ * 
  * @author Frans Lundberg
  */
-public class ApplicationChannel implements ByteChannel {
+public class ApplicationChannel implements ByteChannel, ByteBufferChannel {
     private ByteChannel channel;
     private TimeKeeper timeKeeper;
     private TimeChecker timeChecker;
@@ -31,13 +46,20 @@ public class ApplicationChannel implements ByteChannel {
     private LinkedBlockingQueue<byte[]> readQ;
     private boolean readLast = false;
     private EncryptedChannelV2 encryptedChannel;
+    private ByteBufferChannel bufferChannel;
+    private ByteBuffer readBuffer;
+    private byte[] writeBuffer;
+    private final ChannelCounters counters;
     
     public ApplicationChannel(ByteChannel channel, TimeKeeper timeKeeper, TimeChecker timeChecker) {
         this.channel = channel;
+        this.bufferChannel = ByteBufferAdapter.of(channel);
         if (channel instanceof EncryptedChannelV2) {
             encryptedChannel = (EncryptedChannelV2) channel;
+            counters = encryptedChannel.getCounters();
         } else {
             encryptedChannel = null;
+            counters = new ChannelCounters();
         }
         
         this.timeKeeper = timeKeeper;
@@ -71,11 +93,13 @@ public class ApplicationChannel implements ByteChannel {
         
         if (type == Packet.TYPE_APP_PACKET) {
             AppPacket p = AppPacket.fromBytes(bytes, 0, bytes.length);
-            timeChecker.checkTime(p.time);
+            checkTime(p.time);
             result = p.appData;
+            countRead(result.length);
         } else if (type == Packet.TYPE_MULTI_APP_PACKET) {
             MultiAppPacket multi = MultiAppPacket.fromBytes(bytes, 0, bytes.length);
-            timeChecker.checkTime(multi.time);
+            checkTime(multi.time);
+            countRead(multi);
             int count = multi.appMessages.length;
             result = multi.appMessages[0];
             for (int i = 1; i < count; i++) {
@@ -89,6 +113,141 @@ public class ApplicationChannel implements ByteChannel {
         return result;
     }
     
+    /**
+     * Reads one application message into dst. 
+     * The AppData of an AppPacket is copied directly from the decrypted 
+     * packet to dst.
+     * 
+     * @throws BufferOverflowException
+     *          If the message does not fit in dst. The message is not consumed.
+     */
+    @Override
+    public int read(ByteBuffer dst) throws ComException {
+        if (readQ.size() == 0) {
+            int size = readPacketToQueueOrDst(dst);
+            if (size >= 0) {
+                return size;
+            }
+        }
+        
+        byte[] message = readQ.peek();
+        if (message.length > dst.remaining()) {
+            throw new BufferOverflowException();
+        }
+        
+        readQ.poll();
+        dst.put(message);
+        return message.length;
+    }
+    
+    /**
+     * Reads a packet from the underlying channel. The AppData of an AppPacket
+     * is put in dst if there is room, otherwise the application messages 
+     * are added to readQ. Returns the number of bytes put in dst, or -1
+     * if the messages were added to readQ.
+     */
+    private int readPacketToQueueOrDst(ByteBuffer dst) {
+        ByteBuffer packet = readPacket();
+        byte[] bytes = packet.array();
+        int size = packet.remaining();
+        
+        if (size < PacketHeader.SIZE) {
+            throw new BadPeer("cannot read header, message too small, " + size);
+        }
+        
+        int type = new PacketHeader(bytes, 0).getType();
+        
+        if (type == Packet.TYPE_APP_PACKET) {
+            int time = AppPacket.readTime(bytes, 0, size);
+            checkTime(time);
+            int dataSize = size - AppPacket.HEADER_SIZE;
+            countRead(dataSize);
+            
+            if (dataSize <= dst.remaining()) {
+                dst.put(bytes, AppPacket.HEADER_SIZE, dataSize);
+                return dataSize;
+            }
+            
+            readQ.add(Arrays.copyOfRange(bytes, AppPacket.HEADER_SIZE, size));
+        } else if (type == Packet.TYPE_MULTI_APP_PACKET) {
+            MultiAppPacket multi = MultiAppPacket.fromBytes(bytes, 0, size);
+            checkTime(multi.time);
+            countRead(multi);
+            for (int i = 0; i < multi.appMessages.length; i++) {
+                readQ.add(multi.appMessages[i]);
+            }
+        } else {
+            throw new BadPeer("unexpected message type, " + type 
+                    + ", expected AppPacket or MultiAppPacket");
+        }
+        
+        return -1;
+    }
+    
+    private void checkTime(int time) {
+        try {
+            timeChecker.checkTime(time);
+        } catch (TimeException e) {
+            counters.increment(ChannelCounters.Counter.TIME_CHECK_FAILURES);
+            throw e;
+        }
+    }
+    
+    private void countRead(int messageSize) {
+        counters.increment(ChannelCounters.Counter.MESSAGES_IN);
+        counters.add(ChannelCounters.Counter.BYTES_IN, messageSize);
+    }
+    
+    private void countRead(MultiAppPacket multi) {
+        int count = multi.appMessages.length;
+        long bytes = 0;
+        for (int i = 0; i < count; i++) {
+            bytes += multi.appMessages[i].length;
+        }
+        
+        counters.add(ChannelCounters.Counter.MESSAGES_IN, count);
+        counters.add(ChannelCounters.Counter.BYTES_IN, bytes);
+        counters.increment(ChannelCounters.Counter.MULTI_APP_PACKETS_IN);
+        counters.add(ChannelCounters.Counter.MULTI_APP_MESSAGES_IN, count);
+    }
+    
+    private void countWritten(int count, long bytes, boolean multi) {
+        counters.add(ChannelCounters.Counter.MESSAGES_OUT, count);
+        counters.add(ChannelCounters.Counter.BYTES_OUT, bytes);
+        if (multi) {
+            counters.increment(ChannelCounters.Counter.MULTI_APP_PACKETS_OUT);
+            counters.add(ChannelCounters.Counter.MULTI_APP_MESSAGES_OUT, count);
+        }
+    }
+    
+    /**
+     * Reads a packet from the underlying channel into readBuffer,
+     * grows readBuffer as needed.
+     */
+    private ByteBuffer readPacket() {
+        if (readBuffer == null) {
+            readBuffer = ByteBuffer.allocate(1024);
+        }
+        
+        while (true) {
+            readBuffer.clear();
+            try {
+                bufferChannel.read(readBuffer);
+                break;
+            } catch (BufferOverflowException e) {
+                readBuffer = ByteBuffer.allocate(2 * readBuffer.capacity());
+            }
+        }
+        
+        readBuffer.flip();
+        
+        if (encryptedChannel != null) {
+            this.readLast = encryptedChannel.lastFlag();
+        }
+        
+        return readBuffer;
+    }
+    
     /**
      * Returns the number of remaining application buffered application
      * messages. This is the same as the number of further messages
@@ -98,6 +257,14 @@ public class ApplicationChannel implements ByteChannel {
         return readQ.size();
     }
     
+    /**
+     * Returns the counters of this channel; shared with the underlying
+     * EncryptedChannelV2, if any.
+     */
+    public ChannelCounters getCounters() {
+        return counters;
+    }
+    
     /**
      * Returns true if the last packet read with read() is the last
      * batch of messages of the application session.
@@ -130,6 +297,7 @@ public class ApplicationChannel implements ByteChannel {
         byte[][] messages2;
         byte[][] messages3;
         int currentTime = timeKeeper.getTime();
+        long bytes = 0;
         
         boolean useMulti = MultiAppPacket.shouldUse(messages);
         if (useMulti) {
@@ -139,9 +307,13 @@ public class ApplicationChannel implements ByteChannel {
             multi.time = currentTime;
             messages2[0] = new byte[multi.getSize()];
             multi.toBytes(messages2[0], 0);
+            for (int i = 0; i < messages.length; i++) {
+                bytes += messages[i].length;
+            }
         } else {
             messages2 = new byte[messages.length][];
             for (int i = 0; i < messages.length; i++) {
+                bytes += messages[i].length;
                 AppPacket p = new AppPacket();
                 p.appData = messages[i];
                 p.time = currentTime;
@@ -161,13 +333,137 @@ public class ApplicationChannel implements ByteChannel {
         }
         
         channel.write(isLast, messages3);
+        countWritten(messages.length, bytes, useMulti);
+    }
+    
+    /**
+     * Writes application messages (the remaining bytes of each buffer).
+     * Packets are serialized into a reusable buffer and passed on to the 
+     * underlying channel.
+     */
+    @Override
+    public void write(boolean isLast, ByteBuffer... messages) throws ComException {
+        int currentTime = timeKeeper.getTime();
+        boolean useMulti = MultiAppPacket.shouldUse(messages);
+        M4Packet m4 = this.bufferedM4;
+        
+        long bytes = 0;
+        for (int i = 0; i < messages.length; i++) {
+            bytes += messages[i].remaining();
+        }
+        
+        int totalSize = m4 == null ? 0 : m4.getSize();
+        if (useMulti) {
+            totalSize += PacketHeader.SIZE + 4 + 2 + 2 * messages.length + (int) bytes;
+        } else {
+            totalSize += AppPacket.HEADER_SIZE * messages.length + (int) bytes;
+        }
+        
+        if (writeBuffer == null || writeBuffer.length < totalSize) {
+            writeBuffer = new byte[Math.max(totalSize, 1024)];
+        }
+        
+        byte[] buffer = writeBuffer;
+        int packetCount = (m4 == null ? 0 : 1) + (useMulti ? 1 : messages.length);
+        ByteBuffer[] toWrite = new ByteBuffer[packetCount];
+        int offset = 0;
+        int index = 0;
+        
+        if (m4 != null) {
+            m4.time = currentTime;
+            m4.toBytes(buffer, 0);
+            toWrite[index++] = ByteBuffer.wrap(buffer, 0, m4.getSize());
+            offset = m4.getSize();
+            this.bufferedM4 = null;
+        }
+        
+        if (useMulti) {
+            int start = offset;
+            Serializer s = new Serializer(buffer, offset);
+            s.writeHeader(new PacketHeader(MultiAppPacket.PACKET_TYPE));
+            s.writeInt32(currentTime);
+            s.writeUint16(messages.length);
+            offset = s.getOffset();
+            
+            for (int i = 0; i < messages.length; i++) {
+                int size = messages[i].remaining();
+                new Serializer(buffer, offset).writeUint16(size);
+                messages[i].get(buffer, offset + 2, size);
+                offset += 2 + size;
+            }
+            
+            toWrite[index++] = ByteBuffer.wrap(buffer, start, offset - start);
+        } else {
+            for (int i = 0; i < messages.length; i++) {
+                int size = messages[i].remaining();
+                Serializer s = new Serializer(buffer, offset);
+                s.writeHeader(new PacketHeader(AppPacket.PACKET_TYPE));
+                s.writeInt32(currentTime);
+                messages[i].get(buffer, offset + AppPacket.HEADER_SIZE, size);
+                toWrite[index++] = ByteBuffer.wrap(buffer, offset, AppPacket.HEADER_SIZE + size);
+                offset += AppPacket.HEADER_SIZE + size;
+            }
+        }
+        
+        bufferChannel.write(isLast, toWrite);
+        countWritten(messages.length, bytes, useMulti);
     }
     
     /**
-     * Used by framework to set M4, so M4 can be sent together with 
+     * Used by framework to set M4, so M4 can be sent together with
      * first application messages.
      */
     void setBufferedM4(M4Packet m4) {
         this.bufferedM4 = m4;
     }
+
+    /**
+     * Used by framework (client). Returns the application messages as one
+     * packet, an AppPacket or a MultiAppPacket, to be sent as early data
+     * together with M1.
+     */
+    byte[] earlyDataPacket(byte[][] messages) {
+        int currentTime = timeKeeper.getTime();
+
+        if (messages.length == 1) {
+            AppPacket p = new AppPacket();
+            p.appData = messages[0];
+            p.time = currentTime;
+            byte[] result = new byte[p.getSize()];
+            p.toBytes(result, 0);
+            return result;
+        }
+
+        MultiAppPacket multi = new MultiAppPacket();
+        multi.appMessages = messages;
+        multi.time = currentTime;
+        byte[] result = new byte[multi.getSize()];
+        multi.toBytes(result, 0);
+        return result;
+    }
+
+    /**
+     * Used by framework (server). Adds the application messages of a
+     * decrypted early data packet; they are returned by the following reads.
+     */
+    void addEarlyData(byte[] packet) {
+        int type = new PacketHeader(packet, 0).getType();
+
+        if (type == Packet.TYPE_APP_PACKET) {
+            AppPacket p = AppPacket.fromBytes(packet, 0, packet.length);
+            checkTime(p.time);
+            countRead(p.appData.length);
+            readQ.add(p.appData);
+        } else if (type == Packet.TYPE_MULTI_APP_PACKET) {
+            MultiAppPacket multi = MultiAppPacket.fromBytes(packet, 0, packet.length);
+            checkTime(multi.time);
+            countRead(multi);
+            for (int i = 0; i < multi.appMessages.length; i++) {
+                readQ.add(multi.appMessages[i]);
+            }
+        } else {
+            throw new BadPeer("unexpected early data type, " + type
+                    + ", expected AppPacket or MultiAppPacket");
+        }
+    }
 }
@@ -0,0 +1,245 @@
+package saltchannel.v2;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Traffic counters of a session, maintained by its EncryptedChannelV2
+ * (encrypted records, decryption failures) and ApplicationChannel
+ * (application messages, MultiAppPackets, time check failures).
+ * Each channel has counters by default, see EncryptedChannelV2.getCounters()
+ * and ApplicationChannel.getCounters(); counting is a few atomic
+ * additions per message and does not allocate.
+ *
+ * A counters object can have a parent; everything added to it is
+ * also added to the parent. A parent shared by all sessions of a server
+ * gives aggregate counts, see SaltServerSession.setCounters().
+ *
+ * The class is thread-safe. It implements ChannelCountersMBean,
+ * so it can be registered with JMX, see ChannelCountersJmx.
+ *
+ * @author Frans Lundberg
+ */
+public class ChannelCounters implements ChannelCountersMBean {
+
+    public enum Counter {
+        /** Application messages read. */
+        MESSAGES_IN,
+
+        /** Bytes of the application messages read. */
+        BYTES_IN,
+
+        /** Application messages written. */
+        MESSAGES_OUT,
+
+        /** Bytes of the application messages written. */
+        BYTES_OUT,
+
+        /** Encrypted records read, including handshake records. */
+        RECORDS_IN,
+
+        /** Bytes of the encrypted records read (EncryptedMessage packets). */
+        RECORD_BYTES_IN,
+
+        /** Encrypted records written, including handshake records. */
+        RECORDS_OUT,
+
+        /** Bytes of the encrypted records written. */
+        RECORD_BYTES_OUT,
+
+        /** MultiAppPackets read. */
+        MULTI_APP_PACKETS_IN,
+
+        /** Application messages read in MultiAppPackets. */
+        MULTI_APP_MESSAGES_IN,
+
+        /** MultiAppPackets written. */
+        MULTI_APP_PACKETS_OUT,
+
+        /** Application messages written in MultiAppPackets. */
+        MULTI_APP_MESSAGES_OUT,
+
+        /** Records that could not be decrypted. */
+        DECRYPT_FAILURES,
+
+        /** Packets with a time that failed the TimeChecker. */
+        TIME_CHECK_FAILURES
+    }
+
+    private static final Counter[] COUNTERS = Counter.values();
+
+    private final AtomicLongArray values = new AtomicLongArray(COUNTERS.length);
+    private final ChannelCounters parent;
+
+    public ChannelCounters() {
+        this(null);
+    }
+
+    /**
+     * @param parent
+     *          Counters that everything added to this object is also
+     *          added to, or null.
+     */
+    public ChannelCounters(ChannelCounters parent) {
+        this.parent = parent;
+    }
+
+    public ChannelCounters getParent() {
+        return parent;
+    }
+
+    void add(Counter counter, long delta) {
+        values.addAndGet(counter.ordinal(), delta);
+        if (parent != null) {
+            parent.add(counter, delta);
+        }
+    }
+
+    void increment(Counter counter) {
+        add(counter, 1);
+    }
+
+    public long get(Counter counter) {
+        return values.get(counter.ordinal());
+    }
+
+    /**
+     * Returns the current values of all counters. The values are read
+     * one at a time; the snapshot is not atomic.
+     */
+    public Snapshot snapshot() {
+        long[] result = new long[COUNTERS.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = values.get(i);
+        }
+
+        return new Snapshot(System.nanoTime(), result);
+    }
+
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    @Override
+    public long getMessagesIn() {
+        return get(Counter.MESSAGES_IN);
+    }
+
+    @Override
+    public long getBytesIn() {
+        return get(Counter.BYTES_IN);
+    }
+
+    @Override
+    public long getMessagesOut() {
+        return get(Counter.MESSAGES_OUT);
+    }
+
+    @Override
+    public long getBytesOut() {
+        return get(Counter.BYTES_OUT);
+    }
+
+    @Override
+    public long getRecordsIn() {
+        return get(Counter.RECORDS_IN);
+    }
+
+    @Override
+    public long getRecordBytesIn() {
+        return get(Counter.RECORD_BYTES_IN);
+    }
+
+    @Override
+    public long getRecordsOut() {
+        return get(Counter.RECORDS_OUT);
+    }
+
+    @Override
+    public long getRecordBytesOut() {
+        return get(Counter.RECORD_BYTES_OUT);
+    }
+
+    @Override
+    public long getMultiAppPacketsIn() {
+        return get(Counter.MULTI_APP_PACKETS_IN);
+    }
+
+    @Override
+    public long getMultiAppPacketsOut() {
+        return get(Counter.MULTI_APP_PACKETS_OUT);
+    }
+
+    @Override
+    public double getMessagesPerMultiAppPacketIn() {
+        return snapshot().getMessagesPerMultiAppPacketIn();
+    }
+
+    @Override
+    public long getDecryptFailures() {
+        return get(Counter.DECRYPT_FAILURES);
+    }
+
+    @Override
+    public long getTimeCheckFailures() {
+        return get(Counter.TIME_CHECK_FAILURES);
+    }
+
+    /**
+     * The values of the counters at one point in time.
+     */
+    public static class Snapshot {
+        private final long nanoTime;
+        private final long[] values;
+
+        private Snapshot(long nanoTime, long[] values) {
+            this.nanoTime = nanoTime;
+            this.values = values;
+        }
+
+        public long get(Counter counter) {
+            return values[counter.ordinal()];
+        }
+
+        /**
+         * Returns the System.nanoTime() value when the snapshot was taken.
+         */
+        public long getNanoTime() {
+            return nanoTime;
+        }
+
+        /**
+         * Returns the average number of application messages per
+         * MultiAppPacket read, 0 if none was read.
+         */
+        public double getMessagesPerMultiAppPacketIn() {
+            long packets = get(Counter.MULTI_APP_PACKETS_IN);
+            return packets == 0 ? 0 : (double) get(Counter.MULTI_APP_MESSAGES_IN) / packets;
+        }
+
+        /**
+         * Returns the increase per second of the counter from an earlier
+         * snapshot to this one; for example, the throughput in bytes per
+         * second for BYTES_IN.
+         */
+        public double perSecond(Counter counter, Snapshot earlier) {
+            long nanos = nanoTime - earlier.nanoTime;
+            if (nanos <= 0) {
+                return 0;
+            }
+
+            return (get(counter) - earlier.get(counter)) * 1e9 / nanos;
+        }
+
+        public String toString() {
+            StringBuilder b = new StringBuilder();
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    b.append(", ");
+                }
+                b.append(COUNTERS[i].name()).append('=').append(values[i]);
+            }
+
+            return b.toString();
+        }
+    }
+}
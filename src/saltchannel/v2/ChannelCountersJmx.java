@@ -0,0 +1,56 @@
+package saltchannel.v2;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registers ChannelCounters with the platform MBean server, typically the
+ * aggregate counters of a server. The JMX classes are only used by this
+ * class, so the rest of the library does not depend on them (they are
+ * not available on Android, for example).
+ *
+ * @author Frans Lundberg
+ */
+public class ChannelCountersJmx {
+    public static final String DOMAIN = "saltchannel";
+
+    private ChannelCountersJmx() {}
+
+    /**
+     * Registers the counters with the name
+     * "saltchannel:type=ChannelCounters,name=[name]".
+     *
+     * @throws IllegalArgumentException
+     *          If the name is not valid or already registered.
+     */
+    public static ObjectName register(ChannelCounters counters, String name) {
+        try {
+            ObjectName objectName = objectName(name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(counters, objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalArgumentException("could not register counters, " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Unregisters the counters registered with the name, if any.
+     */
+    public static void unregister(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = objectName(name);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            throw new IllegalArgumentException("could not unregister counters, " + e.getMessage(), e);
+        }
+    }
+
+    private static ObjectName objectName(String name) throws JMException {
+        return new ObjectName(DOMAIN + ":type=ChannelCounters,name=" + ObjectName.quote(name));
+    }
+}
@@ -0,0 +1,34 @@
+package saltchannel.v2;
+
+/**
+ * JMX management interface of ChannelCounters, see ChannelCountersJmx.
+ *
+ * @author Frans Lundberg
+ */
+public interface ChannelCountersMBean {
+    public long getMessagesIn();
+
+    public long getBytesIn();
+
+    public long getMessagesOut();
+
+    public long getBytesOut();
+
+    public long getRecordsIn();
+
+    public long getRecordBytesIn();
+
+    public long getRecordsOut();
+
+    public long getRecordBytesOut();
+
+    public long getMultiAppPacketsIn();
+
+    public long getMultiAppPacketsOut();
+
+    public double getMessagesPerMultiAppPacketIn();
+
+    public long getDecryptFailures();
+
+    public long getTimeCheckFailures();
+}
@@ -19,4 +19,12 @@ public class ClientTicketData {
      * client-server-sessionKey tuple.
      */
     public byte[] sessionNonce;
+    
+    /**
+     * Set by SaltClientSession when early data has been encrypted with 
+     * the session key and nonce of this ticket data. The ticket data is then
+     * not used again; applications that store ticket data must store
+     * this field too.
+     */
+    public boolean earlyDataSent;
 }
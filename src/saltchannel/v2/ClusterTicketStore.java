@@ -0,0 +1,107 @@
+package saltchannel.v2;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A TicketStore for a node in a cluster of servers behind a load balancer.
+ * The ticket id space is partitioned by node: the node id is stored in the 
+ * high bits of the ticket id, and a per-node sequence number in the low bits.
+ * Validity is tracked by a ReplayStore shared by all nodes, so a ticket 
+ * issued by one node can be used to resume a session on any node.
+ * 
+ * All nodes must share the ticket encryption keys (the same TicketKeyRing 
+ * content). Since the ticket id is part of the ticket nonce, the 
+ * partitioning also guarantees that two nodes never use the same nonce 
+ * with the shared key.
+ * 
+ * <p>Restart. A node must never reuse a sequence number, also not after a 
+ * restart and also not with a new key epoch: the ReplayStore is keyed by 
+ * ticket id only, so a reused id would collide with a ticket issued before 
+ * the restart. A clock is not a safe source of firstSequence: after a burst 
+ * of tickets and a quick restart, a time-based value can be lower than 
+ * sequence numbers already used. On every restart, start from a persisted 
+ * high-water mark, see the constructor.</p>
+ * 
+ * @author Frans Lundberg
+ */
+public class ClusterTicketStore implements TicketStore {
+    public static final int NODE_BITS = 15;
+    public static final int SEQUENCE_BITS = 48;
+    public static final int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+    public static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
+    
+    private final int nodeId;
+    private final AtomicLong nextSequence;
+    private final ReplayStore replayStore;
+    
+    /**
+     * Creates a store for one node.
+     * 
+     * @param nodeId
+     *          Id of this node, 0 to MAX_NODE_ID, unique in the cluster.
+     * @param firstSequence
+     *          Must be larger than all sequence numbers previously used by
+     *          this node, as 'first' of TicketBits; at least 1. 
+     *          1 for the first run of the node, then a high-water mark 
+     *          persisted by the previous run, also if the key epoch has 
+     *          changed since then. The high-water mark must be persisted before
+     *          the sequence numbers below it are issued, for example in blocks:
+     *          store getNextSequence() + blockSize and write it again when
+     *          getNextSequence() gets close to the stored value.
+     * @param replayStore
+     *          The replay store shared by all nodes.
+     */
+    public ClusterTicketStore(int nodeId, long firstSequence, ReplayStore replayStore) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("bad nodeId, " + nodeId);
+        }
+        
+        if (firstSequence < 1 || firstSequence > MAX_SEQUENCE) {
+            throw new IllegalArgumentException("bad firstSequence, " + firstSequence);
+        }
+        
+        this.nodeId = nodeId;
+        this.nextSequence = new AtomicLong(firstSequence);
+        this.replayStore = replayStore;
+    }
+    
+    public int getNodeId() {
+        return nodeId;
+    }
+    
+    /**
+     * Returns the sequence number of the next ticket to issue.
+     */
+    public long getNextSequence() {
+        return nextSequence.get();
+    }
+    
+    @Override
+    public long issue() {
+        long sequence = nextSequence.getAndIncrement();
+        if (sequence > MAX_SEQUENCE) {
+            throw new IllegalStateException("sequence numbers exhausted");
+        }
+        
+        long ticketId = ticketId(nodeId, sequence);
+        replayStore.add(ticketId);
+        return ticketId;
+    }
+    
+    @Override
+    public boolean clearIfValid(long ticketIndex) {
+        return replayStore.remove(ticketIndex);
+    }
+    
+    public static long ticketId(int nodeId, long sequence) {
+        return ((long) nodeId << SEQUENCE_BITS) | sequence;
+    }
+    
+    public static int nodeId(long ticketId) {
+        return (int) (ticketId >>> SEQUENCE_BITS);
+    }
+    
+    public static long sequence(long ticketId) {
+        return ticketId & MAX_SEQUENCE;
+    }
+}
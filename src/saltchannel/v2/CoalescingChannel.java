@@ -0,0 +1,245 @@
+package saltchannel.v2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import saltchannel.ByteChannel;
+import saltchannel.ComException;
+import saltchannel.v2.packets.MultiAppPacket;
+
+/**
+ * Coalesces application messages written one at a time into fewer,
+ * larger writes to the underlying channel, typically an ApplicationChannel.
+ * When an ApplicationChannel is given two or more messages in one write,
+ * it encodes them as one MultiAppPacket; all messages of a flush thereby
+ * share one packet header, one encryption (one MAC) and one write to the
+ * transport.
+ *
+ * <p>Written messages are kept until one of the following happens
+ * (Nagle-style): maxDelay has passed since the first pending message was
+ * written, the pending messages reach maxBytes or maxCount, a message is
+ * written with isLast set, flush() is called, or read() is called.
+ * Flushing on read() avoids delaying a request while its response
+ * is awaited.</p>
+ *
+ * <p>The delay timer runs on the given scheduler, typically one scheduler
+ * shared by all channels of an application. Without a scheduler, messages
+ * are only written when a size limit is reached or when flush() is called.
+ * A write error that happens on the scheduler thread is thrown by the next
+ * call to write() or flush().</p>
+ *
+ * <p>Pending messages are copies; the caller may modify or reuse the arrays
+ * given to write() when write() returns.</p>
+ *
+ * <p>Unlike other ByteChannel implementations, write() and flush() can be
+ * called by multiple threads concurrently; writes are serialized.</p>
+ *
+ * @author Frans Lundberg
+ */
+public class CoalescingChannel implements ByteChannel {
+    public static final long DEFAULT_MAX_DELAY_MICROS = 1000;
+    public static final int DEFAULT_MAX_BYTES = 16 * 1024;
+    public static final int DEFAULT_MAX_COUNT = 256;
+
+    private final ByteChannel channel;
+    private final ScheduledExecutorService scheduler;
+    private final long maxDelayMicros;
+    private final int maxBytes;
+    private final int maxCount;
+    private final Object lock = new Object();
+    private final List<byte[]> pending = new ArrayList<byte[]>();
+    private int pendingBytes = 0;
+    private long batchNumber = 0;
+    private long writeCount = 0;
+    private long messageCount = 0;
+    private ComException timerFailure;
+
+    /**
+     * Creates a channel with DEFAULT_MAX_DELAY_MICROS, DEFAULT_MAX_BYTES
+     * and DEFAULT_MAX_COUNT.
+     */
+    public CoalescingChannel(ByteChannel channel, ScheduledExecutorService scheduler) {
+        this(channel, scheduler, DEFAULT_MAX_DELAY_MICROS, DEFAULT_MAX_BYTES, DEFAULT_MAX_COUNT);
+    }
+
+    /**
+     * @param scheduler
+     *          Runs the delay timer, null for no timer.
+     * @param maxDelayMicros
+     *          Max time a message is kept before it is written.
+     * @param maxBytes
+     *          The pending messages are written when their total size
+     *          reaches this number of bytes.
+     * @param maxCount
+     *          The pending messages are written when they are this many,
+     *          max MultiAppPacket.MAX_SIZE.
+     */
+    public CoalescingChannel(ByteChannel channel, ScheduledExecutorService scheduler,
+            long maxDelayMicros, int maxBytes, int maxCount) {
+        if (maxDelayMicros < 0) {
+            throw new IllegalArgumentException("bad maxDelayMicros, " + maxDelayMicros);
+        }
+
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("bad maxBytes, " + maxBytes);
+        }
+
+        if (maxCount < 1 || maxCount > MultiAppPacket.MAX_SIZE) {
+            throw new IllegalArgumentException("bad maxCount, " + maxCount);
+        }
+
+        this.channel = channel;
+        this.scheduler = scheduler;
+        this.maxDelayMicros = maxDelayMicros;
+        this.maxBytes = maxBytes;
+        this.maxCount = maxCount;
+    }
+
+    /**
+     * Flushes pending messages, then reads one message from the
+     * underlying channel.
+     */
+    @Override
+    public byte[] read() throws ComException {
+        flush();
+        return channel.read();
+    }
+
+    /**
+     * @deprecated Use write(isLast, messages) instead.
+     */
+    @Override
+    public void write(byte[]... messages) throws ComException {
+        write(false, messages);
+    }
+
+    /**
+     * Adds copies of the messages to the pending messages. If isLast is true,
+     * all pending messages are written immediately with the last flag set.
+     */
+    @Override
+    public void write(boolean isLast, byte[]... messages) throws ComException {
+        synchronized (lock) {
+            checkTimerFailure();
+
+            for (int i = 0; i < messages.length; i++) {
+                byte[] message = messages[i];
+
+                if (message.length > MultiAppPacket.MAX_SIZE) {
+                    // Cannot be part of a MultiAppPacket, written separately.
+                    flushLocked(false);
+                    if (!(isLast && i == messages.length - 1)) {
+                        writeToChannel(false, new byte[][] {message});
+                        continue;
+                    }
+                }
+
+                add(message);
+
+                if (pending.size() >= maxCount || pendingBytes >= maxBytes) {
+                    flushLocked(false);
+                }
+            }
+
+            if (isLast) {
+                flushLocked(true);
+            }
+        }
+    }
+
+    /**
+     * Writes all pending messages to the underlying channel.
+     */
+    public void flush() throws ComException {
+        synchronized (lock) {
+            checkTimerFailure();
+            flushLocked(false);
+        }
+    }
+
+    /**
+     * Returns the number of writes to the underlying channel.
+     */
+    public long getWriteCount() {
+        synchronized (lock) {
+            return writeCount;
+        }
+    }
+
+    /**
+     * Returns the number of messages written to the underlying channel.
+     */
+    public long getMessageCount() {
+        synchronized (lock) {
+            return messageCount;
+        }
+    }
+
+    private void add(byte[] message) {
+        pending.add(message.clone());
+        pendingBytes += message.length;
+
+        if (pending.size() == 1 && scheduler != null) {
+            scheduleFlush();
+        }
+    }
+
+    private void scheduleFlush() {
+        final long batch = this.batchNumber;
+
+        try {
+            scheduler.schedule(new Runnable() {
+                public void run() {
+                    timerFlush(batch);
+                }
+            }, maxDelayMicros, TimeUnit.MICROSECONDS);
+        } catch (RejectedExecutionException e) {
+            // Scheduler is shut down, the messages are written
+            // when a limit is reached or on flush().
+        }
+    }
+
+    private void timerFlush(long batch) {
+        synchronized (lock) {
+            if (batch != this.batchNumber) {
+                return;    // The batch has already been written.
+            }
+
+            try {
+                flushLocked(false);
+            } catch (ComException e) {
+                timerFailure = e;
+            }
+        }
+    }
+
+    private void flushLocked(boolean isLast) {
+        if (pending.isEmpty()) {
+            if (isLast) {
+                writeToChannel(true, new byte[0][]);
+            }
+            return;
+        }
+
+        byte[][] messages = pending.toArray(new byte[pending.size()][]);
+        pending.clear();
+        pendingBytes = 0;
+        batchNumber++;
+        writeToChannel(isLast, messages);
+    }
+
+    private void writeToChannel(boolean isLast, byte[][] messages) {
+        channel.write(isLast, messages);
+        writeCount++;
+        messageCount += messages.length;
+    }
+
+    private void checkTimerFailure() {
+        if (timerFailure != null) {
+            throw timerFailure;
+        }
+    }
+}
@@ -1,14 +1,18 @@
 package saltchannel.v2;
 
-import java.util.Arrays;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import saltaa.BadEncryptedDataException;
 import saltaa.SaltLib;
 import saltaa.SaltLibFactory;
 import saltchannel.BadPeer;
+import saltchannel.ByteBufferAdapter;
+import saltchannel.ByteBufferChannel;
 import saltchannel.ByteChannel;
 import saltchannel.ComException;
 import saltchannel.util.Bytes;
 import saltchannel.v2.packets.EncryptedMessage;
+import saltchannel.v2.packets.PacketHeader;
 import saltchannel.v2.packets.TTPacket;
 
 /**
@@ -18,19 +22,40 @@ import saltchannel.v2.packets.TTPacket;
  * and BadPeer if the data format is not OK including cases when the data
  * is not encrypted correctly (when authentication of encrypted data fails).
  * 
+ * Messages are encrypted directly into the buffer of the resulting 
+ * EncryptedMessage and decrypted directly from the received buffer; one 
+ * message costs one allocation in each direction.
+ * 
+ * The ByteBufferChannel methods use reusable internal buffers instead;
+ * no allocation per message. They use the ByteBufferChannel interface
+ * of the underlying channel if it implements it.
+ * 
+ * Records and bytes in each direction and decryption failures are
+ * counted, see getCounters().
+ * 
  * @author Frans Lundberg
  */
-public class EncryptedChannelV2 implements ByteChannel {
+public class EncryptedChannelV2 implements ByteChannel, ByteBufferChannel {
     private long readNonceInteger;
     private byte[] readNonceBytes = new byte[SaltLib.crypto_box_NONCEBYTES];
     private long writeNonceInteger;
     private byte[] writeNonceBytes = new byte[SaltLib.crypto_box_NONCEBYTES];
     private byte[] key;
     private final ByteChannel channel;
+    private final ByteBufferChannel bufferChannel;
+    private ByteBuffer readBuffer;
+    private boolean readBufferPending = false;
+    private byte[] writeBuffer;
     private byte[] pushbackMessage;
     private byte[] sessionNonce;
-    private EncryptedMessage lastReadEncryptedPacket = null;    
+    private boolean lastReadFlag = false;
     private SaltLib salt = SaltLibFactory.getLib();
+    private ChannelCounters counters = new ChannelCounters();
+    
+    // JFR record sample counters. One per direction: reads and writes
+    // may be done concurrently, each by one thread at a time.
+    private int readFlightSample = 0;
+    private int writeFlightSample = 0;
 
     /**
      * Creates a new EncryptedChannel given the underlying channel to be 
@@ -54,6 +79,7 @@ public class EncryptedChannelV2 implements ByteChannel {
         }
         
         this.channel = channel;
+        this.bufferChannel = ByteBufferAdapter.of(channel);
         this.key = key;
         this.sessionNonce = sessionNonce;
         
@@ -79,6 +105,22 @@ public class EncryptedChannelV2 implements ByteChannel {
         CLIENT, SERVER
     }
     
+    /**
+     * Returns the counters of this channel. They are shared with 
+     * an ApplicationChannel created on top of this channel.
+     */
+    public ChannelCounters getCounters() {
+        return counters;
+    }
+    
+    /**
+     * Sets the counters to use. Must be called before an ApplicationChannel
+     * is created on top of this channel.
+     */
+    public void setCounters(ChannelCounters counters) {
+        this.counters = counters;
+    }
+    
     public void pushback(byte[] pushbackMessage) {
         this.pushbackMessage = pushbackMessage;
     }
@@ -86,19 +128,120 @@ public class EncryptedChannelV2 implements ByteChannel {
     @Override
     public byte[] read() throws ComException, BadPeer {
         byte[] message = readOrTakePushback();
-        this.lastReadEncryptedPacket = unwrap(message);
-        byte[] encrypted = lastReadEncryptedPacket.body;
-        byte[] clear = decrypt(encrypted);
+        Object event = beginRecordEvent(false);
+        PacketHeader header = V2Util.parseHeader(message);
+        if (header.getType() != EncryptedMessage.PACKET_TYPE) {
+            throw new BadPeer("unexpected packet type, " + header.getType());
+        }
+        
+        byte[] clear = decrypt(message, PacketHeader.SIZE, message.length - PacketHeader.SIZE);
+        this.lastReadFlag = header.lastFlag();
         
         increaseReadNonce();
+        countRead(message.length);
+        endRecordEvent(event, message.length, clear.length > 0 ? clear[0] : -1, 1);
         return clear;
     }
     
+    /**
+     * Reads one message and decrypts it directly into dst.
+     * 
+     * @throws BufferOverflowException
+     *          If the clear text does not fit in dst. The message is not consumed.
+     */
+    @Override
+    public int read(ByteBuffer dst) throws ComException, BadPeer {
+        ByteBuffer message = readMessageBuffer();
+        Object event = beginRecordEvent(false);
+        byte[] bytes = message.array();
+        int offset = message.arrayOffset() + message.position();
+        int size = message.remaining();
+        
+        if (size < PacketHeader.SIZE) {
+            throw new BadPeer("cannot read header, message too small, " + size);
+        }
+        
+        PacketHeader header = new PacketHeader(bytes, offset);
+        if (header.getType() != EncryptedMessage.PACKET_TYPE) {
+            throw new BadPeer("unexpected packet type, " + header.getType());
+        }
+        
+        int encryptedOffset = offset + PacketHeader.SIZE;
+        int encryptedSize = size - PacketHeader.SIZE;
+        int clearSize = encryptedSize - SaltLib.crypto_secretbox_OVERHEAD_BYTES;
+        
+        if (clearSize < 0) {
+            throw new BadPeer("ciphertext too small");
+        }
+        
+        if (clearSize > dst.remaining()) {
+            readBufferPending = true;
+            throw new BufferOverflowException();
+        }
+        
+        readBufferPending = false;
+        
+        if (dst.hasArray()) {
+            decrypt(bytes, encryptedOffset, encryptedSize, dst.array(), dst.arrayOffset() + dst.position());
+            dst.position(dst.position() + clearSize);
+        } else {
+            // Decrypted in place in the read buffer, then copied to the direct buffer.
+            decrypt(bytes, encryptedOffset, encryptedSize, bytes, encryptedOffset);
+            dst.put(bytes, encryptedOffset, clearSize);
+        }
+        
+        this.lastReadFlag = header.lastFlag();
+        increaseReadNonce();
+        countRead(size);
+        endRecordEvent(event, size, clearSize > 0 ? dst.get(dst.position() - clearSize) : -1, 1);
+        return clearSize;
+    }
+    
+    private void countRead(int recordSize) {
+        counters.increment(ChannelCounters.Counter.RECORDS_IN);
+        counters.add(ChannelCounters.Counter.RECORD_BYTES_IN, recordSize);
+    }
+    
+    private void countWritten(int recordSize) {
+        counters.increment(ChannelCounters.Counter.RECORDS_OUT);
+        counters.add(ChannelCounters.Counter.RECORD_BYTES_OUT, recordSize);
+    }
+    
+    /**
+     * Begins a SaltRecordRead or SaltRecordWrite event for one read or write 
+     * call in FlightEvents.getRecordSampleInterval(), returns null for the others.
+     */
+    private Object beginRecordEvent(boolean write) {
+        if (!FlightEvents.AVAILABLE) {
+            return null;
+        }
+        
+        if (write) {
+            if (++writeFlightSample < FlightEvents.RECORD_SAMPLE_INTERVAL) {
+                return null;
+            }
+            writeFlightSample = 0;
+        } else {
+            if (++readFlightSample < FlightEvents.RECORD_SAMPLE_INTERVAL) {
+                return null;
+            }
+            readFlightSample = 0;
+        }
+        
+        return FlightEvents.INSTANCE.beginRecord(write);
+    }
+    
+    private static void endRecordEvent(Object event, int size, int packetType, int recordCount) {
+        if (event != null) {
+            FlightEvents.INSTANCE.endRecord(event, size, packetType, recordCount);
+        }
+    }
+    
     /**
      * Returns the lastFlag of the last read packet.
      */
     public boolean lastFlag() {
-        return lastReadEncryptedPacket == null ? false : lastReadEncryptedPacket.lastFlag();
+        return lastReadFlag;
     }
     
     private byte[] readOrTakePushback() {
@@ -114,6 +257,43 @@ public class EncryptedChannelV2 implements ByteChannel {
         return bytes;
     }
     
+    /**
+     * Returns a buffer with the next message to read (position to limit);
+     * the pending message if not consumed by the previous read.
+     */
+    private ByteBuffer readMessageBuffer() {
+        if (readBuffer == null) {
+            readBuffer = ByteBuffer.allocate(1024);
+        }
+        
+        if (readBufferPending) {
+            return readBuffer;
+        }
+        
+        if (this.pushbackMessage != null) {
+            if (readBuffer.capacity() < pushbackMessage.length) {
+                readBuffer = ByteBuffer.allocate(pushbackMessage.length);
+            }
+            
+            readBuffer.clear();
+            readBuffer.put(pushbackMessage);
+            readBuffer.flip();
+            this.pushbackMessage = null;
+            return readBuffer;
+        }
+        
+        while (true) {
+            readBuffer.clear();
+            try {
+                bufferChannel.read(readBuffer);
+                readBuffer.flip();
+                return readBuffer;
+            } catch (BufferOverflowException e) {
+                readBuffer = ByteBuffer.allocate(2 * readBuffer.capacity());
+            }
+        }
+    }
+    
     /**
      * @deprecated
      */
@@ -128,15 +308,74 @@ public class EncryptedChannelV2 implements ByteChannel {
      */
     @Override
     public void write(boolean isLast, byte[]... messages) throws ComException, BadPeer {
+        Object event = beginRecordEvent(true);
         byte[][] toWrite = new byte[messages.length][];
+        int totalSize = 0;
         
         for (int i = 0; i < messages.length; i++) {
-            byte[] encrypted = encrypt(messages[i]);
-            toWrite[i] = wrap(isLast && i == messages.length - 1, encrypted);
+            toWrite[i] = encryptAndWrap(isLast && i == messages.length - 1, messages[i]);
             increaseWriteNonce();
+            countWritten(toWrite[i].length);
+            totalSize += toWrite[i].length;
         }
         
         channel.write(isLast, toWrite);
+        
+        if (event != null) {
+            int type = messages.length > 0 && messages[0].length > 0 ? messages[0][0] : -1;
+            endRecordEvent(event, totalSize, type, messages.length);
+        }
+    }
+    
+    /**
+     * Takes cleartext messages, encrypts them into a reusable buffer, and 
+     * writes them to underlying channel. 
+     */
+    @Override
+    public void write(boolean isLast, ByteBuffer... messages) throws ComException, BadPeer {
+        Object event = beginRecordEvent(true);
+        int type = event != null && messages.length > 0 && messages[0].hasRemaining() 
+                ? messages[0].get(messages[0].position()) : -1;
+        final int overhead = PacketHeader.SIZE + SaltLib.crypto_secretbox_OVERHEAD_BYTES;
+        int totalSize = 0;
+        for (int i = 0; i < messages.length; i++) {
+            totalSize += overhead + messages[i].remaining();
+        }
+        
+        if (writeBuffer == null || writeBuffer.length < totalSize) {
+            writeBuffer = new byte[Math.max(totalSize, 1024)];
+        }
+        
+        byte[] buffer = writeBuffer;
+        ByteBuffer[] toWrite = new ByteBuffer[messages.length];
+        int offset = 0;
+        
+        for (int i = 0; i < messages.length; i++) {
+            ByteBuffer m = messages[i];
+            int size = m.remaining();
+            int bodyOffset = offset + PacketHeader.SIZE;
+            
+            writeHeader(buffer, offset, isLast && i == messages.length - 1);
+            
+            if (m.hasArray()) {
+                salt.crypto_box_afternm(buffer, bodyOffset, m.array(), m.arrayOffset() + m.position(), size, 
+                        writeNonceBytes, key);
+                m.position(m.limit());
+            } else {
+                // Copied from the direct buffer, then encrypted in place.
+                int clearOffset = bodyOffset + SaltLib.crypto_secretbox_OVERHEAD_BYTES;
+                m.get(buffer, clearOffset, size);
+                salt.crypto_box_afternm(buffer, bodyOffset, buffer, clearOffset, size, writeNonceBytes, key);
+            }
+            
+            increaseWriteNonce();
+            countWritten(overhead + size);
+            toWrite[i] = ByteBuffer.wrap(buffer, offset, overhead + size);
+            offset += overhead + size;
+        }
+        
+        bufferChannel.write(isLast, toWrite);
+        endRecordEvent(event, totalSize, type, messages.length);
     }
     
     /**
@@ -148,39 +387,74 @@ public class EncryptedChannelV2 implements ByteChannel {
             throw new Error("encrypted == null");
         }
         
-        byte[] clear;
-        byte[] c = new byte[SaltLib.crypto_secretbox_OVERHEAD_BYTES + encrypted.length];
-        byte[] m = new byte[c.length];
-        System.arraycopy(encrypted, 0, c, SaltLib.crypto_secretbox_OVERHEAD_BYTES, encrypted.length);
-        if (c.length < 32) {
+        return decrypt(encrypted, 0, encrypted.length);
+    }
+    
+    /**
+     * Decrypts encrypted[offset], ..., encrypted[offset+length-1].
+     * 
+     * @throws BadPeer
+     */
+    private byte[] decrypt(byte[] encrypted, int offset, int length) {
+        if (length < SaltLib.crypto_secretbox_OVERHEAD_BYTES) {
             throw new BadPeer("ciphertext too small");
         }
         
+        byte[] clear = new byte[length - SaltLib.crypto_secretbox_OVERHEAD_BYTES];
+        decrypt(encrypted, offset, length, clear, 0);
+        return clear;
+    }
+    
+    /**
+     * Decrypts encrypted[offset], ..., encrypted[offset+length-1] into
+     * clear[clearOffset], ...; in-place decryption is allowed.
+     * 
+     * @throws BadPeer
+     */
+    private void decrypt(byte[] encrypted, int offset, int length, byte[] clear, int clearOffset) {
         try {
-            salt.crypto_box_open_afternm(m, c, readNonceBytes, key);            
+            salt.crypto_box_open_afternm(clear, clearOffset, encrypted, offset, length, readNonceBytes, key);
         } catch(BadEncryptedDataException e) {
+            counters.increment(ChannelCounters.Counter.DECRYPT_FAILURES);
             throw new BadPeer("invalid encryption, could not be decrypted");
         }
-
-        clear = Arrays.copyOfRange(m, SaltLib.crypto_secretbox_INTERNAL_OVERHEAD_BYTES, m.length);
-        return clear;
     }
     
     /**
      * Needed by ServerChannelV2.
      */
     byte[] encryptAndIncreaseWriteNonce(boolean isLast, byte[] bytes) {
-        byte[] encrypted = wrap(isLast, encrypt(bytes));
+        byte[] encrypted = encryptAndWrap(isLast, bytes);
         increaseWriteNonce();
+        countWritten(encrypted.length);
         return encrypted;
     }
     
     byte[] encrypt(byte[] clear) {
-        byte[] m = new byte[SaltLib.crypto_secretbox_INTERNAL_OVERHEAD_BYTES + clear.length];
-        byte[] c = new byte[m.length];
-        System.arraycopy(clear, 0, m, SaltLib.crypto_secretbox_INTERNAL_OVERHEAD_BYTES, clear.length);        
-        salt.crypto_box_afternm(c, m, writeNonceBytes, key);
-        return Arrays.copyOfRange(c, SaltLib.crypto_secretbox_OVERHEAD_BYTES, c.length);
+        byte[] c = new byte[SaltLib.crypto_secretbox_OVERHEAD_BYTES + clear.length];
+        salt.crypto_box_afternm(c, 0, clear, 0, clear.length, writeNonceBytes, key);
+        return c;
+    }
+    
+    /**
+     * Encrypts clear text directly into the body of a new EncryptedMessage, 
+     * returns the bytes of the EncryptedMessage. Same result as 
+     * wrap(isLast, encrypt(clear)) but without intermediate copies.
+     */
+    private byte[] encryptAndWrap(boolean isLast, byte[] clear) {
+        byte[] result = new byte[PacketHeader.SIZE + SaltLib.crypto_secretbox_OVERHEAD_BYTES + clear.length];
+        writeHeader(result, 0, isLast);
+        salt.crypto_box_afternm(result, PacketHeader.SIZE, clear, 0, clear.length, writeNonceBytes, key);
+        return result;
+    }
+    
+    /**
+     * Writes the header of an EncryptedMessage.
+     */
+    private static void writeHeader(byte[] destination, int offset, boolean isLast) {
+        PacketHeader header = new PacketHeader(EncryptedMessage.PACKET_TYPE);
+        header.setLastFlag(isLast);
+        System.arraycopy(header.bytes(), 0, destination, offset, PacketHeader.SIZE);
     }
     
     private void setWriteNonce(long nonceInteger) {
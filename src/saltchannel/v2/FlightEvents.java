@@ -0,0 +1,137 @@
+package saltchannel.v2;
+
+/**
+ * JDK Flight Recorder (JFR) events of the library:
+ * SaltHandshake (SaltServerSession, SaltClientSession),
+ * SaltRecordRead and SaltRecordWrite (EncryptedChannelV2),
+ * SaltTicketIssue and SaltTicketValidate (ResumeHandler).
+ *
+ * <p>The events are implemented in the source tree src-jfr, which needs
+ * Java 11 and is compiled by the Ant build when the JDK has JFR.
+ * The implementation is loaded by reflection; on a JDK without JFR (or
+ * on Android), or if it is not included in the build, no events are
+ * produced and the instrumented code only checks a constant.</p>
+ *
+ * <p>The events are enabled with JFR settings, for example
+ * "jcmd [pid] JFR.start". Record events are sampled: one record in
+ * getRecordSampleInterval() gets an event; the interval is set with the
+ * system property RECORD_SAMPLE_INTERVAL_PROPERTY (default 16, 1 for
+ * all records).</p>
+ *
+ * This class is public only to be extended by the implementation.
+ *
+ * @author Frans Lundberg
+ */
+public abstract class FlightEvents {
+    public static final String RECORD_SAMPLE_INTERVAL_PROPERTY = "saltchannel.jfr.recordSampleInterval";
+    public static final int DEFAULT_RECORD_SAMPLE_INTERVAL = 16;
+
+    static final FlightEvents INSTANCE = load();
+
+    /** True if JFR events are supported by the JDK and the build. */
+    static final boolean AVAILABLE = !(INSTANCE instanceof NoEvents);
+
+    static final int RECORD_SAMPLE_INTERVAL = recordSampleInterval();
+
+    protected FlightEvents() {}
+
+    /**
+     * Returns true if JFR events are supported by the JDK and the build.
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    public static int getRecordSampleInterval() {
+        return RECORD_SAMPLE_INTERVAL;
+    }
+
+    /**
+     * Begins a SaltHandshake event. Returns the event, or null if
+     * the event is not enabled.
+     */
+    protected abstract Object beginHandshake();
+
+    /**
+     * Ends and commits a SaltHandshake event.
+     *
+     * @param peerSigKey  The peer's signing key or null if unknown.
+     */
+    protected abstract void endHandshake(Object event, boolean server,
+            String outcome, boolean resumed, byte[] peerSigKey);
+
+    /**
+     * Begins a SaltRecordRead or SaltRecordWrite event. Returns the event,
+     * or null if the event is not enabled.
+     */
+    protected abstract Object beginRecord(boolean write);
+
+    /**
+     * Ends and commits a record event.
+     *
+     * @param size  Total size of the encrypted records.
+     * @param packetType  Type of the (first) packet inside the encryption.
+     * @param recordCount  Number of records.
+     */
+    protected abstract void endRecord(Object event, int size, int packetType, int recordCount);
+
+    /**
+     * Begins a SaltTicketIssue or SaltTicketValidate event. Returns the event,
+     * or null if the event is not enabled.
+     */
+    protected abstract Object beginTicket(boolean issue);
+
+    /**
+     * Ends and commits a ticket event.
+     *
+     * @param ticketId  The ticket id, -1 if unknown.
+     * @param valid  True for an issued ticket or a valid ticket.
+     */
+    protected abstract void endTicket(Object event, long ticketId, boolean valid);
+
+    private static FlightEvents load() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            Class<?> c = Class.forName("saltchannel.jfr.JfrFlightEvents");
+            return (FlightEvents) c.getConstructor().newInstance();
+        } catch (Throwable t) {
+            // No JFR, or src-jfr not included in the build,
+            // or compiled for a later Java version.
+            return new NoEvents();
+        }
+    }
+
+    private static int recordSampleInterval() {
+        try {
+            int value = Integer.parseInt(System.getProperty(RECORD_SAMPLE_INTERVAL_PROPERTY,
+                    Integer.toString(DEFAULT_RECORD_SAMPLE_INTERVAL)));
+            return Math.max(1, value);
+        } catch (NumberFormatException | SecurityException e) {
+            return DEFAULT_RECORD_SAMPLE_INTERVAL;
+        }
+    }
+
+    private static class NoEvents extends FlightEvents {
+        protected Object beginHandshake() {
+            return null;
+        }
+
+        protected void endHandshake(Object event, boolean server, String outcome,
+                boolean resumed, byte[] peerSigKey) {
+        }
+
+        protected Object beginRecord(boolean write) {
+            return null;
+        }
+
+        protected void endRecord(Object event, int size, int packetType, int recordCount) {
+        }
+
+        protected Object beginTicket(boolean issue) {
+            return null;
+        }
+
+        protected void endTicket(Object event, long ticketId, boolean valid) {
+        }
+    }
+}
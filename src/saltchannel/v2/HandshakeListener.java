@@ -0,0 +1,113 @@
+package saltchannel.v2;
+
+/**
+ * Receives the timings of the phases of a handshake, see
+ * SaltServerSession.setHandshakeListener() and
+ * SaltClientSession.setHandshakeListener(). HandshakeStats is
+ * an implementation that aggregates the timings in histograms.
+ *
+ * The methods are called by the thread that runs the handshake,
+ * so they must be fast. An instance shared by several sessions
+ * must be thread-safe.
+ *
+ * @author Frans Lundberg
+ */
+public interface HandshakeListener {
+
+    /**
+     * A phase of a handshake. The phases of one handshake do not overlap.
+     * Phases that read a message include the time spent waiting for it
+     * when the blocking handshake() method is used; that is, they include
+     * the network latency and the time the peer spent producing the message.
+     * With the push-style API (onMessage()), they include the parsing
+     * and decryption only.
+     */
+    public enum Phase {
+        /** Server reads M1 or A1. */
+        READ_M1,
+
+        /** Server parses and checks M1, including ticket validation. */
+        PROCESS_M1,
+
+        /** Server creates and writes M2. */
+        WRITE_M2,
+
+        /** Either peer computes the shared key from the ephemeral keys. */
+        KEY_AGREEMENT,
+
+        /** Server computes Signature1. */
+        SIGNATURE1,
+
+        /** Server encrypts and writes M3. */
+        WRITE_M3,
+
+        /** Server reads and decrypts M4. */
+        READ_M4,
+
+        /** Server validates Signature2. */
+        VALIDATE_SIGNATURE2,
+
+        /** Server issues, encrypts and writes a ticket (TT). */
+        ISSUE_TICKET,
+
+        /** Client creates and writes M1, and early data if any. */
+        WRITE_M1,
+
+        /** Client reads and parses M2. */
+        READ_M2,
+
+        /** Client reads and decrypts M3. */
+        READ_M3,
+
+        /** Client validates Signature1. */
+        VALIDATE_SIGNATURE1,
+
+        /** Client computes Signature2. */
+        SIGNATURE2,
+
+        /** Client encrypts and writes M4 (or buffers it). */
+        WRITE_M4,
+
+        /** Client reads and decrypts a ticket (TT). */
+        READ_TT
+    }
+
+    /**
+     * How a handshake ended.
+     */
+    public enum Outcome {
+        /** A full (3-way) handshake completed. */
+        FULL,
+
+        /** A session was resumed with a ticket. */
+        RESUMED,
+
+        /** An A1A2 session completed (server only). */
+        A1A2,
+
+        /** The client requested a server that does not exist. */
+        NO_SUCH_SERVER,
+
+        /** The peer did not follow the protocol, BadPeer. */
+        BAD_PEER,
+
+        /** The handshake failed for another reason, an I/O error, for example. */
+        FAILED
+    }
+
+    /**
+     * Called when a phase has completed.
+     *
+     * @param nanos  Duration of the phase in nanoseconds.
+     */
+    public void phaseDone(Phase phase, long nanos);
+
+    /**
+     * Called once when the handshake has ended.
+     *
+     * @param nanos
+     *          Duration of the handshake in nanoseconds, from the call to
+     *          handshake(), start() or the first onMessage() call.
+     */
+    public void handshakeEnded(Outcome outcome, long nanos);
+}
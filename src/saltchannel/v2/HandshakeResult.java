@@ -0,0 +1,69 @@
+package saltchannel.v2;
+
+/**
+ * Result of one step of a push-style (non-blocking) handshake.
+ * Contains the state of the handshake after the step and the
+ * messages that the caller must send to the peer, in order.
+ * The messages are complete Salt Channel messages (without any transport
+ * framing such as the size prefix of a TCP stream).
+ *
+ * @author Frans Lundberg
+ */
+public class HandshakeResult {
+    private static final byte[][] NO_MESSAGES = new byte[0][];
+
+    public enum State {
+        /** The handshake needs more messages from the peer. */
+        NEED_MORE,
+
+        /** The handshake completed, the application channel is available. */
+        DONE,
+
+        /** An A1A2 session completed, there is no application channel. */
+        A2_DONE,
+
+        /** The handshake failed, see getException(). */
+        FAILED
+    }
+
+    private final State state;
+    private final byte[][] messages;
+    private final boolean isLast;
+    private final RuntimeException exception;
+
+    HandshakeResult(State state, byte[][] messages, boolean isLast, RuntimeException exception) {
+        this.state = state;
+        this.messages = messages == null ? NO_MESSAGES : messages;
+        this.isLast = isLast;
+        this.exception = exception;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Returns the messages to send to the peer. Never null, possibly
+     * an empty array.
+     */
+    public byte[][] getMessages() {
+        return messages;
+    }
+
+    /**
+     * Returns true if the last of the messages has the LastFlag set; that is,
+     * the caller should close the transport after sending the messages.
+     */
+    public boolean isLast() {
+        return isLast;
+    }
+
+    /**
+     * Returns the reason for the failure if the state is FAILED, null otherwise.
+     * The exception is typically a BadPeer, a NoSuchServer or another
+     * ComException.
+     */
+    public RuntimeException getException() {
+        return exception;
+    }
+}
@@ -0,0 +1,87 @@
+package saltchannel.v2;
+
+import saltchannel.util.LatencyHistogram;
+
+/**
+ * A HandshakeListener that aggregates the timings of many handshakes:
+ * one LatencyHistogram per phase and one per outcome (total duration of
+ * the handshakes with that outcome). One instance is typically shared by
+ * all sessions of a server; the class is thread-safe.
+ *
+ * @author Frans Lundberg
+ */
+public class HandshakeStats implements HandshakeListener {
+    private final LatencyHistogram[] phases;
+    private final LatencyHistogram[] outcomes;
+
+    public HandshakeStats() {
+        phases = new LatencyHistogram[Phase.values().length];
+        for (int i = 0; i < phases.length; i++) {
+            phases[i] = new LatencyHistogram();
+        }
+
+        outcomes = new LatencyHistogram[Outcome.values().length];
+        for (int i = 0; i < outcomes.length; i++) {
+            outcomes[i] = new LatencyHistogram();
+        }
+    }
+
+    @Override
+    public void phaseDone(Phase phase, long nanos) {
+        phases[phase.ordinal()].record(nanos);
+    }
+
+    @Override
+    public void handshakeEnded(Outcome outcome, long nanos) {
+        outcomes[outcome.ordinal()].record(nanos);
+    }
+
+    /**
+     * Returns the histogram of the durations of the phase, in nanoseconds.
+     */
+    public LatencyHistogram getPhase(Phase phase) {
+        return phases[phase.ordinal()];
+    }
+
+    /**
+     * Returns the histogram of the total durations of the handshakes
+     * with the outcome, in nanoseconds.
+     */
+    public LatencyHistogram getOutcome(Outcome outcome) {
+        return outcomes[outcome.ordinal()];
+    }
+
+    public void reset() {
+        for (LatencyHistogram h : phases) {
+            h.reset();
+        }
+
+        for (LatencyHistogram h : outcomes) {
+            h.reset();
+        }
+    }
+
+    /**
+     * Returns a table of the phases and outcomes that have been
+     * recorded, durations in microseconds.
+     */
+    public String toString() {
+        StringBuilder b = new StringBuilder();
+
+        for (Phase phase : Phase.values()) {
+            append(b, phase.name(), getPhase(phase));
+        }
+
+        for (Outcome outcome : Outcome.values()) {
+            append(b, outcome.name(), getOutcome(outcome));
+        }
+
+        return b.toString();
+    }
+
+    private static void append(StringBuilder b, String name, LatencyHistogram h) {
+        if (h.getCount() > 0) {
+            b.append(name).append(": ").append(h.toString(1000)).append(" us\n");
+        }
+    }
+}
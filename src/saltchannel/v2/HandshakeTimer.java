@@ -0,0 +1,136 @@
+package saltchannel.v2;
+
+import saltchannel.BadPeer;
+import saltchannel.v2.HandshakeListener.Outcome;
+import saltchannel.v2.HandshakeListener.Phase;
+
+/**
+ * Measures the phases of one handshake and reports them to
+ * a HandshakeListener. Without a listener, the clock is not read,
+ * nothing is reported and the object is not modified.
+ * The timer also produces the SaltHandshake JFR event, see FlightEvents.
+ *
+ * @author Frans Lundberg
+ */
+class HandshakeTimer {
+    /** Timer without listener and events. It is never modified, so it is shared. */
+    static final HandshakeTimer NONE = new HandshakeTimer(null, false, false);
+
+    private final HandshakeListener listener;
+    private final boolean server;
+    private final boolean flight;
+    private long startTime;
+    private Object flightEvent;
+    private boolean ended = false;
+
+    private HandshakeTimer(HandshakeListener listener, boolean server, boolean flight) {
+        this.listener = listener;
+        this.server = server;
+        this.flight = flight;
+    }
+
+    /**
+     * Returns a timer for one handshake; NONE if there is nothing to report.
+     *
+     * @param listener  The listener or null.
+     * @param server  True for the server side of the handshake.
+     */
+    static HandshakeTimer create(HandshakeListener listener, boolean server) {
+        if (listener == null && !FlightEvents.AVAILABLE) {
+            return NONE;
+        }
+
+        return new HandshakeTimer(listener, server, FlightEvents.AVAILABLE);
+    }
+
+    /**
+     * Starts the timing of the whole handshake.
+     */
+    void start() {
+        if (listener != null) {
+            startTime = System.nanoTime();
+        }
+
+        if (flight) {
+            flightEvent = FlightEvents.INSTANCE.beginHandshake();
+        }
+    }
+
+    /**
+     * Returns the current time to use as the start time of a phase.
+     */
+    long now() {
+        return listener == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Reports a phase that started at 'start', returns the current time
+     * to use as the start of the next phase.
+     */
+    long lap(Phase phase, long start) {
+        if (listener == null) {
+            return 0;
+        }
+
+        long now = System.nanoTime();
+        listener.phaseDone(phase, now - start);
+        return now;
+    }
+
+    /**
+     * Reports the outcome.
+     *
+     * @param peerSigKey  The signing key of the peer, null if not known.
+     */
+    void ended(Outcome outcome, byte[] peerSigKey) {
+        if (ended || (listener == null && flightEvent == null)) {
+            return;
+        }
+
+        ended = true;
+
+        if (listener != null) {
+            listener.handshakeEnded(outcome, System.nanoTime() - startTime);
+        }
+
+        if (flightEvent != null) {
+            FlightEvents.INSTANCE.endHandshake(flightEvent, server, outcome.name(), 
+                    outcome == Outcome.RESUMED, peerSigKey);
+            flightEvent = null;
+        }
+    }
+
+    /**
+     * Reports the outcome of a handshake that failed with the exception.
+     */
+    void failed(RuntimeException e, byte[] peerSigKey) {
+        if (e instanceof NoSuchServer) {
+            ended(Outcome.NO_SUCH_SERVER, peerSigKey);
+        } else if (e instanceof BadPeer) {
+            ended(Outcome.BAD_PEER, peerSigKey);
+        } else {
+            ended(Outcome.FAILED, peerSigKey);
+        }
+    }
+
+    /**
+     * Reports the outcome given the state of a push-style handshake;
+     * nothing is reported for NEED_MORE.
+     */
+    void ended(HandshakeResult.State state, boolean resumed, RuntimeException e, 
+            byte[] peerSigKey) {
+        switch (state) {
+        case NEED_MORE:
+            break;
+        case DONE:
+            ended(resumed ? Outcome.RESUMED : Outcome.FULL, peerSigKey);
+            break;
+        case A2_DONE:
+            ended(Outcome.A1A2, peerSigKey);
+            break;
+        case FAILED:
+            failed(e, peerSigKey);
+            break;
+        }
+    }
+}
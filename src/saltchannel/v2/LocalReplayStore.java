@@ -0,0 +1,109 @@
+package saltchannel.v2;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import saltchannel.util.BitField;
+
+/**
+ * In-process ReplayStore. A single instance can be shared by several
+ * ResumeHandlers (nodes) in one JVM; useful for tests and as a reference
+ * for implementations on top of a shared data store.
+ *
+ * For each node, the store keeps a window of bits as TicketBits does:
+ * one bit per ticket for the last bitSize sequence numbers of the node.
+ * Lock-free.
+ *
+ * @author Frans Lundberg
+ */
+public class LocalReplayStore implements ReplayStore {
+    private final int bitSizePerNode;
+    private final ConcurrentMap<Integer, Window> windows = new ConcurrentHashMap<Integer, Window>();
+
+    /**
+     * @param bitSizePerNode
+     *          Max number of outstanding tickets per node.
+     */
+    public LocalReplayStore(int bitSizePerNode) {
+        if (bitSizePerNode < 1) {
+            throw new IllegalArgumentException("bad bitSizePerNode, " + bitSizePerNode);
+        }
+
+        this.bitSizePerNode = bitSizePerNode;
+    }
+
+    @Override
+    public void add(long ticketId) {
+        if (ticketId < 1) {
+            throw new IllegalArgumentException("bad ticketId, " + ticketId);
+        }
+
+        Integer nodeId = ClusterTicketStore.nodeId(ticketId);
+        Window window = windows.get(nodeId);
+        if (window == null) {
+            Window newWindow = new Window(bitSizePerNode);
+            window = windows.putIfAbsent(nodeId, newWindow);
+            if (window == null) {
+                window = newWindow;
+            }
+        }
+
+        window.add(ClusterTicketStore.sequence(ticketId));
+    }
+
+    @Override
+    public boolean remove(long ticketId) {
+        if (ticketId < 1) {
+            return false;
+        }
+
+        Window window = windows.get(ClusterTicketStore.nodeId(ticketId));
+        return window != null && window.remove(ClusterTicketStore.sequence(ticketId));
+    }
+
+    /**
+     * Bits for the sequence numbers of one node.
+     */
+    private static class Window {
+        private final BitField bits;
+        private final int bitSize;
+        private final AtomicLong next = new AtomicLong(0);
+
+        Window(int bitSize) {
+            this.bits = new BitField(bitSize);
+            this.bitSize = bitSize;
+        }
+
+        void add(long sequence) {
+            while (true) {
+                long myNext = next.get();
+                if (sequence < myNext || next.compareAndSet(myNext, sequence + 1)) {
+                    break;
+                }
+            }
+
+            if (isInRange(sequence)) {
+                bits.set(bitIndex(sequence), true);
+            }
+        }
+
+        boolean remove(long sequence) {
+            if (!isInRange(sequence) || !bits.clearIfSet(bitIndex(sequence))) {
+                return false;
+            }
+
+            // See TicketBits.clearIfValid().
+            return isInRange(sequence);
+        }
+
+        private boolean isInRange(long sequence) {
+            long myNext = next.get();
+            return sequence >= myNext - bitSize && sequence < myNext;
+        }
+
+        private int bitIndex(long sequence) {
+            return (int) (sequence % bitSize);
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package saltchannel.v2;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A TicketStore like TicketBits, but with the bits stored in a memory-mapped
+ * file. A server that reopens the file after a restart continues to
+ * honor the tickets it issued before the restart (given that
+ * ResumeHandler uses the same ticket encryption key).
+ *
+ * <p>File format, little-endian: a 32-byte header followed by the bits
+ * as 64-bit words.</p>
+ * <pre>
+ * 0   magic "SCTB" (int)
+ * 4   version, 1 (int)
+ * 8   first, the first ticket index (long)
+ * 16  next, no ticket index at or above this value has been issued (long)
+ * 24  bitSize (int)
+ * 28  keyEpoch (int)
+ * </pre>
+ *
+ * <p>Crash safety. Ticket indexes are reserved in blocks of 
+ * min(MAX_RESERVE_SIZE, bitSize/64) indexes;
+ * the end of the reserved block is written to the header and forced to disk
+ * before any index of the block is issued. After a restart, issuing
+ * continues from the end of the block, so an index (and thereby a ticket
+ * nonce) is never issued twice, even after a power loss. 
+ * The skipped indexes push up to one block of the oldest outstanding
+ * tickets out of range. close() stores the exact next index, so nothing 
+ * is lost after a clean shutdown.
+ * Bit updates are written to the mapped memory directly. They survive
+ * a crash of the process since the data is in the OS page cache. They
+ * survive a crash of the OS once written to disk,
+ * see sync() and setForceOnClear().
+ * After an OS crash, a lost issue bit only makes a ticket invalid;
+ * a lost clear could make a ticket usable once more, unless
+ * forceOnClear is used.</p>
+ *
+ * <p>The class is thread-safe. The next index is an atomic counter;
+ * the bit words are updated under striped locks.</p>
+ *
+ * @author Frans Lundberg
+ */
+public class MappedTicketBits implements TicketStore, Closeable {
+    public static final int MAX_RESERVE_SIZE = 1024;
+
+    private static final int MAGIC = 0x42544353;    // "SCTB" in little-endian.
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int FIRST_OFFSET = 8;
+    private static final int NEXT_OFFSET = 16;
+    private static final int BIT_SIZE_OFFSET = 24;
+    private static final int KEY_EPOCH_OFFSET = 28;
+    private static final int LOCK_COUNT = 64;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final long first;
+    private final int bitSize;
+    private final int reserveSize;
+    private final AtomicLong next;
+    private final Object reserveLock = new Object();
+    private final Object[] locks;
+    private volatile long reservedEnd;
+    private volatile boolean forceOnClear = false;
+
+    private MappedTicketBits(RandomAccessFile file, MappedByteBuffer buffer) {
+        this.file = file;
+        this.buffer = buffer;
+        this.first = buffer.getLong(FIRST_OFFSET);
+        this.bitSize = buffer.getInt(BIT_SIZE_OFFSET);
+        this.reserveSize = Math.max(1, Math.min(MAX_RESERVE_SIZE, bitSize / 64));
+        this.reservedEnd = buffer.getLong(NEXT_OFFSET);
+        this.next = new AtomicLong(reservedEnd);
+        this.locks = new Object[LOCK_COUNT];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Opens the file, or creates it if it does not exist.
+     *
+     * @param first
+     *          The first ticket index, used only if the file is created.
+     *          See TicketBits.
+     * @param wantedBitSize
+     *          Number of bits, the max number of outstanding tickets.
+     *          Must match the bit size of an existing file.
+     * @throws IOException
+     *          If the file could not be read or written, or if an existing
+     *          file is not a ticket bits file of the given size.
+     */
+    public static MappedTicketBits open(File path, long first, int wantedBitSize) throws IOException {
+        if (wantedBitSize < 1) {
+            throw new IllegalArgumentException("bad wantedBitSize, " + wantedBitSize);
+        }
+
+        if (first < 1) {
+            throw new IllegalArgumentException("bad first, must be larger than 0");
+        }
+
+        int longCount = (wantedBitSize + 63) / 64;
+        long fileSize = HEADER_SIZE + 8L * longCount;
+        boolean exists = path.exists() && path.length() > 0;
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+
+        try {
+            if (exists && file.length() != fileSize) {
+                throw new IOException("file size does not match bit size, " + path);
+            }
+
+            MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (exists) {
+                checkHeader(buffer, wantedBitSize, path);
+            } else {
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putLong(FIRST_OFFSET, first);
+                buffer.putLong(NEXT_OFFSET, first);
+                buffer.putInt(BIT_SIZE_OFFSET, wantedBitSize);
+                buffer.putInt(KEY_EPOCH_OFFSET, 0);
+                buffer.force();
+            }
+
+            return new MappedTicketBits(file, buffer);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    private static void checkHeader(MappedByteBuffer buffer, int wantedBitSize, File path)
+            throws IOException {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("not a ticket bits file, " + path);
+        }
+
+        if (buffer.getInt(BIT_SIZE_OFFSET) != wantedBitSize) {
+            throw new IOException("bit size mismatch, file has " + buffer.getInt(BIT_SIZE_OFFSET)
+                    + ", wanted " + wantedBitSize);
+        }
+    }
+
+    /**
+     * If true, the file is forced to disk each time a ticket is cleared,
+     * so a used ticket cannot be replayed even after an OS crash.
+     * Costs one disk sync per resumed session. Default: false.
+     */
+    public void setForceOnClear(boolean forceOnClear) {
+        this.forceOnClear = forceOnClear;
+    }
+
+    @Override
+    public long issue() {
+        long result = next.getAndIncrement();
+        if (result >= reservedEnd) {
+            reserve(result);
+        }
+
+        setBit(bitIndex(result), true);
+        return result;
+    }
+
+    /**
+     * Returns true if ticket is in range and and its bit is set.
+     */
+    public boolean isValid(long ticketIndex) {
+        return isInRange(ticketIndex) && getBit(bitIndex(ticketIndex));
+    }
+
+    @Override
+    public boolean clearIfValid(long ticketIndex) {
+        if (!isInRange(ticketIndex)) {
+            return false;
+        }
+
+        if (!clearBitIfSet(bitIndex(ticketIndex))) {
+            return false;
+        }
+
+        if (forceOnClear) {
+            sync();
+        }
+
+        // See TicketBits.clearIfValid().
+        return isInRange(ticketIndex);
+    }
+
+    /**
+     * Returns the key epoch stored in the header, 0 for a new file.
+     * The value is not used by this class; it is stored for the owner
+     * of the ticket encryption keys.
+     */
+    public int getKeyEpoch() {
+        return buffer.getInt(KEY_EPOCH_OFFSET);
+    }
+
+    /**
+     * Stores the key epoch in the header and forces it to disk.
+     */
+    public void setKeyEpoch(int keyEpoch) {
+        synchronized (reserveLock) {
+            buffer.putInt(KEY_EPOCH_OFFSET, keyEpoch);
+            buffer.force();
+        }
+    }
+
+    public int getBitSize() {
+        return bitSize;
+    }
+
+    /**
+     * Forces all updates to disk.
+     */
+    public void sync() {
+        buffer.force();
+    }
+
+    /**
+     * Stores the exact next index, forces all updates to disk and closes 
+     * the file. Must not be called concurrently with issue().
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (reserveLock) {
+            buffer.putLong(NEXT_OFFSET, next.get());
+            sync();
+        }
+        file.close();
+    }
+
+    private void reserve(long index) {
+        synchronized (reserveLock) {
+            if (index < reservedEnd) {
+                return;
+            }
+
+            long end = reservedEnd;
+            while (end <= index) {
+                end += reserveSize;
+            }
+
+            buffer.putLong(NEXT_OFFSET, end);
+            buffer.force();
+            reservedEnd = end;
+        }
+    }
+
+    private boolean isInRange(long ticketIndex) {
+        long myNext = next.get();
+        return ticketIndex >= first && ticketIndex >= (myNext - bitSize) && ticketIndex < myNext;
+    }
+
+    private int bitIndex(long ticketIndex) {
+        return (int) ((ticketIndex - first) % bitSize);
+    }
+
+    private boolean getBit(int index) {
+        return (buffer.getLong(wordOffset(index)) & mask(index)) != 0;
+    }
+
+    private void setBit(int index, boolean value) {
+        int offset = wordOffset(index);
+        long mask = mask(index);
+
+        synchronized (lock(index)) {
+            long word = buffer.getLong(offset);
+            buffer.putLong(offset, value ? word | mask : word & ~mask);
+        }
+    }
+
+    private boolean clearBitIfSet(int index) {
+        int offset = wordOffset(index);
+        long mask = mask(index);
+
+        synchronized (lock(index)) {
+            long word = buffer.getLong(offset);
+            if ((word & mask) == 0) {
+                return false;
+            }
+
+            buffer.putLong(offset, word & ~mask);
+            return true;
+        }
+    }
+
+    private Object lock(int index) {
+        return locks[(index / 64) % LOCK_COUNT];
+    }
+
+    private static int wordOffset(int index) {
+        return HEADER_SIZE + 8 * (index / 64);
+    }
+
+    private static long mask(int index) {
+        return 1L << (index % 64);
+    }
+}
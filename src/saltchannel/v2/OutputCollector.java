@@ -0,0 +1,64 @@
+package saltchannel.v2;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import saltchannel.ByteChannel;
+import saltchannel.ComException;
+
+/**
+ * Collects the messages written during a push-style handshake, see
+ * SaltServerSession.onMessage() and SaltClientSession.onMessage().
+ * Once the handshake has ended, writes go directly to the clear channel.
+ * Reads always go to the clear channel.
+ *
+ * @author Frans Lundberg
+ */
+class OutputCollector implements ByteChannel {
+    private final ByteChannel clearChannel;
+    private final List<byte[]> messages = new ArrayList<byte[]>();
+    private boolean isLast = false;
+    private boolean collecting = true;
+
+    OutputCollector(ByteChannel clearChannel) {
+        this.clearChannel = clearChannel;
+    }
+
+    /**
+     * Returns a result with the messages collected since the previous call.
+     * Collecting stops when the state is not NEED_MORE.
+     */
+    HandshakeResult result(HandshakeResult.State state, RuntimeException e) {
+        byte[][] result = messages.toArray(new byte[messages.size()][]);
+        boolean last = this.isLast;
+        messages.clear();
+
+        if (state != HandshakeResult.State.NEED_MORE) {
+            collecting = false;
+        }
+
+        return new HandshakeResult(state, result, last, e);
+    }
+
+    @Override
+    public byte[] read() throws ComException {
+        return clearChannel.read();
+    }
+
+    @Override
+    public void write(byte[]... messages) throws ComException {
+        write(false, messages);
+    }
+
+    @Override
+    public void write(boolean isLast, byte[]... messages) {
+        if (collecting) {
+            for (int i = 0; i < messages.length; i++) {
+                this.messages.add(messages[i]);
+            }
+            this.isLast = isLast;
+        } else {
+            clearChannel.write(isLast, messages);
+        }
+    }
+}
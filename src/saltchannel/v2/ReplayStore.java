@@ -0,0 +1,29 @@
+package saltchannel.v2;
+
+/**
+ * Replay protection for resume tickets, shared by the nodes of a cluster.
+ * Tickets are issued by one node and may be validated by any node; 
+ * the store keeps track of which issued tickets have not been used yet.
+ * Ticket ids from different nodes never collide, see ClusterTicketStore.
+ * 
+ * LocalReplayStore is an in-process implementation; a production 
+ * cluster would implement this interface on top of a shared data store.
+ * Implementations must be thread-safe.
+ * 
+ * @author Frans Lundberg
+ */
+public interface ReplayStore {
+    
+    /**
+     * Records a newly issued ticket as valid.
+     */
+    public void add(long ticketId);
+    
+    /**
+     * Atomically checks that the ticket is valid (added and not yet removed)
+     * and removes it. Returns true if the ticket was valid. 
+     * Of concurrent calls with the same ticket id, at most one returns true,
+     * also when the calls are made from different nodes.
+     */
+    public boolean remove(long ticketId);
+}
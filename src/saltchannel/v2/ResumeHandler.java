@@ -14,12 +14,24 @@ import saltchannel.v2.packets.TicketPacket;
  * Stores a bit map to avoid replay attacks.
  * All data is stored in memory. First simple implementation.
  * 
+ * The class is thread-safe without locks. Tickets are encrypted and
+ * decrypted concurrently; only the update of the ticket bits is atomic,
+ * see TicketBits.
+ * 
  * @author Frans Lundberg
  */
 public class ResumeHandler {
     public static final int KEY_SIZE = 32;
-    private final TicketBits ticketBits;
-    private byte[] ticketEncryptionKey;
+    
+    /** 
+     * Key epoch used by the single-key constructors. Tickets issued
+     * before key epochs were introduced carry this value in the 
+     * position of the epoch id.
+     */
+    public static final int DEFAULT_KEY_EPOCH = 121;
+    
+    private final TicketStore ticketBits;
+    private final TicketKeyRing keyRing;
     
     /**
      * Creates a new instance with a given wanted capacity.
@@ -41,7 +53,36 @@ public class ResumeHandler {
         }
         
         this.ticketBits = new TicketBits(firstTicketIndex, wantedBitSize);
-        this.ticketEncryptionKey = ticketEncryptionKey.clone();
+        this.keyRing = new TicketKeyRing(DEFAULT_KEY_EPOCH, ticketEncryptionKey);
+    }
+    
+    /**
+     * Creates a new instance that uses the given store for the 
+     * replay protection. With a persistent store, such as MappedTicketBits, 
+     * and the same ticket encryption key, a restarted server continues to 
+     * accept the tickets issued before the restart.
+     */
+    public ResumeHandler(byte[] ticketEncryptionKey, TicketStore ticketStore) {
+        if (ticketEncryptionKey.length != KEY_SIZE) {
+            throw new IllegalArgumentException("bad key size");
+        }
+        
+        this.ticketBits = ticketStore;
+        this.keyRing = new TicketKeyRing(DEFAULT_KEY_EPOCH, ticketEncryptionKey);
+    }
+    
+    /**
+     * Creates a new instance with a key ring; the ticket encryption
+     * key can then be rotated without invalidating the outstanding 
+     * tickets, see TicketKeyRing.
+     */
+    public ResumeHandler(TicketKeyRing keyRing, TicketStore ticketStore) {
+        this.ticketBits = ticketStore;
+        this.keyRing = keyRing;
+    }
+    
+    public TicketKeyRing getKeyRing() {
+        return keyRing;
     }
     
     public static class IssuedTicket {
@@ -54,19 +95,21 @@ public class ResumeHandler {
      * First a new TicketId is created. It must never have been used before
      * and it must be larger than 0.
      */
-    public synchronized IssuedTicket issueTicket(byte[] clientSigKey, byte[] sessionKey) {
+    public IssuedTicket issueTicket(byte[] clientSigKey, byte[] sessionKey) {
         if (clientSigKey == null) {
             throw new IllegalArgumentException("clientSigKey == null not allowed");
         }
         
+        Object event = FlightEvents.AVAILABLE ? FlightEvents.INSTANCE.beginTicket(true) : null;
         TicketEncryptedPacket p1 = new TicketEncryptedPacket();
         p1.ticketId = ticketBits.issue();
         p1.sessionNonce = createSessionNonce(p1.ticketId);
         p1.sessionKey = sessionKey;
         p1.clientSigKey = clientSigKey;
         
-        byte[] nonce24 = createNonce24(p1.ticketId);
-        byte[] encrypted = CryptoLib.encrypt(ticketEncryptionKey, nonce24, p1.toBytes());
+        TicketKeyRing.KeyEntry keyEntry = keyRing.getIssueEntry();
+        byte[] nonce24 = createNonce24(keyEntry.epoch, p1.ticketId);
+        byte[] encrypted = CryptoLib.encrypt(keyEntry.key, nonce24, p1.toBytes());
         
         TicketPacket p2 = new TicketPacket();
         p2.ticketType = TicketPacket.TICKET_TYPE_1;
@@ -77,6 +120,10 @@ public class ResumeHandler {
         t.ticket = p2.toBytes();
         t.sessionNonce = p1.sessionNonce;
         
+        if (event != null) {
+            FlightEvents.INSTANCE.endTicket(event, p1.ticketId, true);
+        }
+        
         return t;
     }
 
@@ -86,7 +133,22 @@ public class ResumeHandler {
      * 
      * @throws BadTicket if the ticket is not valid.
      */
-    public synchronized TicketSessionData validateTicket(byte[] ticket) {
+    public TicketSessionData validateTicket(byte[] ticket) {
+        Object event = FlightEvents.AVAILABLE ? FlightEvents.INSTANCE.beginTicket(false) : null;
+        if (event == null) {
+            return validate(ticket);
+        }
+        
+        TicketSessionData result = null;
+        try {
+            result = validate(ticket);
+            return result;
+        } finally {
+            FlightEvents.INSTANCE.endTicket(event, result == null ? -1 : result.ticketId, result != null);
+        }
+    }
+    
+    private TicketSessionData validate(byte[] ticket) {
         TicketPacket p1;
         TicketEncryptedPacket p2;
         
@@ -99,9 +161,13 @@ public class ResumeHandler {
         }
         
         byte[] clear;
+        byte[] key = keyRing.getKey(p1.encryptedTicketNonce[1] & 0xff);
+        if (key == null) {
+            throw new BadTicket("no active key for epoch");
+        }
         
         try {
-            clear = CryptoLib.decrypt(ticketEncryptionKey, to24Bytes(p1.encryptedTicketNonce), p1.encrypted);
+            clear = CryptoLib.decrypt(key, to24Bytes(p1.encryptedTicketNonce), p1.encrypted);
         } catch (ComException e) {
             throw new BadTicket("could not decrypt");
         }
@@ -120,13 +186,11 @@ public class ResumeHandler {
         result.sessionNonce = p2.sessionNonce;
         result.ticketId = p2.ticketId;
         
-        boolean isValid = ticketBits.isValid(p2.ticketId);
+        boolean isValid = ticketBits.clearIfValid(p2.ticketId);
         if (!isValid) {
             throw new BadTicket("invalid according to ticketBits");
         }
         
-        ticketBits.clear(p2.ticketId);
-        
         return result;
     }
     
@@ -142,11 +206,12 @@ public class ResumeHandler {
     
     /**
      * Creates 24-byte long nonce. Only the first 10 bytes are used (are non-zero).
+     * The second byte is the key epoch.
      */
-    private byte[] createNonce24(long ticketId) {
+    private byte[] createNonce24(int epoch, long ticketId) {
         byte[] result = new byte[24];
         result[0] = 120;
-        result[1] = 121;
+        result[1] = (byte) epoch;
         Bytes.longToBytesLE(ticketId, result, 2);
         return result;
     }
@@ -2,8 +2,10 @@ package saltchannel.v2;
 
 import saltchannel.BadPeer;
 import saltchannel.ByteChannel;
+import saltchannel.ComException;
 import saltchannel.CryptoLib;
 import saltaa.*;
+import saltchannel.util.EphemeralKeyPool;
 import saltchannel.util.KeyPair;
 import saltchannel.util.NullTimeChecker;
 import saltchannel.util.Rand;
@@ -15,6 +17,7 @@ import saltchannel.v2.packets.M1Message;
 import saltchannel.v2.packets.M2Message;
 import saltchannel.v2.packets.M3Packet;
 import saltchannel.v2.packets.M4Packet;
+import saltchannel.v2.packets.MultiAppPacket;
 import saltchannel.v2.packets.Packet;
 import saltchannel.v2.packets.PacketHeader;
 import saltchannel.v2.packets.TTPacket;
@@ -28,14 +31,29 @@ import saltchannel.v2.packets.TTPacket;
  * Limitation: does not support virtual servers, just one pubkey supported.
  * For debug/inspection: the handshake messages (m1, m2, m3, m4) are stored.
  * 
+ * As an alternative to the blocking handshake() method, the handshake
+ * can be driven by the caller with start() and onMessage(). These methods
+ * never block; they return the messages to send to the server instead of 
+ * writing them to the clear channel. The two styles must not be mixed for 
+ * one session object.
+ * 
  * @author Frans Lundberg
  */
 public class SaltClientSession {
     private final ByteChannel clearChannel;
+    
+    /** Channel that handshake messages are written to. */
+    private ByteChannel out;
+    
+    /** Non-null when the handshake is driven with start() and onMessage(). */
+    private OutputCollector collector;
+    private HandshakeResult.State pushState;
+    private boolean m3Expected = false;
+    private boolean ttExpected = false;
     private EncryptedChannelV2 encryptedChannel;
     private TimeKeeper timeKeeper;
     private TimeChecker timeChecker;
-    private KeyPair sigKeyPair;
+    private PreparedSigner signer;
     private KeyPair encKeyPair;
     private byte[] wantedServerSigKey;
     private M1Message m1;
@@ -54,10 +72,25 @@ public class SaltClientSession {
     private ClientTicketData newTicketData;  // new ticket from server
     private SaltLib salt = SaltLibFactory.getLib();
     private boolean bufferM4 = false;
+    private byte[][] earlyData;
+    private boolean earlyDataAccepted = false;
+    private boolean resumed = false;
+    private HandshakeTimer timer = HandshakeTimer.create(null, false);
+    private ChannelCounters counters;
 
     public SaltClientSession(KeyPair sigKeyPair, ByteChannel clearChannel) {
+        this(SaltLibFactory.getLib().crypto_sign_prepare(sigKeyPair.sec()), clearChannel);
+    }
+    
+    /**
+     * Creates a session that signs with a prepared signer; use this
+     * constructor to share one signer, created with CryptoLib.createSigner(),
+     * between all sessions of a long-lived key.
+     */
+    public SaltClientSession(PreparedSigner signer, ByteChannel clearChannel) {
         this.clearChannel = clearChannel;
-        this.sigKeyPair = sigKeyPair;
+        this.out = clearChannel;
+        this.signer = signer;
         this.timeKeeper = NullTimeKeeper.INSTANCE;
         this.timeChecker = NullTimeChecker.INSTANCE;
         this.ticketRequested = false;
@@ -82,6 +115,14 @@ public class SaltClientSession {
         this.encKeyPair = CryptoLib.createEncKeys(rand);
     }
     
+    /**
+     * Takes the ephemeral encryption key pair from a pool of 
+     * precomputed key pairs.
+     */
+    public void setEncKeyPair(EphemeralKeyPool pool) {
+        this.encKeyPair = pool.take();
+    }
+    
     public void setBufferM4(boolean bufferM4) {
         this.bufferM4 = bufferM4;
     }
@@ -95,10 +136,63 @@ public class SaltClientSession {
         this.ticketRequested = requestTicket;
     }
     
+    /**
+     * Sets the ticket data to resume a previous session with.
+     * 
+     * <p>Ticket data that has been used to send early data 
+     * (ClientTicketData.earlyDataSent is set) is ignored and a full handshake is 
+     * made. The early data was encrypted with the session key and nonce of the
+     * ticket before the server accepted it; if that M1 was dropped or rejected,
+     * using the ticket again would encrypt with the same key and nonce again.</p>
+     */
     public void setTicketData(ClientTicketData ticketData) {
         this.ticketData = ticketData;
     }
     
+    /**
+     * Sets application messages to send as early data (0-RTT) when the 
+     * session is resumed; the messages are encrypted with the session key of
+     * the ticket and written together with M1, before the server has replied.
+     * Ignored if no ticket data is set. 
+     * After the handshake, isEarlyDataAccepted() tells whether the server 
+     * received the messages. If not, the session was not resumed
+     * (a full handshake was made instead) and the application 
+     * must send the messages again using the application channel.
+     * 
+     * <p>Early data is sent once only with particular ticket data. The ticket 
+     * data is marked (ClientTicketData.earlyDataSent) when M1 is created, 
+     * and is not used again, see setTicketData().</p>
+     * 
+     * <p>Replay. Early data is only accepted together with a valid ticket 
+     * and a ticket is valid once only, so the server does not accept
+     * a replayed M1 with early data. The application should still only
+     * send requests as early data that can safely be received twice; 
+     * for example, the server may accept the early data and then
+     * crash before the response is sent.</p>
+     * 
+     * NOTE, like resume itself, early data is *experimental*
+     * and not included in the v2 spec.
+     * 
+     * @throws IllegalArgumentException
+     *          If there are no messages or if several messages do not
+     *          fit in one MultiAppPacket.
+     */
+    public void setEarlyData(byte[]... messages) {
+        if (messages.length == 0 || (messages.length > 1 && !MultiAppPacket.shouldUse(messages))) {
+            throw new IllegalArgumentException("bad early data, must fit in one packet");
+        }
+        
+        this.earlyData = messages;
+    }
+    
+    /**
+     * Returns true if early data was sent and received by the server. 
+     * Available after the handshake.
+     */
+    public boolean isEarlyDataAccepted() {
+        return earlyDataAccepted;
+    }
+    
     public void setTimeKeeper(TimeKeeper timeKeeper) {
         this.timeKeeper = timeKeeper;
     }
@@ -107,23 +201,53 @@ public class SaltClientSession {
         this.timeChecker = timeChecker;
     }
     
+    /**
+     * Sets a listener that receives the timings of the phases of the
+     * handshake and its outcome. Default: null, no timing.
+     */
+    public void setHandshakeListener(HandshakeListener listener) {
+        this.timer = HandshakeTimer.create(listener, false);
+    }
+    
+    /**
+     * Sets the counters of the channels of this session, typically
+     * new ChannelCounters(aggregate) to also count into counters shared 
+     * by many sessions. Default: null, the channels create their own
+     * counters; see ApplicationChannel.getCounters().
+     */
+    public void setCounters(ChannelCounters counters) {
+        this.counters = counters;
+    }
+    
     /**
      * @throws NoSuchServer
      * @throws BadPeer
      */
     public void handshake() {
         checkThatEncKeyPairWasSet();        
+        timer.start();
         
+        try {
+            HandshakeListener.Outcome outcome = handshakeSteps();
+            timer.ended(outcome, peerSigKey());
+        } catch (RuntimeException e) {
+            timer.failed(e, peerSigKey());
+            throw e;
+        }
+    }
+    
+    private HandshakeListener.Outcome handshakeSteps() {
         m1();
         
+        long t = timer.now();
         readM2Bytes();   // M2 or TT message
         
         if (m2Header.getType() == Packet.TYPE_ENCRYPTED_MESSAGE) {
-            tt1();
-            return;
+            tt1(t);
+            return HandshakeListener.Outcome.RESUMED;
         }
         
-        m2();
+        m2(t);
         createEncryptedChannelForNewSession();
         
         m3();
@@ -132,6 +256,94 @@ public class SaltClientSession {
         m4();
         
         tt2();
+        
+        return HandshakeListener.Outcome.FULL;
+    }
+    
+    /**
+     * Push-style, non-blocking alternative to handshake(). Starts the 
+     * handshake; the returned result contains M1 and has the state NEED_MORE.
+     * Then, messages from the server are given to onMessage().
+     * 
+     * @throws IllegalStateException
+     *          If the handshake was started already.
+     */
+    public HandshakeResult start() {
+        if (collector != null) {
+            throw new IllegalStateException("handshake started already");
+        }
+        
+        checkThatEncKeyPairWasSet();
+        this.collector = new OutputCollector(clearChannel);
+        this.out = collector;
+        timer.start();
+        
+        m1();
+        return pushResult(HandshakeResult.State.NEED_MORE, null);
+    }
+    
+    /**
+     * Handles one message received from the server (M2, M3, TT, or TT 
+     * of a resumed session) and returns the messages to send to the server 
+     * together with the new state of the handshake. 
+     * When the state is DONE, the application channel returned by 
+     * getChannel() reads from and writes to the clear channel given 
+     * in the constructor.
+     * Protocol errors do not result in exceptions, they result in the 
+     * state FAILED.
+     * 
+     * @throws IllegalStateException
+     *          If start() has not been called or if the handshake has ended.
+     */
+    public HandshakeResult onMessage(byte[] message) {
+        if (collector == null) {
+            throw new IllegalStateException("start() has not been called");
+        }
+        
+        if (pushState != HandshakeResult.State.NEED_MORE) {
+            throw new IllegalStateException("handshake has ended, state: " + pushState);
+        }
+        
+        try {
+            if (m3Expected) {
+                m3Expected = false;
+                encryptedChannel.pushback(message);
+                m3();
+                validateSignature1();
+                m4();
+                
+                if (m1.ticketRequested && m2.resumeSupported) {
+                    ttExpected = true;
+                    return pushResult(HandshakeResult.State.NEED_MORE, null);
+                }
+            } else if (ttExpected) {
+                ttExpected = false;
+                encryptedChannel.pushback(message);
+                tt2();
+            } else {
+                this.m2Bytes = message;
+                this.m2Header = V2Util.parseHeader(m2Bytes);
+                
+                if (m2Header.getType() == Packet.TYPE_ENCRYPTED_MESSAGE) {
+                    tt1(timer.now());
+                } else {
+                    m2(timer.now());
+                    createEncryptedChannelForNewSession();
+                    m3Expected = true;
+                    return pushResult(HandshakeResult.State.NEED_MORE, null);
+                }
+            }
+            
+            return pushResult(HandshakeResult.State.DONE, null);
+        } catch (ComException | NoSuchServer e) {
+            return pushResult(HandshakeResult.State.FAILED, e);
+        }
+    }
+    
+    private HandshakeResult pushResult(HandshakeResult.State state, RuntimeException e) {
+        this.pushState = state;
+        timer.ended(state, resumed, e, peerSigKey());
+        return collector.result(state, e);
     }
     
     /**
@@ -155,7 +367,14 @@ public class SaltClientSession {
     public byte[] getServerSigKey() {
         return this.m3.serverSigKey;
     }
-    
+
+    /**
+     * Returns the server's signing key as far as known, for the SaltHandshake event.
+     */
+    private byte[] peerSigKey() {
+        return m3 != null ? m3.serverSigKey : wantedServerSigKey;
+    }
+
     public byte[] getSessionKey() {
         return sessionKey;
     }
@@ -172,12 +391,24 @@ public class SaltClientSession {
      * Creates and writes M1 message.
      */
     private void m1() {
+        long t = timer.now();
         this.m1 = new M1Message();
         m1.time = timeKeeper.getFirstTime();
         m1.clientEncKey = this.encKeyPair.pub();
         m1.serverSigKey = this.wantedServerSigKey;
         m1.ticketRequested = this.ticketRequested;
         
+        if (ticketData != null) {
+            synchronized (ticketData) {
+                if (ticketData.earlyDataSent) {
+                    ticketData = null;    // Key and nonce already used, see setTicketData().
+                } else {
+                    m1.earlyData = this.earlyData != null;
+                    ticketData.earlyDataSent = m1.earlyData;
+                }
+            }
+        }
+        
         if (ticketData != null) {
             m1.ticket = ticketData.ticket;
         }
@@ -185,11 +416,22 @@ public class SaltClientSession {
         byte[] m1Bytes = m1.toBytes();
         this.m1Hash = CryptoLib.sha512(m1Bytes);
         
-        clearChannel.write(false, m1Bytes);
+        if (ticketData == null) {
+            out.write(false, m1Bytes);
+            timer.lap(HandshakeListener.Phase.WRITE_M1, t);
+            return;
+        }
         
-        if (ticketData != null) {
-            createEncryptedChannelForResumedSession();
+        createEncryptedChannelForResumedSession();
+        
+        if (m1.earlyData) {
+            byte[] packet = appChannel.earlyDataPacket(earlyData);
+            out.write(false, m1Bytes, encryptedChannel.encryptAndIncreaseWriteNonce(false, packet));
+        } else {
+            out.write(false, m1Bytes);
         }
+        
+        timer.lap(HandshakeListener.Phase.WRITE_M1, t);
     }
     
     private void readM2Bytes() {
@@ -198,11 +440,11 @@ public class SaltClientSession {
     }
     
     /**
-     * Handles M2 message.
+     * Handles M2 message. The READ_M2 phase started at 'start'.
      * 
      * @throws NoSuchServer.
      */
-    private void m2() {
+    private void m2(long start) {
         this.m2 = M2Message.fromBytes(m2Bytes, 0);
         if (m2.noSuchServer) {
             throw new NoSuchServer();
@@ -215,30 +457,37 @@ public class SaltClientSession {
         this.timeChecker.reportFirstTime(m2.time);
         
         this.m2Hash = CryptoLib.sha512(m2.toBytes());
+        timer.lap(HandshakeListener.Phase.READ_M2, start);
     }
     
     private void m3() {
+        long t = timer.now();
         this.m3 = M3Packet.fromBytes(encryptedChannel.read(), 0);
         this.timeChecker.checkTime(m3.time);
+        timer.lap(HandshakeListener.Phase.READ_M3, t);
     }
     
     private void m4() {
+        long t = timer.now();
         this.m4 = new M4Packet();
         m4.time = timeKeeper.getTime();
-        m4.clientSigKey = this.sigKeyPair.pub();
+        m4.clientSigKey = this.signer.getPublicKey();
         m4.signature2 = signature2();
+        t = timer.lap(HandshakeListener.Phase.SIGNATURE2, t);
         
         if (this.bufferM4) {
             appChannel.setBufferedM4(m4);
         } else {
             encryptedChannel.write(false, m4.toBytes());
         }
+        
+        timer.lap(HandshakeListener.Phase.WRITE_M4, t);
     }
     
     /**
-     * Reads expected TT message.
+     * Reads expected TT message. The READ_TT phase started at 'start'.
      */
-    private void tt1() {
+    private void tt1(long start) {
         if (encryptedChannel == null) {
             throw new BadPeer("got Packet.TYPE_ENCRYPTED_MESSAGE but not resumed channel exists");
         }
@@ -256,6 +505,9 @@ public class SaltClientSession {
         this.newTicketData.sessionKey = this.sessionKey;
         this.newTicketData.sessionNonce = tt.sessionNonce;
         this.newTicketData.ticket = tt.ticket;
+        this.earlyDataAccepted = m1.earlyData;
+        this.resumed = true;
+        timer.lap(HandshakeListener.Phase.READ_TT, start);
     }
     
     /**
@@ -263,12 +515,14 @@ public class SaltClientSession {
      */
     private void tt2() {
         if (m1.ticketRequested && m2.resumeSupported) {
+            long t = timer.now();
             byte[] bytes = encryptedChannel.read();
             tt = TTPacket.fromBytes(bytes, 0);
             newTicketData = new ClientTicketData();
             newTicketData.ticket = tt.ticket;
             newTicketData.sessionKey = this.sessionKey;
             newTicketData.sessionNonce = tt.sessionNonce;
+            timer.lap(HandshakeListener.Phase.READ_TT, t);
         }
     }
     
@@ -278,6 +532,7 @@ public class SaltClientSession {
      * @throws BadPeer
      */
     private void validateSignature1() {
+        long t = timer.now();
         byte[] signedMessage = V2Util.concat(
                 m3.signature1, V2Util.SIG1_PREFIX, m1Hash, m2Hash);    
 
@@ -287,28 +542,40 @@ public class SaltClientSession {
         } catch (BadSignatureException e) {
             throw new BadPeer("invalid signature");
         }
+        
+        timer.lap(HandshakeListener.Phase.VALIDATE_SIGNATURE1, t);
     }
     
     /**
      * Computes Signature2.
      */
     private byte[] signature2() {
-        return V2Util.createSignature(sigKeyPair, V2Util.SIG2_PREFIX, m1Hash, m2Hash);
+        return V2Util.createSignature(signer, V2Util.SIG2_PREFIX, m1Hash, m2Hash);
     }
     
     private void createEncryptedChannelForNewSession() {
+        long t = timer.now();
         this.sessionKey = CryptoLib.computeSharedKey(encKeyPair.sec(), m2.serverEncKey);
-        this.encryptedChannel = new EncryptedChannelV2(this.clearChannel, sessionKey, Role.CLIENT);
+        timer.lap(HandshakeListener.Phase.KEY_AGREEMENT, t);
+        this.encryptedChannel = new EncryptedChannelV2(this.out, sessionKey, Role.CLIENT);
+        useCounters(encryptedChannel);
         this.appChannel = new ApplicationChannel(this.encryptedChannel, timeKeeper, timeChecker);
     }
     
     private void createEncryptedChannelForResumedSession() {
         this.sessionKey = this.ticketData.sessionKey;
-        this.encryptedChannel = new EncryptedChannelV2(this.clearChannel, sessionKey, 
+        this.encryptedChannel = new EncryptedChannelV2(this.out, sessionKey, 
                 Role.CLIENT, this.ticketData.sessionNonce);
+        useCounters(encryptedChannel);
         this.appChannel = new ApplicationChannel(this.encryptedChannel, timeKeeper, timeChecker);
     }
 
+    private void useCounters(EncryptedChannelV2 channel) {
+        if (counters != null) {
+            channel.setCounters(counters);
+        }
+    }
+    
     private void checkThatEncKeyPairWasSet() {
         if (encKeyPair == null) {
             throw new IllegalStateException("encKeyPair must be set before calling handshake()");
@@ -4,11 +4,13 @@ import java.util.Arrays;
 
 import saltchannel.BadPeer;
 import saltchannel.ByteChannel;
+import saltchannel.ComException;
 import saltchannel.CryptoLib;
 import saltchannel.a1a2.A1Packet;
 import saltchannel.a1a2.A2Packet;
 //import saltchannel.TweetNaCl;
 import saltaa.*;
+import saltchannel.util.EphemeralKeyPool;
 import saltchannel.util.KeyPair;
 import saltchannel.util.NullTimeChecker;
 import saltchannel.util.Rand;
@@ -33,15 +35,28 @@ import saltchannel.v2.packets.TTPacket;
  * Do not reuse the object for more than one Salt Channel session.
  * Limitation: does not support virtual servers, just one pubkey supported.
  * 
+ * As an alternative to the blocking handshake() method, the handshake
+ * can be driven by the caller with onMessage(). That method never blocks; 
+ * it returns the messages to send to the client instead of writing 
+ * them to the clear channel. This is useful for event-driven servers.
+ * The two styles must not be mixed for one session object.
+ * 
  * @author Frans Lundberg
  */
 public class SaltServerSession {
     private final ByteChannel clearChannel;
+    
+    /** Channel that handshake messages are written to. */
+    private ByteChannel out;
+    
+    /** Non-null when the handshake is driven with onMessage(). */
+    private OutputCollector collector;
+    private HandshakeResult.State pushState;
     private EncryptedChannelV2 encryptedChannel;
     private TimeKeeper timeKeeper;
     private TimeChecker timeChecker;
     private A2Packet a2Packet;
-    private KeyPair sigKeyPair;
+    private PreparedSigner signer;
     private KeyPair encKeyPair;
     private M1Message m1;
     private byte[] m1Hash;
@@ -56,13 +71,31 @@ public class SaltServerSession {
     private byte[] clientSigKey;
     private SaltLib salt = SaltLibFactory.getLib();
     private boolean bufferM2 = false;
+    private SignatureBatcher signatureBatcher;
+    private SignKeyCache signKeyCache;
+    private boolean earlyDataAccepted = false;
+    private boolean earlyDataExpected = false;
+    private boolean earlyDataToDiscard = false;
+    private boolean resumed = false;
+    private HandshakeTimer timer = HandshakeTimer.create(null, true);
+    private ChannelCounters counters;
     
     /** Set to true in handshake after an A1A2 session. */
     private boolean isDone = false;
 
     public SaltServerSession(KeyPair sigKeyPair, ByteChannel clearChannel) {
+        this(SaltLibFactory.getLib().crypto_sign_prepare(sigKeyPair.sec()), clearChannel);
+    }
+    
+    /**
+     * Creates a session that signs with a prepared signer; use this
+     * constructor to share one signer, created with CryptoLib.createSigner(),
+     * between all sessions of a long-lived key.
+     */
+    public SaltServerSession(PreparedSigner signer, ByteChannel clearChannel) {
         this.clearChannel = clearChannel;
-        this.sigKeyPair = sigKeyPair;
+        this.out = clearChannel;
+        this.signer = signer;
         this.timeKeeper = NullTimeKeeper.INSTANCE;
         this.timeChecker = NullTimeChecker.INSTANCE;
         this.resumeHandler = null;
@@ -90,6 +123,14 @@ public class SaltServerSession {
         this.encKeyPair = CryptoLib.createEncKeys(rand);
     }
     
+    /**
+     * Takes the ephemeral encryption key pair from a pool of 
+     * precomputed key pairs.
+     */
+    public void setEncKeyPair(EphemeralKeyPool pool) {
+        this.encKeyPair = pool.take();
+    }
+    
     public void setA2(A2Packet a2Packet) {
         this.a2Packet = a2Packet;
     }
@@ -116,6 +157,69 @@ public class SaltServerSession {
         this.resumeHandler = resumeHandler;
     }
     
+    /**
+     * Sets a cache of decoded client signing keys to use when validating
+     * Signature2, see SignKeyCache. The cache is not used when a 
+     * signature batcher is set.
+     * Default: null, no cache.
+     */
+    public void setSignKeyCache(SignKeyCache signKeyCache) {
+        this.signKeyCache = signKeyCache;
+    }
+    
+    /**
+     * Sets a batcher to validate Signature2 with. The batcher is typically 
+     * shared by all sessions of a server. Note, the handshake then blocks
+     * for up to the batcher's max delay while validating Signature2.
+     * Default: null, Signature2 is validated directly.
+     */
+    public void setSignatureBatcher(SignatureBatcher signatureBatcher) {
+        this.signatureBatcher = signatureBatcher;
+    }
+    
+    /**
+     * Set to true to accept early data (0-RTT application messages sent 
+     * by the client together with M1) on resumed sessions, see 
+     * SaltClientSession.setEarlyData(). The early data is decrypted right
+     * after the ticket has been validated and the messages are returned 
+     * by the first reads of the application channel.
+     * 
+     * <p>Replay. ResumeHandler.validateTicket() clears the ticket in its
+     * TicketStore (TicketBits, by default) before the early data is 
+     * decrypted, so each ticket, and thereby each early data packet, 
+     * is accepted at most once. A replayed M1 has an invalid ticket;
+     * the server then continues with a full handshake and discards the 
+     * early data without decrypting it. The replay protection is as strong
+     * as the TicketStore used; see MappedTicketBits.setForceOnClear() and
+     * ClusterTicketStore for stores that survive a restart or span several
+     * servers.</p>
+     * 
+     * <p>When false, a client's early data is discarded and a full handshake
+     * is made; the client then sends the messages again.
+     * Default: false.</p>
+     */
+    public void setEarlyDataAccepted(boolean earlyDataAccepted) {
+        this.earlyDataAccepted = earlyDataAccepted;
+    }
+    
+    /**
+     * Sets a listener that receives the timings of the phases of the
+     * handshake and its outcome. Default: null, no timing.
+     */
+    public void setHandshakeListener(HandshakeListener listener) {
+        this.timer = HandshakeTimer.create(listener, true);
+    }
+    
+    /**
+     * Sets the counters of the channels of this session, typically
+     * new ChannelCounters(aggregate) to also count into counters shared 
+     * by many sessions. Default: null, the channels create their own
+     * counters; see ApplicationChannel.getCounters().
+     */
+    public void setCounters(ChannelCounters counters) {
+        this.counters = counters;
+    }
+    
     /**
      * Executes the salt channel handshake or returns the A2 packet
      * given an A1 request.
@@ -127,20 +231,40 @@ public class SaltServerSession {
      */
     public void handshake() {
         checkThatEncKeyPairWasSet();        
+        timer.start();
         
+        try {
+            HandshakeListener.Outcome outcome = handshakeSteps();
+            timer.ended(outcome, this.clientSigKey);
+        } catch (RuntimeException e) {
+            timer.failed(e, this.clientSigKey);
+            throw e;
+        }
+    }
+    
+    private HandshakeListener.Outcome handshakeSteps() {
         readM1();
         
         if (m1Header.getType() == Packet.TYPE_A1) {
             a2();
             this.isDone = true;
-            return;
+            return HandshakeListener.Outcome.A1A2;
         }
         
         checkThatEncKeyPairWasSet();
         
-        boolean resumed = processM1();
+        this.resumed = processM1();
+        
+        if (m1.earlyData) {
+            // The early data was sent together with M1, reading it does not block.
+            byte[] earlyDataBytes = clearChannel.read();
+            if (resumed) {
+                readEarlyData(earlyDataBytes);
+            }
+        }
+        
         if (resumed) {
-            return;
+            return HandshakeListener.Outcome.RESUMED;
         }
         
         m2();
@@ -152,6 +276,97 @@ public class SaltServerSession {
         validateSignature2();
         
         tt();
+        
+        return HandshakeListener.Outcome.FULL;
+    }
+    
+    /**
+     * Push-style, non-blocking alternative to handshake(). 
+     * Handles one message received from the client (M1, A1, early data
+     * or M4) and 
+     * returns the messages to send to the client together with 
+     * the new state of the handshake. Nothing is written to the clear 
+     * channel by this method, but when the state is DONE, the application
+     * channel returned by getChannel() reads from and writes to the clear
+     * channel given in the constructor.
+     * 
+     * Protocol errors do not result in exceptions, they result in the 
+     * state FAILED; the messages of that result must still be sent 
+     * (a NoSuchServer M2, for example).
+     * 
+     * @throws IllegalStateException
+     *          If the handshake is already DONE, A2_DONE or FAILED.
+     */
+    public HandshakeResult onMessage(byte[] message) {
+        if (pushState != null && pushState != HandshakeResult.State.NEED_MORE) {
+            throw new IllegalStateException("handshake has ended, state: " + pushState);
+        }
+        
+        if (collector == null) {
+            checkThatEncKeyPairWasSet();
+            this.collector = new OutputCollector(clearChannel);
+            this.out = collector;
+            timer.start();
+        }
+        
+        try {
+            if (m1Bytes == null) {
+                this.m1Bytes = message;
+                this.m1Header = V2Util.parseHeader(m1Bytes);
+                
+                if (m1Header.getType() == Packet.TYPE_A1) {
+                    a2();
+                    this.isDone = true;
+                    return pushResult(HandshakeResult.State.A2_DONE, null);
+                }
+                
+                this.resumed = processM1();
+                if (m1.earlyData) {
+                    earlyDataExpected = resumed;
+                    earlyDataToDiscard = !resumed;
+                }
+                
+                if (resumed) {
+                    return pushResult(earlyDataExpected ? 
+                            HandshakeResult.State.NEED_MORE : HandshakeResult.State.DONE, null);
+                }
+                
+                m2();
+                createEncryptedChannelFromKeyAgreement();
+                m3();
+                return pushResult(HandshakeResult.State.NEED_MORE, null);
+            } else if (earlyDataExpected) {
+                earlyDataExpected = false;
+                readEarlyData(message);
+                return pushResult(HandshakeResult.State.DONE, null);
+            } else if (earlyDataToDiscard) {
+                earlyDataToDiscard = false;
+                return pushResult(HandshakeResult.State.NEED_MORE, null);
+            } else {
+                encryptedChannel.pushback(message);
+                m4();
+                validateSignature2();
+                tt();
+                return pushResult(HandshakeResult.State.DONE, null);
+            }
+        } catch (ComException | NoSuchServer e) {
+            return pushResult(HandshakeResult.State.FAILED, e);
+        }
+    }
+    
+    private HandshakeResult pushResult(HandshakeResult.State state, RuntimeException e) {
+        this.pushState = state;
+        timer.ended(state, resumed, e, this.clientSigKey);
+        return collector.result(state, e);
+    }
+    
+    /**
+     * Returns true if the next message for onMessage() is the early data of
+     * a resumed session, that is, M1 included a valid ticket. Unlike the
+     * handshake messages, the early data may be large.
+     */
+    public boolean isEarlyDataExpected() {
+        return earlyDataExpected;
     }
     
     /**
@@ -164,8 +379,10 @@ public class SaltServerSession {
     }
     
     private void readM1() {
+        long t = timer.now();
         m1Bytes = clearChannel.read();
         m1Header = V2Util.parseHeader(m1Bytes);
+        timer.lap(HandshakeListener.Phase.READ_M1, t);
     }
 
     private void checkThatA2WasSet() {
@@ -215,13 +432,13 @@ public class SaltServerSession {
         A1Packet a1 = A1Packet.fromBytes(m1Bytes, 0);
         
         if (a1.addressType == A1Packet.ADDRESS_TYPE_PUBKEY 
-                && (!Arrays.equals(this.sigKeyPair.pub(), a1.address))) {
+                && (!Arrays.equals(this.signer.getPublicKey(), a1.address))) {
             a2 = A2Packet.createNoSuchServerPacket();
         }
         
         byte[] buffer = new byte[a2.getSize()];
         a2.toBytes(buffer, 0);
-        clearChannel.write(true, buffer);    // LastFlag is set.
+        out.write(true, buffer);    // LastFlag is set.
     }
 
     /**
@@ -233,6 +450,7 @@ public class SaltServerSession {
         // Note the missing support for "virtual hosting". 
         // Only one server sig key is allowed here.
         
+        long t = timer.now();
         this.m1Hash = CryptoLib.sha512(m1Bytes);
         this.m1 = M1Message.fromBytes(m1Bytes, 0);
         
@@ -242,12 +460,12 @@ public class SaltServerSession {
         
         timeChecker.reportFirstTime(m1.time);
         
-        if (m1.serverSigKeyIncluded() && !Arrays.equals(this.sigKeyPair.pub(), m1.serverSigKey)) {
-            clearChannel.write(true, noSuchServerM2Raw());    // LastFlag is set
+        if (m1.serverSigKeyIncluded() && !Arrays.equals(this.signer.getPublicKey(), m1.serverSigKey)) {
+            out.write(true, noSuchServerM2Raw());    // LastFlag is set
             throw new NoSuchServer();
         }
         
-        if (m1.ticketIncluded() && resumeSupported()) {
+        if (m1.ticketIncluded() && resumeSupported() && (earlyDataAccepted || !m1.earlyData)) {
             TicketSessionData sessionData;
             try {
                 sessionData = resumeHandler.validateTicket(m1.ticket);
@@ -256,15 +474,27 @@ public class SaltServerSession {
             }
             
             createEncryptedChannelFromResumedSession(sessionData);
+            timer.lap(HandshakeListener.Phase.PROCESS_M1, t);
             writeTTPacket();
             
             return true;
         }
         
+        timer.lap(HandshakeListener.Phase.PROCESS_M1, t);
         return false;
     }
     
+    /**
+     * Decrypts the early data packet, adds its messages to the 
+     * application channel.
+     */
+    private void readEarlyData(byte[] encryptedBytes) {
+        encryptedChannel.pushback(encryptedBytes);
+        appChannel.addEarlyData(encryptedChannel.read());
+    }
+    
     private void m2() {
+        long t = timer.now();
         this.m2 = new M2Message();
         m2.time = timeKeeper.getFirstTime();
         m2.noSuchServer = false;
@@ -275,8 +505,10 @@ public class SaltServerSession {
             m2.time = timeKeeper.getFirstTime();
             byte[] m2Bytes = m2.toBytes();
             this.m2Hash = CryptoLib.sha512(m2Bytes);
-            clearChannel.write(false, m2Bytes);
+            out.write(false, m2Bytes);
         }
+        
+        timer.lap(HandshakeListener.Phase.WRITE_M2, t);
     }
 
     private void m3() {
@@ -294,23 +526,29 @@ public class SaltServerSession {
         
         M3Packet p = new M3Packet();
         p.time = time;
-        p.serverSigKey = this.sigKeyPair.pub();
+        p.serverSigKey = this.signer.getPublicKey();
+        long t = timer.now();
         p.signature1 = signature1();
+        t = timer.lap(HandshakeListener.Phase.SIGNATURE1, t);
         
         byte[] m3Bytes = p.toBytes();
         byte[] m3Encrypted = encryptedChannel.encryptAndIncreaseWriteNonce(false, m3Bytes);
         
         if (bufferM2) {
-            clearChannel.write(false, m2Bytes, m3Encrypted);
+            out.write(false, m2Bytes, m3Encrypted);
         } else {
-            clearChannel.write(false, m3Encrypted);
+            out.write(false, m3Encrypted);
         }
+        
+        timer.lap(HandshakeListener.Phase.WRITE_M3, t);
     }
     
     private void m4() {
+        long t = timer.now();
         this.m4 = M4Packet.fromBytes(encryptedChannel.read(), 0);
         this.timeChecker.checkTime(m4.time);
         this.clientSigKey = m4.clientSigKey;
+        timer.lap(HandshakeListener.Phase.READ_M4, t);
     }
     
     /**
@@ -328,6 +566,7 @@ public class SaltServerSession {
     }
 
     private void writeTTPacket() {
+        long start = timer.now();
         ResumeHandler.IssuedTicket t = resumeHandler.issueTicket(clientSigKey, sessionKey);
         
         TTPacket p = new TTPacket();
@@ -335,11 +574,15 @@ public class SaltServerSession {
         p.ticket = t.ticket;
         p.sessionNonce = t.sessionNonce;
         encryptedChannel.write(false, p.toBytes());
+        timer.lap(HandshakeListener.Phase.ISSUE_TICKET, start);
     }
 
     private void createEncryptedChannelFromKeyAgreement() {
+        long t = timer.now();
         this.sessionKey = CryptoLib.computeSharedKey(encKeyPair.sec(), m1.clientEncKey);
-        this.encryptedChannel = new EncryptedChannelV2(this.clearChannel, sessionKey, Role.SERVER);
+        timer.lap(HandshakeListener.Phase.KEY_AGREEMENT, t);
+        this.encryptedChannel = new EncryptedChannelV2(this.out, sessionKey, Role.SERVER);
+        useCounters(encryptedChannel);
         this.appChannel = new ApplicationChannel(this.encryptedChannel, timeKeeper, timeChecker);
     }
     
@@ -350,11 +593,18 @@ public class SaltServerSession {
     private void createEncryptedChannelFromResumedSession(TicketSessionData data) {
         this.sessionKey = data.sessionKey;
         this.clientSigKey = data.clientSigKey;
-        this.encryptedChannel = new EncryptedChannelV2(this.clearChannel, sessionKey, 
+        this.encryptedChannel = new EncryptedChannelV2(this.out, sessionKey, 
                 Role.SERVER, data.sessionNonce);
+        useCounters(encryptedChannel);
         this.appChannel = new ApplicationChannel(this.encryptedChannel, timeKeeper, timeChecker);
     }
     
+    private void useCounters(EncryptedChannelV2 channel) {
+        if (counters != null) {
+            channel.setCounters(counters);
+        }
+    }
+    
     private boolean resumeSupported() {
         return resumeHandler != null;
     }
@@ -363,7 +613,7 @@ public class SaltServerSession {
      * Computes Signature1.
      */
     private byte[] signature1() {
-        return V2Util.createSignature(sigKeyPair, V2Util.SIG1_PREFIX, m1Hash, m2Hash);
+        return V2Util.createSignature(signer, V2Util.SIG1_PREFIX, m1Hash, m2Hash);
     }
     
     /**
@@ -376,14 +626,24 @@ public class SaltServerSession {
         assert m1.clientEncKey != null;
         assert encKeyPair.pub() != null;
         
+        long t = timer.now();
         byte[] signedMessage = V2Util.concat(m4.signature2, V2Util.SIG2_PREFIX, m1Hash, m2Hash);
         
         try {
-            byte[] m = new byte[signedMessage.length];
-            salt.crypto_sign_open(m, signedMessage, m4.clientSigKey);
+            if (signatureBatcher != null) {
+                signatureBatcher.verify(signedMessage, m4.clientSigKey);
+            } else if (signKeyCache != null) {
+                byte[] m = new byte[signedMessage.length];
+                salt.crypto_sign_open(m, signedMessage, m4.clientSigKey, signKeyCache);
+            } else {
+                byte[] m = new byte[signedMessage.length];
+                salt.crypto_sign_open(m, signedMessage, m4.clientSigKey);
+            }
         } catch (BadSignatureException e) {
             throw new BadPeer("invalid signature");
         }
+        
+        timer.lap(HandshakeListener.Phase.VALIDATE_SIGNATURE2, t);
     }
     
     private byte[] noSuchServerM2Raw() {
@@ -0,0 +1,237 @@
+package saltchannel.v2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import saltaa.BadSignatureException;
+import saltaa.SaltLib;
+import saltaa.SaltLibFactory;
+
+/**
+ * Collects signature verifications from concurrent handshakes over a short
+ * time window and verifies them together with
+ * SaltLib.crypto_sign_verify_batch(). Each caller gets its own result;
+ * an invalid signature only fails the call that submitted it. The result
+ * is the one of SaltLib.crypto_sign_open, whatever the size of the batch.
+ *
+ * verify() blocks the calling thread for up to the max delay, so the batcher
+ * fits a server where handshakes run on virtual threads or on a crypto
+ * pool, not on event loop threads. Used by SaltServerSession to validate
+ * Signature2, see SaltServerSession.setSignatureBatcher().
+ *
+ * @author Frans Lundberg
+ */
+public class SignatureBatcher {
+    public static final int DEFAULT_MAX_BATCH_SIZE = 64;
+    public static final long DEFAULT_MAX_DELAY_MICROS = 1000;
+
+    private final SaltLib salt;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final LinkedBlockingQueue<Request> queue = new LinkedBlockingQueue<Request>();
+    private final Thread thread;
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong signatureCount = new AtomicLong();
+    private volatile boolean shutdown = false;
+
+    /**
+     * Creates a batcher with the default SaltLib, DEFAULT_MAX_BATCH_SIZE
+     * and DEFAULT_MAX_DELAY_MICROS.
+     */
+    public SignatureBatcher() {
+        this(SaltLibFactory.getLib(), DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_DELAY_MICROS);
+    }
+
+    /**
+     * @param maxBatchSize
+     *          Max number of signatures per batch.
+     * @param maxDelayMicros
+     *          Max time to wait for more signatures after the first one
+     *          of a batch has been submitted.
+     */
+    public SignatureBatcher(SaltLib salt, int maxBatchSize, long maxDelayMicros) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("bad maxBatchSize, " + maxBatchSize);
+        }
+
+        this.salt = salt;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = maxDelayMicros * 1000;
+        this.thread = new Thread(new Runnable() {
+            public void run() {
+                runIt();
+            }
+        });
+        thread.setName("SignatureBatcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Verifies a signed message, blocks until the batch it belongs
+     * to has been verified.
+     *
+     * @param sm
+     *          Signature followed by the message, as for SaltLib.crypto_sign_open.
+     * @param pk
+     *          Public key of the signer.
+     * @throws BadSignatureException
+     *          If the signature is invalid.
+     */
+    public void verify(byte[] sm, byte[] pk) {
+        if (shutdown) {
+            verifyNow(sm, pk);
+            return;
+        }
+
+        Request r = new Request(sm, pk);
+        queue.add(r);
+
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (r.done.await(100, TimeUnit.MILLISECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+            
+            if (!thread.isAlive() && queue.remove(r)) {
+                // Added after the batching thread stopped.
+                verifyNow(sm, pk);
+                return;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (r.failure != null) {
+            throw r.failure;
+        }
+
+        if (!r.valid) {
+            throw new BadSignatureException();
+        }
+    }
+
+    /**
+     * Returns the number of batches verified so far.
+     */
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    /**
+     * Returns the number of signatures verified so far.
+     */
+    public long getSignatureCount() {
+        return signatureCount.get();
+    }
+
+    /**
+     * Stops the batching thread once the queued signatures have been verified.
+     * Later calls to verify() verify the signature directly.
+     */
+    public void shutdown() {
+        shutdown = true;
+        thread.interrupt();
+    }
+
+    private void verifyNow(byte[] sm, byte[] pk) {
+        salt.crypto_sign_open(new byte[sm.length], sm, pk);
+    }
+
+    private void runIt() {
+        List<Request> batch = new ArrayList<Request>(maxBatchSize);
+
+        while (true) {
+            try {
+                Request first = shutdown ? queue.poll() : queue.take();
+                if (first == null) {
+                    return;
+                }
+
+                batch.add(first);
+                fillBatch(batch);
+            } catch (InterruptedException e) {
+                if (batch.isEmpty()) {
+                    continue;    // Queued requests are handled before returning.
+                }
+            }
+
+            verifyBatch(batch);
+            batch.clear();
+        }
+    }
+
+    private void fillBatch(List<Request> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + maxDelayNanos;
+
+        while (batch.size() < maxBatchSize) {
+            queue.drainTo(batch, maxBatchSize - batch.size());
+            if (batch.size() >= maxBatchSize) {
+                break;
+            }
+
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+
+            Request r = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (r == null) {
+                break;
+            }
+            batch.add(r);
+        }
+    }
+
+    private void verifyBatch(List<Request> batch) {
+        int size = batch.size();
+        byte[][] sm = new byte[size][];
+        byte[][] pk = new byte[size][];
+        boolean[] valid = new boolean[size];
+
+        for (int i = 0; i < size; i++) {
+            sm[i] = batch.get(i).sm;
+            pk[i] = batch.get(i).pk;
+        }
+
+        RuntimeException failure = null;
+        try {
+            salt.crypto_sign_verify_batch(valid, sm, pk);
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+
+        batchCount.incrementAndGet();
+        signatureCount.addAndGet(size);
+
+        for (int i = 0; i < size; i++) {
+            Request r = batch.get(i);
+            r.valid = valid[i];
+            r.failure = failure;
+            r.done.countDown();
+        }
+    }
+
+    private static class Request {
+        final byte[] sm;
+        final byte[] pk;
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile boolean valid;
+        volatile RuntimeException failure;
+
+        Request(byte[] sm, byte[] pk) {
+            this.sm = sm;
+            this.pk = pk;
+        }
+    }
+}
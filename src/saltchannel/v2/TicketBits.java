@@ -1,5 +1,7 @@
 package saltchannel.v2;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import saltchannel.util.BitField;
 
 //
@@ -16,12 +18,16 @@ import saltchannel.util.BitField;
  * that are valid using their ticket index.
  * This is done by storing a single bit per valid outstanding ticket.
  * 
+ * All data is in memory; see MappedTicketBits for a persistent alternative.
+ * The class is thread-safe and lock-free: the next ticket index is an 
+ * atomic counter and the bits are updated with compare-and-set.
+ * 
  * @author Frans Lundberg
  */
-public class TicketBits {
-    private long first;
-    private long next;
-    private BitField bits;
+public class TicketBits implements TicketStore {
+    private final long first;
+    private final AtomicLong next;
+    private final BitField bits;
     private final int bitSize;
     
     /**
@@ -36,7 +42,7 @@ public class TicketBits {
      */
     public TicketBits(long first, int wantedBitSize) {
         this.first = first;
-        this.next = first;
+        this.next = new AtomicLong(first);
         this.bits = new BitField(wantedBitSize);
         this.bitSize = bits.getSize();
     }
@@ -44,10 +50,10 @@ public class TicketBits {
     /**
      * Issues a new ticket index and sets the corresponding bit to true.
      */
+    @Override
     public long issue() {
-        long result = next;
-        bits.set((int)(next - first) % bitSize, true);
-        next++;
+        long result = next.getAndIncrement();
+        bits.set(bitIndex(result), true);
         return result;
     }
     
@@ -72,12 +78,30 @@ public class TicketBits {
         bits.set(bitIndex(ticketIndex), false);
     }
     
+    @Override
+    public boolean clearIfValid(long ticketIndex) {
+        if (!isInRange(ticketIndex)) {
+            return false;
+        }
+        
+        if (!bits.clearIfSet(bitIndex(ticketIndex))) {
+            return false;
+        }
+        
+        // The bit is shared with ticketIndex + bitSize. If that index was issued 
+        // concurrently, the cleared bit may have been the newer ticket's. 
+        // Then, the old ticket is rejected (and the newer one is lost);
+        // a replay is never accepted.
+        return isInRange(ticketIndex);
+    }
+    
     /**
      * Returns true if the ticketIndex is in the current range
      * of stored bits.
      */
     private boolean isInRange(long ticketIndex) {
-        return ticketIndex >= first && ticketIndex >= (next - bitSize) && ticketIndex < next;
+        long myNext = next.get();
+        return ticketIndex >= first && ticketIndex >= (myNext - bitSize) && ticketIndex < myNext;
     }
     
     /**
@@ -85,6 +109,6 @@ public class TicketBits {
      * to be in range.
      */
     private int bitIndex(long ticketIndex) {
-        return (int)(ticketIndex - first) % bitSize;
+        return (int) ((ticketIndex - first) % bitSize);
     }
 }
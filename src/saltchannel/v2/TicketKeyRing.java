@@ -0,0 +1,210 @@
+package saltchannel.v2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The ticket encryption keys of a ResumeHandler, one key per epoch.
+ * New tickets are encrypted with the newest key. A ticket is validated
+ * with the key of the epoch it was issued in, as long as that key is
+ * still active. The epoch id (0-255) is carried in the ticket nonce.
+ *
+ * <p>Rotation. rotate() adds a new key and schedules the retirement
+ * of the previous one after a grace period. A resumed session gets a new
+ * ticket under the newest key, so during the grace period, clients move
+ * over to the new key as they reconnect. With a grace period longer than
+ * the typical reconnect interval of the clients, few tickets of the old
+ * epoch are left when its key is retired, and the retirement does not
+ * cause a burst of full handshakes.</p>
+ *
+ * <p>The class is thread-safe. Reads are lock-free; the keys are kept
+ * in an immutable snapshot that is replaced on each change.</p>
+ *
+ * @author Frans Lundberg
+ */
+public class TicketKeyRing {
+    public static final int KEY_SIZE = ResumeHandler.KEY_SIZE;
+    public static final int MAX_EPOCH = 255;
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<Snapshot>();
+
+    /**
+     * Creates a key ring with one key.
+     */
+    public TicketKeyRing(int epoch, byte[] key) {
+        Snapshot s = new Snapshot(new KeyEntry[MAX_EPOCH + 1], -1);
+        snapshot.set(s.with(new KeyEntry(epoch, key), epoch));
+    }
+
+    /**
+     * Adds a new key that is used to issue tickets from now on.
+     * The previous issuing key stays active for validation during
+     * oldKeyLifetimeMillis, then it is retired.
+     *
+     * @throws IllegalArgumentException
+     *          If the epoch is out of range or already active,
+     *          or if the key has the wrong size.
+     */
+    public void rotate(int newEpoch, byte[] newKey, long oldKeyLifetimeMillis) {
+        KeyEntry entry = new KeyEntry(newEpoch, newKey);
+        long retireAt = System.currentTimeMillis() + oldKeyLifetimeMillis;
+
+        while (true) {
+            Snapshot s = snapshot.get();
+            Snapshot updated = s.with(entry, newEpoch);
+            KeyEntry old = updated.entries[s.issueEpoch];
+            updated.entries[s.issueEpoch] = old.retiringAt(Math.min(old.retireAt, retireAt));
+
+            if (snapshot.compareAndSet(s, updated)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Retires a key immediately. Tickets of the epoch are no longer valid.
+     *
+     * @throws IllegalArgumentException
+     *          If the epoch is the current issuing epoch.
+     */
+    public void retire(int epoch) {
+        checkEpoch(epoch);
+
+        while (true) {
+            Snapshot s = snapshot.get();
+            if (epoch == s.issueEpoch) {
+                throw new IllegalArgumentException("cannot retire the issuing key, " + epoch);
+            }
+
+            Snapshot updated = s.copy();
+            updated.entries[epoch] = null;
+
+            if (snapshot.compareAndSet(s, updated)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the epoch of the key used to issue tickets.
+     */
+    public int getIssueEpoch() {
+        return snapshot.get().issueEpoch;
+    }
+
+    /**
+     * Returns the epochs of all active keys, including keys scheduled for
+     * retirement whose grace period has not ended.
+     */
+    public List<Integer> getActiveEpochs() {
+        long now = System.currentTimeMillis();
+        KeyEntry[] entries = snapshot.get().entries;
+        List<Integer> result = new ArrayList<Integer>();
+
+        for (int i = 0; i < entries.length; i++) {
+            if (entries[i] != null && entries[i].isActive(now)) {
+                result.add(i);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the epoch and key used to issue tickets, 
+     * the key must not be modified.
+     */
+    KeyEntry getIssueEntry() {
+        Snapshot s = snapshot.get();
+        return s.entries[s.issueEpoch];
+    }
+
+    /**
+     * Returns the key of an epoch, or null if there is no active key
+     * for the epoch. The result must not be modified.
+     */
+    byte[] getKey(int epoch) {
+        if (epoch < 0 || epoch > MAX_EPOCH) {
+            return null;
+        }
+
+        KeyEntry entry = snapshot.get().entries[epoch];
+        if (entry == null || !entry.isActive(System.currentTimeMillis())) {
+            return null;
+        }
+
+        return entry.key;
+    }
+
+    private static void checkEpoch(int epoch) {
+        if (epoch < 0 || epoch > MAX_EPOCH) {
+            throw new IllegalArgumentException("bad epoch, " + epoch);
+        }
+    }
+
+    private static class Snapshot {
+        final KeyEntry[] entries;
+        final int issueEpoch;
+
+        Snapshot(KeyEntry[] entries, int issueEpoch) {
+            this.entries = entries;
+            this.issueEpoch = issueEpoch;
+        }
+
+        Snapshot copy() {
+            return new Snapshot(entries.clone(), issueEpoch);
+        }
+
+        /**
+         * Returns a copy with the new entry as the issuing key.
+         * Retired entries are dropped.
+         */
+        Snapshot with(KeyEntry entry, int epoch) {
+            long now = System.currentTimeMillis();
+            KeyEntry existing = entries[epoch];
+            if (existing != null && existing.isActive(now)) {
+                throw new IllegalArgumentException("epoch already active, " + epoch);
+            }
+
+            KeyEntry[] newEntries = entries.clone();
+            for (int i = 0; i < newEntries.length; i++) {
+                if (newEntries[i] != null && !newEntries[i].isActive(now)) {
+                    newEntries[i] = null;
+                }
+            }
+
+            newEntries[epoch] = entry;
+            return new Snapshot(newEntries, epoch);
+        }
+    }
+
+    static class KeyEntry {
+        final int epoch;
+        final byte[] key;
+        final long retireAt;
+
+        KeyEntry(int epoch, byte[] key) {
+            this(epoch, key, Long.MAX_VALUE);
+        }
+
+        private KeyEntry(int epoch, byte[] key, long retireAt) {
+            checkEpoch(epoch);
+            if (key.length != KEY_SIZE) {
+                throw new IllegalArgumentException("bad key size");
+            }
+
+            this.epoch = epoch;
+            this.key = key.clone();
+            this.retireAt = retireAt;
+        }
+
+        KeyEntry retiringAt(long time) {
+            return new KeyEntry(epoch, key, time);
+        }
+
+        boolean isActive(long now) {
+            return now < retireAt;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package saltchannel.v2;
+
+/**
+ * Issues ticket indexes and keeps track of which issued tickets are 
+ * still valid; used by ResumeHandler for replay protection.
+ * Implementations must be thread-safe.
+ * 
+ * @author Frans Lundberg
+ */
+public interface TicketStore {
+    
+    /**
+     * Issues a new ticket index and marks it as valid. 
+     * An index is never issued twice.
+     */
+    public long issue();
+    
+    /**
+     * Atomically checks that the ticket is valid and clears it.
+     * Returns true if the ticket was valid. Of concurrent calls
+     * with the same ticket index, at most one returns true.
+     */
+    public boolean clearIfValid(long ticketIndex);
+}
@@ -26,6 +26,16 @@ public class V2Util {
         return signature;
     }
     
+    public static byte[] createSignature(PreparedSigner signer, byte[]... arrays) {
+        byte[] message = concat(arrays);
+        byte[] signedMessage = new byte[message.length + 64];
+        signer.sign(signedMessage, message);
+
+        byte[] signature = new byte[64];
+        System.arraycopy(signedMessage, 0, signature, 0, 64);
+        return signature;
+    }
+    
     public static byte[] concat(byte[]... arrays) {
         int size = 0;
         for (int i = 0; i < arrays.length; i++) {
@@ -0,0 +1,354 @@
+package saltchannel.v2.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import saltchannel.util.Util;
+
+/**
+ * One event loop thread with its own Selector. Owns the connections
+ * registered with it; all reads, handshake steps and socket writes of
+ * those connections are done by this thread.
+ * 
+ * Exceptions thrown by the application's handler or by tasks are logged
+ * (java.util.logging, the logger of NioServer); they do not end the loop.
+ *
+ * @author Frans Lundberg
+ */
+class EventLoop implements Runnable {
+    private static final int READ_BUFFER_SIZE = 64*1024;
+    
+    /** Time to stop accepting connections after accept() failed, typically too many open files. */
+    private static final long ACCEPT_BACKOFF_MILLIS = 100;
+    
+    static final Logger LOG = Logger.getLogger(NioServer.class.getName());
+
+    private final NioServer server;
+    private final Selector selector;
+    private final Thread thread;
+    private final ConcurrentLinkedQueue<NioSession> newSessions = new ConcurrentLinkedQueue<NioSession>();
+    private final ConcurrentLinkedQueue<NioSession> flushRequests = new ConcurrentLinkedQueue<NioSession>();
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+    private volatile boolean shutdown = false;
+    
+    /** Non-zero while accepting is paused, System.nanoTime() when to resume. */
+    private long acceptResumeTime = 0;
+    private SelectionKey pausedAcceptKey;
+    
+    /** 
+     * Sessions in handshake, in order of registration and thereby of 
+     * handshake deadline; sessions that have started or closed are removed
+     * when they reach the head.
+     */
+    private final ArrayDeque<NioSession> handshakes = new ArrayDeque<NioSession>();
+
+    /** Shared by all connections of this loop; data is copied out directly. */
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    
+    /** Used by NioSession.flush() for gathering writes. */
+    private final ByteBuffer[] writeBatch = new ByteBuffer[64];
+
+    EventLoop(NioServer server, String name) throws IOException {
+        this.server = server;
+        this.selector = Selector.open();
+        this.thread = new Thread(this);
+        thread.setName(name);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void shutdown() {
+        shutdown = true;
+        selector.wakeup();
+    }
+
+    void join() throws InterruptedException {
+        thread.join();
+    }
+
+    boolean inLoopThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    ByteBuffer[] getWriteBatch() {
+        return writeBatch;
+    }
+
+    void registerAcceptor(ServerSocketChannel serverChannel) throws IOException {
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Registers a new connection with this loop. Can be called by any thread.
+     */
+    void register(NioSession session) throws IOException {
+        if (inLoopThread()) {
+            doRegister(session);
+        } else {
+            newSessions.add(session);
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Requests that the write queue of the session is written to the socket.
+     * Can be called by any thread.
+     */
+    void requestFlush(NioSession session) {
+        flushRequests.add(session);
+        if (!inLoopThread()) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Runs the task in the loop thread. Can be called by any thread.
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        if (!inLoopThread()) {
+            selector.wakeup();
+        }
+    }
+
+    public void run() {
+        try {
+            while (!shutdown) {
+                select();
+                
+                try {
+                    closeExpiredHandshakes();
+                    registerNewSessions();
+                    runTasks();
+                    processSelectedKeys();
+                    processFlushRequests();
+                } catch (RuntimeException e) {
+                    // Not expected, the handler calls and tasks are guarded; 
+                    // keep serving the other connections.
+                    LOG.log(Level.WARNING, "unexpected exception in event loop", e);
+                }
+            }
+        } catch (IOException e) {
+            // Selector failed, nothing to do but closing the connections.
+        } catch (ClosedSelectorException e) {
+            // Same as above.
+        } finally {
+            closeAll();
+        }
+    }
+
+    /**
+     * Waits for events; with a timeout while accepting is paused or 
+     * a handshake is in progress.
+     */
+    private void select() throws IOException {
+        NioSession first = handshakes.peek();
+        
+        if (acceptResumeTime == 0 && first == null) {
+            selector.select();
+        } else {
+            long now = System.nanoTime();
+            long nanos = Long.MAX_VALUE;
+            if (acceptResumeTime != 0) {
+                nanos = acceptResumeTime - now;
+            }
+            if (first != null) {
+                nanos = Math.min(nanos, first.getHandshakeDeadline() - now);
+            }
+            
+            if (nanos > 0) {
+                selector.select(TimeUnit.NANOSECONDS.toMillis(nanos) + 1);
+            } else {
+                selector.selectNow();
+            }
+        }
+        
+        if (acceptResumeTime != 0 && System.nanoTime() - acceptResumeTime >= 0) {
+            acceptResumeTime = 0;
+            if (pausedAcceptKey.isValid()) {
+                pausedAcceptKey.interestOps(SelectionKey.OP_ACCEPT);
+            }
+            pausedAcceptKey = null;
+        }
+    }
+    
+    /**
+     * Closes the connections that have not completed the handshake in time.
+     */
+    private void closeExpiredHandshakes() {
+        long now = System.nanoTime();
+        NioSession session;
+        
+        while ((session = handshakes.peek()) != null) {
+            if (session.isOpen() && !session.isStarted()
+                    && now - session.getHandshakeDeadline() < 0) {
+                break;
+            }
+            
+            handshakes.poll();
+            if (session.isOpen() && !session.isStarted()) {
+                session.closeNow(new IOException("handshake timeout"));
+            }
+        }
+    }
+    
+    private void registerNewSessions() {
+        NioSession session;
+        while ((session = newSessions.poll()) != null) {
+            try {
+                doRegister(session);
+            } catch (IOException e) {
+                session.closeNow(e);
+            }
+        }
+    }
+
+    private void doRegister(NioSession session) throws IOException {
+        SelectionKey key = session.getSocketChannel().register(selector, SelectionKey.OP_READ, session);
+        session.setKey(key);
+        
+        long timeout = server.getHandshakeTimeoutMillis();
+        if (timeout > 0) {
+            session.setHandshakeDeadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout));
+            handshakes.add(session);
+        }
+        
+        session.flush();
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                LOG.log(Level.WARNING, "task failed", e);
+            }
+        }
+    }
+
+    private void processSelectedKeys() {
+        Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+
+        while (it.hasNext()) {
+            SelectionKey key = it.next();
+            it.remove();
+
+            if (!key.isValid()) {
+                continue;
+            }
+
+            if (key.isAcceptable()) {
+                accept(key);
+                continue;
+            }
+
+            NioSession session = (NioSession) key.attachment();
+
+            if (key.isReadable()) {
+                read(session);
+            }
+
+            if (key.isValid() && key.isWritable()) {
+                session.flush();
+            }
+        }
+    }
+
+    private void processFlushRequests() {
+        NioSession session;
+        while ((session = flushRequests.poll()) != null) {
+            session.flush();
+        }
+    }
+
+    private void accept(SelectionKey key) {
+        ServerSocketChannel serverChannel = (ServerSocketChannel) key.channel();
+        
+        while (true) {
+            SocketChannel channel;
+
+            try {
+                channel = serverChannel.accept();
+            } catch (IOException e) {
+                // Typically too many open files. The pending connection stays
+                // acceptable, so selecting again would spin; pause accepting instead.
+                LOG.log(Level.WARNING, "accept failed, pausing accept for " 
+                        + ACCEPT_BACKOFF_MILLIS + " ms", e);
+                key.interestOps(0);
+                pausedAcceptKey = key;
+                acceptResumeTime = System.nanoTime() 
+                        + TimeUnit.MILLISECONDS.toNanos(ACCEPT_BACKOFF_MILLIS);
+                if (acceptResumeTime == 0) {
+                    acceptResumeTime = 1;
+                }
+                return;
+            }
+
+            if (channel == null) {
+                return;
+            }
+
+            try {
+                server.accepted(channel);
+            } catch (IOException e) {
+                Util.close(channel);
+            }
+        }
+    }
+
+    private void read(NioSession session) {
+        readBuffer.clear();
+        int count;
+
+        try {
+            count = session.getSocketChannel().read(readBuffer);
+        } catch (IOException e) {
+            session.closeNow(e);
+            return;
+        }
+
+        if (count < 0) {
+            session.closeNow(new IOException("connection closed by peer"));
+            return;
+        }
+
+        readBuffer.flip();
+        session.received(readBuffer);
+    }
+
+    private void closeAll() {
+        try {
+            for (SelectionKey key : selector.keys()) {
+                Object attachment = key.attachment();
+                if (attachment instanceof NioSession) {
+                    ((NioSession) attachment).closeNow(null);
+                } else {
+                    Util.close(key.channel());
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            // Nothing more to close.
+        }
+
+        NioSession session;
+        while ((session = newSessions.poll()) != null) {
+            session.closeNow(null);
+        }
+
+        Util.close(selector);
+    }
+}
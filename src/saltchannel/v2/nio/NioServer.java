@@ -0,0 +1,350 @@
+package saltchannel.v2.nio;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import saltaa.PreparedSigner;
+import saltaa.SignKeyCache;
+import saltchannel.ByteChannel;
+import saltchannel.CryptoLib;
+import saltchannel.a1a2.A2Packet;
+import saltchannel.util.EphemeralKeyPool;
+import saltchannel.util.KeyPair;
+import saltchannel.util.Rand;
+import saltchannel.v2.ChannelCounters;
+import saltchannel.v2.HandshakeListener;
+import saltchannel.v2.ResumeHandler;
+import saltchannel.v2.SaltServerSession;
+import saltchannel.v2.SignatureBatcher;
+
+/**
+ * Non-blocking Salt Channel v2 server over TCP based on java.nio Selectors.
+ * A small, fixed number of event loop threads serve all connections;
+ * there is no thread per connection. The handshake is run as a state
+ * machine driven by SaltServerSession.onMessage() as messages arrive.
+ * Completed sessions are handed to the application through the
+ * Handler interface.
+ *
+ * Messages on the TCP stream are framed as in StreamChannel: a 4-byte
+ * size prefix (little-endian) followed by the message.
+ *
+ * An idle connection that has not sent anything holds no buffers and no
+ * session state, this allows for a large number (100k+) of idle connections,
+ * given enough file descriptors. A connection that has not completed the 
+ * handshake within the handshake timeout is closed, see setHandshakeTimeout().
+ *
+ * Handler methods are called by the event loop thread of the connection.
+ * They must not block. Handshake crypto is computed by the event
+ * loop threads unless a crypto executor is set, see setCryptoExecutor().
+ *
+ * Usage: create object, use setX methods, call start(), stop() when done.
+ *
+ * @author Frans Lundberg
+ */
+public class NioServer {
+    /**
+     * Max size of a message during the handshake. Larger messages
+     * result in a closed connection. The limit prevents a client from
+     * making the server allocate large buffers before authentication.
+     */
+    public static final int MAX_HANDSHAKE_MESSAGE_SIZE = 1024;
+
+    public static final long DEFAULT_HANDSHAKE_TIMEOUT_MILLIS = 10 * 1000;
+
+    private final PreparedSigner signer;
+    private final Handler handler;
+    private int eventLoopCount = Runtime.getRuntime().availableProcessors();
+    private long handshakeTimeoutMillis = DEFAULT_HANDSHAKE_TIMEOUT_MILLIS;
+    private Rand rand;
+    private EphemeralKeyPool keyPool;
+    private ResumeHandler resumeHandler;
+    private A2Packet a2Packet;
+    private Executor cryptoExecutor;
+    private SignatureBatcher signatureBatcher;
+    private SignKeyCache signKeyCache;
+    private boolean earlyDataAccepted = false;
+    private HandshakeListener handshakeListener;
+    private ChannelCounters aggregateCounters;
+    private EventLoop[] loops;
+    private ServerSocketChannel serverChannel;
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private int nextLoop = 0;
+
+    public NioServer(KeyPair sigKeyPair, Handler handler) {
+        this.signer = CryptoLib.createSigner(sigKeyPair);
+        this.handler = handler;
+    }
+
+    /**
+     * Sets the number of event loop threads. Default: the number of
+     * available processors.
+     */
+    public void setEventLoopCount(int eventLoopCount) {
+        if (eventLoopCount < 1) {
+            throw new IllegalArgumentException("bad eventLoopCount, " + eventLoopCount);
+        }
+        this.eventLoopCount = eventLoopCount;
+    }
+
+    /**
+     * Sets the max time from accept until the handshake has completed.
+     * Connections that have not completed the handshake in time are closed
+     * by the event loop; this bounds the number of connections a client can
+     * keep open without authenticating. 0 for no timeout. 
+     * Default: DEFAULT_HANDSHAKE_TIMEOUT_MILLIS.
+     */
+    public void setHandshakeTimeout(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("bad handshake timeout, " + millis);
+        }
+        this.handshakeTimeoutMillis = millis;
+    }
+
+    /**
+     * Sets the source of randomness for the ephemeral key pairs, one
+     * new key pair is created per session. Default: CryptoLib.createSecureRand().
+     */
+    public void setRand(Rand rand) {
+        this.rand = rand;
+    }
+
+    /**
+     * Sets a pool to take the ephemeral key pairs from. Overrides setRand().
+     * Default: null, a key pair is generated for each session when 
+     * the session starts.
+     */
+    public void setEphemeralKeyPool(EphemeralKeyPool keyPool) {
+        this.keyPool = keyPool;
+    }
+
+    public void setResumeHandler(ResumeHandler resumeHandler) {
+        this.resumeHandler = resumeHandler;
+    }
+
+    public void setA2(A2Packet a2Packet) {
+        this.a2Packet = a2Packet;
+    }
+
+    /**
+     * Sets a cache of decoded client signing keys shared by all sessions,
+     * see SaltServerSession.setSignKeyCache().
+     */
+    public void setSignKeyCache(SignKeyCache signKeyCache) {
+        this.signKeyCache = signKeyCache;
+    }
+
+    /**
+     * Sets a batcher that validates the clients' signatures in batches,
+     * see SaltServerSession.setSignatureBatcher().
+     * Only use a batcher together with a crypto executor; the event loop 
+     * threads must not block.
+     */
+    public void setSignatureBatcher(SignatureBatcher signatureBatcher) {
+        this.signatureBatcher = signatureBatcher;
+    }
+
+    /**
+     * Set to true to accept early data from clients that resume a session,
+     * see SaltServerSession.setEarlyDataAccepted(). Default: false.
+     */
+    public void setEarlyDataAccepted(boolean earlyDataAccepted) {
+        this.earlyDataAccepted = earlyDataAccepted;
+    }
+
+    /**
+     * Sets a listener that receives the handshake timings of all sessions,
+     * see SaltServerSession.setHandshakeListener(). It must be thread-safe,
+     * HandshakeStats is. Default: null.
+     */
+    public void setHandshakeListener(HandshakeListener handshakeListener) {
+        this.handshakeListener = handshakeListener;
+    }
+
+    /**
+     * Sets counters that the channels of all sessions count into, 
+     * in addition to their own counters; see ChannelCounters.
+     * Default: null.
+     */
+    public void setAggregateCounters(ChannelCounters aggregateCounters) {
+        this.aggregateCounters = aggregateCounters;
+    }
+
+    /**
+     * Sets the executor that runs the handshake steps: ephemeral key 
+     * generation, key agreement, signing and signature verification. 
+     * With an executor, the event loop threads only do I/O and can continue
+     * to accept connections and read messages during a connection storm. 
+     * A bounded executor should be used, typically a CryptoPool.
+     * If the executor rejects a task, the connection is closed.
+     * Default: null, the crypto is computed by the event loop threads.
+     */
+    public void setCryptoExecutor(Executor cryptoExecutor) {
+        this.cryptoExecutor = cryptoExecutor;
+    }
+
+    /**
+     * Binds to the address and starts the event loop threads.
+     * Use port 0 in the address to get an ephemeral port, see getLocalPort().
+     */
+    public void start(InetSocketAddress address) throws IOException {
+        if (loops != null) {
+            throw new IllegalStateException("already started");
+        }
+
+        if (rand == null) {
+            rand = CryptoLib.createSecureRand();
+        }
+
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address);
+        serverChannel.configureBlocking(false);
+
+        loops = new EventLoop[eventLoopCount];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop(this, "NioServer-loop-" + i);
+        }
+
+        loops[0].registerAcceptor(serverChannel);
+
+        for (int i = 0; i < loops.length; i++) {
+            loops[i].start();
+        }
+    }
+
+    /**
+     * Returns the local port, available after start().
+     */
+    public int getLocalPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Returns the number of open connections, including the
+     * ones that have not completed the handshake.
+     */
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    /**
+     * Stops the server and closes all connections. Waits for the
+     * event loop threads to finish. Handler.sessionClosed() is called
+     * for the open sessions.
+     * This object should not be used after this method has been called.
+     */
+    public void stop() throws InterruptedException {
+        if (loops == null) {
+            return;
+        }
+
+        for (int i = 0; i < loops.length; i++) {
+            loops[i].shutdown();
+        }
+
+        for (int i = 0; i < loops.length; i++) {
+            loops[i].join();
+        }
+    }
+
+    long getHandshakeTimeoutMillis() {
+        return handshakeTimeoutMillis;
+    }
+
+    Executor getCryptoExecutor() {
+        return cryptoExecutor;
+    }
+
+    Handler getHandler() {
+        return handler;
+    }
+
+    AtomicInteger getConnectionCounter() {
+        return connectionCount;
+    }
+
+    /**
+     * Called by the acceptor event loop thread.
+     */
+    void accepted(SocketChannel channel) throws IOException {
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+
+        EventLoop loop = loops[nextLoop];
+        nextLoop = (nextLoop + 1) % loops.length;
+        NioSession session = new NioSession(this, loop, channel);
+        connectionCount.incrementAndGet();    // Decremented by closeNow().
+
+        try {
+            loop.register(session);
+        } catch (IOException e) {
+            session.closeNow(e);
+        }
+    }
+
+    /**
+     * Creates the server session object; called when the first message of
+     * a connection has been received. Called by an event loop thread or 
+     * by the crypto executor.
+     */
+    SaltServerSession createSaltSession(ByteChannel clearChannel) {
+        SaltServerSession session = new SaltServerSession(signer, clearChannel);
+        if (keyPool != null) {
+            session.setEncKeyPair(keyPool);
+        } else {
+            session.setEncKeyPair(rand);
+        }
+
+        if (a2Packet != null) {
+            session.setA2(a2Packet);
+        }
+
+        if (resumeHandler != null) {
+            session.setResumeHandler(resumeHandler);
+        }
+        if (signatureBatcher != null) {
+            session.setSignatureBatcher(signatureBatcher);
+        }
+        if (signKeyCache != null) {
+            session.setSignKeyCache(signKeyCache);
+        }
+        session.setEarlyDataAccepted(earlyDataAccepted);
+        session.setHandshakeListener(handshakeListener);
+        if (aggregateCounters != null) {
+            session.setCounters(new ChannelCounters(aggregateCounters));
+        }
+
+        return session;
+    }
+
+    /**
+     * Application callbacks. Called by event loop threads; the methods
+     * must not block. The methods for one session are always called by
+     * the same thread.
+     */
+    public static interface Handler {
+
+        /**
+         * Called when the handshake of a session has completed.
+         * The session can be written to from now on.
+         */
+        public void sessionStarted(NioSession session);
+
+        /**
+         * Called for each application message received from the client.
+         */
+        public void messageReceived(NioSession session, byte[] message);
+
+        /**
+         * Called once when a started session is closed.
+         *
+         * @param cause
+         *          The reason, null if the session was closed in an orderly
+         *          manner (LastFlag, NioSession.close() or server stop).
+         */
+        public void sessionClosed(NioSession session, Exception cause);
+    }
+}
@@ -0,0 +1,524 @@
+package saltchannel.v2.nio;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+
+import saltchannel.BadPeer;
+import saltchannel.ByteChannel;
+import saltchannel.ComException;
+import saltchannel.NioSocketChannel;
+import saltchannel.util.Util;
+import saltchannel.v2.ApplicationChannel;
+import saltchannel.v2.ChannelCounters;
+import saltchannel.v2.HandshakeResult;
+import saltchannel.v2.SaltServerSession;
+
+/**
+ * One client connection of an NioServer. After the handshake, the
+ * application gets the object through NioServer.Handler.sessionStarted().
+ *
+ * write() and close() can be called by any thread; they never block.
+ * Written messages are queued and written to the socket by the
+ * event loop thread.
+ *
+ * @author Frans Lundberg
+ */
+public class NioSession {
+    private static final int MAX_PENDING_MESSAGES = 8;
+    private static final int MAX_PENDING_BYTES = 4 * NioServer.MAX_HANDSHAKE_MESSAGE_SIZE;
+
+    private final NioServer server;
+    private final EventLoop loop;
+    private final SocketChannel socketChannel;
+    private final TransportChannel transport = new TransportChannel();
+    private final ConcurrentLinkedQueue<ByteBuffer> writeQ = new ConcurrentLinkedQueue<ByteBuffer>();
+    private final Object writeLock = new Object();
+    private SelectionKey key;
+    private SaltServerSession saltSession;
+    private ApplicationChannel appChannel;
+    private volatile boolean started = false;
+    private volatile boolean closeAfterWrite = false;
+    private volatile boolean closed = false;
+    private volatile Object attachment;
+    
+    /** System.nanoTime() when the handshake times out, used by loop thread only. */
+    private long handshakeDeadline;
+
+    // Crypto offload state, used by loop thread only.
+    private boolean cryptoBusy = false;
+    private final ArrayDeque<byte[]> pendingMessages = new ArrayDeque<byte[]>(2);
+    private int pendingBytes = 0;
+    
+    // Reading is paused while a crypto task runs and the next message
+    // cannot be accepted yet; heldBytes are the bytes already read.
+    private boolean readPaused = false;
+    private byte[] heldBytes;
+
+    // Frame parsing state, used by loop thread only.
+    private int headerCount = 0;
+    private int size = 0;
+    private byte[] message;
+    private int messagePos;
+
+    NioSession(NioServer server, EventLoop loop, SocketChannel socketChannel) {
+        this.server = server;
+        this.loop = loop;
+        this.socketChannel = socketChannel;
+    }
+
+    /**
+     * Returns the client's signing public key. Available when the session
+     * has started.
+     */
+    public byte[] getClientSigKey() {
+        return saltSession == null ? null : saltSession.getClientSigKey();
+    }
+
+    /**
+     * Returns the traffic counters of the session. Available when the 
+     * session has started.
+     */
+    public ChannelCounters getCounters() {
+        return started ? appChannel.getCounters() : null;
+    }
+
+    public SocketAddress getRemoteAddress() {
+        return socketChannel.socket().getRemoteSocketAddress();
+    }
+
+    /**
+     * Sets an application object associated with this session.
+     */
+    public void setAttachment(Object attachment) {
+        this.attachment = attachment;
+    }
+
+    public Object getAttachment() {
+        return attachment;
+    }
+
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * Encrypts the application messages and queues them for writing.
+     * Never blocks. Messages written after the session was closed are dropped.
+     *
+     * @param isLast
+     *          True if these are the last messages of the session. The
+     *          connection is closed when the messages have been written.
+     * @throws IllegalStateException
+     *          If the session has not started.
+     */
+    public void write(boolean isLast, byte[]... messages) {
+        if (!started) {
+            throw new IllegalStateException("session not started");
+        }
+
+        synchronized (writeLock) {
+            if (closed || closeAfterWrite) {
+                return;
+            }
+
+            appChannel.write(isLast, messages);
+        }
+    }
+
+    /**
+     * Closes the connection once the messages already written have been
+     * written to the socket. Never blocks.
+     */
+    public void close() {
+        closeAfterWrite = true;
+        loop.requestFlush(this);
+    }
+
+    SocketChannel getSocketChannel() {
+        return socketChannel;
+    }
+
+    void setKey(SelectionKey key) {
+        this.key = key;
+    }
+
+    boolean isStarted() {
+        return started;
+    }
+
+    long getHandshakeDeadline() {
+        return handshakeDeadline;
+    }
+
+    void setHandshakeDeadline(long handshakeDeadline) {
+        this.handshakeDeadline = handshakeDeadline;
+    }
+
+    /**
+     * Handles bytes read from the socket. Called by the loop thread.
+     */
+    void received(ByteBuffer buffer) {
+        try {
+            while (buffer.hasRemaining() && !closed) {
+                if (message == null) {
+                    while (headerCount < 4 && buffer.hasRemaining()) {
+                        size |= (buffer.get() & 0xff) << (8 * headerCount);
+                        headerCount++;
+                    }
+
+                    if (headerCount < 4) {
+                        return;
+                    }
+
+                    if (cryptoBusy && (size > NioServer.MAX_HANDSHAKE_MESSAGE_SIZE
+                            || pendingMessages.size() >= MAX_PENDING_MESSAGES
+                            || pendingBytes + size > MAX_PENDING_BYTES)) {
+                        // May be application data sent directly after M4 or after 
+                        // a resumed M1; decided when the crypto task is done.
+                        pauseRead(buffer);
+                        return;
+                    }
+                    
+                    // Large messages only when authenticated: after M4 or,
+                    // for the early data, after a resumed M1 with a valid ticket.
+                    boolean large = size > NioServer.MAX_HANDSHAKE_MESSAGE_SIZE;
+                    if (size <= 0 || size > NioSocketChannel.MAX_MESSAGE_SIZE
+                            || (large && !started && !earlyDataExpected())) {
+                        throw new BadPeer("bad message size, " + size);
+                    }
+
+                    message = new byte[size];
+                    messagePos = 0;
+                }
+
+                int count = Math.min(buffer.remaining(), message.length - messagePos);
+                buffer.get(message, messagePos, count);
+                messagePos += count;
+
+                if (messagePos == message.length) {
+                    byte[] m = message;
+                    message = null;
+                    headerCount = 0;
+                    size = 0;
+                    messageReceived(m);
+                }
+            }
+        } catch (RuntimeException e) {
+            // A ComException from the Salt Channel layers or an
+            // exception thrown by the application's handler.
+            closeNow(e);
+        }
+    }
+
+    private void messageReceived(byte[] message) {
+        if (cryptoBusy) {
+            // Keep the order of the messages, handle them when the
+            // crypto task has completed. The count and size are bounded by received().
+            pendingMessages.add(message);
+            pendingBytes += message.length;
+        } else if (started) {
+            appMessageReceived(message);
+        } else {
+            handshakeMessageReceived(message);
+        }
+    }
+
+    private void handshakeMessageReceived(final byte[] message) {
+        Executor cryptoExecutor = server.getCryptoExecutor();
+        
+        if (cryptoExecutor == null) {
+            handshakeResult(handshakeStep(message));
+            return;
+        }
+        
+        cryptoBusy = true;
+        
+        try {
+            cryptoExecutor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        final HandshakeResult result = handshakeStep(message);
+                        loop.execute(new Runnable() {
+                            public void run() {
+                                cryptoDone(result);
+                            }
+                        });
+                    } catch (final RuntimeException e) {
+                        loop.execute(new Runnable() {
+                            public void run() {
+                                closeNow(e);
+                            }
+                        });
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            cryptoBusy = false;
+            closeNow(e);
+        }
+    }
+    
+    /**
+     * Runs one step of the handshake. Called by the loop thread or
+     * by a thread of the crypto executor.
+     */
+    private HandshakeResult handshakeStep(byte[] message) {
+        if (saltSession == null) {
+            saltSession = server.createSaltSession(transport);
+        }
+        
+        return saltSession.onMessage(message);
+    }
+    
+    /**
+     * Called by the loop thread when a handshake step has been
+     * executed by the crypto executor.
+     */
+    private void cryptoDone(HandshakeResult result) {
+        cryptoBusy = false;
+        
+        if (closed) {
+            return;
+        }
+        
+        try {
+            handshakeResult(result);
+            
+            while (!cryptoBusy && !closed && !pendingMessages.isEmpty()) {
+                byte[] m = pendingMessages.poll();
+                pendingBytes -= m.length;
+                messageReceived(m);
+            }
+        } catch (RuntimeException e) {
+            closeNow(e);
+            return;
+        }
+        
+        if (readPaused && !cryptoBusy && !closed) {
+            resumeRead();
+        }
+    }
+    
+    /**
+     * Stops reading from the socket and keeps the bytes of the buffer
+     * not yet consumed.
+     */
+    private void pauseRead(ByteBuffer buffer) {
+        heldBytes = new byte[buffer.remaining()];
+        buffer.get(heldBytes);
+        readPaused = true;
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+    }
+    
+    private void resumeRead() {
+        byte[] bytes = heldBytes;
+        heldBytes = null;
+        readPaused = false;
+        key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+        
+        // May pause reading again.
+        received(ByteBuffer.wrap(bytes));
+    }
+    
+    /**
+     * Called by the loop thread when no crypto task runs.
+     */
+    private boolean earlyDataExpected() {
+        return saltSession != null && saltSession.isEarlyDataExpected();
+    }
+    
+    private int readOp() {
+        return readPaused ? 0 : SelectionKey.OP_READ;
+    }
+    
+    private void handshakeResult(HandshakeResult result) {
+        byte[][] messages = result.getMessages();
+        if (messages.length > 0) {
+            transport.write(result.isLast(), messages);
+        }
+
+        switch (result.getState()) {
+        case NEED_MORE:
+            break;
+        case DONE:
+            appChannel = saltSession.getChannel();
+            started = true;
+            server.getHandler().sessionStarted(this);
+
+            // Early data of a resumed session, already decrypted.
+            while (!closed && appChannel.availableFromMultiAppPacket() > 0) {
+                server.getHandler().messageReceived(this, appChannel.read());
+            }
+            break;
+        case A2_DONE:
+            close();
+            break;
+        case FAILED:
+            if (messages.length > 0) {
+                close();
+            } else {
+                closeNow(result.getException());
+            }
+            break;
+        }
+    }
+
+    private void appMessageReceived(byte[] message) {
+        transport.inbound = message;
+        NioServer.Handler handler = server.getHandler();
+
+        handler.messageReceived(this, appChannel.read());
+        while (appChannel.availableFromMultiAppPacket() > 0) {
+            handler.messageReceived(this, appChannel.read());
+        }
+
+        if (appChannel.lastFlag()) {
+            close();
+        }
+    }
+
+    /**
+     * Writes as much as possible of the write queue to the socket.
+     * Called by the loop thread.
+     */
+    void flush() {
+        if (closed || key == null) {
+            // Not registered yet; flushed when registered and writable.
+            return;
+        }
+
+        ByteBuffer[] batch = loop.getWriteBatch();
+
+        try {
+            while (true) {
+                int count = 0;
+                Iterator<ByteBuffer> it = writeQ.iterator();
+                while (count < batch.length && it.hasNext()) {
+                    batch[count++] = it.next();
+                }
+
+                if (count == 0) {
+                    break;
+                }
+
+                socketChannel.write(batch, 0, count);
+
+                while (!writeQ.isEmpty() && !writeQ.peek().hasRemaining()) {
+                    writeQ.poll();
+                }
+
+                boolean full = batch[count - 1].hasRemaining();
+                Arrays.fill(batch, 0, count, null);
+                if (full) {
+                    break;    // Socket buffer is full.
+                }
+            }
+        } catch (IOException e) {
+            closeNow(e);
+            return;
+        }
+
+        if (writeQ.isEmpty()) {
+            if (closeAfterWrite) {
+                closeNow(null);
+                return;
+            }
+
+            if ((key.interestOps() & SelectionKey.OP_WRITE) != 0) {
+                key.interestOps(readOp());
+            }
+        } else {
+            key.interestOps(readOp() | SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * Closes the connection immediately. Called by the loop thread.
+     */
+    void closeNow(Exception cause) {
+        if (closed) {
+            return;
+        }
+
+        synchronized (writeLock) {
+            closed = true;
+        }
+
+        if (key != null) {
+            key.cancel();
+        }
+
+        Util.close(socketChannel);
+        writeQ.clear();
+        server.getConnectionCounter().decrementAndGet();
+
+        if (started) {
+            try {
+                server.getHandler().sessionClosed(this, cause);
+            } catch (RuntimeException e) {
+                EventLoop.LOG.log(Level.WARNING, "Handler.sessionClosed() failed", e);
+            }
+        }
+    }
+
+    /**
+     * The clear channel below the Salt Channel session. Reads return the
+     * message just received by the loop thread, writes add framed
+     * messages to the write queue: a 4-byte size header and the message
+     * itself, so flush() gathers the headers and encrypted records of
+     * many messages into one socket write without copying them.
+     * The arrays are queued as they are; the layers above write newly
+     * allocated arrays (encrypted records, handshake messages) and do
+     * not modify them afterwards.
+     */
+    private class TransportChannel implements ByteChannel {
+        private byte[] inbound;
+
+        @Override
+        public byte[] read() throws ComException {
+            byte[] result = inbound;
+            if (result == null) {
+                throw new ComException("no message available");
+            }
+            inbound = null;
+            return result;
+        }
+
+        @Override
+        public void write(byte[]... messages) throws ComException {
+            write(false, messages);
+        }
+
+        @Override
+        public void write(boolean isLast, byte[]... messages) {
+            for (int i = 0; i < messages.length; i++) {
+                byte[] m = messages[i];
+                ByteBuffer header = ByteBuffer.allocate(4);
+                int size = m.length;
+                header.put((byte) size);
+                header.put((byte) (size >>> 8));
+                header.put((byte) (size >>> 16));
+                header.put((byte) (size >>> 24));
+                header.flip();
+                writeQ.add(header);
+                writeQ.add(ByteBuffer.wrap(m));
+            }
+
+            if (isLast) {
+                closeAfterWrite = true;
+            }
+
+            loop.requestFlush(NioSession.this);
+        }
+    }
+}
@@ -6,6 +6,10 @@ import saltchannel.util.Serializer;
 
 public class AppPacket implements Packet {
     public static final int PACKET_TYPE = 5;
+    
+    /** Size of the fields before AppData: header and time. */
+    public static final int HEADER_SIZE = PacketHeader.SIZE + 4;
+    
     public int time;
     public byte[] appData;
     
@@ -14,7 +18,7 @@ public class AppPacket implements Packet {
     }
     
     public int getSize() {
-        return PacketHeader.SIZE + 4 + appData.length;
+        return HEADER_SIZE + appData.length;
     }
     
     public void toBytes(byte[] destination, int offset) {
@@ -30,11 +34,28 @@ public class AppPacket implements Packet {
     }
     
     public static AppPacket fromBytes(byte[] source, int offset, int packetSize) {
-        if (packetSize < PacketHeader.SIZE + 4) {
+        AppPacket p = new AppPacket();
+        p.time = readTime(source, offset, packetSize);
+        
+        int dataSize = packetSize - HEADER_SIZE;
+        Deserializer d = new Deserializer(source, offset + HEADER_SIZE);
+        p.appData = d.readBytes(dataSize);
+        
+        return p;
+    }
+    
+    /**
+     * Validates the fields before AppData and returns the time field.
+     * AppData is source[offset+HEADER_SIZE], ..., source[offset+packetSize-1].
+     * Useful to read the AppData without copying it.
+     * 
+     * @throws BadPeer
+     */
+    public static int readTime(byte[] source, int offset, int packetSize) {
+        if (packetSize < HEADER_SIZE) {
             throw new BadPeer("packet too small, was " + packetSize);
         }
         
-        AppPacket p = new AppPacket();
         Deserializer d = new Deserializer(source, offset);
         
         PacketHeader header = d.readHeader();
@@ -43,18 +64,11 @@ public class AppPacket implements Packet {
             throw new BadPeer("unexpected packet type, " + packetType + ", expected " + PACKET_TYPE);
         }
         
-        p.time = d.readInt32();
-        if (p.time < 0) {
-            throw new BadPeer("bad time, " + p.time);
-        }
-        
-        int dataSize = packetSize - (PacketHeader.SIZE + 4);
-        if (dataSize < 0) {
-            throw new BadPeer("bad dataSize");
+        int time = d.readInt32();
+        if (time < 0) {
+            throw new BadPeer("bad time, " + time);
         }
         
-        p.appData = d.readBytes(dataSize);
-        
-        return p;
+        return time;
     }
 }
@@ -14,6 +14,7 @@ public class M1Message implements Packet {
     public static final int BIT_INDEX_SERVER_SIG_KEY_INCLUDED = 0;
     public static final int BIT_INDEX_TICKET_INCLUDED = 1;
     public static final int BIT_INDEX_TICKET_REQUESTED = 2;
+    public static final int BIT_INDEX_EARLY_DATA = 3;
     
     public int time;
     public byte[] clientEncKey;
@@ -21,6 +22,12 @@ public class M1Message implements Packet {
     public byte[] ticket;
     public boolean ticketRequested;
     
+    /**
+     * True if an encrypted application packet (early data) follows M1, 
+     * only allowed together with a ticket. Experimental, not in the v2 spec.
+     */
+    public boolean earlyData;
+    
     public int getType() {
         return PACKET_TYPE;
     }
@@ -49,6 +56,7 @@ public class M1Message implements Packet {
         header.setBit(BIT_INDEX_SERVER_SIG_KEY_INCLUDED, serverSigKeyIncluded());
         header.setBit(BIT_INDEX_TICKET_INCLUDED, ticketIncluded());
         header.setBit(BIT_INDEX_TICKET_REQUESTED, ticketRequested);
+        header.setBit(BIT_INDEX_EARLY_DATA, earlyData);
         
         s.writeString("SCv2");    // ProtocolIndicator
         s.writeHeader(header);
@@ -102,6 +110,7 @@ public class M1Message implements Packet {
         boolean serverSigKeyIncluded = header.getBit(BIT_INDEX_SERVER_SIG_KEY_INCLUDED);
         boolean ticketIncluded = header.getBit(BIT_INDEX_TICKET_INCLUDED);
         data.ticketRequested = header.getBit(BIT_INDEX_TICKET_REQUESTED);
+        data.earlyData = header.getBit(BIT_INDEX_EARLY_DATA);
         
         data.clientEncKey = d.readBytes(32);
         
@@ -118,6 +127,10 @@ public class M1Message implements Packet {
             data.ticket = d.readBytes(ticketSize);
         }
         
+        if (data.earlyData && !ticketIncluded) {
+            throw new BadPeer("early data without ticket");
+        }
+        
         return data;
     }
 }
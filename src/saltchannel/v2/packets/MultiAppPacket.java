@@ -1,5 +1,6 @@
 package saltchannel.v2.packets;
 
+import java.nio.ByteBuffer;
 import saltchannel.BadPeer;
 import saltchannel.util.Deserializer;
 import saltchannel.util.Serializer;
@@ -110,6 +111,24 @@ public class MultiAppPacket implements Packet {
         return true;
     }
     
+    /**
+     * Returns true iff the given application messages (the remaining bytes
+     * of each buffer) should be encoded in a MultiAppPacket.
+     */
+    public static boolean shouldUse(ByteBuffer[] appMessages) {
+        if (appMessages.length < 2 || appMessages.length > MAX_SIZE) {
+            return false;
+        }
+        
+        for (int i = 0; i < appMessages.length; i++) {
+            if (appMessages[i].remaining() > MAX_SIZE) {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
     private static int readUint16(Deserializer d) {
         try {
             return d.readUint16();